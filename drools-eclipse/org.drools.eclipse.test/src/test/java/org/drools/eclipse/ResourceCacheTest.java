@@ -0,0 +1,174 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+public class ResourceCacheTest {
+
+    private static final ResourceCache.Weigher<String> LENGTH = new ResourceCache.Weigher<String>() {
+                                                                  public long weigh(String value) {
+                                                                      return value.length();
+                                                                  }
+                                                              };
+
+    private Set<IResource>                             pinned = new HashSet<IResource>();
+
+    // the values are held by the test, so demoted entries are never collected
+    private String                                     a      = "aaaa";
+    private String                                     b      = "bbbb";
+    private String                                     c      = "cccc";
+
+    private IResource                                  fileA  = getFile( "a.drl" );
+    private IResource                                  fileB  = getFile( "b.drl" );
+    private IResource                                  fileC  = getFile( "c.drl" );
+
+    @Test
+    public void testGetPutRemove() {
+        ResourceCache<String> cache = createCache( 10,
+                                                   Long.MAX_VALUE );
+        assertNull( cache.get( fileA ) );
+        cache.put( fileA,
+                   a );
+        assertSame( a,
+                    cache.get( fileA ) );
+        assertSame( a,
+                    cache.remove( fileA ) );
+        assertNull( cache.get( fileA ) );
+        assertStatistics( cache,
+                          "0 entries (0 weight), 0 soft entries, 1 hits, 0 soft hits, 2 misses, 0 evictions" );
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsDemoted() {
+        ResourceCache<String> cache = createCache( 2,
+                                                   Long.MAX_VALUE );
+        cache.put( fileA,
+                   a );
+        cache.put( fileB,
+                   b );
+        cache.get( fileA );
+        cache.put( fileC,
+                   c );
+        assertStatistics( cache,
+                          "2 entries (8 weight), 1 soft entries, 1 hits, 0 soft hits, 0 misses, 1 evictions" );
+
+        // a demoted entry is still found, and held strongly again
+        assertSame( b,
+                    cache.get( fileB ) );
+        assertStatistics( cache,
+                          "2 entries (8 weight), 1 soft entries, 1 hits, 1 soft hits, 0 misses, 2 evictions" );
+        assertEquals( 3,
+                      cache.values().size() );
+        assertEquals( 3,
+                      cache.resources().size() );
+    }
+
+    @Test
+    public void testWeight() {
+        ResourceCache<String> cache = createCache( 10,
+                                                   10 );
+        cache.put( fileA,
+                   a );
+        cache.put( fileB,
+                   b );
+        cache.put( fileC,
+                   c );
+        assertStatistics( cache,
+                          "2 entries (8 weight), 1 soft entries, 0 hits, 0 soft hits, 0 misses, 1 evictions" );
+
+        // replacing an entry replaces its weight
+        cache.put( fileC,
+                   "cc" );
+        assertStatistics( cache,
+                          "2 entries (6 weight), 1 soft entries, 0 hits, 0 soft hits, 0 misses, 1 evictions" );
+        cache.setLimits( 10,
+                         5 );
+        assertStatistics( cache,
+                          "1 entries (2 weight), 2 soft entries, 0 hits, 0 soft hits, 0 misses, 2 evictions" );
+    }
+
+    @Test
+    public void testPinned() {
+        ResourceCache<String> cache = createCache( 1,
+                                                   Long.MAX_VALUE );
+        pinned.add( fileA );
+        cache.put( fileA,
+                   a );
+        cache.put( fileB,
+                   b );
+        // the pinned entry is kept although it was used least recently
+        assertStatistics( cache,
+                          "1 entries (4 weight), 1 soft entries, 0 hits, 0 soft hits, 0 misses, 1 evictions" );
+        assertSame( a,
+                    cache.get( fileA ) );
+        assertStatistics( cache,
+                          "1 entries (4 weight), 1 soft entries, 1 hits, 0 soft hits, 0 misses, 1 evictions" );
+
+        pinned.remove( fileA );
+        cache.put( fileC,
+                   c );
+        assertStatistics( cache,
+                          "1 entries (4 weight), 2 soft entries, 1 hits, 0 soft hits, 0 misses, 2 evictions" );
+        assertSame( c,
+                    cache.get( fileC ) );
+    }
+
+    @Test
+    public void testRemoveSoftEntry() {
+        ResourceCache<String> cache = createCache( 1,
+                                                   Long.MAX_VALUE );
+        cache.put( fileA,
+                   a );
+        cache.put( fileB,
+                   b );
+        assertSame( a,
+                    cache.remove( fileA ) );
+        assertNull( cache.get( fileA ) );
+        cache.clear();
+        assertTrue( cache.values().isEmpty() );
+    }
+
+    private ResourceCache<String> createCache(int maxEntries,
+                                              long maxWeight) {
+        return new ResourceCache<String>( "Test",
+                                          LENGTH,
+                                          pinned,
+                                          maxEntries,
+                                          maxWeight );
+    }
+
+    private static void assertStatistics(ResourceCache<String> cache,
+                                         String expected) {
+        String statistics = cache.getStatistics();
+        assertTrue( statistics,
+                    statistics.startsWith( "Test: " + expected ) );
+    }
+
+    private static IResource getFile(String name) {
+        return ResourcesPlugin.getWorkspace().getRoot().getFile( new Path( "/test/src/" + name ) );
+    }
+
+}
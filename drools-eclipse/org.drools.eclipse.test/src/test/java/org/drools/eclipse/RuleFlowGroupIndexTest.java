@@ -0,0 +1,171 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IProjectDescription;
+import org.eclipse.core.resources.IncrementalProjectBuilder;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.jbpm.workflow.core.node.RuleSetNode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RuleFlowGroupIndexTest {
+
+    private final static IProgressMonitor NULL_MONITOR = new NullProgressMonitor();
+
+    private static final String           PROCESS      = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                                                         "<process xmlns=\"http://drools.org/drools-5.0/process\"\n" +
+                                                         "         type=\"RuleFlow\" name=\"flow\" id=\"org.test.flow\" package-name=\"org.test\" >\n" +
+                                                         "  <header>\n" +
+                                                         "  </header>\n" +
+                                                         "  <nodes>\n" +
+                                                         "    <start id=\"1\" name=\"Start\" />\n" +
+                                                         "    <ruleSet id=\"2\" name=\"Hello\" ruleFlowGroup=\"hello\" />\n" +
+                                                         "    <end id=\"3\" name=\"End\" />\n" +
+                                                         "  </nodes>\n" +
+                                                         "  <connections>\n" +
+                                                         "    <connection from=\"1\" to=\"2\" />\n" +
+                                                         "    <connection from=\"2\" to=\"3\" />\n" +
+                                                         "  </connections>\n" +
+                                                         "</process>\n";
+
+    private IProject                      project;
+
+    private IJavaProject                  javaProject;
+
+    @Before
+    public void setUp() throws Exception {
+        project = ResourcesPlugin.getWorkspace().getRoot().getProject( "RuleFlowGroupIndexTestProject" );
+        project.create( NULL_MONITOR );
+        project.open( NULL_MONITOR );
+        IProjectDescription description = project.getDescription();
+        description.setNatureIds( new String[]{JavaCore.NATURE_ID} );
+        project.setDescription( description,
+                                NULL_MONITOR );
+        project.getFolder( "src" ).create( true,
+                                           true,
+                                           NULL_MONITOR );
+        javaProject = JavaCore.create( project );
+        setClasspath( JavaCore.newContainerEntry( new Path( "org.eclipse.jdt.launching.JRE_CONTAINER" ) ) );
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        project.delete( true,
+                        true,
+                        NULL_MONITOR );
+    }
+
+    @Test
+    public void testIndexSurvivesBuild() throws Exception {
+        DroolsEclipsePlugin plugin = DroolsEclipsePlugin.getDefault();
+        IFile processFile = createFile( "src/flow.rf",
+                                        PROCESS );
+        ProcessInfo processInfo = plugin.parseProcess( PROCESS,
+                                                       processFile );
+        assertEquals( "org.test.flow",
+                      processInfo.getProcessId() );
+        assertSame( processInfo,
+                    getProcessInfo( "hello" ) );
+
+        // writes Fact.class and a copy of the process to the output folder
+        createFile( "src/Fact.java",
+                    "public class Fact {\n}\n" );
+        project.build( IncrementalProjectBuilder.INCREMENTAL_BUILD,
+                       NULL_MONITOR );
+        assertTrue( project.getFile( "bin/Fact.class" ).exists() );
+        assertSame( processInfo,
+                    getProcessInfo( "hello" ) );
+        assertSame( processFile,
+                    plugin.findProcessResource( "org.test.flow" ) );
+    }
+
+    @Test
+    public void testIndexSurvivesClasspathChange() throws Exception {
+        DroolsEclipsePlugin plugin = DroolsEclipsePlugin.getDefault();
+        IFile processFile = createFile( "src/flow.rf",
+                                        PROCESS );
+        ProcessInfo processInfo = plugin.parseProcess( PROCESS,
+                                                       processFile );
+
+        project.getFolder( "lib" ).create( true,
+                                           true,
+                                           NULL_MONITOR );
+        setClasspath( JavaCore.newContainerEntry( new Path( "org.eclipse.jdt.launching.JRE_CONTAINER" ) ),
+                      JavaCore.newLibraryEntry( project.getFullPath().append( "lib" ),
+                                                null,
+                                                null ) );
+        // the process is parsed again with the new classpath, but still found
+        ProcessInfo reparsed = getProcessInfo( "hello" );
+        assertNotNull( reparsed );
+        assertNotSame( processInfo,
+                       reparsed );
+        assertEquals( "org.test.flow",
+                      reparsed.getProcessId() );
+    }
+
+    private ProcessInfo getProcessInfo(String flowGroup) {
+        Map<ProcessInfo, List<RuleSetNode>> nodes = DroolsEclipsePlugin.getDefault().getRuleSetNodeByFlowGroup( flowGroup );
+        Set<ProcessInfo> processInfos = nodes.keySet();
+        assertEquals( 1,
+                      processInfos.size() );
+        ProcessInfo processInfo = processInfos.iterator().next();
+        assertEquals( 1,
+                      nodes.get( processInfo ).size() );
+        return processInfo;
+    }
+
+    private void setClasspath(IClasspathEntry... entries) throws CoreException {
+        IClasspathEntry[] classpath = new IClasspathEntry[entries.length + 1];
+        classpath[0] = JavaCore.newSourceEntry( project.getFullPath().append( "src" ) );
+        System.arraycopy( entries,
+                          0,
+                          classpath,
+                          1,
+                          entries.length );
+        javaProject.setRawClasspath( classpath,
+                                     project.getFullPath().append( "bin" ),
+                                     NULL_MONITOR );
+    }
+
+    private IFile createFile(String path,
+                             String contents) throws CoreException {
+        IFile file = project.getFile( path );
+        file.create( new ByteArrayInputStream( contents.getBytes() ),
+                     true,
+                     NULL_MONITOR );
+        return file;
+    }
+
+}
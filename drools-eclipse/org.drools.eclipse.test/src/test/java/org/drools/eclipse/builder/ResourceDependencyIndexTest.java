@@ -0,0 +1,181 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.builder;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.drools.compiler.compiler.DrlParser;
+import org.drools.compiler.compiler.PackageBuilder;
+import org.drools.compiler.lang.descr.PackageDescr;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+public class ResourceDependencyIndexTest {
+
+    private static final String DRL = "package org.test;\n" +
+                                      "import org.model.Person;\n" +
+                                      "import org.model.Order.Line;\n" +
+                                      "import org.events.*;\n" +
+                                      "import function org.util.Functions.hello;\n" +
+                                      "global org.util.Log log;\n" +
+                                      "rule \"first\"\n" +
+                                      "    when\n" +
+                                      "        Person()\n" +
+                                      "        not org.other.Address()\n" +
+                                      "    then\n" +
+                                      "end\n";
+
+    private IResource           file = getFile( "/test/src/rules/a.drl" );
+
+    @Test
+    public void testDependencies() throws Exception {
+        ResourceDependencyIndex index = new ResourceDependencyIndex();
+        assertTrue( index.isEmpty() );
+        index.update( file, new DrlParser().parse( true, DRL ) );
+        assertFalse( index.isEmpty() );
+
+        // imports, function imports, globals and fully qualified patterns
+        assertDependent( index, "org.model.Person" );
+        assertDependent( index, "org.util.Functions" );
+        assertDependent( index, "org.util.Log" );
+        assertDependent( index, "org.other.Address" );
+        // the outer class of an imported nested class
+        assertDependent( index, "org.model.Order" );
+        // any type of a wildcard import or of the package itself
+        assertDependent( index, "org.events.Alarm" );
+        assertDependent( index, "org.test.Helper" );
+
+        assertNotDependent( index, "org.model.Address" );
+        assertNotDependent( index, "org.other.Person" );
+        assertNotDependent( index, "Person" );
+    }
+
+    @Test
+    public void testCompiledDependencies() throws Exception {
+        String drl = "package org.test;\n" +
+                     "import " + Person.class.getName().replace( '$', '.' ) + ";\n" +
+                     "rule \"compiled\"\n" +
+                     "    when\n" +
+                     "        Person()\n" +
+                     "    then\n" +
+                     "end\n";
+        PackageDescr packageDescr = new DrlParser().parse( true, drl );
+        ResourceDependencyIndex index = new ResourceDependencyIndex();
+        index.update( file, packageDescr );
+        assertNotDependent( index, Party.class.getName().replace( '$', '.' ) );
+        assertNotDependent( index, Address.class.getName().replace( '$', '.' ) );
+
+        PackageBuilder builder = new PackageBuilder();
+        builder.addPackage( packageDescr );
+        assertFalse( builder.getErrors().toString(), builder.hasErrors() );
+        index.update( file, packageDescr, builder.getPackage() );
+
+        // the supertypes of a pattern class and the types of its getters
+        assertDependent( index, Person.class.getName().replace( '$', '.' ) );
+        assertDependent( index, Party.class.getName().replace( '$', '.' ) );
+        assertDependent( index, Address.class.getName().replace( '$', '.' ) );
+        // but not the JDK types, which never change with the project
+        assertNotDependent( index, "java.lang.String" );
+    }
+
+    @Test
+    public void testUpdateAndRemove() throws Exception {
+        ResourceDependencyIndex index = new ResourceDependencyIndex();
+        index.update( file, new DrlParser().parse( true, DRL ) );
+        index.update( file, new DrlParser().parse( true, "package org.other;\nimport org.model.Order;\n" ) );
+
+        assertDependent( index, "org.model.Order" );
+        assertDependent( index, "org.other.Address" );
+        assertNotDependent( index, "org.model.Person" );
+        assertNotDependent( index, "org.test.Helper" );
+
+        index.remove( file );
+        assertTrue( index.isEmpty() );
+        assertNotDependent( index, "org.model.Order" );
+
+        index.update( file, new PackageDescr( "org.test" ) );
+        index.update( file, null );
+        assertTrue( index.isEmpty() );
+    }
+
+    @Test
+    public void testResourcesUsing() {
+        ResourceDependencyIndex index = new ResourceDependencyIndex();
+        IResource nested = getFile( "/test/src/rules/nested/b.drl" );
+        IResource other = getFile( "/test/other/c.drl" );
+        for ( IResource resource : Arrays.asList( file, nested, other ) ) {
+            index.update( resource, new PackageDescr( "org.test" ) );
+        }
+
+        assertEquals( Collections.singleton( file ),
+                      index.getResourcesUsing( getFile( "/test/src/rules/rules.package" ) ) );
+        // a .dsl file is also used by the rule files one folder below
+        assertEquals( set( file, nested ),
+                      index.getResourcesUsing( getFile( "/test/src/rules/rules.dsl" ) ) );
+        assertEquals( set( file, nested, other ),
+                      index.getResourcesUsing( getFile( "/test/rules.dsl" ) ) );
+        assertTrue( index.getResourcesUsing( getFile( "/test/rules.package" ) ).isEmpty() );
+
+        index.clear();
+        assertTrue( index.isEmpty() );
+        assertTrue( index.getResourcesUsing( getFile( "/test/rules.dsl" ) ).isEmpty() );
+    }
+
+    public static class Address {
+    }
+
+    public static class Party {
+        public Address getAddress() {
+            return null;
+        }
+    }
+
+    public static class Person extends Party {
+        public String getName() {
+            return null;
+        }
+    }
+
+    private void assertDependent(ResourceDependencyIndex index,
+                                 String typeName) {
+        assertEquals( typeName,
+                      Collections.singleton( file ),
+                      index.getDependentResources( Collections.singleton( typeName ) ) );
+    }
+
+    private void assertNotDependent(ResourceDependencyIndex index,
+                                    String typeName) {
+        assertTrue( typeName,
+                    index.getDependentResources( Collections.singleton( typeName ) ).isEmpty() );
+    }
+
+    private static Set<IResource> set(IResource... resources) {
+        return new HashSet<IResource>( Arrays.asList( resources ) );
+    }
+
+    private static IResource getFile(String path) {
+        return ResourcesPlugin.getWorkspace().getRoot().getFile( new Path( path ) );
+    }
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors;
+
+import static org.junit.Assert.*;
+
+import org.drools.compiler.compiler.DrlParser;
+import org.drools.compiler.lang.descr.AttributeDescr;
+import org.drools.compiler.lang.descr.PackageDescr;
+import org.drools.compiler.lang.descr.RuleDescr;
+import org.junit.Test;
+
+public class DescrIndexTest {
+
+    private static final String DRL = "package org.test;\n" +
+                                      "import java.util.List;\n" +
+                                      "global java.util.List list;\n" +
+                                      "function String hello(String name) {\n" +
+                                      "    return \"hello \" + name;\n" +
+                                      "}\n" +
+                                      "rule \"first\"\n" +
+                                      "    salience 10\n" +
+                                      "    when\n" +
+                                      "        List()\n" +
+                                      "    then\n" +
+                                      "end\n" +
+                                      "rule \"second\"\n" +
+                                      "    when\n" +
+                                      "    then\n" +
+                                      "end\n";
+
+    @Test
+    public void testSameAsDescrUtil() throws Exception {
+        PackageDescr packageDescr = new DrlParser().parse( true, DRL );
+        DescrIndex index = new DescrIndex( packageDescr );
+        for ( int offset = -1; offset <= DRL.length() + 1; offset++ ) {
+            assertSame( "offset " + offset,
+                        DescrUtil.getDescr( packageDescr, offset ),
+                        index.getDescr( offset ) );
+        }
+
+        assertTrue( index.getDescr( DRL.indexOf( "salience" ) ) instanceof AttributeDescr );
+        RuleDescr second = (RuleDescr) index.getDescr( DRL.indexOf( "second" ) );
+        assertEquals( "second", second.getName() );
+    }
+
+    @Test
+    public void testEmptyPackage() {
+        assertNull( new DescrIndex( null ).getDescr( 0 ) );
+        assertNull( new DescrIndex( new PackageDescr( "org.test" ) ).getDescr( 0 ) );
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.drools.eclipse.editors.DocumentStructure.Block;
+import org.drools.eclipse.editors.DocumentStructure.Kind;
+import org.eclipse.jface.text.Position;
+import org.junit.Test;
+
+public class DocumentStructureTest {
+
+    private static final String DRL = "package org.test;\n" +
+                                      "import org.test.Person;\n" +
+                                      "import org.test.Cheese;\n" +
+                                      "global java.util.List list;\n" +
+                                      "function String hello(String name) {\n" +
+                                      "    if (name != null) { return name; }\n" +
+                                      "    return \"hello\";\n" +
+                                      "}\n" +
+                                      "rule \"first rule\"\n" +
+                                      "    when\n" +
+                                      "        Person()\n" +
+                                      "    then\n" +
+                                      "end\n" +
+                                      "query people\n" +
+                                      "    Person()\n" +
+                                      "end\n";
+
+    @Test
+    public void testScan() {
+        List<Block> blocks = DocumentStructure.scan( DRL );
+        assertEquals( 7, blocks.size() );
+
+        assertEquals( Kind.PACKAGE, blocks.get( 0 ).getKind() );
+        assertEquals( "org.test", blocks.get( 0 ).getName() );
+        assertEquals( "org.test.Person", blocks.get( 1 ).getName() );
+
+        Block global = blocks.get( 3 );
+        assertEquals( Kind.GLOBAL, global.getKind() );
+        assertEquals( "list", global.getName() );
+        assertEquals( "java.util.List", global.getType() );
+
+        Block function = blocks.get( 4 );
+        assertEquals( "hello", function.getName() );
+        assertEquals( "String", function.getType() );
+        assertTrue( DRL.substring( function.getOffset(), function.getEnd() ).endsWith( "return \"hello\";\n}" ) );
+
+        Block rule = blocks.get( 5 );
+        assertEquals( Kind.RULE, rule.getKind() );
+        assertEquals( "first rule", rule.getName() );
+        assertEquals( "first rule", DRL.substring( rule.getNameOffset(), rule.getNameOffset() + rule.getNameLength() ) );
+        assertTrue( rule.isComplete() );
+
+        List<Position> positions = DocumentStructure.getFoldingPositions( blocks );
+        // both imports, the function, the rule and the query
+        assertEquals( 4, positions.size() );
+        assertEquals( DRL.indexOf( "import" ), positions.get( 0 ).getOffset() );
+        assertEquals( DRL.indexOf( "global" ), positions.get( 0 ).getOffset() + positions.get( 0 ).getLength() );
+    }
+
+    @Test
+    public void testIncompleteRule() {
+        String drl = "rule first\n    when\nrule second\n    when\n    then\nend\n";
+        List<Block> blocks = DocumentStructure.scan( drl );
+        assertEquals( 2, blocks.size() );
+        assertFalse( blocks.get( 0 ).isComplete() );
+        assertEquals( drl.indexOf( "rule second" ), blocks.get( 0 ).getEnd() );
+        assertTrue( blocks.get( 1 ).isComplete() );
+        assertEquals( 1, DocumentStructure.getFoldingPositions( blocks ).size() );
+    }
+
+    @Test
+    public void testFunctionBracesInCommentsAndLiterals() {
+        String drl = "function String braces() {\n" +
+                     "    // a closing } in a comment\n" +
+                     "    /* and { in\n" +
+                     "       a block comment */\n" +
+                     "    char c = '}';\n" +
+                     "    return \"}\\\"}\" + c;\n" +
+                     "}\n" +
+                     "rule first\n" +
+                     "    when\n" +
+                     "    then\n" +
+                     "end\n";
+        List<Block> blocks = DocumentStructure.scan( drl );
+        assertEquals( 2, blocks.size() );
+        assertTrue( blocks.get( 0 ).isComplete() );
+        assertEquals( drl.indexOf( "rule first" ) - 1, blocks.get( 0 ).getEnd() );
+        assertEquals( Kind.RULE, blocks.get( 1 ).getKind() );
+    }
+
+    @Test
+    public void testUpdate() {
+        DocumentStructure structure = new DocumentStructure();
+        StringBuffer text = new StringBuffer();
+        replace( structure, text, 0, 0, DRL );
+
+        // rename the rule
+        int offset = DRL.indexOf( "first rule" );
+        replace( structure, text, offset, 5, "second" );
+        assertEquals( "second rule", structure.getBlocks().get( 5 ).getName() );
+
+        // break the end of the rule, and fix it again
+        offset = text.indexOf( "end\nquery" );
+        replace( structure, text, offset, 3, "en" );
+        assertFalse( structure.getBlocks().get( 5 ).isComplete() );
+        replace( structure, text, offset + 2, 0, "d" );
+        assertTrue( structure.getBlocks().get( 5 ).isComplete() );
+
+        // add a rule in front of the others
+        replace( structure, text, text.indexOf( "rule" ), 0, "rule added\nwhen\nthen\nend\n" );
+        assertEquals( 8, structure.getBlocks().size() );
+
+        // remove the function
+        offset = text.indexOf( "function" );
+        replace( structure, text, offset, text.indexOf( "rule added" ) - offset, "" );
+        assertEquals( 7, structure.getBlocks().size() );
+    }
+
+    private static void replace(DocumentStructure structure,
+                                StringBuffer text,
+                                int offset,
+                                int length,
+                                String newText) {
+        text.replace( offset, offset + length, newText );
+        structure.update( text.toString(), offset, length, newText.length() );
+        // the incremental update must find the same blocks as scanning everything
+        assertEquals( DocumentStructure.scan( text.toString() ).toString(), structure.getBlocks().toString() );
+    }
+}
@@ -2257,6 +2257,36 @@ public class CompletionContextTest {
         assertEquals("Class2", parameters.get("c2")[0]);
         assertNull(parameters.get("c2")[1]);
     }
+
+    @Test
+    public void testUpdate_LHS_INSIDE_CONDITION_START() {
+        String input =
+            "rule MyRule \n" +
+            "    when \n" +
+            "        Class ( pro";
+        CompletionContext context = new CompletionContext(input);
+        Location location = context.update(input + "p1").getLocation();
+        assertEquals(Location.LOCATION_LHS_INSIDE_CONDITION_START, location.getType());
+        assertEquals("Class", location.getProperty(Location.LOCATION_PROPERTY_CLASS_NAME));
+        assertEquals("prop1", location.getProperty(Location.LOCATION_PROPERTY_PROPERTY_NAME));
+
+        location = context.update(input + "p1 == ").getLocation();
+        assertEquals(Location.LOCATION_LHS_INSIDE_CONDITION_ARGUMENT, location.getType());
+        assertEquals("==", location.getProperty(Location.LOCATION_PROPERTY_OPERATOR));
+    }
+
+    @Test
+    public void testUpdate_RHS() {
+        String input =
+            "rule MyRule \n" +
+            "    when \n" +
+            "        Class ( ) \n" +
+            "    then \n" +
+            "        System.ou";
+        Location location = new CompletionContext(input).update(input + "t").getLocation();
+        assertEquals(Location.LOCATION_RHS, location.getType());
+        assertEquals("System.out", location.getProperty(Location.LOCATION_RHS_CONTENT));
+    }
  
     // TODO: and, or, exists, not
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors.completion;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class DSLTreeTest {
+
+    private static final String DSL = "[condition][]There is a Person=Person()\n"
+                                      + "[condition][]There is a Pet=Pet()\n"
+                                      + "[condition][]There are Pets=Pet()\n"
+                                      + "[condition][]Person is adult=age > 18\n"
+                                      + "[condition][]is active=active == true\n"
+                                      + "[consequence][]Log the Person=System.out.println()\n";
+
+    private DSLTree          tree = new DSLTree();
+
+    public DSLTreeTest() {
+        tree.buildTree( new StringReader( DSL ) );
+    }
+
+    @Test
+    public void testExactMatch() {
+        assertEquals( Arrays.asList( "Person",
+                                     "Pet" ),
+                      tree.getConditionChildrenList( "There is a ",
+                                                     false ) );
+        assertEquals( Arrays.asList( "Person" ),
+                      tree.getConsequenceChildrenList( "Log the ",
+                                                       false ) );
+    }
+
+    @Test
+    public void testIgnoreCase() {
+        assertEquals( Arrays.asList( "Person",
+                                     "Pet" ),
+                      tree.getConditionChildrenList( "there IS A ",
+                                                     false ) );
+        assertEquals( Arrays.asList( "Person" ),
+                      tree.getConsequenceChildrenList( "log THE ",
+                                                       false ) );
+    }
+
+    @Test
+    public void testPrefix() {
+        assertEquals( Arrays.asList( "Person",
+                                     "Pet" ),
+                      tree.getConditionChildrenList( "There is a Pe",
+                                                     false ) );
+        assertEquals( Arrays.asList( "Person" ),
+                      tree.getConditionChildrenList( "There is a pers",
+                                                     false ) );
+        assertEquals( Arrays.asList( "are" ),
+                      tree.getConditionChildrenList( "There a",
+                                                     false ) );
+        // without any child starting with it, all the children are proposed
+        assertEquals( Arrays.asList( "Person",
+                                     "Pet" ),
+                      tree.getConditionChildrenList( "There is a Dog",
+                                                     false ) );
+    }
+
+    @Test
+    public void testTrailingSpace() {
+        // a complete token doesn't narrow the children
+        assertEquals( Arrays.asList( "are",
+                                     "is" ),
+                      tree.getConditionChildrenList( "There a ",
+                                                     false ) );
+        assertEquals( Arrays.asList( "a" ),
+                      tree.getConditionChildrenList( "There is ",
+                                                     false ) );
+    }
+
+    @Test
+    public void testSentences() {
+        assertEquals( Arrays.asList( "a",
+                                     "a Person",
+                                     "a Pet" ),
+                      tree.getConditionChildrenList( "There is ",
+                                                     true ) );
+    }
+
+    @Test
+    public void testNoDuplicates() {
+        // "is" is both a child of Person and a sentence of its own
+        assertEquals( Arrays.asList( "is",
+                                     "Person",
+                                     "There" ),
+                      tree.getChildrenList( "Person",
+                                            "",
+                                            false,
+                                            false ) );
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors.completion;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+
+public class NodeTest {
+
+    @Test
+    public void testAddToken() {
+        Node root = new Node( "root" );
+        Node child = root.addToken( "Person" );
+        assertSame( child,
+                    root.addToken( "Person" ) );
+        assertSame( root,
+                    child.getParent() );
+        assertEquals( 1,
+                      child.getDepth() );
+        assertEquals( 1,
+                      root.getChildren().size() );
+    }
+
+    @Test
+    public void testChildrenOrder() {
+        Node root = createNode( "b",
+                                "pet",
+                                "A",
+                                "Pet",
+                                "a" );
+        assertEquals( Arrays.asList( "A",
+                                     "a",
+                                     "b",
+                                     "Pet",
+                                     "pet" ),
+                      getTokens( root.getChildren() ) );
+    }
+
+    @Test
+    public void testGetChild() {
+        Node root = createNode( "Pet",
+                                "pet",
+                                "Person" );
+        assertEquals( "pet",
+                      root.getChild( "pet" ).getToken() );
+        assertNull( root.getChild( "PET" ) );
+        assertEquals( "pet",
+                      root.getChildIgnoreCase( "pet" ).getToken() );
+        assertEquals( "Pet",
+                      root.getChildIgnoreCase( "PET" ).getToken() );
+        assertNull( root.getChildIgnoreCase( "Pets" ) );
+    }
+
+    @Test
+    public void testGetChildrenByPrefix() {
+        Node root = createNode( "Pet",
+                                "Address",
+                                "pet",
+                                "Person" );
+        assertEquals( Arrays.asList( "Person",
+                                     "Pet",
+                                     "pet" ),
+                      getTokens( root.getChildren( "p" ) ) );
+        assertEquals( Arrays.asList( "Pet",
+                                     "pet" ),
+                      getTokens( root.getChildren( "PET" ) ) );
+        assertTrue( root.getChildren( "x" ).isEmpty() );
+        assertEquals( 4,
+                      root.getChildren( "" ).size() );
+    }
+
+    @Test
+    public void testRemoveChild() {
+        Node root = createNode( "a",
+                                "b",
+                                "c" );
+        root.removeChild( root.getChild( "b" ) );
+        assertEquals( Arrays.asList( "a",
+                                     "c" ),
+                      getTokens( root.getChildren() ) );
+        assertNull( root.getChild( "b" ) );
+    }
+
+    private static Node createNode(String... tokens) {
+        Node root = new Node( "root" );
+        for ( String token : tokens ) {
+            root.addToken( token );
+        }
+        return root;
+    }
+
+    private static List<String> getTokens(Collection<Node> nodes) {
+        List<String> result = new ArrayList<String>();
+        for ( Node node : nodes ) {
+            result.add( node.getToken() );
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors.rete;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.drools.eclipse.editors.rete.model.Connection;
+import org.drools.eclipse.reteoo.BaseVertex;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ReteGraphExporterTest {
+
+    private List<BaseVertex> vertices = new ArrayList<BaseVertex>();
+
+    /**
+     * A root shared by two vertices, both going to a third one.
+     */
+    public ReteGraphExporterTest() {
+        BaseVertex root = createVertex();
+        BaseVertex left = createVertex();
+        BaseVertex right = createVertex();
+        BaseVertex join = createVertex();
+        new Connection( root,
+                        left );
+        new Connection( root,
+                        right );
+        new Connection( left,
+                        join );
+        new Connection( right,
+                        join );
+    }
+
+    @Test
+    public void testDot() throws Exception {
+        StringWriter writer = new StringWriter();
+        ReteGraphExporter.export( vertices,
+                                  ReteGraphExporter.Format.DOT,
+                                  writer,
+                                  new NullProgressMonitor() );
+        String dot = writer.toString();
+        assertTrue( dot.startsWith( "digraph rete {\n" ) );
+        assertTrue( dot.endsWith( "}\n" ) );
+        assertTrue( dot.contains( "  n0 [label=\"Base\", type=\"Base\", sources=\"0\", sinks=\"2\"];\n" ) );
+        assertTrue( dot.contains( "  n0 -> n1;\n" ) );
+        assertTrue( dot.contains( "  n2 -> n3;\n" ) );
+        assertTrue( dot.contains( "  n3 [label=\"Base\", type=\"Base\", sources=\"2\", sinks=\"0\"];\n" ) );
+    }
+
+    @Test
+    public void testGraphML() throws Exception {
+        StringWriter writer = new StringWriter();
+        ReteGraphExporter.export( vertices,
+                                  ReteGraphExporter.getFormat( "rete.graphml" ),
+                                  writer,
+                                  new NullProgressMonitor() );
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse( new ByteArrayInputStream( writer.toString().getBytes( "UTF-8" ) ) );
+        assertEquals( 4,
+                      document.getElementsByTagName( "node" ).getLength() );
+        assertEquals( 4,
+                      document.getElementsByTagName( "edge" ).getLength() );
+    }
+
+    @Test
+    public void testEscaping() {
+        assertEquals( "\"a \\\"b\\\" \\\\ c\\nd\"",
+                      ReteGraphExporter.quoteDot( "a \"b\" \\ c\r\nd" ) );
+        assertEquals( "a &lt; b &amp;&amp; c &gt; &quot;d&quot;",
+                      ReteGraphExporter.escapeXml( "a < b && c > \"d\"\u0001" ) );
+    }
+
+    private BaseVertex createVertex() {
+        BaseVertex vertex = ReteTestUtil.createVertex();
+        vertices.add( vertex );
+        return vertex;
+    }
+
+}
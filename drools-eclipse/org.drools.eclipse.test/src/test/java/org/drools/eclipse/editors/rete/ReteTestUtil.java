@@ -0,0 +1,42 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors.rete;
+
+import org.drools.eclipse.reteoo.BaseVertex;
+import org.eclipse.swt.graphics.Color;
+
+/**
+ * Helpers shared by the rete graph tests.
+ */
+class ReteTestUtil {
+
+    /**
+     * Returns a vertex without a node, text or color.
+     */
+    static BaseVertex createVertex() {
+        return new BaseVertex() {
+            public String getHtml() {
+                return "";
+            }
+
+            public Color getFillColor() {
+                return null;
+            }
+        };
+    }
+
+}
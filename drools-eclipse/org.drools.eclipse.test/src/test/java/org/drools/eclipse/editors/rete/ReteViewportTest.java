@@ -0,0 +1,190 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors.rete;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.drools.eclipse.editors.rete.model.Connection;
+import org.drools.eclipse.editors.rete.model.ReteGraph;
+import org.drools.eclipse.reteoo.AlphaNodeVertex;
+import org.drools.eclipse.reteoo.BaseVertex;
+import org.eclipse.draw2d.geometry.Point;
+import org.eclipse.draw2d.geometry.Rectangle;
+import org.junit.Test;
+
+public class ReteViewportTest {
+
+    private static final int CHAINS       = 200;
+    private static final int CHAIN_LENGTH = 3;
+
+    private ReteGraph        graph        = new ReteGraph();
+    private BaseVertex       root;
+    private BaseVertex[][]   chains       = new BaseVertex[CHAINS][CHAIN_LENGTH];
+    private BaseVertex[]     joins        = new BaseVertex[CHAINS];
+
+    /**
+     * A root with chains of alpha nodes below it, in columns 40 pixels apart,
+     * each one ending in another vertex.
+     */
+    public ReteViewportTest() {
+        root = createVertex( null,
+                             0,
+                             0 );
+        for ( int i = 0; i < CHAINS; i++ ) {
+            BaseVertex parent = root;
+            for ( int j = 0; j < CHAIN_LENGTH; j++ ) {
+                chains[i][j] = createAlphaVertex( parent,
+                                                  i * 40,
+                                                  (j + 1) * 100 );
+                parent = chains[i][j];
+            }
+            joins[i] = createVertex( parent,
+                                     i * 40,
+                                     (CHAIN_LENGTH + 1) * 100 );
+        }
+    }
+
+    @Test
+    public void testVisibleArea() {
+        ReteViewport viewport = new ReteViewport( graph );
+        assertTrue( viewport.isVirtual() );
+        assertTrue( viewport.update( new Rectangle( 0,
+                                                    0,
+                                                    400,
+                                                    500 ),
+                                     1.0 ) );
+        assertFalse( viewport.update( new Rectangle( 0,
+                                                     0,
+                                                     400,
+                                                     500 ),
+                                      1.0 ) );
+
+        // the visible columns and those within half the width next to them
+        List<BaseVertex> vertices = viewport.getVertices();
+        assertEquals( 1 + 15 * (CHAIN_LENGTH + 1),
+                      vertices.size() );
+        assertSame( root,
+                    vertices.get( 0 ) );
+        assertTrue( viewport.isShown( joins[14] ) );
+        assertFalse( viewport.isShown( joins[15] ) );
+        assertEquals( 1,
+                      viewport.getChainLength( chains[0][0] ) );
+
+        assertEquals( 15,
+                      viewport.getSourceConnections( root ).size() );
+        assertEquals( 1,
+                      viewport.getSourceConnections( chains[14][CHAIN_LENGTH - 1] ).size() );
+
+        // scrolling shows the vertices there
+        assertTrue( viewport.update( new Rectangle( 4000,
+                                                    0,
+                                                    400,
+                                                    500 ),
+                                     1.0 ) );
+        assertFalse( viewport.isShown( root ) );
+        assertTrue( viewport.isShown( joins[100] ) );
+        assertTrue( viewport.getTargetConnections( chains[100][0] ).isEmpty() );
+    }
+
+    @Test
+    public void testCollapsedChains() {
+        ReteViewport viewport = new ReteViewport( graph );
+        viewport.update( new Rectangle( 0,
+                                        0,
+                                        800,
+                                        1000 ),
+                         ReteViewport.COLLAPSE_ZOOM / 2 );
+
+        BaseVertex head = chains[0][0];
+        assertTrue( viewport.isShown( head ) );
+        assertFalse( viewport.isShown( chains[0][1] ) );
+        assertFalse( viewport.isShown( chains[0][CHAIN_LENGTH - 1] ) );
+        assertEquals( CHAIN_LENGTH,
+                      viewport.getChainLength( head ) );
+
+        // the chain is connected to the vertex below its last alpha node
+        List<Connection> sourceConnections = viewport.getSourceConnections( head );
+        assertEquals( 1,
+                      sourceConnections.size() );
+        assertSame( joins[0],
+                    sourceConnections.get( 0 ).getTarget() );
+        assertEquals( sourceConnections,
+                      viewport.getTargetConnections( joins[0] ) );
+
+        // zooming in expands the chains again
+        assertTrue( viewport.update( new Rectangle( 0,
+                                                    0,
+                                                    800,
+                                                    1000 ),
+                                     1.0 ) );
+        assertTrue( viewport.isShown( chains[0][1] ) );
+        assertEquals( 1,
+                      viewport.getChainLength( head ) );
+    }
+
+    @Test
+    public void testSmallGraph() {
+        ReteGraph small = new ReteGraph();
+        small.addChild( root );
+        ReteViewport viewport = new ReteViewport( small );
+        assertFalse( viewport.isVirtual() );
+        assertFalse( viewport.update( new Rectangle( 1000,
+                                                     1000,
+                                                     10,
+                                                     10 ),
+                                      0.1 ) );
+        assertSame( small.getChildren(),
+                    viewport.getVertices() );
+        assertTrue( viewport.isShown( root ) );
+    }
+
+    private BaseVertex createVertex(BaseVertex parent,
+                                    int x,
+                                    int y) {
+        BaseVertex vertex = ReteTestUtil.createVertex();
+        return addVertex( vertex,
+                          parent,
+                          x,
+                          y );
+    }
+
+    private BaseVertex createAlphaVertex(BaseVertex parent,
+                                         int x,
+                                         int y) {
+        return addVertex( new AlphaNodeVertex( null ),
+                          parent,
+                          x,
+                          y );
+    }
+
+    private BaseVertex addVertex(BaseVertex vertex,
+                                 BaseVertex parent,
+                                 int x,
+                                 int y) {
+        vertex.setLocation( new Point( x,
+                                       y ) );
+        graph.addChild( vertex );
+        if ( parent != null ) {
+            new Connection( parent,
+                            vertex );
+        }
+        return vertex;
+    }
+
+}
@@ -20,9 +20,12 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -33,6 +36,7 @@ import org.drools.core.RuleBaseFactory;
 import org.drools.compiler.compiler.DrlParser;
 import org.drools.compiler.compiler.DroolsParserException;
 import org.drools.compiler.compiler.PackageBuilder;
+import org.drools.eclipse.editors.rete.model.Connection;
 import org.drools.eclipse.editors.rete.model.ReteGraph;
 import org.drools.compiler.lang.descr.PackageDescr;
 import org.drools.eclipse.reteoo.AlphaNodeVertex;
@@ -45,6 +49,9 @@ import org.drools.core.reteoo.ReteooRuleBase;
 import org.drools.eclipse.reteoo.ReteooVisitor;
 import org.drools.eclipse.reteoo.RuleTerminalNodeVertex;
 import org.drools.core.rule.Package;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.draw2d.geometry.Point;
 
 /**
  * 
@@ -159,6 +166,116 @@ public class ReteooLayoutFactoryTest {
 
     }
 
+    @Test
+    public void testReduceCrossings() {
+        ReteGraph graph = new ReteGraph();
+        BaseVertex root = createTree( graph );
+        final RowList rows = ReteooLayoutFactory.calculateReteRows( root );
+
+        assertEquals( 3,
+                      rows.getDepth() );
+        assertEquals( 0,
+                      ReteooLayoutFactory.countCrossings( rows ) );
+        for ( int j = 0; j < rows.getDepth(); j++ ) {
+            List<BaseVertex> vertices = rows.get( j ).getVertices();
+            for ( int i = 0; i < vertices.size(); i++ ) {
+                assertEquals( j,
+                              rows.getRow( vertices.get( i ) ) );
+                assertEquals( i,
+                              rows.getColumn( vertices.get( i ) ) );
+            }
+        }
+
+        ReteooLayoutFactory.layoutRowList( graph,
+                                           rows );
+        for ( int j = 0; j < rows.getDepth(); j++ ) {
+            List<BaseVertex> vertices = rows.get( j ).getVertices();
+            for ( int i = 1; i < vertices.size(); i++ ) {
+                BaseVertex previous = vertices.get( i - 1 );
+                assertTrue( vertices.get( i ).getLocation().x >= previous.getLocation().x + previous.getSize().width );
+            }
+        }
+        // the children of the root are balanced below it
+        assertEquals( root.getLocation().x,
+                      rows.get( 1 ).getVertices().get( 1 ).getLocation().x );
+    }
+
+    @Test
+    public void testKeepOrder() {
+        ReteGraph graph = new ReteGraph();
+        BaseVertex root = createTree( graph );
+        RowList rows = ReteooLayoutFactory.calculateReteRows( root );
+        ReteooLayoutFactory.layoutRowList( graph,
+                                           rows );
+        Map<BaseVertex, Point> previousLocations = new HashMap<BaseVertex, Point>();
+        for ( BaseVertex vertex : graph.getChildren() ) {
+            previousLocations.put( vertex,
+                                   vertex.getLocation() );
+        }
+        List<BaseVertex> previousRow = new ArrayList<BaseVertex>( rows.get( 2 ).getVertices() );
+
+        // a new vertex below the first child of the root
+        BaseVertex parent = rows.get( 1 ).getVertices().get( 0 );
+        BaseVertex added = createVertex( graph,
+                                         parent );
+
+        rows = ReteooLayoutFactory.calculateReteRows( root,
+                                                      previousLocations,
+                                                      new NullProgressMonitor() );
+        List<BaseVertex> row = new ArrayList<BaseVertex>( rows.get( 2 ).getVertices() );
+        assertTrue( row.remove( added ) );
+        assertEquals( previousRow,
+                      row );
+        // before the children of the other vertices
+        for ( Connection connection : rows.get( 1 ).getVertices().get( 1 ).getSourceConnections() ) {
+            assertTrue( rows.getColumn( added ) < rows.getColumn( connection.getTarget() ) );
+        }
+    }
+
+    @Test
+    public void testCancel() {
+        ReteGraph graph = new ReteGraph();
+        BaseVertex root = createTree( graph );
+        NullProgressMonitor monitor = new NullProgressMonitor();
+        monitor.setCanceled( true );
+        try {
+            ReteooLayoutFactory.calculateReteRows( root,
+                                                   monitor );
+            fail( "layout should be cancelled" );
+        } catch ( OperationCanceledException e ) {
+            // expected
+        }
+    }
+
+    /**
+     * Root with three children, having three, one and two children.
+     */
+    private BaseVertex createTree(ReteGraph graph) {
+        BaseVertex root = createVertex( graph,
+                                        null );
+        int[] children = new int[]{3, 1, 2};
+        for ( int i = 0; i < children.length; i++ ) {
+            BaseVertex child = createVertex( graph,
+                                             root );
+            for ( int j = 0; j < children[i]; j++ ) {
+                createVertex( graph,
+                              child );
+            }
+        }
+        return root;
+    }
+
+    private BaseVertex createVertex(ReteGraph graph,
+                                    BaseVertex parent) {
+        BaseVertex vertex = ReteTestUtil.createVertex();
+        graph.addChild( vertex );
+        if ( parent != null ) {
+            new Connection( parent,
+                            vertex );
+        }
+        return vertex;
+    }
+
     private BaseVertex loadRete(ReteGraph graph) throws IOException,
                                                 PackageIntegrationException,
                                                 DroolsParserException {
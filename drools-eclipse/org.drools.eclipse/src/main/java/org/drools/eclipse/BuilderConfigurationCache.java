@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.drools.compiler.compiler.PackageBuilderConfiguration;
+import org.drools.compiler.rule.builder.dialect.java.JavaDialectConfiguration;
+import org.drools.core.xml.SemanticModules;
+import org.eclipse.core.resources.IProject;
+import org.jbpm.bpmn2.xml.BPMNDISemanticModule;
+import org.jbpm.bpmn2.xml.BPMNExtensionsSemanticModule;
+import org.jbpm.bpmn2.xml.BPMNSemanticModule;
+import org.jbpm.compiler.xml.ProcessSemanticModule;
+
+/**
+ * Shares the PackageBuilderConfiguration of a project between the parses of its
+ * rule and process resources, so the configuration files, dialects and semantic
+ * modules are only looked up once.
+ *
+ * A configuration is bound to the project classloader and Java compliance level
+ * it was created for, and is replaced as soon as either of them changes. As a
+ * PackageBuilderConfiguration is not thread safe, it creates its dialects and
+ * semantic modules lazily, every thread gets a copy of its own, reused by all
+ * the parses running in that thread, such as a build worker or an editor
+ * reconciler. The configurations returned must not be modified. Types declared
+ * in a rule resource are defined in the classloader of its configuration, so
+ * such resources must be compiled with a configuration of their own.
+ */
+public class BuilderConfigurationCache {
+
+    private final Map<IProject, CachedConfiguration> ruleConfigurations    = new HashMap<IProject, CachedConfiguration>();
+    private final Map<IProject, CachedConfiguration> processConfigurations = new HashMap<IProject, CachedConfiguration>();
+
+    public synchronized PackageBuilderConfiguration getRuleConfiguration(IProject project,
+                                                                         ClassLoader classLoader,
+                                                                         String level) {
+        CachedConfiguration cached = ruleConfigurations.get( project );
+        if ( cached == null || !cached.isValidFor( classLoader, level ) ) {
+            cached = new CachedConfiguration( classLoader,
+                                              level );
+            ruleConfigurations.put( project, cached );
+        }
+        PackageBuilderConfiguration configuration = cached.configurations.get( Thread.currentThread() );
+        if ( configuration == null ) {
+            configuration = newRuleConfiguration( classLoader, level );
+            cached.configurations.put( Thread.currentThread(), configuration );
+        }
+        return configuration;
+    }
+
+    public synchronized PackageBuilderConfiguration getProcessConfiguration(IProject project,
+                                                                            ClassLoader classLoader,
+                                                                            String level) {
+        CachedConfiguration cached = processConfigurations.get( project );
+        if ( cached == null || !cached.isValidFor( classLoader, level ) ) {
+            cached = new CachedConfiguration( classLoader,
+                                              level );
+            processConfigurations.put( project, cached );
+        }
+        PackageBuilderConfiguration configuration = cached.configurations.get( Thread.currentThread() );
+        if ( configuration == null ) {
+            configuration = newProcessConfiguration( classLoader, level );
+            cached.configurations.put( Thread.currentThread(), configuration );
+        }
+        return configuration;
+    }
+
+    public synchronized void invalidate(IProject project) {
+        ruleConfigurations.remove( project );
+        processConfigurations.remove( project );
+    }
+
+    public synchronized void clear() {
+        ruleConfigurations.clear();
+        processConfigurations.clear();
+    }
+
+    public static PackageBuilderConfiguration newRuleConfiguration(ClassLoader classLoader,
+                                                                   String level) {
+        PackageBuilderConfiguration configuration = new PackageBuilderConfiguration( classLoader );
+        if ( level != null ) {
+            JavaDialectConfiguration javaConf = (JavaDialectConfiguration) configuration.getDialectConfiguration( "java" );
+            javaConf.setJavaLanguageLevel( level );
+        }
+        return configuration;
+    }
+
+    public static PackageBuilderConfiguration newProcessConfiguration(ClassLoader classLoader,
+                                                                      String level) {
+        PackageBuilderConfiguration configuration = newRuleConfiguration( classLoader,
+                                                                          level );
+        SemanticModules modules = configuration.getSemanticModules();
+        modules.addSemanticModule( new BPMNSemanticModule() );
+        modules.addSemanticModule( new BPMNDISemanticModule() );
+        modules.addSemanticModule( new BPMNExtensionsSemanticModule() );
+        modules.addSemanticModule( new ProcessSemanticModule() );
+        return configuration;
+    }
+
+    private static class CachedConfiguration {
+        // dropped with the threads that used them, such as idle build workers
+        private final Map<Thread, PackageBuilderConfiguration> configurations = new WeakHashMap<Thread, PackageBuilderConfiguration>();
+        private final ClassLoader                              classLoader;
+        private final String                                   level;
+
+        private CachedConfiguration(ClassLoader classLoader,
+                                    String level) {
+            this.classLoader = classLoader;
+            this.level = level;
+        }
+
+        private boolean isValidFor(ClassLoader classLoader,
+                                   String level) {
+            return this.classLoader == classLoader
+                   && (this.level == null ? level == null : this.level.equals( level ));
+        }
+    }
+}
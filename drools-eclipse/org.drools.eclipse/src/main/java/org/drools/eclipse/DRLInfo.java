@@ -17,7 +17,9 @@
 package org.drools.eclipse;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import org.drools.core.base.ClassObjectType;
@@ -39,6 +41,7 @@ import org.drools.core.rule.Pattern;
 import org.drools.core.rule.Rule;
 import org.drools.core.rule.RuleConditionElement;
 import org.drools.core.spi.ObjectType;
+import org.drools.eclipse.editors.DescrIndex;
 import org.eclipse.core.resources.IResource;
 
 public class DRLInfo {
@@ -54,10 +57,15 @@ public class DRLInfo {
     // cached entry
     private transient RuleInfo[] ruleInfos;
     private transient FunctionInfo[] functionInfos;
+    private transient LineIndex<RuleInfo> ruleInfosByLine;
+    private transient LineIndex<FunctionInfo> functionInfosByLine;
+    private transient DescrIndex descrIndex;
     private DialectCompiletimeRegistry dialectRegistry;
     
     private IResource resource;
 
+    private transient ClassLoader classLoader;
+
     public DRLInfo( String sourcePathName, 
     				PackageDescr packageDescr, 
     				List<DroolsError> parserErrors, 
@@ -134,19 +142,35 @@ public class DRLInfo {
     }
 
     public RuleInfo getRuleInfo(int drlLineNumber) {
-        RuleInfo[] ruleInfos = getRuleInfos();
+        if (ruleInfosByLine == null) {
+            RuleInfo[] ruleInfos = getRuleInfos();
+            int[] lines = new int[ruleInfos.length];
+            for (int i = 0; i < ruleInfos.length; i++) {
+                lines[i] = ruleInfos[i].getDrlLineNumber();
+            }
+            ruleInfosByLine = new LineIndex<RuleInfo>(ruleInfos, lines);
+        }
+        return ruleInfosByLine.get(drlLineNumber);
+    }
 
-        int ruleLine = -1;
-        RuleInfo result = null;
+    public RuleInfo getRuleInfoByClassName(String className) {
+        RuleInfo[] ruleInfos = getRuleInfos();
         for (int i = 0; i < ruleInfos.length; i++) {
-            int ruleDrlLineNumber = ruleInfos[i].getDrlLineNumber();
-            if (ruleDrlLineNumber > ruleLine
-                    && ruleDrlLineNumber <= drlLineNumber + 1) {
-                ruleLine = ruleDrlLineNumber;
-                result = ruleInfos[i];
+            if (ruleInfos[i].isCompiled() && className.equals(ruleInfos[i].getClassName())) {
+                return ruleInfos[i];
             }
         }
-        return result;
+        return null;
+    }
+
+    /**
+     * Returns the descriptor at the given character offset, or null if there is none.
+     */
+    public BaseDescr getDescr(int offset) {
+        if (descrIndex == null) {
+            descrIndex = new DescrIndex(packageDescr);
+        }
+        return descrIndex.getDescr(offset);
     }
 
     public DialectCompiletimeRegistry getDialectRegistry() {
@@ -161,6 +185,17 @@ public class DRLInfo {
     	this.resource = resource;
     }
 
+    /**
+     * Returns the classloader the package was compiled with.
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
     public static class RuleInfo {
 
         private final PackageDescr packageDescr;
@@ -358,18 +393,25 @@ public class DRLInfo {
     }
 
     public FunctionInfo getFunctionInfo(int drlLineNumber) {
+        if (functionInfosByLine == null) {
+            FunctionInfo[] functionInfos = getFunctionInfos();
+            int[] lines = new int[functionInfos.length];
+            for (int i = 0; i < functionInfos.length; i++) {
+                lines[i] = functionInfos[i].getDrlLineNumber();
+            }
+            functionInfosByLine = new LineIndex<FunctionInfo>(functionInfos, lines);
+        }
+        return functionInfosByLine.get(drlLineNumber);
+    }
+
+    public FunctionInfo getFunctionInfoByClassName(String className) {
         FunctionInfo[] functionInfos = getFunctionInfos();
-        int functionLine = -1;
-        FunctionInfo result = null;
         for (int i = 0; i < functionInfos.length; i++) {
-            int functionDrlLineNumber = functionInfos[i].getDrlLineNumber();
-            if (functionDrlLineNumber > functionLine
-                    && functionDrlLineNumber <= drlLineNumber + 1) {
-                functionLine = functionDrlLineNumber;
-                result = functionInfos[i];
+            if (functionInfos[i].isCompiled() && className.equals(functionInfos[i].getClassName())) {
+                return functionInfos[i];
             }
         }
-        return result;
+        return null;
     }
 
     public static class FunctionInfo {
@@ -443,4 +485,59 @@ public class DRLInfo {
         }
     }
 
+
+    /**
+     * Rule or function infos sorted by the DRL line they start at, keeping the
+     * first one of every line.
+     */
+    private static class LineIndex<T> {
+        private final int[] lines;
+        private final Object[] infos;
+
+        private LineIndex(T[] allInfos, final int[] allLines) {
+            Integer[] order = new Integer[allInfos.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            // stable, so the first info of a line stays in front
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer i1, Integer i2) {
+                    int line1 = allLines[i1];
+                    int line2 = allLines[i2];
+                    return line1 < line2 ? -1 : (line1 == line2 ? 0 : 1);
+                }
+            });
+            int[] sortedLines = new int[order.length];
+            Object[] sortedInfos = new Object[order.length];
+            int size = 0;
+            for (Integer i : order) {
+                int line = allLines[i];
+                if (line >= 0 && (size == 0 || sortedLines[size - 1] != line)) {
+                    sortedLines[size] = line;
+                    sortedInfos[size] = allInfos[i];
+                    size++;
+                }
+            }
+            lines = Arrays.copyOf(sortedLines, size);
+            infos = Arrays.copyOf(sortedInfos, size);
+        }
+
+        /**
+         * Returns the last info starting at most one line after the given one.
+         */
+        @SuppressWarnings("unchecked")
+        private T get(int drlLineNumber) {
+            int low = 0;
+            int high = lines.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (lines[middle] <= drlLineNumber + 1) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high < 0 ? null : (T) infos[high];
+        }
+    }
 }
@@ -16,17 +16,27 @@
 
 package org.drools.eclipse;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.drools.compiler.builder.impl.KnowledgeBuilderImpl;
 import org.drools.compiler.compiler.DrlParser;
@@ -42,9 +52,12 @@ import org.drools.eclipse.builder.DroolsBuilder;
 import org.drools.eclipse.builder.ResourceDescr;
 import org.drools.eclipse.builder.Util;
 import org.drools.eclipse.dsl.editor.DSLAdapter;
+import org.drools.eclipse.dsl.editor.DSLConfigCache;
 import org.drools.eclipse.editors.AbstractRuleEditor;
+import org.drools.eclipse.editors.DocumentParseSnapshot;
 import org.drools.eclipse.preferences.IDroolsConstants;
-import org.drools.eclipse.util.ProjectClassLoader;
+import org.drools.eclipse.util.FactTypeIndex;
+import org.drools.eclipse.util.ProjectClassLoaderCache;
 import org.drools.compiler.lang.descr.AttributeDescr;
 import org.drools.compiler.lang.descr.BaseDescr;
 import org.drools.compiler.lang.descr.EnumDeclarationDescr;
@@ -56,16 +69,22 @@ import org.drools.compiler.lang.descr.PackageDescr;
 import org.drools.compiler.lang.descr.RuleDescr;
 import org.drools.compiler.lang.descr.TypeDeclarationDescr;
 import org.drools.core.rule.Package;
-import org.drools.compiler.rule.builder.dialect.java.JavaDialectConfiguration;
 import org.drools.template.parser.DecisionTableParseException;
-import org.drools.core.xml.SemanticModules;
 import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.debug.core.DebugException;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jface.preference.IPreferenceStore;
@@ -77,20 +96,14 @@ import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.forms.FormColors;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
-import org.jbpm.bpmn2.xml.BPMNDISemanticModule;
-import org.jbpm.bpmn2.xml.BPMNExtensionsSemanticModule;
-import org.jbpm.bpmn2.xml.BPMNSemanticModule;
 import org.jbpm.compiler.ProcessBuilderImpl;
-import org.jbpm.compiler.xml.ProcessSemanticModule;
 import org.jbpm.compiler.xml.XmlProcessReader;
 import org.jbpm.process.core.Process;
-import org.jbpm.ruleflow.core.RuleFlowProcess;
 import org.jbpm.workflow.core.node.RuleSetNode;
 import org.kie.internal.builder.CompositeKnowledgeBuilder;
 import org.kie.internal.builder.KnowledgeBuilder;
 import org.kie.internal.builder.KnowledgeBuilderError;
 import org.kie.internal.builder.KnowledgeBuilderFactory;
-import org.kie.api.definition.process.Node;
 import org.kie.api.io.Resource;
 import org.kie.internal.io.ResourceFactory;
 import org.osgi.framework.BundleContext;
@@ -104,19 +117,65 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
     public static final String          PLUGIN_ID                  = "org.drools.eclipse";
     public static final String          BUILD_RESULT_PACKAGE       = "Package";
     public static final String          BUILD_RESULT_PACKAGE_DESCR = "PackageDescr";
+    public static final int             DEFAULT_CACHE_MAX_ENTRIES  = 500;
+    public static final int             DEFAULT_CACHE_MAX_SIZE     = 8192;
+    public static final int             DEFAULT_CONTENT_ASSIST_TIMEOUT = 1000;
+
+    /**
+     * Weighs a DRLInfo by the number of source characters it was parsed from,
+     * the size of its descr tree and compiled package growing with it.
+     */
+    private static final ResourceCache.Weigher<DRLInfo> DRL_INFO_WEIGHER = new ResourceCache.Weigher<DRLInfo>() {
+        public long weigh(DRLInfo drlInfo) {
+            PackageDescr packageDescr = drlInfo.getPackageDescr();
+            if ( packageDescr == null ) {
+                return 0;
+            }
+            long size = 0;
+            for ( RuleDescr ruleDescr : packageDescr.getRules() ) {
+                size = Math.max( size, ruleDescr.getEndCharacter() );
+            }
+            for ( FunctionDescr functionDescr : packageDescr.getFunctions() ) {
+                size = Math.max( size, functionDescr.getEndCharacter() );
+            }
+            return size;
+        }
+    };
 
     //The shared instance.
     private static DroolsEclipsePlugin  plugin;
     //Resource bundle.
     private ResourceBundle              resourceBundle;
     private Map<String, Color>          colors                     = new HashMap<String, Color>();
-    private Map<IResource, DRLInfo>     parsedRules                = new HashMap<IResource, DRLInfo>();
-    private Map<IResource, DRLInfo>     compiledRules              = new HashMap<IResource, DRLInfo>();
-    private Map<String, RuleInfo>       ruleInfoByClassNameMap     = new HashMap<String, RuleInfo>();
-    private Map<String, FunctionInfo>   functionInfoByClassNameMap = new HashMap<String, FunctionInfo>();
-    private Map<IResource, ProcessInfo> processInfos               = new HashMap<IResource, ProcessInfo>();
-    private Map<String, ProcessInfo>    processInfosById           = new HashMap<String, ProcessInfo>();
+    // resources open in an editor are never evicted from the caches
+    private Set<IResource>              pinnedResources            = Collections.newSetFromMap( new ConcurrentHashMap<IResource, Boolean>() );
+    private ResourceCache<DRLInfo>      parsedRules                = new ResourceCache<DRLInfo>( "Parsed rules", DRL_INFO_WEIGHER, pinnedResources, DEFAULT_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_SIZE * 1024L );
+    private ResourceCache<DRLInfo>      compiledRules              = new ResourceCache<DRLInfo>( "Compiled rules", DRL_INFO_WEIGHER, pinnedResources, DEFAULT_CACHE_MAX_ENTRIES, DEFAULT_CACHE_MAX_SIZE * 1024L );
+    // the rule and function infos are looked up through their resource, so they don't keep evicted packages alive
+    private Map<String, IResource>      ruleResourceByClassNameMap = new ConcurrentHashMap<String, IResource>();
+    private Map<String, IResource>      functionResourceByClassNameMap = new ConcurrentHashMap<String, IResource>();
+    private ResourceCache<ProcessInfo>  processInfos               = new ResourceCache<ProcessInfo>( "Processes", null, pinnedResources, DEFAULT_CACHE_MAX_ENTRIES, Long.MAX_VALUE );
+    private Map<String, IResource>      processResourcesById       = new ConcurrentHashMap<String, IResource>();
+    // the processes using each ruleflow-group, kept when the processes are evicted, updated under the cache lock
+    private Map<String, Set<IResource>> processResourcesByFlowGroup = new ConcurrentHashMap<String, Set<IResource>>();
+    private Map<IResource, String>      processIdsByResource       = new HashMap<IResource, String>();
+    private Map<IResource, Set<String>> flowGroupsByResource       = new HashMap<IResource, Set<String>>();
+    // guards the updates spanning several of the caches above, reads don't lock
+    private final Object                cacheLock                  = new Object();
+    // parses and compilations currently running, shared by all the threads asking for the same resource
+    private final ConcurrentMap<IResource, FutureTask<DRLInfo>> parsesInProgress   = new ConcurrentHashMap<IResource, FutureTask<DRLInfo>>();
+    private final ConcurrentMap<IResource, FutureTask<DRLInfo>> compilesInProgress = new ConcurrentHashMap<IResource, FutureTask<DRLInfo>>();
+    // a result is only cached if its resource was not invalidated while it was being computed
+    private final ConcurrentMap<IResource, Long>                invalidationStamps = new ConcurrentHashMap<IResource, Long>();
+    private final AtomicLong                                    invalidationCounter = new AtomicLong();
     private boolean                     useCachePreference;
+    private PersistentParseCache        persistentParseCache;
+    private IElementChangedListener     classpathChangeListener;
+    private final ProjectClassLoaderCache projectClassLoaderCache  = new ProjectClassLoaderCache();
+    private final BuilderConfigurationCache builderConfigurationCache = new BuilderConfigurationCache();
+    private final FactTypeIndex          factTypeIndex             = new FactTypeIndex();
+    private final DSLConfigCache         dslConfigCache            = new DSLConfigCache();
+    private IResourceChangeListener     outputChangeListener;
 
     private FormColors                  ruleBuilderFormColors;
     
@@ -137,6 +196,7 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
         super.start( context );
         IPreferenceStore preferenceStore = getPreferenceStore();
         useCachePreference = preferenceStore.getBoolean( IDroolsConstants.CACHE_PARSED_RULES );
+        updateCacheLimits();
         preferenceStore.addPropertyChangeListener( new IPropertyChangeListener() {
             public void propertyChange(PropertyChangeEvent event) {
                 if ( IDroolsConstants.CACHE_PARSED_RULES.equals( event.getProperty() ) ) {
@@ -144,32 +204,124 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
                     if ( !useCachePreference ) {
                         clearCache();
                     }
+                } else if ( IDroolsConstants.CACHE_MAX_ENTRIES.equals( event.getProperty() )
+                            || IDroolsConstants.CACHE_MAX_SIZE.equals( event.getProperty() ) ) {
+                    updateCacheLimits();
                 }
             }
         } );
+        persistentParseCache = new PersistentParseCache( getStateLocation() );
+        classpathChangeListener = new ClasspathChangeListener();
+        JavaCore.addElementChangedListener( classpathChangeListener,
+                                            ElementChangedEvent.POST_CHANGE );
+        outputChangeListener = new IResourceChangeListener() {
+            public void resourceChanged(IResourceChangeEvent event) {
+                if ( event.getDelta() != null ) {
+                    projectClassLoaderCache.outputChanged( event.getDelta() );
+                    dslConfigCache.resourceChanged( event.getDelta() );
+                }
+            }
+        };
+        ResourcesPlugin.getWorkspace().addResourceChangeListener( outputChangeListener,
+                                                                  IResourceChangeEvent.POST_CHANGE );
+    }
+
+    private void updateCacheLimits() {
+        IPreferenceStore preferenceStore = getPreferenceStore();
+        int maxEntries = preferenceStore.getInt( IDroolsConstants.CACHE_MAX_ENTRIES );
+        long maxSize = preferenceStore.getInt( IDroolsConstants.CACHE_MAX_SIZE ) * 1024L;
+        parsedRules.setLimits( maxEntries, maxSize );
+        compiledRules.setLimits( maxEntries, maxSize );
+        processInfos.setLimits( maxEntries, Long.MAX_VALUE );
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the rule and process caches.
+     */
+    public String getCacheStatistics() {
+        return parsedRules.getStatistics() + "\n"
+               + compiledRules.getStatistics() + "\n"
+               + processInfos.getStatistics();
+    }
+
+    /**
+     * Returns the classloaders shared by all the parses of a Java project. A loader
+     * acquired from it must be released once the parse is done.
+     */
+    public ProjectClassLoaderCache getProjectClassLoaderCache() {
+        return projectClassLoaderCache;
+    }
 
+    /**
+     * Returns the fields of the fact types used in content assist.
+     */
+    public FactTypeIndex getFactTypeIndex() {
+        return factTypeIndex;
+    }
+
+    /**
+     * Returns the DSL files shared by all the editors and builds using them.
+     */
+    public DSLConfigCache getDSLConfigCache() {
+        return dslConfigCache;
+    }
+
+    /**
+     * Keeps the cached information of the given resource from being evicted,
+     * typically while it is open in an editor.
+     */
+    public void pinResource(IResource resource) {
+        if ( resource != null ) {
+            pinnedResources.add( resource );
+        }
+    }
+
+    public void unpinResource(IResource resource) {
+        if ( resource != null && pinnedResources.remove( resource ) ) {
+            parsedRules.trim();
+            compiledRules.trim();
+            processInfos.trim();
+        }
     }
 
     public void clearCache() {
-        parsedRules.clear();
-        compiledRules.clear();
-        ruleInfoByClassNameMap.clear();
-        functionInfoByClassNameMap.clear();
-        processInfos.clear();
-        processInfosById = null;
+        synchronized ( cacheLock ) {
+            parsedRules.clear();
+            compiledRules.clear();
+            ruleResourceByClassNameMap.clear();
+            functionResourceByClassNameMap.clear();
+            processInfos.clear();
+            processResourcesById.clear();
+            processResourcesByFlowGroup.clear();
+            processIdsByResource.clear();
+            flowGroupsByResource.clear();
+        }
+        if ( persistentParseCache != null ) {
+            persistentParseCache.clear();
+        }
     }
 
     /**
      * This method is called when the plug-in is stopped
      */
     public void stop(BundleContext context) throws Exception {
+        JavaCore.removeElementChangedListener( classpathChangeListener );
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener( outputChangeListener );
+        projectClassLoaderCache.clear();
+        builderConfigurationCache.clear();
+        factTypeIndex.clear();
+        dslConfigCache.clear();
         super.stop( context );
         plugin = null;
         resourceBundle = null;
-        parsedRules = null;
-        compiledRules = null;
-        processInfos = null;
-        processInfosById = null;
+        parsedRules.clear();
+        compiledRules.clear();
+        persistentParseCache = null;
+        processInfos.clear();
+        processResourcesById.clear();
+        processResourcesByFlowGroup.clear();
+        processIdsByResource.clear();
+        flowGroupsByResource.clear();
         for (Color color: colors.values()) {
             color.dispose();
         }
@@ -271,12 +423,22 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
                           false );
         store.setDefault( IDroolsConstants.CROSS_BUILD,
         				  false );
+        store.setDefault( IDroolsConstants.PARALLEL_BUILD,
+                          false );
         store.setDefault( IDroolsConstants.EDITOR_FOLDING,
                           true );
+        store.setDefault( IDroolsConstants.EDITOR_COMPILE_WHILE_TYPING,
+                          false );
         store.setDefault( IDroolsConstants.CACHE_PARSED_RULES,
                           true );
+        store.setDefault( IDroolsConstants.CACHE_MAX_ENTRIES,
+                          DEFAULT_CACHE_MAX_ENTRIES );
+        store.setDefault( IDroolsConstants.CACHE_MAX_SIZE,
+                          DEFAULT_CACHE_MAX_SIZE );
         store.setDefault( IDroolsConstants.DSL_RULE_EDITOR_COMPLETION_FULL_SENTENCES,
                           true );
+        store.setDefault( IDroolsConstants.CONTENT_ASSIST_TIMEOUT,
+                          DEFAULT_CONTENT_ASSIST_TIMEOUT );
         store.setDefault( IDroolsConstants.SKIN,
                           "BPMN2" );
         store.setDefault( IDroolsConstants.ALLOW_NODE_CUSTOMIZATION,
@@ -308,38 +470,40 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
     	if (resources.isEmpty()) return Collections.emptyList();
 
         ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
+        URLClassLoader projectLoader = null;
         
         try {
+            IProject project = resources.get(0).getResource().getProject();
+            if ( project.getNature( "org.eclipse.jdt.core.javanature" ) != null ) {
+                projectLoader = projectClassLoaderCache.acquire( JavaCore.create( project ) );
+            }
         	Map<Resource, ResourceDescr> resourceMap = new HashMap<Resource, ResourceDescr>();
-        	KnowledgeBuilder kbuilder = compositeBuild(resources, resourceMap);
+        	KnowledgeBuilder kbuilder = compositeBuild(resources, resourceMap, projectLoader);
 
             PackageBuilder packageBuilder = ((KnowledgeBuilderImpl)kbuilder).getPackageBuilder();
             Map<IResource, DRLInfo> infoMap = collectDRLInfo(resourceMap, packageBuilder);
     		collectErrors(resourceMap, kbuilder, packageBuilder, infoMap);
     		
-    		for (DRLInfo drlInfo : infoMap.values()) {
-                for ( RuleInfo ruleInfo : drlInfo.getRuleInfos() ) {
-                    ruleInfoByClassNameMap.put( ruleInfo.getClassName(), ruleInfo );
-                }
-                for ( FunctionInfo functionInfo : drlInfo.getFunctionInfos() ) {
-                    functionInfoByClassNameMap.put( functionInfo.getClassName(), functionInfo );
-                }
+    		synchronized ( cacheLock ) {
+    		    for (DRLInfo drlInfo : infoMap.values()) {
+    		        drlInfo.setClassLoader( projectLoader );
+    		        cacheCompiledInfo( drlInfo.getResource(), drlInfo );
+    		    }
     		}
     		
-    		compiledRules = infoMap;
-    		
     		return new ArrayList<DRLInfo>(infoMap.values());
         } catch ( CoreException e ) {
             log( e );
         } finally {
             Thread.currentThread().setContextClassLoader( oldLoader );
+            projectClassLoaderCache.release( projectLoader );
         }
         
         return Collections.emptyList();
     }
 
-	private KnowledgeBuilder compositeBuild(List<ResourceDescr> resources, Map<Resource, ResourceDescr> resourceMap) throws CoreException {
-		KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder(getBuilderConfiguration(resources));
+	private KnowledgeBuilder compositeBuild(List<ResourceDescr> resources, Map<Resource, ResourceDescr> resourceMap, ClassLoader projectLoader) throws CoreException {
+		KnowledgeBuilder kbuilder = KnowledgeBuilderFactory.newKnowledgeBuilder(getBuilderConfiguration(resources, projectLoader));
 		CompositeKnowledgeBuilder compositeKBuilder = kbuilder.batch();
 		for (ResourceDescr resourceDescr : resources) {
 			Resource resource = resourceDescr.getContentAsDroolsResource();
@@ -460,23 +624,20 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
 		return resourceDescr;
     }
     
-    private PackageBuilderConfiguration getBuilderConfiguration(List<ResourceDescr> resources) throws CoreException {
+    private PackageBuilderConfiguration getBuilderConfiguration(List<ResourceDescr> resources, ClassLoader projectLoader) throws CoreException {
         ClassLoader newLoader = DroolsBuilder.class.getClassLoader();
         IResource firstResource = resources.get(0).getResource();
         String level = null;
-        if ( firstResource.getProject().getNature( "org.eclipse.jdt.core.javanature" ) != null ) {
+        if ( projectLoader != null ) {
             IJavaProject project = JavaCore.create( firstResource.getProject() );
-            newLoader = ProjectClassLoader.getProjectClassLoader( project );
+            newLoader = projectLoader;
             level = project.getOption( JavaCore.COMPILER_COMPLIANCE, true );
         }
 
         Thread.currentThread().setContextClassLoader( newLoader );
-        PackageBuilderConfiguration builderConfiguration = new PackageBuilderConfiguration();
-        if ( level != null ) {
-            JavaDialectConfiguration javaConf = (JavaDialectConfiguration) builderConfiguration.getDialectConfiguration( "java" );
-            javaConf.setJavaLanguageLevel( level );
-        }
-        return builderConfiguration;
+        // resources built together may declare types, so they get their own configuration
+        return BuilderConfigurationCache.newRuleConfiguration( newLoader,
+                                                               level );
     }
 
     public DRLInfo parseResource(IResource resource,
@@ -485,8 +646,56 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
         if ( result != null ) {
             return result;
         }
-        return generateParsedResource( resource,
-                                       compile );
+        if ( resource == null ) {
+            return null;
+        }
+        return loadResource( resource,
+                             compile );
+    }
+
+    /**
+     * Parses (and compiles) a resource, or waits for the result if another thread
+     * is already doing it.
+     */
+    private DRLInfo loadResource(final IResource resource,
+                                 final boolean compile) throws DroolsParserException {
+        ConcurrentMap<IResource, FutureTask<DRLInfo>> inProgress = compile ? compilesInProgress : parsesInProgress;
+        FutureTask<DRLInfo> task = new FutureTask<DRLInfo>( new Callable<DRLInfo>() {
+            public DRLInfo call() throws Exception {
+                return generateParsedResource( resource,
+                                               compile );
+            }
+        } );
+        FutureTask<DRLInfo> running = inProgress.putIfAbsent( resource, task );
+        if ( running == null ) {
+            try {
+                task.run();
+            } finally {
+                inProgress.remove( resource, task );
+            }
+            running = task;
+        }
+        try {
+            return running.get();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof DroolsParserException ) {
+                throw (DroolsParserException) cause;
+            } else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            } else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+    }
+
+    private long getInvalidationStamp(IResource resource) {
+        Long stamp = resource == null ? null : invalidationStamps.get( resource );
+        return stamp == null ? 0 : stamp.longValue();
     }
     
     private DRLInfo getExistingInfoForResource(IResource resource, boolean compile) {
@@ -516,7 +725,11 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
                                            true,
                                            compile );
         }
-        // TODO: can we cache result when using unsaved content as well? 
+        DocumentParseSnapshot parseSnapshot = editor.getParseSnapshot();
+        if ( useUnsavedContent && parseSnapshot != null ) {
+            // shared by everyone looking at the unsaved content, until it changes again
+            return parseSnapshot.getInfo( compile );
+        }
         return generateParsedResource( editor.getContent(),
                                        resource,
                                        !useUnsavedContent,
@@ -556,21 +769,33 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
     }
 
     public void invalidateResource(IResource resource) {
-        DRLInfo cached = (DRLInfo) compiledRules.remove( resource );
-        if ( cached != null ) {
-            RuleInfo[] ruleInfos = cached.getRuleInfos();
-            for ( int i = 0; i < ruleInfos.length; i++ ) {
-                ruleInfoByClassNameMap.remove( ruleInfos[i].getClassName() );
-            }
-            FunctionInfo[] functionInfos = cached.getFunctionInfos();
-            for ( int i = 0; i < functionInfos.length; i++ ) {
-                functionInfoByClassNameMap.remove( functionInfos[i].getClassName() );
+        if ( resource == null ) {
+            return;
+        }
+        synchronized ( cacheLock ) {
+            invalidationStamps.put( resource,
+                                    invalidationCounter.incrementAndGet() );
+            // later callers must not wait for a result computed from the old content
+            parsesInProgress.remove( resource );
+            compilesInProgress.remove( resource );
+            DRLInfo cached = (DRLInfo) compiledRules.remove( resource );
+            if ( cached != null && cached.isCompiled() ) {
+                RuleInfo[] ruleInfos = cached.getRuleInfos();
+                for ( int i = 0; i < ruleInfos.length; i++ ) {
+                    ruleResourceByClassNameMap.remove( ruleInfos[i].getClassName() );
+                }
+                FunctionInfo[] functionInfos = cached.getFunctionInfos();
+                for ( int i = 0; i < functionInfos.length; i++ ) {
+                    functionResourceByClassNameMap.remove( functionInfos[i].getClassName() );
+                }
             }
+            parsedRules.remove( resource );
+            processInfos.remove( resource );
+            unindexProcess( resource );
         }
-        parsedRules.remove( resource );
-        ProcessInfo processInfo = processInfos.remove( resource );
-        if ( processInfo != null ) {
-            processInfosById.remove( processInfo.getProcessId() );
+        if ( persistentParseCache != null && !resource.exists() ) {
+            // a changed resource is detected by its content hash, only drop the entries of removed ones
+            persistentParseCache.remove( resource );
         }
     }
 
@@ -578,12 +803,15 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
                                            boolean compile) throws DroolsParserException {
         if ( resource instanceof IFile ) {
             IFile file = (IFile) resource;
+            // taken before reading, so an invalidation while parsing is noticed
+            long stamp = getInvalidationStamp( resource );
             try {
-                String content = new String( Util.getResourceContentsAsCharArray( file ) );
+                String content = Util.getResourceContentsAsString( file );
                 return generateParsedResource( content,
                                                file,
                                                true,
-                                               compile );
+                                               compile,
+                                               stamp );
             } catch ( CoreException e ) {
                 log( e );
             }
@@ -595,24 +823,33 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
                                           IResource resource,
                                           boolean useCache,
                                           boolean compile) throws DroolsParserException {
+        return generateParsedResource( content,
+                                       resource,
+                                       useCache,
+                                       compile,
+                                       getInvalidationStamp( resource ) );
+    }
+
+    private DRLInfo generateParsedResource(String content,
+                                           IResource resource,
+                                           boolean useCache,
+                                           boolean compile,
+                                           long stamp) throws DroolsParserException {
         useCache = useCache && useCachePreference;
         try {
             ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
             ClassLoader newLoader = DroolsBuilder.class.getClassLoader();
+            URLClassLoader projectLoader = null;
             String level = null;
             // resource could be null when opening a read-only remote file 
             if ( resource != null && resource.getProject().getNature( "org.eclipse.jdt.core.javanature" ) != null ) {
                 IJavaProject project = JavaCore.create( resource.getProject() );
-                newLoader = ProjectClassLoader.getProjectClassLoader( project );
+                projectLoader = projectClassLoaderCache.acquire( project );
+                newLoader = projectLoader;
                 level = project.getOption( JavaCore.COMPILER_COMPLIANCE, true );
             }
             try {
                 Thread.currentThread().setContextClassLoader( newLoader );
-                PackageBuilderConfiguration builder_configuration = new PackageBuilderConfiguration(newLoader);
-                if ( level != null ) {
-                    JavaDialectConfiguration javaConf = (JavaDialectConfiguration) builder_configuration.getDialectConfiguration( "java" );
-                    javaConf.setJavaLanguageLevel( level );
-                }
 
                 // first parse the source
                 PackageDescr packageDescr = null;
@@ -627,32 +864,47 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
 
                 DrlParser parser = new DrlParser();
                 if ( packageDescr == null ) {
-                    Reader dslReader = DSLAdapter.getDSLContent( content, resource );
-                    if ( dslReader != null ) {
-                        packageDescr = parser.parse( true, content, dslReader );
-                    } else {
-                        packageDescr = parser.parse( true, content );
+                    String dslContent = getDSLContent( content, resource );
+                    String persistentKey = null;
+                    if ( useCache && resource != null && persistentParseCache != null ) {
+                        persistentKey = persistentParseCache.getKey( resource, content, dslContent );
+                        PersistentParseCache.Entry entry = persistentParseCache.get( resource, persistentKey );
+                        if ( entry != null ) {
+                            packageDescr = entry.getPackageDescr();
+                            parserErrors = entry.getParserErrors();
+                        }
                     }
-                    parserErrors = parser.getErrors();
+                    if ( packageDescr == null ) {
+                        if ( dslContent != null ) {
+                            packageDescr = parser.parse( true, content, new StringReader( dslContent ) );
+                        } else {
+                            packageDescr = parser.parse( true, content );
+                        }
+                        parserErrors = parser.getErrors();
+                        if ( persistentKey != null ) {
+                            persistentParseCache.put( resource, persistentKey, packageDescr, parserErrors );
+                        }
+                    }
+                }
+                boolean hasParserErrors = parserErrors != null && !parserErrors.isEmpty();
+                boolean build = packageDescr != null && compile && !hasParserErrors;
+                PackageDescr packageDefDescr = build ? getPackageDefDescr( resource ) : null;
+                PackageBuilderConfiguration builder_configuration;
+                if ( resource != null && !(build && (declaresTypes( packageDescr ) || declaresTypes( packageDefDescr ))) ) {
+                    builder_configuration = builderConfigurationCache.getRuleConfiguration( resource.getProject(),
+                                                                                            newLoader,
+                                                                                            level );
+                } else {
+                    // declared types are defined in the classloader of the configuration
+                    builder_configuration = BuilderConfigurationCache.newRuleConfiguration( newLoader,
+                                                                                            level );
                 }
                 PackageBuilder builder = new PackageBuilder( builder_configuration );
                 DRLInfo result = null;
                 // compile parsed rules if necessary
-                if ( packageDescr != null && compile && !parser.hasErrors()) {
-                    // check whether a .package file exists and add it
-                    if ( resource != null && resource.getParent() != null ) {
-                        MyResourceVisitor visitor = new MyResourceVisitor();
-                        resource.getParent().accept( visitor,
-                                                     IResource.DEPTH_ONE,
-                                                     IResource.NONE );
-                        IResource packageDef = visitor.getPackageDef();
-                        if ( packageDef != null ) {
-                            PackageDescr desc = parseResource( packageDef,
-                                                               false ).getPackageDescr();
-                            if (desc != null){
-                                builder.addPackage( desc);
-                            }
-                        }
+                if ( build ) {
+                    if ( packageDefDescr != null ) {
+                        builder.addPackage( packageDefDescr );
                     }
 
                     builder.addPackage( packageDescr );
@@ -674,31 +926,27 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
                                           parserErrors,
                                           new PackageRegistry(builder, new Package("")).getDialectCompiletimeRegistry() );
                 }
+                result.setClassLoader( newLoader );
 
                 // cache result
                 if ( useCache && resource != null) {
-                    if ( compile && !parser.hasErrors() ) {
-                        parsedRules.remove( resource );
-                        compiledRules.put( resource,
-                                           result );
-                        RuleInfo[] ruleInfos = result.getRuleInfos();
-                        for ( int i = 0; i < ruleInfos.length; i++ ) {
-                            ruleInfoByClassNameMap.put( ruleInfos[i].getClassName(),
-                                                        ruleInfos[i] );
-                        }
-                        FunctionInfo[] functionInfos = result.getFunctionInfos();
-                        for ( int i = 0; i < functionInfos.length; i++ ) {
-                            functionInfoByClassNameMap.put( functionInfos[i].getClassName(),
-                                                            functionInfos[i] );
+                    synchronized ( cacheLock ) {
+                        if ( stamp == getInvalidationStamp( resource ) ) {
+                            if ( compile && !hasParserErrors ) {
+                                parsedRules.remove( resource );
+                                cacheCompiledInfo( resource,
+                                                   result );
+                            } else {
+                                parsedRules.put( resource,
+                                                 result );
+                            }
                         }
-                    } else {
-                        parsedRules.put( resource,
-                                         result );
                     }
                 }
                 return result;
             } finally {
                 Thread.currentThread().setContextClassLoader( oldLoader );
+                projectClassLoaderCache.release( projectLoader );
             }
         } catch ( CoreException e ) {
             log( e );
@@ -706,12 +954,88 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
         return null;
     }
 
+    /**
+     * Returns the contents of the .package file next to the given resource, if any.
+     */
+    private PackageDescr getPackageDefDescr(IResource resource) throws CoreException,
+                                                                     DroolsParserException {
+        if ( resource == null || resource.getParent() == null ) {
+            return null;
+        }
+        MyResourceVisitor visitor = new MyResourceVisitor();
+        resource.getParent().accept( visitor,
+                                     IResource.DEPTH_ONE,
+                                     IResource.NONE );
+        IResource packageDef = visitor.getPackageDef();
+        if ( packageDef == null ) {
+            return null;
+        }
+        return parseResource( packageDef,
+                              false ).getPackageDescr();
+    }
+
+    private static boolean declaresTypes(PackageDescr packageDescr) {
+        return packageDescr != null
+               && (!packageDescr.getTypeDeclarations().isEmpty() || !packageDescr.getEnumDeclarations().isEmpty());
+    }
+
+    private String getDSLContent(String content,
+                                 IResource resource) throws CoreException {
+        Reader dslReader = DSLAdapter.getDSLContent( content, resource );
+        if ( dslReader == null ) {
+            return null;
+        }
+        try {
+            return Util.getReaderContentsAsString( dslReader );
+        } catch ( IOException e ) {
+            throw new CoreException( new Status( IStatus.ERROR, PLUGIN_ID, IStatus.ERROR, "IOException", e ) );
+        }
+    }
+
+    private void cacheCompiledInfo(IResource resource,
+                                   DRLInfo drlInfo) {
+        compiledRules.put( resource,
+                           drlInfo );
+        if ( !drlInfo.isCompiled() ) {
+            return;
+        }
+        RuleInfo[] ruleInfos = drlInfo.getRuleInfos();
+        for ( int i = 0; i < ruleInfos.length; i++ ) {
+            ruleResourceByClassNameMap.put( ruleInfos[i].getClassName(),
+                                            resource );
+        }
+        FunctionInfo[] functionInfos = drlInfo.getFunctionInfos();
+        for ( int i = 0; i < functionInfos.length; i++ ) {
+            functionResourceByClassNameMap.put( functionInfos[i].getClassName(),
+                                                resource );
+        }
+    }
+
+    /**
+     * Returns the compiled info of a resource, compiling it again if it has
+     * been evicted from the cache.
+     */
+    private DRLInfo getCompiledInfo(IResource resource) {
+        if ( resource == null ) {
+            return null;
+        }
+        try {
+            return parseResource( resource,
+                                  true );
+        } catch ( DroolsParserException e ) {
+            log( e );
+            return null;
+        }
+    }
+
     public RuleInfo getRuleInfoByClass(String ruleClassName) {
-        return (RuleInfo) ruleInfoByClassNameMap.get( ruleClassName );
+        DRLInfo drlInfo = getCompiledInfo( ruleResourceByClassNameMap.get( ruleClassName ) );
+        return drlInfo == null ? null : drlInfo.getRuleInfoByClassName( ruleClassName );
     }
 
     public FunctionInfo getFunctionInfoByClass(String functionClassName) {
-        return (FunctionInfo) functionInfoByClassNameMap.get( functionClassName );
+        DRLInfo drlInfo = getCompiledInfo( functionResourceByClassNameMap.get( functionClassName ) );
+        return drlInfo == null ? null : drlInfo.getFunctionInfoByClassName( functionClassName );
     }
 
     public ProcessInfo parseProcess(String input,
@@ -719,28 +1043,22 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
         try {
             ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
             ClassLoader newLoader = this.getClass().getClassLoader();
+            URLClassLoader projectLoader = null;
             String level = null;
             if ( resource.getProject().getNature( "org.eclipse.jdt.core.javanature" ) != null ) {
                 IJavaProject project = JavaCore.create( resource.getProject() );
-                newLoader = ProjectClassLoader.getProjectClassLoader( project );
+                projectLoader = projectClassLoaderCache.acquire( project );
+                newLoader = projectLoader;
                 level = project.getOption( JavaCore.COMPILER_COMPLIANCE,
                                            true );
             }
             try {
                 Thread.currentThread().setContextClassLoader( newLoader );
-                PackageBuilderConfiguration configuration = new PackageBuilderConfiguration();
-                if ( level != null ) {
-                    JavaDialectConfiguration javaConf = (JavaDialectConfiguration) configuration.getDialectConfiguration( "java" );
-                    javaConf.setJavaLanguageLevel( level );
-                }
-                
-                SemanticModules modules = configuration.getSemanticModules();
-                modules.addSemanticModule( new BPMNSemanticModule() );
-                modules.addSemanticModule( new BPMNDISemanticModule() );
-                modules.addSemanticModule( new BPMNExtensionsSemanticModule() );
-                modules.addSemanticModule( new ProcessSemanticModule() );
+                PackageBuilderConfiguration configuration = builderConfigurationCache.getProcessConfiguration( resource.getProject(),
+                                                                                                             newLoader,
+                                                                                                             level );
                 
-                XmlProcessReader xmlReader = new XmlProcessReader( modules, Thread.currentThread().getContextClassLoader() );
+                XmlProcessReader xmlReader = new XmlProcessReader( configuration.getSemanticModules(), Thread.currentThread().getContextClassLoader() );
                 List<org.kie.api.definition.process.Process> processes =
                     (List<org.kie.api.definition.process.Process>) xmlReader.read( new StringReader( input ) );
                 if (processes != null) {
@@ -756,6 +1074,7 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
                 }
             } finally {
                 Thread.currentThread().setContextClassLoader( oldLoader );
+                projectClassLoaderCache.release( projectLoader );
             }
         } catch ( Exception e ) {
             log( e );
@@ -765,23 +1084,42 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
     }
 
     public ProcessInfo getProcessInfo(String processId) {
-        return processInfosById.get( processId );
+        return getProcessInfo( findProcessResource( processId ) );
+    }
+
+    private ProcessInfo getProcessInfo(IResource resource) {
+        if ( resource == null ) {
+            return null;
+        }
+        ProcessInfo processInfo = processInfos.get( resource );
+        if ( processInfo == null && resource instanceof IFile && resource.exists() ) {
+            // evicted from the cache, parse it again
+            try {
+                processInfo = parseProcess( Util.getResourceContentsAsString( (IFile) resource ),
+                                            resource );
+            } catch ( Exception e ) {
+                // already logged
+            }
+        }
+        return processInfo;
     }
 
     public Map<ProcessInfo,List<RuleSetNode>> getRuleSetNodeByFlowGroup(String flowGroup) {
-    	Map<ProcessInfo,List<RuleSetNode>> result = new HashMap<ProcessInfo,List<RuleSetNode>>();
-    	for (ProcessInfo processInfo : processInfosById.values()) {
-    		Node[] nodes = ((RuleFlowProcess)processInfo.getProcess()).getNodes();
-    		for (int i = 0; i < nodes.length; i++) {
-    			if(nodes[i] instanceof RuleSetNode)
-    				if(flowGroup.equals(((RuleSetNode)nodes[i]).getRuleFlowGroup())) {
-    					if(!result.containsKey(processInfo))
-    						result.put(processInfo, new ArrayList<RuleSetNode>());
-    					result.get(processInfo).add((RuleSetNode) nodes[i]);
-    				}
-    			
-			}
-		}
+        Map<ProcessInfo,List<RuleSetNode>> result = new HashMap<ProcessInfo,List<RuleSetNode>>();
+        Set<IResource> resources = flowGroup == null ? null : processResourcesByFlowGroup.get( flowGroup );
+        if ( resources == null ) {
+            return result;
+        }
+        for ( IResource resource : resources ) {
+            ProcessInfo processInfo = getProcessInfo( resource );
+            if ( processInfo != null ) {
+                List<RuleSetNode> nodes = processInfo.getRuleSetNodes( flowGroup );
+                if ( !nodes.isEmpty() ) {
+                    result.put( processInfo,
+                                nodes );
+                }
+            }
+        }
         return result;
     }
     
@@ -789,12 +1127,7 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
         if (processId == null) {
             return null;
         }
-        for (Map.Entry<IResource, ProcessInfo> entry: processInfos.entrySet()) {
-            if (processId.equals(entry.getValue().getProcessId())) {
-                return entry.getKey();
-            }
-        }
-        return null;
+        return processResourcesById.get( processId );
     }
 
     public ProcessInfo parseProcess(Process process,
@@ -811,14 +1144,68 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
         errors.addAll( Arrays.asList( packageBuilder.getErrors().getErrors() ) );
         processInfo.setErrors( errors );
         if ( useCachePreference ) {
-            processInfos.put( resource,
-                              processInfo );
-            processInfosById.put( process.getId(),
+            synchronized ( cacheLock ) {
+                processInfos.put( resource,
                                   processInfo );
+                indexProcess( resource,
+                              processInfo );
+            }
         }
         return processInfo;
     }
 
+    /**
+     * Indexes the id and the ruleflow-groups of a process, replacing those of
+     * the previous version of the resource. Must hold the cache lock.
+     */
+    private void indexProcess(IResource resource,
+                              ProcessInfo processInfo) {
+        unindexProcess( resource );
+        // only the names are kept, the index doesn't keep evicted processes alive
+        Set<String> flowGroups = new HashSet<String>( processInfo.getRuleFlowGroups() );
+        processIdsByResource.put( resource,
+                                  processInfo.getProcessId() );
+        flowGroupsByResource.put( resource,
+                                  flowGroups );
+        processResourcesById.put( processInfo.getProcessId(),
+                                  resource );
+        for ( String flowGroup : flowGroups ) {
+            // copied on write, so lookups don't need the lock
+            Set<IResource> resources = processResourcesByFlowGroup.get( flowGroup );
+            Set<IResource> copy = resources == null ? new HashSet<IResource>() : new HashSet<IResource>( resources );
+            copy.add( resource );
+            processResourcesByFlowGroup.put( flowGroup,
+                                             Collections.unmodifiableSet( copy ) );
+        }
+    }
+
+    /**
+     * Must hold the cache lock.
+     */
+    private void unindexProcess(IResource resource) {
+        String processId = processIdsByResource.remove( resource );
+        if ( processId != null && resource.equals( processResourcesById.get( processId ) ) ) {
+            processResourcesById.remove( processId );
+        }
+        Set<String> flowGroups = flowGroupsByResource.remove( resource );
+        if ( flowGroups == null ) {
+            return;
+        }
+        for ( String flowGroup : flowGroups ) {
+            Set<IResource> resources = processResourcesByFlowGroup.get( flowGroup );
+            if ( resources != null && resources.contains( resource ) ) {
+                Set<IResource> copy = new HashSet<IResource>( resources );
+                copy.remove( resource );
+                if ( copy.isEmpty() ) {
+                    processResourcesByFlowGroup.remove( flowGroup );
+                } else {
+                    processResourcesByFlowGroup.put( flowGroup,
+                                                     Collections.unmodifiableSet( copy ) );
+                }
+            }
+        }
+    }
+
     /**
      * Form Colors, default colors for now.
      * 
@@ -843,6 +1230,76 @@ public class DroolsEclipsePlugin extends AbstractUIPlugin {
 		forceFullBuild = true;
 	}
 
+    /**
+     * Drops the rules and processes of the given projects, compiled with a
+     * classloader that was discarded and is closed once no longer used.
+     */
+    private void invalidateProjects(Set<IProject> projects) {
+        if ( projects.isEmpty() ) {
+            return;
+        }
+        Set<IResource> resources = new HashSet<IResource>();
+        resources.addAll( compiledRules.resources() );
+        resources.addAll( parsedRules.resources() );
+        for ( IResource resource : resources ) {
+            if ( projects.contains( resource.getProject() ) ) {
+                invalidateResource( resource );
+            }
+        }
+        // the ids and ruleflow-groups don't depend on the classpath, the
+        // processes stay indexed and are parsed again when looked up
+        for ( IResource resource : processInfos.resources() ) {
+            if ( projects.contains( resource.getProject() ) ) {
+                processInfos.remove( resource );
+            }
+        }
+    }
+
+    /**
+     * Forgets the cached state depending on the classpath of a project when it changes.
+     */
+    private class ClasspathChangeListener
+        implements
+        IElementChangedListener {
+
+        public void elementChanged(ElementChangedEvent event) {
+            factTypeIndex.javaElementChanged( event.getDelta() );
+            visit( event.getDelta() );
+        }
+
+        private void visit(IJavaElementDelta delta) {
+            IJavaElement element = delta.getElement();
+            if ( element.getElementType() == IJavaElement.JAVA_PROJECT ) {
+                IProject project = ((IJavaProject) element).getProject();
+                if ( (delta.getFlags() & (IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED)) != 0
+                     || delta.getKind() != IJavaElementDelta.CHANGED ) {
+                    PersistentParseCache parseCache = persistentParseCache;
+                    if ( parseCache != null ) {
+                        parseCache.classpathChanged( project );
+                    }
+                    invalidateProjects( projectClassLoaderCache.invalidate( project ) );
+                    builderConfigurationCache.invalidate( project );
+                    factTypeIndex.invalidate( project );
+                    return;
+                }
+                for ( IJavaElementDelta child : delta.getAffectedChildren() ) {
+                    if ( child.getElement().getElementType() == IJavaElement.PACKAGE_FRAGMENT_ROOT
+                         && (child.getFlags() & IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED) != 0 ) {
+                        // a jar on the classpath was replaced
+                        invalidateProjects( projectClassLoaderCache.invalidate( project ) );
+                        return;
+                    }
+                }
+                return;
+            }
+            if ( element.getElementType() == IJavaElement.JAVA_MODEL ) {
+                for ( IJavaElementDelta child : delta.getAffectedChildren() ) {
+                    visit( child );
+                }
+            }
+        }
+    }
+
 	private class MyResourceVisitor
         implements
         IResourceVisitor {
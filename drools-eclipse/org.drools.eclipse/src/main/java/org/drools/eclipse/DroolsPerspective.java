@@ -49,6 +49,7 @@ public class DroolsPerspective implements IPerspectiveFactory {
         // *** Drools-specific extensions ***
         outputfolder.addView(IDroolsConstants.AUDIT_VIEW);
         layout.addShowViewShortcut(IDroolsConstants.AUDIT_VIEW);
+        layout.addShowViewShortcut(IDroolsConstants.RETE_VIEW);
         layout.addNewWizardShortcut("org.drools.eclipse.new.file");
         layout.addNewWizardShortcut("org.drools.eclipse.new.dsl");
         layout.addNewWizardShortcut("org.drools.eclipse.wizards.new.project");
@@ -20,5 +20,6 @@ public interface IDroolsConstants {
 
     final String AUDIT_VIEW = "org.drools.eclipse.debug.AuditView";
     final String RULES_VIEW = "org.drools.eclipse.view.rules.RulesView";
+    final String RETE_VIEW = "org.drools.eclipse.view.rete.ReteView";
 
 }
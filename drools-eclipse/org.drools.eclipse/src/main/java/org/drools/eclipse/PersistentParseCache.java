@@ -0,0 +1,291 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.compiler.compiler.DroolsError;
+import org.drools.compiler.compiler.ParserError;
+import org.drools.compiler.lang.descr.PackageDescr;
+import org.drools.eclipse.util.ProjectClassLoader;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+/**
+ * Keeps the parse results of rule resources in the plugin state location, so that
+ * after a restart unchanged resources don't have to be parsed again.
+ *
+ * An entry is only reused when the resource content (including the DSL it expands),
+ * the project classpath and the Java compliance level are the same as when it was
+ * stored, so entries never need to be explicitly invalidated when a resource or
+ * its project changes: a stale entry is simply overwritten by the next parse.
+ * Compiled packages are not persisted, as they can only be rebuilt by the
+ * PackageBuilder of the project they belong to.
+ */
+public class PersistentParseCache {
+
+    private static final int           VERSION      = 1;
+    private static final String        FILE_SUFFIX  = ".ser";
+
+    private final File                 directory;
+    private final Map<IProject, String> fingerprints = new HashMap<IProject, String>();
+
+    public PersistentParseCache(IPath stateLocation) {
+        this.directory = stateLocation.append( "parseCache" ).toFile();
+        this.directory.mkdirs();
+    }
+
+    public static class Entry {
+        private final PackageDescr      packageDescr;
+        private final List<DroolsError> parserErrors;
+
+        private Entry(PackageDescr packageDescr,
+                      List<DroolsError> parserErrors) {
+            this.packageDescr = packageDescr;
+            this.parserErrors = parserErrors;
+        }
+
+        public PackageDescr getPackageDescr() {
+            return packageDescr;
+        }
+
+        public List<DroolsError> getParserErrors() {
+            return parserErrors;
+        }
+    }
+
+    /**
+     * Returns the key identifying the given content of the given resource, or null
+     * if the resource can't be cached.
+     */
+    public String getKey(IResource resource,
+                         String content,
+                         String dslContent) {
+        MessageDigest digest = newDigest();
+        update( digest, content );
+        update( digest, dslContent );
+        IProject project = resource.getProject();
+        update( digest, getClasspathFingerprint( project ) );
+        try {
+            if ( project.getNature( "org.eclipse.jdt.core.javanature" ) != null ) {
+                update( digest, JavaCore.create( project ).getOption( JavaCore.COMPILER_COMPLIANCE, true ) );
+            }
+        } catch ( CoreException e ) {
+            return null;
+        }
+        return toHex( digest.digest() );
+    }
+
+    public Entry get(IResource resource,
+                     String key) {
+        File file = getFile( resource );
+        if ( key == null || !file.exists() ) {
+            return null;
+        }
+        ObjectInputStream in = null;
+        try {
+            in = new BundleObjectInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            if ( in.readInt() != VERSION || !key.equals( in.readUTF() ) ) {
+                return null;
+            }
+            PackageDescr packageDescr = (PackageDescr) in.readObject();
+            int errorCount = in.readInt();
+            List<DroolsError> parserErrors = new ArrayList<DroolsError>( errorCount );
+            for ( int i = 0; i < errorCount; i++ ) {
+                parserErrors.add( new ParserError( in.readUTF(),
+                                                   in.readInt(),
+                                                   in.readInt() ) );
+            }
+            return new Entry( packageDescr,
+                              parserErrors );
+        } catch ( Exception e ) {
+            // unreadable or incompatible entry, it will be replaced by the next put
+            return null;
+        } finally {
+            close( in );
+        }
+    }
+
+    public void put(IResource resource,
+                    String key,
+                    PackageDescr packageDescr,
+                    List<DroolsError> parserErrors) {
+        if ( key == null || packageDescr == null ) {
+            return;
+        }
+        for ( DroolsError error : parserErrors ) {
+            if ( !(error instanceof ParserError) ) {
+                // only plain parser errors can be restored
+                return;
+            }
+        }
+        File file = getFile( resource );
+        ObjectOutputStream out = null;
+        try {
+            out = new ObjectOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ) );
+            out.writeInt( VERSION );
+            out.writeUTF( key );
+            out.writeObject( packageDescr );
+            out.writeInt( parserErrors.size() );
+            for ( DroolsError error : parserErrors ) {
+                ParserError parserError = (ParserError) error;
+                out.writeUTF( String.valueOf( parserError.getMessage() ) );
+                out.writeInt( parserError.getRow() );
+                out.writeInt( parserError.getCol() );
+            }
+        } catch ( IOException e ) {
+            close( out );
+            out = null;
+            file.delete();
+        } finally {
+            close( out );
+        }
+    }
+
+    public void remove(IResource resource) {
+        getFile( resource ).delete();
+    }
+
+    public synchronized void classpathChanged(IProject project) {
+        fingerprints.remove( project );
+    }
+
+    public void clear() {
+        synchronized ( this ) {
+            fingerprints.clear();
+        }
+        File[] files = directory.listFiles();
+        if ( files != null ) {
+            for ( File file : files ) {
+                if ( file.getName().endsWith( FILE_SUFFIX ) ) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private synchronized String getClasspathFingerprint(IProject project) {
+        String fingerprint = fingerprints.get( project );
+        if ( fingerprint == null ) {
+            MessageDigest digest = newDigest();
+            try {
+                if ( project.getNature( "org.eclipse.jdt.core.javanature" ) != null ) {
+                    IJavaProject javaProject = JavaCore.create( project );
+                    for ( URL url : ProjectClassLoader.getProjectClassPathURLs( javaProject, new ArrayList<String>() ) ) {
+                        update( digest, url.toString() );
+                    }
+                }
+            } catch ( Exception e ) {
+                DroolsEclipsePlugin.log( e );
+            }
+            fingerprint = toHex( digest.digest() );
+            fingerprints.put( project, fingerprint );
+        }
+        return fingerprint;
+    }
+
+    private File getFile(IResource resource) {
+        MessageDigest digest = newDigest();
+        update( digest, resource.getFullPath().toString() );
+        return new File( directory, toHex( digest.digest() ) + FILE_SUFFIX );
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance( "SHA-1" );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    private static void update(MessageDigest digest,
+                               String value) {
+        if ( value == null ) {
+            digest.update( (byte) 0 );
+            return;
+        }
+        try {
+            digest.update( value.getBytes( "UTF-8" ) );
+        } catch ( UnsupportedEncodingException e ) {
+            throw new IllegalStateException( e );
+        }
+        digest.update( (byte) 0 );
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes ) {
+            sb.append( Character.forDigit( (b >> 4) & 0xF, 16 ) );
+            sb.append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return sb.toString();
+    }
+
+    private static void close(Closeable closeable) {
+        if ( closeable != null ) {
+            try {
+                closeable.close();
+            } catch ( IOException e ) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Resolves the descr classes through the plugin classloader instead of the
+     * caller's one, as the Drools libraries are embedded in this bundle.
+     */
+    private static class BundleObjectInputStream extends ObjectInputStream {
+
+        private BundleObjectInputStream(InputStream in) throws IOException {
+            super( in );
+        }
+
+        protected Class< ? > resolveClass(ObjectStreamClass desc) throws IOException,
+                                                                 ClassNotFoundException {
+            try {
+                return Class.forName( desc.getName(),
+                                      false,
+                                      PersistentParseCache.class.getClassLoader() );
+            } catch ( ClassNotFoundException e ) {
+                return super.resolveClass( desc );
+            }
+        }
+    }
+}
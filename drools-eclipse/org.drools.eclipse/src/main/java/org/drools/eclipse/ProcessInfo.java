@@ -16,9 +16,17 @@
 
 package org.drools.eclipse;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.drools.compiler.compiler.DroolsError;
+import org.jbpm.workflow.core.node.RuleSetNode;
+import org.kie.api.definition.process.Node;
+import org.kie.api.definition.process.NodeContainer;
 import org.kie.api.definition.process.Process;
 
 public class ProcessInfo {
@@ -26,10 +34,34 @@ public class ProcessInfo {
     private String processId;
     private Process process;
     private List<DroolsError> errors;
+    // the rule set nodes of the process, including nested ones, by ruleflow-group
+    private Map<String, List<RuleSetNode>> ruleSetNodes = new HashMap<String, List<RuleSetNode>>();
     
     public ProcessInfo(String processId, Process process) {
         this.processId = processId;
         this.process = process;
+        if (process instanceof NodeContainer) {
+            addRuleSetNodes(((NodeContainer) process).getNodes());
+        }
+    }
+
+    private void addRuleSetNodes(Node[] nodes) {
+        for (Node node: nodes) {
+            if (node instanceof RuleSetNode) {
+                String ruleFlowGroup = ((RuleSetNode) node).getRuleFlowGroup();
+                if (ruleFlowGroup != null) {
+                    List<RuleSetNode> list = ruleSetNodes.get(ruleFlowGroup);
+                    if (list == null) {
+                        list = new ArrayList<RuleSetNode>();
+                        ruleSetNodes.put(ruleFlowGroup, list);
+                    }
+                    list.add((RuleSetNode) node);
+                }
+            }
+            if (node instanceof NodeContainer) {
+                addRuleSetNodes(((NodeContainer) node).getNodes());
+            }
+        }
     }
     
     public String getProcessId() {
@@ -40,6 +72,15 @@ public class ProcessInfo {
         return process;
     }
     
+    public Set<String> getRuleFlowGroups() {
+        return Collections.unmodifiableSet(ruleSetNodes.keySet());
+    }
+
+    public List<RuleSetNode> getRuleSetNodes(String ruleFlowGroup) {
+        List<RuleSetNode> result = ruleSetNodes.get(ruleFlowGroup);
+        return result == null ? Collections.<RuleSetNode>emptyList() : Collections.unmodifiableList(result);
+    }
+
     public List<DroolsError> getErrors() {
         return errors;
     }
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.core.resources.IResource;
+
+/**
+ * A least recently used cache of values computed for workspace resources.
+ *
+ * The cache holds at most a maximum number of entries and a maximum total weight
+ * strongly. When a limit is exceeded the least recently used entries are only
+ * softly referenced, so they can still be found until the garbage collector
+ * needs the memory back. Resources that are pinned, because they are open in an
+ * editor, are never demoted.
+ *
+ * The cache is safe for concurrent use. Looking up a strongly held entry doesn't
+ * block: the recency order is only updated when no other thread is modifying the
+ * cache, so under contention it is approximate.
+ */
+public class ResourceCache<V> {
+
+    public interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    private final String                                name;
+    private final Weigher<V>                            weigher;
+    private final Set<IResource>                        pinned;
+    private final ReentrantLock                         lock        = new ReentrantLock();
+    private final LinkedHashMap<IResource, Entry<V>>    entries     = new LinkedHashMap<IResource, Entry<V>>( 16, 0.75f, true );
+    // lock-free view of the strongly held entries
+    private final ConcurrentHashMap<IResource, V>       values      = new ConcurrentHashMap<IResource, V>();
+    private final Map<IResource, SoftEntry<V>>          softEntries = new HashMap<IResource, SoftEntry<V>>();
+    private final ReferenceQueue<V>                     queue       = new ReferenceQueue<V>();
+
+    private int                                         maxEntries;
+    private long                                        maxWeight;
+    private long                                        weight;
+
+    private final AtomicLong                            hits        = new AtomicLong();
+    private long                                        softHits;
+    private long                                        misses;
+    private long                                        evictions;
+    private long                                        collections;
+
+    public ResourceCache(String name,
+                         Weigher<V> weigher,
+                         Set<IResource> pinned,
+                         int maxEntries,
+                         long maxWeight) {
+        this.name = name;
+        this.weigher = weigher;
+        this.pinned = pinned;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    public V get(IResource resource) {
+        if ( resource == null ) {
+            return null;
+        }
+        V value = values.get( resource );
+        if ( value != null ) {
+            hits.incrementAndGet();
+            if ( lock.tryLock() ) {
+                try {
+                    // record the access
+                    entries.get( resource );
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return value;
+        }
+        lock.lock();
+        try {
+            expungeCollected();
+            Entry<V> entry = entries.get( resource );
+            if ( entry != null ) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            SoftEntry<V> softEntry = softEntries.remove( resource );
+            value = softEntry == null ? null : softEntry.get();
+            if ( value != null ) {
+                softHits++;
+                add( resource, value );
+                doTrim();
+                return value;
+            }
+            misses++;
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(IResource resource,
+                    V value) {
+        if ( resource == null || value == null ) {
+            return;
+        }
+        lock.lock();
+        try {
+            expungeCollected();
+            removeEntry( resource );
+            add( resource, value );
+            doTrim();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public V remove(IResource resource) {
+        if ( resource == null ) {
+            return null;
+        }
+        lock.lock();
+        try {
+            expungeCollected();
+            return removeEntry( resource );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            values.clear();
+            softEntries.clear();
+            weight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns all the values still reachable from this cache.
+     */
+    public List<V> values() {
+        lock.lock();
+        try {
+            expungeCollected();
+            List<V> result = new ArrayList<V>( entries.size() + softEntries.size() );
+            for ( Entry<V> entry : entries.values() ) {
+                result.add( entry.value );
+            }
+            for ( SoftEntry<V> softEntry : softEntries.values() ) {
+                V value = softEntry.get();
+                if ( value != null ) {
+                    result.add( value );
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the resources of all the values still reachable from this cache.
+     */
+    public List<IResource> resources() {
+        lock.lock();
+        try {
+            expungeCollected();
+            List<IResource> result = new ArrayList<IResource>( entries.size() + softEntries.size() );
+            result.addAll( entries.keySet() );
+            result.addAll( softEntries.keySet() );
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setLimits(int maxEntries,
+                          long maxWeight) {
+        lock.lock();
+        try {
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+            doTrim();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Demotes the least recently used entries that are not pinned until the
+     * cache fits its limits again.
+     */
+    public void trim() {
+        lock.lock();
+        try {
+            doTrim();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doTrim() {
+        Iterator<Map.Entry<IResource, Entry<V>>> iterator = entries.entrySet().iterator();
+        while ( (entries.size() > maxEntries || weight > maxWeight) && iterator.hasNext() ) {
+            Map.Entry<IResource, Entry<V>> mapEntry = iterator.next();
+            if ( pinned.contains( mapEntry.getKey() ) ) {
+                continue;
+            }
+            iterator.remove();
+            values.remove( mapEntry.getKey() );
+            weight -= mapEntry.getValue().weight;
+            softEntries.put( mapEntry.getKey(),
+                             new SoftEntry<V>( mapEntry.getKey(),
+                                               mapEntry.getValue().value,
+                                               queue ) );
+            evictions++;
+        }
+    }
+
+    public String getStatistics() {
+        lock.lock();
+        try {
+            expungeCollected();
+            return name + ": " + entries.size() + " entries (" + weight + " weight), "
+                   + softEntries.size() + " soft entries, "
+                   + hits.get() + " hits, " + softHits + " soft hits, " + misses + " misses, "
+                   + evictions + " evictions, " + collections + " collected";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(IResource resource,
+                     V value) {
+        long valueWeight = weigher == null ? 0 : weigher.weigh( value );
+        entries.put( resource,
+                     new Entry<V>( value,
+                                   valueWeight ) );
+        values.put( resource,
+                    value );
+        weight += valueWeight;
+    }
+
+    private V removeEntry(IResource resource) {
+        Entry<V> entry = entries.remove( resource );
+        values.remove( resource );
+        if ( entry != null ) {
+            weight -= entry.weight;
+            softEntries.remove( resource );
+            return entry.value;
+        }
+        SoftEntry<V> softEntry = softEntries.remove( resource );
+        return softEntry == null ? null : softEntry.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expungeCollected() {
+        SoftEntry<V> softEntry;
+        while ( (softEntry = (SoftEntry<V>) queue.poll()) != null ) {
+            // only remove the mapping if it was not replaced in the meantime
+            if ( softEntries.get( softEntry.resource ) == softEntry ) {
+                softEntries.remove( softEntry.resource );
+                collections++;
+            }
+        }
+    }
+
+    private static class Entry<V> {
+        private final V    value;
+        private final long weight;
+
+        private Entry(V value,
+                      long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private static class SoftEntry<V> extends SoftReference<V> {
+        private final IResource resource;
+
+        private SoftEntry(IResource resource,
+                          V value,
+                          ReferenceQueue<V> queue) {
+            super( value,
+                   queue );
+            this.resource = resource;
+        }
+    }
+}
@@ -23,7 +23,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.drools.core.RuleBaseConfiguration;
-import org.drools.eclipse.util.ProjectClassLoader;
+import org.drools.eclipse.util.ProjectClassLoaderCache;
 import org.drools.core.process.core.ParameterDefinition;
 import org.drools.core.process.core.WorkDefinition;
 import org.drools.core.process.core.datatype.DataType;
@@ -60,7 +60,8 @@ public final class WorkItemDefinitions {
     public static Map<String, WorkDefinition> getWorkDefinitions(IJavaProject project) {
         if (project != null) {
             ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
-            ClassLoader newLoader = ProjectClassLoader.getProjectClassLoader(project);
+            ProjectClassLoaderCache classLoaderCache = DroolsEclipsePlugin.getDefault().getProjectClassLoaderCache();
+            ClassLoader newLoader = classLoaderCache.acquire(project);
             try {
                 Map<String, WorkDefinition> workDefinitions = new HashMap<String, WorkDefinition>();
                 Thread.currentThread().setContextClassLoader(newLoader);
@@ -105,6 +106,7 @@ public final class WorkItemDefinitions {
                 return workDefinitions;
             } finally {
                 Thread.currentThread().setContextClassLoader(oldLoader);
+                classLoaderCache.release(newLoader);
             }
         }
         return new HashMap<String, WorkDefinition>();
@@ -17,14 +17,22 @@
 package org.drools.eclipse.builder;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.antlr.runtime.RecognitionException;
 import org.drools.compiler.commons.jci.problems.CompilationProblem;
@@ -38,7 +46,6 @@ import org.drools.compiler.compiler.GlobalError;
 import org.drools.compiler.compiler.ImportError;
 import org.drools.compiler.compiler.ParserError;
 import org.drools.compiler.compiler.RuleBuildError;
-import org.drools.compiler.kproject.models.KieModuleModelImpl;
 import org.drools.compiler.lang.ExpanderException;
 import org.drools.decisiontable.InputType;
 import org.drools.decisiontable.SpreadsheetCompiler;
@@ -62,18 +69,16 @@ import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jface.preference.IPreferenceStore;
-import org.kie.api.KieServices;
-import org.kie.api.builder.KieBuilder;
-import org.kie.api.builder.KieFileSystem;
-import org.kie.api.builder.Message;
-import org.kie.api.io.ResourceType;
 import org.kie.internal.builder.KnowledgeBuilderResult;
-import org.kie.internal.io.ResourceFactory;
 
 /**
  * Automatically syntax checks .drl files and adds possible errors or warnings
@@ -85,6 +90,15 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
 
     private boolean isKieProject = false;
 
+    // kept between builds of a kmodule project to build its changes incrementally
+    private KieProjectBuilder kieProjectBuilder;
+
+    private final ResourceDependencyIndex dependencyIndex = new ResourceDependencyIndex();
+
+    // the markers of the current build, applied at its end in a single workspace operation
+    private final Map<IResource, List<DroolsBuildMarker>> pendingMarkers = new LinkedHashMap<IResource, List<DroolsBuildMarker>>();
+    private final List<IResource> cleanedContainers = new ArrayList<IResource>();
+
     protected IProject[] build(int kind, Map<String, String> args, IProgressMonitor monitor) throws CoreException {
         IProject currentProject = getProject();
         if ( currentProject == null || !currentProject.isAccessible() ) {
@@ -94,16 +108,22 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
         try {
             if ( monitor != null && monitor.isCanceled() ) throw new OperationCanceledException();
 
-            if ( kind == IncrementalProjectBuilder.FULL_BUILD ) {
-                fullBuild( monitor );
-            } else {
-                IResourceDelta delta = getDelta( getProject() );
-                if ( delta == null ) {
+            pendingMarkers.clear();
+            cleanedContainers.clear();
+            try {
+                if ( kind == IncrementalProjectBuilder.FULL_BUILD ) {
                     fullBuild( monitor );
                 } else {
-                    incrementalBuild( delta,
-                                      monitor );
+                    IResourceDelta delta = getDelta( getProject() );
+                    if ( delta == null ) {
+                        fullBuild( monitor );
+                    } else {
+                        incrementalBuild( delta,
+                                          monitor );
+                    }
                 }
+            } finally {
+                applyMarkers();
             }
         } catch ( CoreException e ) {
             IMarker marker = currentProject.createMarker( IDroolsModelMarker.DROOLS_MODEL_PROBLEM_MARKER );
@@ -125,41 +145,118 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
                 String[] jars = DroolsRuntimeManager.getDroolsRuntimeJars( getProject() );
                 if ( jars == null || jars.length == 0 ) {
                     String runtime = DroolsRuntimeManager.getDroolsRuntime( getProject() );
-                    IMarker marker = getProject().createMarker( IDroolsModelMarker.DROOLS_MODEL_PROBLEM_MARKER );
                     if ( runtime == null ) {
-                        marker.setAttribute( IMarker.MESSAGE,
-                                             "Could not find default Drools runtime" );
+                        createMarker( getProject(),
+                                      "Could not find default Drools runtime",
+                                      -1 );
                     } else {
-                        marker.setAttribute( IMarker.MESSAGE,
-                                             "Could not find Drools runtime " + runtime );
+                        createMarker( getProject(),
+                                      "Could not find Drools runtime " + runtime,
+                                      -1 );
                     }
-                    marker.setAttribute( IMarker.SEVERITY,
-                                         IMarker.SEVERITY_ERROR );
                     return;
                 }
             }
         }
 
         isKieProject = false;
+        kieProjectBuilder = null;
+        dependencyIndex.clear();
         DroolsBuilderVisitor droolsBuilderVisitor = new DroolsBuilderVisitor();
         getProject().accept( droolsBuilderVisitor );
-        droolsBuilderVisitor.build();
+        droolsBuilderVisitor.build( monitor );
     }
 
     protected void incrementalBuild(IResourceDelta delta,
                                     IProgressMonitor monitor) throws CoreException {
-        IPreferenceStore store = DroolsEclipsePlugin.getDefault().getPreferenceStore();
-        boolean fullBuild = store.getBoolean( IDroolsConstants.CROSS_BUILD ) || store.getBoolean( IDroolsConstants.BUILD_ALL ) || isKieProject;
-
-        if ( !fullBuild ) {
-            fullBuild = DroolsEclipsePlugin.getDefault().resetForceFullBuild();
+        if ( isKieProject && kieProjectBuilder != null ) {
+            incrementalKieBuild( delta,
+                                 monitor );
+            return;
         }
 
+        IPreferenceStore store = DroolsEclipsePlugin.getDefault().getPreferenceStore();
+        // a refactoring may have renamed types used by rules, so rebuild their dependents
+        boolean rebuildDependents = DroolsEclipsePlugin.getDefault().resetForceFullBuild() || store.getBoolean( IDroolsConstants.BUILD_ALL );
+        boolean fullBuild = store.getBoolean( IDroolsConstants.CROSS_BUILD ) || isKieProject || (rebuildDependents && dependencyIndex.isEmpty());
+
         if ( fullBuild ) {
             // to make sure that all rules are checked when a java file is changed
             fullBuild( monitor );
-        } else {
-            delta.accept( new DroolsBuildDeltaVisitor() );
+            return;
+        }
+
+        DroolsBuildDeltaVisitor deltaVisitor = new DroolsBuildDeltaVisitor( rebuildDependents );
+        delta.accept( deltaVisitor );
+        if ( deltaVisitor.classpathChanged ) {
+            fullBuild( monitor );
+            return;
+        }
+        Set<IResource> dependents = new HashSet<IResource>();
+        if ( !deltaVisitor.changedTypes.isEmpty() ) {
+            dependents.addAll( dependencyIndex.getDependentResources( deltaVisitor.changedTypes ) );
+        }
+        for ( IResource configFile : deltaVisitor.changedConfigFiles ) {
+            dependents.addAll( dependencyIndex.getResourcesUsing( configFile ) );
+        }
+        dependents.removeAll( deltaVisitor.parsedResources );
+        for ( IResource dependent : dependents ) {
+            if ( monitor != null && monitor.isCanceled() ) throw new OperationCanceledException();
+            parseResource( dependent,
+                           true );
+        }
+    }
+
+    private void incrementalKieBuild(IResourceDelta delta,
+                                     IProgressMonitor monitor) throws CoreException {
+        KieBuildDeltaVisitor deltaVisitor = new KieBuildDeltaVisitor();
+        delta.accept( deltaVisitor );
+        if ( deltaVisitor.kmoduleChanged ) {
+            fullBuild( monitor );
+            return;
+        }
+        if ( monitor != null && monitor.isCanceled() ) throw new OperationCanceledException();
+        for ( IResource resource : kieProjectBuilder.build( deltaVisitor.changed,
+                                                            deltaVisitor.removed ) ) {
+            pendingMarkers.put( resource,
+                                kieProjectBuilder.getMarkers( resource ) );
+        }
+        for ( IResource resource : deltaVisitor.changed ) {
+            if ( !pendingMarkers.containsKey( resource ) ) {
+                pendingMarkers.put( resource,
+                                    kieProjectBuilder.getMarkers( resource ) );
+            }
+        }
+    }
+
+    private class KieBuildDeltaVisitor
+            implements
+            IResourceDeltaVisitor {
+        private final List<IFile>     changed         = new ArrayList<IFile>();
+        private final List<IResource> removed         = new ArrayList<IResource>();
+        private boolean               kmoduleChanged  = false;
+
+        public boolean visit(IResourceDelta delta) throws CoreException {
+            IResource res = delta.getResource();
+            if ( isInOutputDirectory( res ) ) {
+                return false;
+            }
+            if ( res.getType() != IResource.FILE ) {
+                return true;
+            }
+            if ( KieProjectBuilder.isKModule( res ) ) {
+                kmoduleChanged = true;
+            } else if ( KieProjectBuilder.isKieResource( res ) ) {
+                if ( delta.getKind() == IResourceDelta.REMOVED ) {
+                    removed.add( res );
+                    DroolsEclipsePlugin.getDefault().invalidateResource( res );
+                } else if ( delta.getKind() == IResourceDelta.ADDED
+                            || (delta.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0 ) {
+                    changed.add( (IFile) res );
+                    DroolsEclipsePlugin.getDefault().invalidateResource( res );
+                }
+            }
+            return false;
         }
     }
 
@@ -174,48 +271,29 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
                 return false;
             }
             if ( resource instanceof IFile) {
-            	isKieProject |= resource.getProjectRelativePath().toString().endsWith(KieModuleModelImpl.KMODULE_JAR_PATH);
+            	isKieProject |= KieProjectBuilder.isKModule( resource );
             	resources.add(resource);
             }
             return true;
         }
         
-        public void build() throws CoreException {
+        public void build(IProgressMonitor monitor) throws CoreException {
+            IPreferenceStore store = DroolsEclipsePlugin.getDefault().getPreferenceStore();
         	if (isKieProject) {
         		doBuildKieProject();
-        	} else if ( DroolsEclipsePlugin.getDefault().getPreferenceStore().getBoolean( IDroolsConstants.CROSS_BUILD ) ) {
+        	} else if ( store.getBoolean( IDroolsConstants.CROSS_BUILD ) ) {
             	doBatchBuild();
+            } else if ( store.getBoolean( IDroolsConstants.PARALLEL_BUILD ) && resources.size() > 1 ) {
+                doParallelBuild( monitor );
             } else {
             	doBuild();
             }
         }
 
         private void doBuildKieProject() throws CoreException {
-        	KieServices ks = KieServices.Factory.get();
-        	KieFileSystem kfs = ks.newKieFileSystem();
-        	
-        	Map<String, IResource> resourcesMap = new HashMap<String, IResource>(); 
-        	for (IResource resource : resources) {
-        		String resourcePath = resource.getProjectRelativePath().toString();
-                if ( ResourceType.determineResourceType( resource.getName() ) != null ) {
-                    removeProblemsFor( resource );
-                    kfs.write(resourcePath, ResourceFactory.newInputStreamResource( ((IFile) resource).getContents() ));
-                    resourcesMap.put(resourcePath, resource);
-                } else if ( resourcePath.endsWith(KieModuleModelImpl.KMODULE_JAR_PATH) ) {
-                	kfs.writeKModuleXML(new String( Util.getResourceContentsAsCharArray( (IFile)resource ) ));
-                }
-        	}
-        	
-        	KieBuilder kieBuilder = ks.newKieBuilder(kfs);
-        	List<Message> messages = kieBuilder.buildAll().getResults().getMessages();
-        	for (Message message : messages) {
-        		IResource resource = resourcesMap.get(message.getPath());
-        		if (resource == null) {
-        			resource = resourcesMap.get("src/main/resources/" + message.getPath());
-        		}
-        		if (resource != null) {
-        			createMarker(resource, message.getText(), message.getLine());
-        		}
+        	kieProjectBuilder = new KieProjectBuilder( resources );
+        	for (IResource resource : kieProjectBuilder.getResources()) {
+        		pendingMarkers.put( resource, kieProjectBuilder.getMarkers( resource ) );
         	}
     	}
         
@@ -225,6 +303,50 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
         	}
     	}
 
+        /**
+         * Parses and compiles the resources on a bounded pool of worker threads and
+         * creates all the resulting markers in a single workspace operation.
+         */
+        private void doParallelBuild(IProgressMonitor monitor) {
+            SubMonitor progress = SubMonitor.convert( monitor,
+                                                      "Building Drools resources",
+                                                      resources.size() );
+            int poolSize = Math.min( Runtime.getRuntime().availableProcessors(),
+                                     resources.size() );
+            ExecutorService executor = Executors.newFixedThreadPool( poolSize,
+                                                                     new BuildThreadFactory() );
+            CompletionService<ParsedFile> completionService = new ExecutorCompletionService<ParsedFile>( executor );
+            Map<IResource, List<DroolsBuildMarker>> markers = new LinkedHashMap<IResource, List<DroolsBuildMarker>>();
+            try {
+                for ( IResource resource : resources ) {
+                    completionService.submit( new ParseFileTask( (IFile) resource,
+                                                                 progress ) );
+                }
+                for ( int i = 0; i < resources.size(); i++ ) {
+                    try {
+                        ParsedFile parsedFile = completionService.take().get();
+                        if ( parsedFile.markers != null ) {
+                            markers.put( parsedFile.file,
+                                         parsedFile.markers );
+                        }
+                    } catch ( ExecutionException e ) {
+                        // a failing file doesn't keep the markers of the others from being created
+                        DroolsEclipsePlugin.log( e.getCause() );
+                    }
+                    progress.worked( 1 );
+                    if ( progress.isCanceled() ) {
+                        throw new OperationCanceledException();
+                    }
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new OperationCanceledException();
+            } finally {
+                executor.shutdownNow();
+            }
+            pendingMarkers.putAll( markers );
+        }
+
         private void doBatchBuild() {
         	List<ResourceDescr> resourceDescrs = new ArrayList<ResourceDescr>();
         	
@@ -239,17 +361,119 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
         	
             List<DRLInfo> drlInfos = DroolsEclipsePlugin.getDefault().parseResources( resourceDescrs );
             for ( DRLInfo drlInfo : drlInfos ) {
+                dependencyIndex.update( drlInfo.getResource(),
+                                        drlInfo.getPackageDescr(),
+                                        drlInfo.getPackage() );
                 appendMarkers( drlInfo );
             }
     	}
     }
 
+    private static class ParsedFile {
+        private final IFile                   file;
+        private final List<DroolsBuildMarker> markers;
+
+        private ParsedFile(IFile file,
+                           List<DroolsBuildMarker> markers) {
+            this.file = file;
+            this.markers = markers;
+        }
+    }
+
+    private class ParseFileTask
+            implements
+            Callable<ParsedFile> {
+        private final IFile            file;
+        private final IProgressMonitor monitor;
+
+        private ParseFileTask(IFile file,
+                              IProgressMonitor monitor) {
+            this.file = file;
+            this.monitor = monitor;
+        }
+
+        public ParsedFile call() {
+            if ( monitor.isCanceled() ) {
+                return new ParsedFile( file,
+                                       null );
+            }
+            // the parser switches the context classloader to the project one,
+            // make sure a pooled thread never leaks it into the next task
+            ClassLoader oldLoader = Thread.currentThread().getContextClassLoader();
+            try {
+                return new ParsedFile( file,
+                                       parseFile( file,
+                                                  true ) );
+            } finally {
+                Thread.currentThread().setContextClassLoader( oldLoader );
+            }
+        }
+    }
+
+    private static class BuildThreadFactory
+            implements
+            ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread( r,
+                                        "Drools Builder Worker-" + threadNumber.getAndIncrement() );
+            thread.setDaemon( true );
+            thread.setContextClassLoader( DroolsBuilder.class.getClassLoader() );
+            return thread;
+        }
+    }
+
     private class DroolsBuildDeltaVisitor
             implements
             IResourceDeltaVisitor {
+        private final boolean         rebuildDependents;
+        private final Set<IResource>  parsedResources    = new HashSet<IResource>();
+        private final Set<String>     changedTypes       = new HashSet<String>();
+        private final List<IResource> changedConfigFiles = new ArrayList<IResource>();
+        private boolean               classpathChanged   = false;
+
+        private DroolsBuildDeltaVisitor(boolean rebuildDependents) {
+            this.rebuildDependents = rebuildDependents;
+        }
+
         public boolean visit(IResourceDelta delta) throws CoreException {
-            return parseResource( delta.getResource(),
-                                  false );
+            IResource res = delta.getResource();
+            if ( res.getType() == IResource.FILE ) {
+                String fileExtension = res.getFileExtension();
+                if ( ".classpath".equals( res.getName() )
+                     || ("jar".equals( fileExtension ) && !isInOutputDirectory( res )) ) {
+                    classpathChanged |= rebuildDependents;
+                } else if ( "java".equals( fileExtension ) ) {
+                    if ( rebuildDependents ) {
+                        addChangedType( res );
+                    }
+                } else if ( "dsl".equals( fileExtension ) || "package".equals( fileExtension ) ) {
+                    changedConfigFiles.add( res );
+                }
+            }
+            boolean visitChildren = parseResource( res,
+                                                   false );
+            if ( !visitChildren && res.getType() == IResource.FILE ) {
+                parsedResources.add( res );
+            }
+            return visitChildren;
+        }
+
+        private void addChangedType(IResource res) throws JavaModelException {
+            // works on handles only, so the name is also available for deleted files
+            IJavaElement element = JavaCore.create( res );
+            if ( element instanceof ICompilationUnit ) {
+                String packageName = element.getParent().getElementName();
+                String typeName = res.getFullPath().removeFileExtension().lastSegment();
+                changedTypes.add( packageName.length() == 0 ? typeName : packageName + "." + typeName );
+                if ( element.exists() ) {
+                    // secondary and nested types
+                    for ( IType type : ((ICompilationUnit) element).getAllTypes() ) {
+                        changedTypes.add( type.getFullyQualifiedName( '.' ) );
+                    }
+                }
+            }
         }
     }
 
@@ -265,6 +489,7 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
         if ( !res.exists() ) {
             removeProblemsFor( res );
             DroolsEclipsePlugin.getDefault().invalidateResource( res );
+            dependencyIndex.remove( res );
             return false;
         }
         return true;
@@ -288,91 +513,76 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
             return false;
         }
 
-        if ( res instanceof IFile) {
-        	String fileExtension = res.getFileExtension();
-	        if ( "drl".equals( fileExtension )
-                 || "gdrl".equals( fileExtension )
-                 || "rdrl".equals( fileExtension )
-                 || "dslr".equals( fileExtension )
-                 || "rdslr".equals( fileExtension )
-                 || ".package".equals( res.getName() ) ) {
-	            removeProblemsFor( res );
-	            try {
-	                if ( clean ) {
-	                    DroolsEclipsePlugin.getDefault().invalidateResource( res );
-	                }
-	                appendMarkers( res, parseDRLFile( (IFile) res ) );
-	            } catch ( Throwable t ) {
-	                DroolsEclipsePlugin.log( t );
-	                createMarker( res,
-	                              t.getMessage(),
-	                              -1 );
-	            }
-	            return false;
-	        } else if ( "xls".equals( fileExtension ) ) {
-	            removeProblemsFor( res );
-	            try {
-	                if ( clean ) {
-	                    DroolsEclipsePlugin.getDefault().invalidateResource( res );
-	                }
-	                appendMarkers( res, parseXLSFile( (IFile) res ) );
-	            } catch ( Throwable t ) {
-	                createMarker( res,
-	                              t.getMessage(),
-	                              -1 );
-	            }
-	            return false;
-	        } else if ( "csv".equals( fileExtension ) ) {
-	            removeProblemsFor( res );
-	            try {
-	                if ( clean ) {
-	                    DroolsEclipsePlugin.getDefault().invalidateResource( res );
-	                }
-	                appendMarkers( res, parseCSVFile( (IFile) res ) );
-	            } catch ( Throwable t ) {
-	                createMarker( res,
-	                              t.getMessage(),
-	                              -1 );
-	            }
-	            return false;
-	        } else if ( "rf".equals( fileExtension ) ) {
-	            removeProblemsFor( res );
-	            try {
-	                if ( clean ) {
-	                    DroolsEclipsePlugin.getDefault().invalidateResource( res );
-	                }
-	                appendMarkers( res, parseRuleFlowFile( (IFile) res ) );
-	            } catch ( Throwable t ) {
-	                createMarker( res,
-	                              t.getMessage(),
-	                              -1 );
-	            }
-	            return false;
-	        } else if ( "bpmn".equals( fileExtension )
-	                    || "bpmn2".equals( fileExtension ) ) {
-	            removeProblemsFor( res );
-	            try {
-	                if ( clean ) {
-	                    DroolsEclipsePlugin.getDefault().invalidateResource( res );
-	                }
-	                appendMarkers( res, parseRuleFlowFile( (IFile) res ) );
-	            } catch ( Throwable t ) {
-	                createMarker( res,
-	                              t.getMessage(),
-	                              -1 );
-	            }
-	            return false;
-	        }
+        if ( res instanceof IFile ) {
+            List<DroolsBuildMarker> markers = parseFile( (IFile) res,
+                                                         clean );
+            if ( markers != null ) {
+                pendingMarkers.put( res,
+                                    markers );
+                return false;
+            }
         }
         
         return true;
     }
 
+    /**
+     * Parses (and compiles) the given file and returns the markers to create for it,
+     * or null if the file is not a resource handled by this builder. It does not touch
+     * any workspace marker, so it is safe to call from a build worker thread.
+     */
+    protected List<DroolsBuildMarker> parseFile(IFile file,
+                                                boolean clean) {
+        String fileExtension = file.getFileExtension();
+        boolean drl = "drl".equals( fileExtension )
+                      || "gdrl".equals( fileExtension )
+                      || "rdrl".equals( fileExtension )
+                      || "dslr".equals( fileExtension )
+                      || "rdslr".equals( fileExtension )
+                      || ".package".equals( file.getName() );
+        boolean xls = "xls".equals( fileExtension );
+        boolean csv = "csv".equals( fileExtension );
+        boolean flow = "rf".equals( fileExtension )
+                       || "bpmn".equals( fileExtension )
+                       || "bpmn2".equals( fileExtension );
+        if ( !drl && !xls && !csv && !flow ) {
+            return null;
+        }
+        try {
+            if ( clean ) {
+                DroolsEclipsePlugin.getDefault().invalidateResource( file );
+            }
+            if ( drl ) {
+                return parseDRLFile( file );
+            } else if ( xls ) {
+                return parseXLSFile( file );
+            } else if ( csv ) {
+                return parseCSVFile( file );
+            }
+            return parseRuleFlowFile( file );
+        } catch ( Throwable t ) {
+            if ( drl ) {
+                DroolsEclipsePlugin.log( t );
+            }
+            List<DroolsBuildMarker> markers = new ArrayList<DroolsBuildMarker>();
+            markers.add( new DroolsBuildMarker( t.getMessage(),
+                                                -1 ) );
+            return markers;
+        }
+    }
+
     private void appendMarkers(DRLInfo drlInfo) {
+        appendMarkers( drlInfo.getResource(), getMarkers( drlInfo ) );
+    }
+
+    /**
+     * Returns the parser and builder errors of the given rules.
+     */
+    public static List<DroolsBuildMarker> getMarkers(DRLInfo drlInfo) {
         List<DroolsBuildMarker> markers = new ArrayList<DroolsBuildMarker>();
         markParseErrors( markers, drlInfo.getParserErrors() );
         markOtherErrors( markers, drlInfo.getBuilderErrors() );
-        appendMarkers( drlInfo.getResource(), markers );
+        return markers;
     }
 
     private void appendMarkers(IResource res,
@@ -389,14 +599,17 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
                                IOException;
     }
 
-    private List<DroolsBuildMarker> parseResource(ResourceParser resourceParser) {
+    private List<DroolsBuildMarker> parseResource(IFile file,
+                                                  ResourceParser resourceParser) {
         List<DroolsBuildMarker> markers = new ArrayList<DroolsBuildMarker>();
         try {
             DRLInfo drlInfo = resourceParser.parseResource();
+            dependencyIndex.update( file,
+                                    drlInfo.getPackageDescr(),
+                                    drlInfo.getPackage() );
 
             //parser errors
-            markParseErrors( markers, drlInfo.getParserErrors() );
-            markOtherErrors( markers, drlInfo.getBuilderErrors() );
+            markers.addAll( getMarkers( drlInfo ) );
         } catch ( DroolsParserException e ) {
             // we have an error thrown from DrlParser
             Throwable cause = e.getCause();
@@ -420,7 +633,7 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
     }
 
     private List<DroolsBuildMarker> parseDRLFile(final IFile file) {
-        return parseResource( new ResourceParser() {
+        return parseResource( file, new ResourceParser() {
             public DRLInfo parseResource() throws DroolsParserException {
                 return DroolsEclipsePlugin.getDefault().parseResource( file, true );
             }
@@ -428,7 +641,7 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
     }
 
     private List<DroolsBuildMarker> parseXLSFile(final IFile file) {
-        return parseResource( new ResourceParser() {
+        return parseResource( file, new ResourceParser() {
             public DRLInfo parseResource() throws DroolsParserException,
                                           DecisionTableParseException,
                                           CoreException {
@@ -440,7 +653,7 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
     }
 
     private List<DroolsBuildMarker> parseCSVFile(final IFile file) {
-        return parseResource( new ResourceParser() {
+        return parseResource( file, new ResourceParser() {
             public DRLInfo parseResource() throws DroolsParserException,
                                           CoreException {
                 SpreadsheetCompiler converter = new SpreadsheetCompiler();
@@ -456,7 +669,7 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
             return markers;
         }
         try {
-            String input = convertToString( file.getContents() );
+            String input = Util.getResourceContentsAsString( file );
             ProcessInfo processInfo =
                     DroolsEclipsePlugin.getDefault().parseProcess( input,
                                                                    file );
@@ -475,24 +688,11 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
         return markers;
     }
 
-    protected static String convertToString(final InputStream inputStream) throws IOException {
-        Reader reader = new InputStreamReader( inputStream );
-        final StringBuffer text = new StringBuffer();
-        final char[] buf = new char[1024];
-        int len = 0;
-        while ( (len = reader.read( buf )) >= 0 ) {
-            text.append( buf,
-                         0,
-                         len );
-        }
-        return text.toString();
-    }
-
     /**
      * This will create markers for parse errors. Parse errors mean that antlr
      * has picked up some major typos in the input source.
      */
-    protected void markParseErrors(List<DroolsBuildMarker> markers,
+    protected static void markParseErrors(List<DroolsBuildMarker> markers,
                                    List<DroolsError> parserErrors) {
         for ( Iterator<DroolsError> iter = parserErrors.iterator(); iter.hasNext(); ) {
             Object error = iter.next();
@@ -519,7 +719,7 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
     /**
      * This will create markers for build errors that happen AFTER parsing.
      */
-    private void markOtherErrors(List<DroolsBuildMarker> markers,
+    private static void markOtherErrors(List<DroolsBuildMarker> markers,
                                  DroolsError[] buildErrors) {
         // TODO are there warnings too?
         for ( int i = 0; i < buildErrors.length; i++ ) {
@@ -579,42 +779,130 @@ public class DroolsBuilder extends IncrementalProjectBuilder {
         }
     }
 
-    protected void createMarker(final IResource res,
-                                final String message,
-                                final int lineNumber) {
+    /**
+     * Adds a problem marker to the given resource at the end of the current build.
+     */
+    protected void createMarker(IResource res,
+                                String message,
+                                int lineNumber) {
+        List<DroolsBuildMarker> markers = pendingMarkers.get( res );
+        if ( markers == null ) {
+            markers = new ArrayList<DroolsBuildMarker>();
+            pendingMarkers.put( res,
+                                markers );
+        }
+        markers.add( new DroolsBuildMarker( message,
+                                            lineNumber ) );
+    }
+
+    /**
+     * Removes the problem markers of the given resource, and of all its members
+     * if it is a container, at the end of the current build, unless they are
+     * created again by the build.
+     */
+    protected void removeProblemsFor(IResource resource) {
+        if ( resource == null ) {
+            return;
+        }
+        if ( resource.getType() == IResource.FILE ) {
+            if ( !pendingMarkers.containsKey( resource ) ) {
+                pendingMarkers.put( resource,
+                                    new ArrayList<DroolsBuildMarker>() );
+            }
+        } else {
+            cleanedContainers.add( resource );
+        }
+    }
+
+    /**
+     * Brings the Drools problem markers in line with the ones collected during the
+     * build in a single workspace operation. Markers that didn't change are left
+     * untouched, so a build that reports the same errors fires no marker deltas.
+     */
+    private void applyMarkers() {
+        if ( pendingMarkers.isEmpty() && cleanedContainers.isEmpty() ) {
+            return;
+        }
+        final Map<IResource, List<DroolsBuildMarker>> markers = new LinkedHashMap<IResource, List<DroolsBuildMarker>>( pendingMarkers );
+        final List<IResource> containers = new ArrayList<IResource>( cleanedContainers );
+        pendingMarkers.clear();
+        cleanedContainers.clear();
         try {
             IWorkspaceRunnable r = new IWorkspaceRunnable() {
                 public void run(IProgressMonitor monitor) throws CoreException {
-                    IMarker marker = res
-                            .createMarker( IDroolsModelMarker.DROOLS_MODEL_PROBLEM_MARKER );
-                    marker.setAttribute( IMarker.MESSAGE,
-                                         message );
-                    marker.setAttribute( IMarker.SEVERITY,
-                                         IMarker.SEVERITY_ERROR );
-                    marker.setAttribute( IMarker.LINE_NUMBER,
-                                         lineNumber );
+                    for ( IResource container : containers ) {
+                        if ( !container.exists() ) {
+                            continue;
+                        }
+                        for ( IMarker marker : container.findMarkers( IDroolsModelMarker.DROOLS_MODEL_PROBLEM_MARKER,
+                                                                      false,
+                                                                      IResource.DEPTH_INFINITE ) ) {
+                            if ( !markers.containsKey( marker.getResource() ) ) {
+                                marker.delete();
+                            }
+                        }
+                    }
+                    for ( Map.Entry<IResource, List<DroolsBuildMarker>> entry : markers.entrySet() ) {
+                        if ( entry.getKey().exists() ) {
+                            updateMarkers( entry.getKey(),
+                                           entry.getValue() );
+                        }
+                    }
                 }
             };
-            res.getWorkspace().run( r,
-                                    null,
-                                    IWorkspace.AVOID_UPDATE,
-                                    null );
+            getProject().getWorkspace().run( r,
+                                             null,
+                                             IWorkspace.AVOID_UPDATE,
+                                             null );
         } catch ( CoreException e ) {
             DroolsEclipsePlugin.log( e );
         }
     }
 
-    protected void removeProblemsFor(IResource resource) {
-        try {
-            if ( resource != null && resource.exists() ) {
-                resource.deleteMarkers(
-                                        IDroolsModelMarker.DROOLS_MODEL_PROBLEM_MARKER,
-                                        false,
-                                        IResource.DEPTH_INFINITE );
+    private static void updateMarkers(IResource res,
+                                      List<DroolsBuildMarker> buildMarkers) throws CoreException {
+        Map<String, List<IMarker>> existing = new HashMap<String, List<IMarker>>();
+        for ( IMarker marker : res.findMarkers( IDroolsModelMarker.DROOLS_MODEL_PROBLEM_MARKER,
+                                                false,
+                                                IResource.DEPTH_ZERO ) ) {
+            String key = getMarkerKey( marker.getAttribute( IMarker.MESSAGE,
+                                                            null ),
+                                       marker.getAttribute( IMarker.LINE_NUMBER,
+                                                            -1 ) );
+            List<IMarker> sameKey = existing.get( key );
+            if ( sameKey == null ) {
+                sameKey = new ArrayList<IMarker>();
+                existing.put( key,
+                              sameKey );
             }
-        } catch ( CoreException e ) {
-            DroolsEclipsePlugin.log( e );
+            sameKey.add( marker );
+        }
+        for ( DroolsBuildMarker buildMarker : buildMarkers ) {
+            List<IMarker> sameKey = existing.get( getMarkerKey( buildMarker.getText(),
+                                                                buildMarker.getLine() ) );
+            if ( sameKey != null && !sameKey.isEmpty() ) {
+                // already there, keep it
+                sameKey.remove( sameKey.size() - 1 );
+                continue;
+            }
+            IMarker marker = res.createMarker( IDroolsModelMarker.DROOLS_MODEL_PROBLEM_MARKER );
+            marker.setAttribute( IMarker.MESSAGE,
+                                 buildMarker.getText() );
+            marker.setAttribute( IMarker.SEVERITY,
+                                 IMarker.SEVERITY_ERROR );
+            marker.setAttribute( IMarker.LINE_NUMBER,
+                                 buildMarker.getLine() );
         }
+        for ( List<IMarker> stale : existing.values() ) {
+            for ( IMarker marker : stale ) {
+                marker.delete();
+            }
+        }
+    }
+
+    private static String getMarkerKey(String message,
+                                       int line) {
+        return line + ":" + message;
     }
 
     private IProject[] getRequiredProjects(IProject project) {
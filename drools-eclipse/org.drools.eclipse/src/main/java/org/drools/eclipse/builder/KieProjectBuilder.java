@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.builder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.drools.compiler.kproject.models.KieModuleModelImpl;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.kie.api.KieServices;
+import org.kie.api.builder.KieBuilder;
+import org.kie.api.builder.KieFileSystem;
+import org.kie.api.builder.Message;
+import org.kie.api.io.ResourceType;
+import org.kie.internal.builder.IncrementalResults;
+import org.kie.internal.builder.InternalKieBuilder;
+import org.kie.internal.io.ResourceFactory;
+
+/**
+ * Keeps the KieFileSystem and KieBuilder of a kmodule project between builds,
+ * so that after the first full build only the changed resources are written
+ * and compiled again, using the incremental results of the KieBuilder to
+ * update the messages of the affected resources.
+ */
+public class KieProjectBuilder {
+
+    private final KieFileSystem                kfs;
+    private final KieBuilder                   kieBuilder;
+    private final Map<String, IResource>       resourcesByPath    = new HashMap<String, IResource>();
+    private final Map<IResource, List<Message>> messagesByResource = new HashMap<IResource, List<Message>>();
+
+    /**
+     * Writes all the given resources and builds the whole kmodule.
+     */
+    public KieProjectBuilder(Collection<IResource> resources) throws CoreException {
+        KieServices ks = KieServices.Factory.get();
+        kfs = ks.newKieFileSystem();
+        for ( IResource resource : resources ) {
+            if ( isKieResource( resource ) ) {
+                write( (IFile) resource );
+            } else if ( isKModule( resource ) ) {
+                kfs.writeKModuleXML( Util.getResourceContentsAsString( (IFile) resource ) );
+            }
+        }
+        kieBuilder = ks.newKieBuilder( kfs );
+        addMessages( kieBuilder.buildAll().getResults().getMessages() );
+    }
+
+    public static boolean isKieResource(IResource resource) {
+        return resource.getType() == IResource.FILE
+               && ResourceType.determineResourceType( resource.getName() ) != null;
+    }
+
+    public static boolean isKModule(IResource resource) {
+        return resource.getProjectRelativePath().toString().endsWith( KieModuleModelImpl.KMODULE_JAR_PATH );
+    }
+
+    /**
+     * Returns the resources of this kmodule.
+     */
+    public Collection<IResource> getResources() {
+        return resourcesByPath.values();
+    }
+
+    /**
+     * Writes the changed resources, deletes the removed ones and builds only them.
+     * Returns the resources whose messages changed.
+     */
+    public Set<IResource> build(Collection<IFile> changed,
+                                Collection<IResource> removed) throws CoreException {
+        List<String> paths = new ArrayList<String>();
+        for ( IFile file : changed ) {
+            paths.add( write( file ) );
+        }
+        Set<IResource> affected = new LinkedHashSet<IResource>();
+        for ( IResource resource : removed ) {
+            String path = resource.getProjectRelativePath().toString();
+            if ( resourcesByPath.remove( path ) != null ) {
+                kfs.delete( path );
+                paths.add( path );
+                messagesByResource.remove( resource );
+            }
+        }
+        if ( paths.isEmpty() ) {
+            return affected;
+        }
+        IncrementalResults results = ((InternalKieBuilder) kieBuilder).createFileSet( paths.toArray( new String[paths.size()] ) ).build();
+        for ( Message message : results.getRemovedMessages() ) {
+            IResource resource = getResource( message.getPath() );
+            List<Message> messages = messagesByResource.get( resource );
+            if ( messages != null ) {
+                removeMessage( messages,
+                               message );
+                affected.add( resource );
+            }
+        }
+        affected.addAll( addMessages( results.getAddedMessages() ) );
+        return affected;
+    }
+
+    /**
+     * Returns the markers for the current messages of the given resource.
+     */
+    public List<DroolsBuildMarker> getMarkers(IResource resource) {
+        List<DroolsBuildMarker> markers = new ArrayList<DroolsBuildMarker>();
+        List<Message> messages = messagesByResource.get( resource );
+        if ( messages != null ) {
+            for ( Message message : messages ) {
+                markers.add( new DroolsBuildMarker( message.getText(),
+                                                    message.getLine() ) );
+            }
+        }
+        return markers;
+    }
+
+    private String write(IFile file) throws CoreException {
+        String resourcePath = file.getProjectRelativePath().toString();
+        kfs.write( resourcePath,
+                   ResourceFactory.newInputStreamResource( file.getContents() ) );
+        resourcesByPath.put( resourcePath,
+                             file );
+        return resourcePath;
+    }
+
+    private Set<IResource> addMessages(List<Message> messages) {
+        Set<IResource> affected = new LinkedHashSet<IResource>();
+        for ( Message message : messages ) {
+            IResource resource = getResource( message.getPath() );
+            if ( resource != null ) {
+                List<Message> resourceMessages = messagesByResource.get( resource );
+                if ( resourceMessages == null ) {
+                    resourceMessages = new ArrayList<Message>();
+                    messagesByResource.put( resource,
+                                            resourceMessages );
+                }
+                resourceMessages.add( message );
+                affected.add( resource );
+            }
+        }
+        return affected;
+    }
+
+    private IResource getResource(String path) {
+        if ( path == null ) {
+            return null;
+        }
+        IResource resource = resourcesByPath.get( path );
+        if ( resource == null ) {
+            resource = resourcesByPath.get( "src/main/resources/" + path );
+        }
+        return resource;
+    }
+
+    private static void removeMessage(List<Message> messages,
+                                      Message removed) {
+        for ( Iterator<Message> iterator = messages.iterator(); iterator.hasNext(); ) {
+            Message message = iterator.next();
+            if ( message.getLine() == removed.getLine()
+                 && (message.getText() == null ? removed.getText() == null : message.getText().equals( removed.getText() )) ) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+}
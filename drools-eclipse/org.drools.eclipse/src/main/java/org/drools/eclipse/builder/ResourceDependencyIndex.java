@@ -0,0 +1,308 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.builder;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.drools.compiler.lang.descr.ConditionalElementDescr;
+import org.drools.compiler.lang.descr.FunctionImportDescr;
+import org.drools.compiler.lang.descr.GlobalDescr;
+import org.drools.compiler.lang.descr.ImportDescr;
+import org.drools.compiler.lang.descr.PackageDescr;
+import org.drools.compiler.lang.descr.PatternDescr;
+import org.drools.compiler.lang.descr.RuleDescr;
+import org.drools.core.base.ClassObjectType;
+import org.drools.core.rule.Declaration;
+import org.drools.core.rule.GroupElement;
+import org.drools.core.rule.Package;
+import org.drools.core.rule.Pattern;
+import org.drools.core.rule.Rule;
+import org.drools.core.rule.RuleConditionElement;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IResource;
+
+/**
+ * Keeps track of the Java types and packages every rule resource of a project
+ * depends on, so an incremental build only needs to rebuild the resources
+ * affected by a change instead of the whole project.
+ *
+ * A resource depends on every type it imports, uses as a global, imports
+ * functions from or references by its fully qualified name in a pattern, and
+ * on every type of its own package and of its wildcard imports. Once it is
+ * compiled it also depends on the classes its patterns and bindings resolved
+ * to, their supertypes and the types returned by their getters, so a change to
+ * a type it only uses indirectly is found without searching the Java sources.
+ */
+public class ResourceDependencyIndex {
+
+    private final Map<IResource, Set<String>> typesByResource    = new HashMap<IResource, Set<String>>();
+    private final Map<IResource, Set<String>> packagesByResource = new HashMap<IResource, Set<String>>();
+    private final Map<String, Set<IResource>> resourcesByType    = new HashMap<String, Set<IResource>>();
+    private final Map<String, Set<IResource>> resourcesByPackage = new HashMap<String, Set<IResource>>();
+
+    public synchronized boolean isEmpty() {
+        return typesByResource.isEmpty();
+    }
+
+    public synchronized void clear() {
+        typesByResource.clear();
+        packagesByResource.clear();
+        resourcesByType.clear();
+        resourcesByPackage.clear();
+    }
+
+    public void update(IResource resource,
+                       PackageDescr packageDescr) {
+        update( resource,
+                packageDescr,
+                null );
+    }
+
+    /**
+     * Replaces the dependencies of the given resource by those of its current
+     * contents, and of the package compiled from them if any.
+     */
+    public void update(IResource resource,
+                       PackageDescr packageDescr,
+                       Package compiledPackage) {
+        if ( packageDescr == null ) {
+            remove( resource );
+            return;
+        }
+
+        Set<String> types = new HashSet<String>();
+        Set<String> packages = new HashSet<String>();
+        if ( packageDescr.getNamespace() != null ) {
+            packages.add( packageDescr.getNamespace() );
+        }
+        for ( ImportDescr importDescr : packageDescr.getImports() ) {
+            String target = importDescr.getTarget();
+            if ( target == null ) {
+                continue;
+            }
+            if ( target.endsWith( ".*" ) ) {
+                packages.add( target.substring( 0, target.length() - 2 ) );
+            } else {
+                addType( types, target );
+            }
+        }
+        for ( FunctionImportDescr functionImportDescr : packageDescr.getFunctionImports() ) {
+            addType( types, functionImportDescr.getTarget() );
+        }
+        for ( GlobalDescr globalDescr : packageDescr.getGlobals() ) {
+            addType( types, globalDescr.getType() );
+        }
+        for ( RuleDescr ruleDescr : packageDescr.getRules() ) {
+            if ( ruleDescr.getLhs() != null ) {
+                addPatternTypes( types, ruleDescr.getLhs() );
+            }
+            Rule rule = compiledPackage == null ? null : compiledPackage.getRule( ruleDescr.getName() );
+            if ( rule != null ) {
+                addCompiledTypes( types, rule.getLhs() );
+            }
+        }
+
+        // the classes are looked into without holding the lock
+        put( resource, types, packages );
+    }
+
+    private synchronized void put(IResource resource,
+                                  Set<String> types,
+                                  Set<String> packages) {
+        remove( resource );
+        typesByResource.put( resource, types );
+        packagesByResource.put( resource, packages );
+        for ( String type : types ) {
+            addReverse( resourcesByType, type, resource );
+        }
+        for ( String pkg : packages ) {
+            addReverse( resourcesByPackage, pkg, resource );
+        }
+    }
+
+    public synchronized void remove(IResource resource) {
+        Set<String> types = typesByResource.remove( resource );
+        if ( types != null ) {
+            for ( String type : types ) {
+                removeReverse( resourcesByType, type, resource );
+            }
+        }
+        Set<String> packages = packagesByResource.remove( resource );
+        if ( packages != null ) {
+            for ( String pkg : packages ) {
+                removeReverse( resourcesByPackage, pkg, resource );
+            }
+        }
+    }
+
+    /**
+     * Returns the resources depending on any of the given fully qualified type names.
+     */
+    public synchronized Set<IResource> getDependentResources(Collection<String> typeNames) {
+        Set<IResource> result = new HashSet<IResource>();
+        for ( String typeName : typeNames ) {
+            Set<IResource> byType = resourcesByType.get( typeName );
+            if ( byType != null ) {
+                result.addAll( byType );
+            }
+            int lastDot = typeName.lastIndexOf( '.' );
+            Set<IResource> byPackage = resourcesByPackage.get( lastDot < 0 ? "" : typeName.substring( 0, lastDot ) );
+            if ( byPackage != null ) {
+                result.addAll( byPackage );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the resources that could pick up the given .package or .dsl file:
+     * a .package file applies to its own folder, while a .dsl file is also
+     * looked up one folder above the rule file and in the project root.
+     */
+    public synchronized Set<IResource> getResourcesUsing(IResource configFile) {
+        Set<IResource> result = new HashSet<IResource>();
+        IContainer folder = configFile.getParent();
+        boolean dsl = "dsl".equals( configFile.getFileExtension() );
+        for ( IResource resource : typesByResource.keySet() ) {
+            IContainer parent = resource.getParent();
+            if ( folder.equals( parent )
+                 || (dsl && (folder.getType() == IResource.PROJECT || folder.equals( parent.getParent() ))) ) {
+                result.add( resource );
+            }
+        }
+        return result;
+    }
+
+    private void addPatternTypes(Set<String> types,
+                                 ConditionalElementDescr ce) {
+        for ( Object descr : ce.getDescrs() ) {
+            if ( descr instanceof PatternDescr ) {
+                String objectType = ((PatternDescr) descr).getObjectType();
+                if ( objectType != null && objectType.indexOf( '.' ) > 0 ) {
+                    addType( types, objectType );
+                }
+            } else if ( descr instanceof ConditionalElementDescr ) {
+                addPatternTypes( types, (ConditionalElementDescr) descr );
+            }
+        }
+    }
+
+    private void addCompiledTypes(Set<String> types,
+                                  GroupElement groupElement) {
+        for ( RuleConditionElement element : groupElement.getChildren() ) {
+            if ( element instanceof Pattern ) {
+                Pattern pattern = (Pattern) element;
+                if ( pattern.getObjectType() instanceof ClassObjectType ) {
+                    Class< ? > clazz = ((ClassObjectType) pattern.getObjectType()).getClassType();
+                    addClass( types, clazz );
+                    addGetterTypes( types, clazz );
+                }
+                for ( Declaration declaration : pattern.getDeclarations().values() ) {
+                    if ( declaration.getExtractor() != null ) {
+                        addClass( types, declaration.getExtractor().getExtractToClass() );
+                    }
+                }
+            } else if ( element instanceof GroupElement ) {
+                addCompiledTypes( types, (GroupElement) element );
+            }
+        }
+    }
+
+    /**
+     * Adds the types of the fields a constraint can navigate, one level deep.
+     */
+    private static void addGetterTypes(Set<String> types,
+                                       Class< ? > clazz) {
+        try {
+            for ( Method method : clazz.getMethods() ) {
+                if ( method.getParameterTypes().length == 0 && method.getDeclaringClass() != Object.class ) {
+                    addClass( types, method.getReturnType() );
+                }
+            }
+        } catch ( LinkageError e ) {
+            // a type it refers to is not on the classpath, the rule doesn't compile anyway
+        }
+    }
+
+    /**
+     * Adds a class and its supertypes, leaving out the JDK ones which don't
+     * change with the project.
+     */
+    private static void addClass(Set<String> types,
+                                 Class< ? > clazz) {
+        while ( clazz != null && clazz.isArray() ) {
+            clazz = clazz.getComponentType();
+        }
+        if ( clazz == null || clazz.isPrimitive() || clazz.getName().startsWith( "java." )
+             || types.contains( clazz.getName().replace( '$', '.' ) ) ) {
+            return;
+        }
+        addType( types, clazz.getName() );
+        addClass( types, clazz.getSuperclass() );
+        for ( Class< ? > superInterface : clazz.getInterfaces() ) {
+            addClass( types, superInterface );
+        }
+    }
+
+    /**
+     * Adds the given name and all its dotted prefixes, so that a change to an
+     * outer class also matches its nested classes and imported static functions.
+     */
+    private static void addType(Set<String> types,
+                                String typeName) {
+        if ( typeName == null ) {
+            return;
+        }
+        int generics = typeName.indexOf( '<' );
+        if ( generics >= 0 ) {
+            typeName = typeName.substring( 0, generics );
+        }
+        typeName = typeName.replace( '$', '.' ).trim();
+        while ( typeName.indexOf( '.' ) > 0 ) {
+            types.add( typeName );
+            typeName = typeName.substring( 0, typeName.lastIndexOf( '.' ) );
+        }
+    }
+
+    private static void addReverse(Map<String, Set<IResource>> map,
+                                   String key,
+                                   IResource resource) {
+        Set<IResource> resources = map.get( key );
+        if ( resources == null ) {
+            resources = new HashSet<IResource>();
+            map.put( key, resources );
+        }
+        resources.add( resource );
+    }
+
+    private static void removeReverse(Map<String, Set<IResource>> map,
+                                      String key,
+                                      IResource resource) {
+        Set<IResource> resources = map.get( key );
+        if ( resources != null ) {
+            resources.remove( resource );
+            if ( resources.isEmpty() ) {
+                map.remove( key );
+            }
+        }
+    }
+}
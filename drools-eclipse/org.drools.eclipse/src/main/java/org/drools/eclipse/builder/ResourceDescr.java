@@ -29,7 +29,7 @@ public class ResourceDescr {
 		}
 		
 		try {
-			descr.content = new String( Util.getResourceContentsAsCharArray( file ) );
+			descr.content = Util.getResourceContentsAsString( file );
 			descr.droolsResource = ResourceFactory.newInputStreamResource( file.getContents() );
 		} catch (Exception e) {
 			DroolsEclipsePlugin.log( e );
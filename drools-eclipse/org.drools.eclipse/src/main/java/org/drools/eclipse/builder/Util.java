@@ -16,12 +16,14 @@
 
 package org.drools.eclipse.builder;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 
 import org.drools.eclipse.DroolsEclipsePlugin;
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
@@ -32,10 +34,21 @@ import org.eclipse.core.runtime.Status;
  */
 public class Util {
 
-    public static final char[] NO_CHAR = new char[0];
     private static final int DEFAULT_READING_SIZE = 8192;
-    
-    public static char[] getResourceContentsAsCharArray(IFile file) throws CoreException {
+
+    // transfer buffer of every reading thread, so reading a file doesn't allocate one
+    private static final ThreadLocal<char[]> READING_BUFFER = new ThreadLocal<char[]>() {
+        protected char[] initialValue() {
+            return new char[DEFAULT_READING_SIZE];
+        }
+    };
+
+    /**
+     * Reads the contents of the given file, decoded with its charset, into a String.
+     * The builder is sized from the file length, so the contents are copied only
+     * once into the result.
+     */
+    public static String getResourceContentsAsString(IFile file) throws CoreException {
         String encoding = null;
         try {
             encoding = file.getCharset();
@@ -43,11 +56,16 @@ public class Util {
         catch(CoreException ce) {
             // do not use any encoding
         }
-        
-        InputStream stream= null;
-        stream = new BufferedInputStream(file.getContents(true));
+
+        InputStream stream = file.getContents(true);
         try {
-            return getInputStreamAsCharArray(stream, -1, encoding);
+            Reader reader = encoding == null ? new InputStreamReader(stream)
+                    : new InputStreamReader(stream, encoding);
+            String contents = readFully(reader, getLengthHint(file));
+            if (contents.length() > 0 && contents.charAt(0) == 0xFEFF && "UTF-8".equals(encoding)) {
+                return contents.substring(1);
+            }
+            return contents;
         } catch (IOException e) {
             throw new CoreException(new Status(IStatus.ERROR, DroolsEclipsePlugin.PLUGIN_ID, IStatus.ERROR, "IOException", e));
         } finally {
@@ -59,63 +77,40 @@ public class Util {
         }
     }
 
-    private static char[] getInputStreamAsCharArray(InputStream stream,
-            int length, String encoding) throws IOException {
-        InputStreamReader reader = null;
-        reader = encoding == null ? new InputStreamReader(stream)
-                : new InputStreamReader(stream, encoding);
-        char[] contents;
-        if (length == -1) {
-            contents = NO_CHAR;
-            int contentsLength = 0;
-            int amountRead = -1;
-            do {
-                int amountRequested = Math.max(stream.available(),
-                        DEFAULT_READING_SIZE);
-                if (contentsLength + amountRequested > contents.length) {
-                    System.arraycopy(contents, 0,
-                            contents = new char[contentsLength
-                                    + amountRequested], 0, contentsLength);
-                }
-                amountRead = reader.read(contents, contentsLength,
-                        amountRequested);
-
-                if (amountRead > 0) {
-                    contentsLength += amountRead;
-                }
-            } while (amountRead != -1);
-
-            int start = 0;
-            if (contentsLength > 0 && "UTF-8".equals(encoding)) {
-                if (contents[0] == 0xFEFF) {
-                    contentsLength--;
-                    start = 1;
-                }
-            }
-            if (contentsLength < contents.length) {
-                System.arraycopy(contents, start,
-                        contents = new char[contentsLength], 0, contentsLength);
-            }
-        } else {
-            contents = new char[length];
-            int len = 0;
-            int readSize = 0;
-            while ((readSize != -1) && (len != length)) {
-                len += readSize;
-                readSize = reader.read(contents, len, length - len);
-            }
-            int start = 0;
-            if (length > 0 && "UTF-8".equals(encoding)) {
-                if (contents[0] == 0xFEFF) {
-                    len--;
-                    start = 1;
+    /**
+     * Returns the length in bytes of the given file, which bounds the number of
+     * characters it decodes to, or -1 if it is not known.
+     */
+    private static int getLengthHint(IFile file) {
+        try {
+            if (file.getLocationURI() != null) {
+                IFileStore store = EFS.getStore(file.getLocationURI());
+                long length = store.fetchInfo().getLength();
+                if (length >= 0 && length < Integer.MAX_VALUE) {
+                    return (int) length;
                 }
             }
-            if (len != length)
-                System.arraycopy(contents, start, (contents = new char[len]),
-                        0, len);
+        } catch (CoreException e) {
+            // fall back to a growing buffer
         }
+        return -1;
+    }
 
-        return contents;
+    private static String readFully(Reader reader, int lengthHint) throws IOException {
+        StringBuilder sb = new StringBuilder(lengthHint >= 0 ? lengthHint : DEFAULT_READING_SIZE);
+        char[] buffer = READING_BUFFER.get();
+        int amountRead;
+        while ((amountRead = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, amountRead);
+        }
+        return sb.toString();
+    }
+    
+    public static String getReaderContentsAsString(Reader reader) throws IOException {
+        try {
+            return readFully(reader, -1);
+        } finally {
+            reader.close();
+        }
     }
 }
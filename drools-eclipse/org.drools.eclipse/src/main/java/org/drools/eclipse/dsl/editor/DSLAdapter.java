@@ -20,16 +20,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.drools.compiler.lang.dsl.DSLMapping;
-import org.drools.compiler.lang.dsl.DSLMappingEntry;
-import org.drools.compiler.lang.dsl.DSLTokenizedMappingFile;
 import org.drools.eclipse.DroolsEclipsePlugin;
 import org.drools.eclipse.builder.Util;
+import org.drools.eclipse.dsl.editor.DSLConfigCache.DSLConfig;
 import org.drools.eclipse.editors.completion.DSLTree;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
@@ -45,6 +44,9 @@ import org.eclipse.core.runtime.CoreException;
  * It will look for a DSL configuration, as named in the rule file, in the same directory as the rule file.
  * Failing this, it will search one directory above the rule file. 
  * Failing that, it will search the root of the project in the workspace.
+ * 
+ * The parsed DSL is shared with the other editors using the same file, so an
+ * adapter must be disposed of once the editor is done with it.
  */
 public class DSLAdapter {
 
@@ -53,6 +55,7 @@ public class DSLAdapter {
     private List<String> conditionProposals = new ArrayList<String>();
     private List<String> consequenceProposals = new ArrayList<String>();
     private DSLTree dslTree = new DSLTree();
+    private DSLConfig config;
     
     //to dig out the expander, without using the parser.
     private static final Pattern EXPANDER_PATTERN = Pattern.compile( "\\n\\s*expander\\s*(.*)\\.dsl", 
@@ -82,7 +85,11 @@ public class DSLAdapter {
         if (res instanceof IFile) {
             IFile dslConf = (IFile) res;
             if (dslConf.exists()) {
-                return new InputStreamReader(dslConf.getContents());
+                DroolsEclipsePlugin plugin = DroolsEclipsePlugin.getDefault();
+                if (plugin == null) {
+                    return new InputStreamReader(dslConf.getContents());
+                }
+                return new StringReader(plugin.getDSLConfigCache().getContent(dslConf));
             }
         }
         return null;
@@ -96,15 +103,11 @@ public class DSLAdapter {
         if (res instanceof IFile) {
             IFile dslConf = (IFile) res;
             if (dslConf.exists()) {
-                InputStream stream = null;
                 try {
-                    stream = dslConf.getContents();
-                    readConfig( stream );
+                    setConfig( DroolsEclipsePlugin.getDefault().getDSLConfigCache().acquire( dslConf ) );
                     valid = true;
                 } catch ( Exception e ) {
                     throw new IllegalStateException("Unable to open DSL config file. (Exception: " + e.getMessage() + ")");
-                } finally {
-                    closeStream( stream );
                 }
                 
             }
@@ -121,31 +124,35 @@ public class DSLAdapter {
     
     /** This will load in the DSL config file, using the DSLMapping from drools-compiler */
     void readConfig(InputStream stream) throws IOException, CoreException {
-        DSLTokenizedMappingFile file = new DSLTokenizedMappingFile();
-        file.parseAndLoad(new InputStreamReader(stream));
+        DSLConfig loaded = new DSLConfig( null, 0, Util.getReaderContentsAsString( new InputStreamReader( stream ) ) );
+        loaded.load();
+        conditionProposals = loaded.getConditionProposals();
+        consequenceProposals = loaded.getConsequenceProposals();
+        dslTree = loaded.getDSLTree();
+    }
 
-        DSLMapping grammar = file.getMapping();
-        List<DSLMappingEntry> conditions = grammar.getEntries( DSLMappingEntry.CONDITION );
-        List<DSLMappingEntry> consequences = grammar.getEntries( DSLMappingEntry.CONSEQUENCE );
-        
-        conditionProposals = buildProposals(conditions);
-        consequenceProposals = buildProposals(consequences);
-        
-        dslTree.buildTree(grammar);
+    private void setConfig(DSLConfig config) {
+        this.config = config;
+        conditionProposals = config.getConditionProposals();
+        consequenceProposals = config.getConsequenceProposals();
+        dslTree = config.getDSLTree();
     }
 
-    private List<String> buildProposals(List<DSLMappingEntry> suggestions) {
-        List<String> result = new ArrayList<String>(suggestions.size());
-        for (DSLMappingEntry text : suggestions) {
-            result.add(text.getMappingKey());
+    /**
+     * Releases the shared DSL, this adapter can't be used anymore afterwards.
+     */
+    public void dispose() {
+        if (config != null) {
+            DroolsEclipsePlugin.getDefault().getDSLConfigCache().release( config );
+            config = null;
         }
-        return result;
     }
 
-    private void closeStream(InputStream stream) {
-        if (stream != null) try {
-            stream.close();
-        } catch ( IOException e ) {}
+    /**
+     * Returns true once the DSL file changed since it was loaded.
+     */
+    public boolean isStale() {
+        return config != null && config.isStale();
     }
 
     DSLAdapter() {
@@ -164,7 +171,7 @@ public class DSLAdapter {
                     if (packageDef instanceof IFile) {
                         IFile file = (IFile) packageDef;
                         try {
-                            String pContent = new String(Util.getResourceContentsAsCharArray(file));
+                            String pContent = Util.getResourceContentsAsString(file);
                             dslConfigName = findDSLConfigName( pContent );
                         } catch (CoreException e) {
                             DroolsEclipsePlugin.log(e);
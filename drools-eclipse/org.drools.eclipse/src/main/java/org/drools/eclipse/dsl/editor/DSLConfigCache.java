@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.dsl.editor;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.compiler.lang.dsl.DSLMapping;
+import org.drools.compiler.lang.dsl.DSLMappingEntry;
+import org.drools.compiler.lang.dsl.DSLTokenizedMappingFile;
+import org.drools.eclipse.builder.Util;
+import org.drools.eclipse.editors.completion.DSLTree;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.CoreException;
+
+/**
+ * Shares the content and the parsed sentences of every .dsl file of the
+ * workspace, instead of reading and parsing the file again for every editor
+ * using it and for every DSL rule file that is built.
+ *
+ * The content of a file is kept until the file changes. The sentences of a file
+ * are parsed by the first editor acquiring them, and kept until the last editor
+ * using them releases them.
+ */
+public class DSLConfigCache {
+
+    private final Map<IFile, DSLConfig> configs = new HashMap<IFile, DSLConfig>();
+
+    /**
+     * Returns the parsed DSL of the given file, to be released once the caller
+     * is done with it.
+     */
+    public DSLConfig acquire(IFile file) throws CoreException, IOException {
+        DSLConfig config;
+        synchronized ( this ) {
+            config = getCurrent( file );
+            config.references++;
+        }
+        boolean loaded = false;
+        try {
+            // parse outside of the lock of the cache, only the users of this file wait for it
+            config.load();
+            loaded = true;
+        } finally {
+            if ( !loaded ) {
+                // whatever the parser threw, don't keep the reference of this caller
+                release( config );
+            }
+        }
+        return config;
+    }
+
+    public synchronized void release(DSLConfig config) {
+        if ( config != null && --config.references == 0 ) {
+            config.unload();
+        }
+    }
+
+    /**
+     * Returns the content of the given file.
+     */
+    public synchronized String getContent(IFile file) throws CoreException {
+        return getCurrent( file ).content;
+    }
+
+    /**
+     * Discards the files changed or removed by the given delta, but not those
+     * whose markers changed only.
+     */
+    public synchronized void resourceChanged(IResourceDelta delta) {
+        for ( Iterator<DSLConfig> iterator = configs.values().iterator(); iterator.hasNext(); ) {
+            DSLConfig config = iterator.next();
+            IResourceDelta member = delta.findMember( config.file.getFullPath() );
+            if ( member != null
+                 && (member.getKind() == IResourceDelta.REMOVED || (member.getFlags() & (IResourceDelta.CONTENT | IResourceDelta.REPLACED)) != 0) ) {
+                iterator.remove();
+                config.stale = true;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for ( DSLConfig config : configs.values() ) {
+            config.stale = true;
+        }
+        configs.clear();
+    }
+
+    private DSLConfig getCurrent(IFile file) throws CoreException {
+        DSLConfig config = configs.get( file );
+        // the stamp is taken before reading, so a change while reading is noticed next time
+        long stamp = file.getModificationStamp();
+        if ( config == null || config.stamp != stamp ) {
+            if ( config != null ) {
+                config.stale = true;
+            }
+            config = new DSLConfig( file,
+                                    stamp,
+                                    Util.getResourceContentsAsString( file ) );
+            configs.put( file,
+                         config );
+        }
+        return config;
+    }
+
+    /**
+     * The content of a .dsl file, and its sentences once they are loaded.
+     */
+    public static class DSLConfig {
+        private final IFile     file;
+        private final long      stamp;
+        private final String    content;
+        private List<String>    conditionProposals;
+        private List<String>    consequenceProposals;
+        private DSLTree         dslTree;
+        private int             references;
+        private volatile boolean stale;
+
+        DSLConfig(IFile file,
+                  long stamp,
+                  String content) {
+            this.file = file;
+            this.stamp = stamp;
+            this.content = content;
+        }
+
+        /**
+         * Parses the sentences of the content, unless they were parsed already.
+         */
+        synchronized void load() throws IOException {
+            if ( dslTree != null ) {
+                return;
+            }
+            DSLTokenizedMappingFile mappingFile = new DSLTokenizedMappingFile();
+            mappingFile.parseAndLoad( new StringReader( content ) );
+
+            DSLMapping grammar = mappingFile.getMapping();
+            conditionProposals = buildProposals( grammar.getEntries( DSLMappingEntry.CONDITION ) );
+            consequenceProposals = buildProposals( grammar.getEntries( DSLMappingEntry.CONSEQUENCE ) );
+            DSLTree tree = new DSLTree();
+            tree.buildTree( grammar );
+            dslTree = tree;
+        }
+
+        private synchronized void unload() {
+            conditionProposals = null;
+            consequenceProposals = null;
+            dslTree = null;
+        }
+
+        private static List<String> buildProposals(List<DSLMappingEntry> suggestions) {
+            List<String> result = new ArrayList<String>( suggestions.size() );
+            for ( DSLMappingEntry text : suggestions ) {
+                result.add( text.getMappingKey() );
+            }
+            return Collections.unmodifiableList( result );
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        public synchronized List<String> getConditionProposals() {
+            return conditionProposals;
+        }
+
+        public synchronized List<String> getConsequenceProposals() {
+            return consequenceProposals;
+        }
+
+        public synchronized DSLTree getDSLTree() {
+            return dslTree;
+        }
+
+        /**
+         * Returns true once the file changed since this content was read.
+         */
+        public boolean isStale() {
+            return stale;
+        }
+    }
+}
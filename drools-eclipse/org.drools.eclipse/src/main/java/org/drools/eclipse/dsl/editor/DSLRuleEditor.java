@@ -27,12 +27,16 @@ public class DSLRuleEditor extends DRLRuleEditor {
     protected DSLAdapter dslAdapter;
 
     public DSLAdapter getDSLAdapter() {
+        if (dslAdapter != null && dslAdapter.isStale()) {
+            // the DSL file changed
+            disposeDSLAdapter();
+        }
         if (dslAdapter == null) {
             try {
                 String content = getSourceViewer().getDocument().get();
                 dslAdapter = new DSLAdapter(content, ((FileEditorInput) getEditorInput()).getFile());
                 if (!dslAdapter.isValid()) {
-                    dslAdapter = null;
+                    disposeDSLAdapter();
                 }
             } catch (CoreException exc) {
                 dslAdapter = null;
@@ -48,6 +52,18 @@ public class DSLRuleEditor extends DRLRuleEditor {
     public void doSave(IProgressMonitor monitor) {
         super.doSave(monitor);
         // remove cached content
-        dslAdapter = null;
+        disposeDSLAdapter();
+    }
+
+    public void dispose() {
+        disposeDSLAdapter();
+        super.dispose();
+    }
+
+    private void disposeDSLAdapter() {
+        if (dslAdapter != null) {
+            dslAdapter.dispose();
+            dslAdapter = null;
+        }
     }
 }
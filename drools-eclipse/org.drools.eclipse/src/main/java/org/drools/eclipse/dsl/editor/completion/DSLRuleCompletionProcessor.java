@@ -27,6 +27,7 @@ import org.drools.eclipse.DroolsPluginImages;
 import org.drools.eclipse.dsl.editor.DSLAdapter;
 import org.drools.eclipse.dsl.editor.DSLRuleEditor;
 import org.drools.eclipse.editors.AbstractRuleEditor;
+import org.drools.eclipse.editors.completion.CompletionRequest;
 import org.drools.eclipse.editors.completion.RuleCompletionProcessor;
 import org.drools.eclipse.editors.completion.RuleCompletionProposal;
 import org.eclipse.jface.text.contentassist.ICompletionProposal;
@@ -53,7 +54,9 @@ public class DSLRuleCompletionProcessor extends RuleCompletionProcessor {
         // super.addRHSCompletionProposals(list, documentOffset, prefix, backText, conditions, consequence);
         DSLAdapter adapter = getDSLRuleEditor().getDSLAdapter();
         if (adapter != null) {
+            long start = System.nanoTime();
             List<String> dslConsequences = adapter.getDSLTree().getConsequenceChildrenList(prefix, true);
+            CompletionRequest.recordTime("DSL", start);
             addDSLProposals(list, documentOffset, prefix, dslConsequences);
         }
     }
@@ -75,7 +78,9 @@ public class DSLRuleCompletionProcessor extends RuleCompletionProcessor {
             }
             last = last.trim();
             // pass the last string in the backText to getProposals
+            long start = System.nanoTime();
             List<String> dslConditions = this.getProposals(adapter, lastobj, last, firstLine);
+            CompletionRequest.recordTime("DSL", start);
             // if we couldn't find any matches, we add the list from
             // the DSLAdapter so that there's something
 //            if (dslConditions.size() == 0) {
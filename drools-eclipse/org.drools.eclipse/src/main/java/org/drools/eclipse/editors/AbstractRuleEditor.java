@@ -16,14 +16,20 @@
 
 package org.drools.eclipse.editors;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.drools.eclipse.DroolsEclipsePlugin;
 import org.drools.eclipse.editors.outline.RuleContentOutlinePage;
 import org.drools.eclipse.editors.scanners.RuleEditorMessages;
 import org.drools.eclipse.preferences.IDroolsConstants;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.debug.ui.actions.ToggleBreakpointAction;
 import org.eclipse.jface.action.IAction;
@@ -39,6 +45,7 @@ import org.eclipse.jface.text.source.projection.ProjectionSupport;
 import org.eclipse.jface.text.source.projection.ProjectionViewer;
 import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.IFileEditorInput;
 import org.eclipse.ui.editors.text.TextEditor;
 import org.eclipse.ui.texteditor.IDocumentProvider;
@@ -59,6 +66,9 @@ public class AbstractRuleEditor extends TextEditor {
     protected Annotation[] oldAnnotations;
     protected ProjectionAnnotationModel annotationModel;
     protected DroolsPairMatcher bracketMatcher = new DroolsPairMatcher();
+    protected DocumentParseSnapshot parseSnapshot;
+    protected DocumentStructure structure;
+    protected DocumentDiagnostics diagnostics;
 
     public AbstractRuleEditor() {
         setSourceViewerConfiguration(createSourceViewerConfiguration());
@@ -84,6 +94,28 @@ public class AbstractRuleEditor extends TextEditor {
         // turn projection mode on
         viewer.doOperation(ProjectionViewer.TOGGLE);
         annotationModel = viewer.getProjectionAnnotationModel();
+        parseSnapshot = new DocumentParseSnapshot(this);
+        parseSnapshot.install(viewer);
+        structure = new DocumentStructure();
+        structure.install(viewer);
+        diagnostics = new DocumentDiagnostics(this);
+        diagnostics.install(viewer);
+    }
+
+    /**
+     * Returns the shared parse result of the current text of this editor, or null
+     * if the editor has no viewer yet.
+     */
+    public DocumentParseSnapshot getParseSnapshot() {
+        return parseSnapshot;
+    }
+
+    /**
+     * Returns the top level blocks of the current text of this editor, or null
+     * if the editor has no viewer yet.
+     */
+    public DocumentStructure getStructure() {
+        return structure;
     }
 
     protected ISourceViewer createSourceViewer(Composite parent,
@@ -105,17 +137,33 @@ public class AbstractRuleEditor extends TextEditor {
 
     public void updateFoldingStructure(List<Position> positions) {
         if (annotationModel != null) {
-            Annotation[] annotations = new Annotation[positions.size()];
+            // the annotations of the regions that didn't change are kept,
+            // so they stay collapsed and only the changed ones are updated
+            Map<Position, Annotation> existing = new HashMap<Position, Annotation>();
+            if (oldAnnotations != null) {
+                for (Annotation annotation: oldAnnotations) {
+                    Position position = annotationModel.getPosition(annotation);
+                    if (position != null && !position.isDeleted()) {
+                        existing.put(new Position(position.getOffset(), position.getLength()), annotation);
+                    }
+                }
+            }
+            List<Annotation> annotations = new ArrayList<Annotation>();
             // this will hold the new annotations along
             // with their corresponding positions
             HashMap<Annotation, Position> newAnnotations = new HashMap<Annotation, Position>();
-            for (int i = 0; i < positions.size(); i++) {
-                ProjectionAnnotation annotation = new ProjectionAnnotation();
-                newAnnotations.put(annotation, positions.get(i));
-                annotations[i] = annotation;
+            for (Position position: positions) {
+                Annotation annotation = existing.remove(position);
+                if (annotation == null) {
+                    annotation = new ProjectionAnnotation();
+                    newAnnotations.put(annotation, position);
+                }
+                annotations.add(annotation);
             }
-            annotationModel.modifyAnnotations(oldAnnotations, newAnnotations, null);
-            oldAnnotations = annotations;
+            Set<Annotation> deleted = new HashSet<Annotation>(Arrays.asList(oldAnnotations == null ? new Annotation[0] : oldAnnotations));
+            deleted.removeAll(annotations);
+            annotationModel.modifyAnnotations(deleted.toArray(new Annotation[deleted.size()]), newAnnotations, null);
+            oldAnnotations = annotations.toArray(new Annotation[annotations.size()]);
         }
     }
 
@@ -179,7 +227,34 @@ public class AbstractRuleEditor extends TextEditor {
         }
     }
 
+    protected void doSetInput(IEditorInput input) throws CoreException {
+        DroolsEclipsePlugin.getDefault().unpinResource(getResource());
+        super.doSetInput(input);
+        DroolsEclipsePlugin.getDefault().pinResource(getResource());
+    }
+
+    protected void editorSaved() {
+        super.editorSaved();
+        // the problems of the saved text are reported by the builder
+        if (diagnostics != null) {
+            diagnostics.clear();
+        }
+    }
+
     public void dispose() {
+        DroolsEclipsePlugin.getDefault().unpinResource(getResource());
+        if (parseSnapshot != null && getSourceViewer() != null) {
+            parseSnapshot.uninstall(getSourceViewer());
+            parseSnapshot = null;
+        }
+        if (structure != null && getSourceViewer() != null) {
+            structure.uninstall(getSourceViewer());
+            structure = null;
+        }
+        if (diagnostics != null && getSourceViewer() != null) {
+            diagnostics.uninstall(getSourceViewer());
+            diagnostics = null;
+        }
         super.dispose();
         if (bracketMatcher != null) {
             bracketMatcher.dispose();
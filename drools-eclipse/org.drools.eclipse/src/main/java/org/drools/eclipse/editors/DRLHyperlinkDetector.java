@@ -79,7 +79,7 @@ public class DRLHyperlinkDetector implements IHyperlinkDetector {
 		try {
 			DRLInfo info = DroolsEclipsePlugin.getDefault().parseResource(
 					editor, true, false);
-			return DescrUtil.getDescr(info.getPackageDescr(), offset);
+			return info.getDescr(offset);
 		} catch (DroolsParserException exc) {
 			return null;
 		}
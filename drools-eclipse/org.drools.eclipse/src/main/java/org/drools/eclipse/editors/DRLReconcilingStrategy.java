@@ -19,12 +19,9 @@ package org.drools.eclipse.editors;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.drools.eclipse.DroolsEclipsePlugin;
 import org.drools.eclipse.preferences.IDroolsConstants;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
@@ -40,12 +37,6 @@ import org.eclipse.swt.widgets.Display;
 
 public class DRLReconcilingStrategy implements IReconcilingStrategy {
 
-    private static final Pattern RULE_PATTERN = Pattern.compile("\\n\\s*(rule\\s+.*?\\n\\s*end)", Pattern.DOTALL);
-    private static final Pattern TEMPLATE_PATTERN = Pattern.compile("\\n\\s*(template\\s+.*?\\n\\s*end)", Pattern.DOTALL);
-    private static final Pattern QUERY_PATTERN = Pattern.compile("\\n\\s*(query\\s+.*?\\n\\s*end)", Pattern.DOTALL);
-    private static final Pattern FUNCTION_PATTERN = Pattern.compile("\\n\\s*(function\\s+[^\\{]*\\{)", Pattern.DOTALL);
-    private static final Pattern IMPORT_PATTERN = Pattern.compile("\\n\\s*((\\s*import\\s+[^\\s;]+;?[\\t\\x0B\\f\\r]*\\n)+)", Pattern.DOTALL);
-    
     private ISourceViewer sourceViewer;
     private AbstractRuleEditor editor;
     private IDocument document;
@@ -89,27 +80,12 @@ public class DRLReconcilingStrategy implements IReconcilingStrategy {
 
     private void reconcile() {
         if (document != null) {
-            String s = document.get();
             if (folding) {
-                calculateFolding(s);
+                calculateFolding();
             }
-            
-//            IFile file = ((IFileEditorInput) input).getFile();
-//            IAnnotationModel annotationModel = sourceViewer.getAnnotationModel();
-//            removeAnnotationsFor(annotationModel);
-//            DroolsBuildMarker[] markers = DroolsBuilder.parseFile(file, s);
-//            for (int i = 0; i < markers.length; i++) {
-//                createAnnotation(file, annotationModel, markers[i].getText(), markers[i].getOffset(), markers[i].getLength());
-//            }
+            // problems are reported while typing by the DocumentDiagnostics of the editor
         }
     }
-
-    private static void createAnnotation(IFile file, final IAnnotationModel annotationModel, final String message, final int offset, final int length) {
-        Annotation annotation = new DRLProblemAnnotation(message);
-        Position position = new Position(0, 1);
-//        Position position = new Position(offset, length);
-        annotationModel.addAnnotation(annotation, position);
-    }
     
     public static void removeAnnotationsFor(IAnnotationModel annotationModel) {
         @SuppressWarnings("rawtypes")
@@ -122,42 +98,13 @@ public class DRLReconcilingStrategy implements IReconcilingStrategy {
         }
     }
 
-    protected void calculateFolding(String input) {
-        // TODO replace this parsing by getting this input from the parsed rule file
-        final List<Position> positions = new ArrayList<Position>();
-        Matcher matcher = RULE_PATTERN.matcher(input);
-        while (matcher.find()) {
-            positions.add(new Position(matcher.start(1), matcher.end(1) - matcher.start(1)));
-        }
-        matcher = QUERY_PATTERN.matcher(input);
-        while (matcher.find()) {
-            positions.add(new Position(matcher.start(1), matcher.end(1) - matcher.start(1)));
-        }
-        matcher = TEMPLATE_PATTERN.matcher(input);
-        while (matcher.find()) {
-            positions.add(new Position(matcher.start(1), matcher.end(1) - matcher.start(1)));
-        }
-        matcher = IMPORT_PATTERN.matcher(input);
-        while (matcher.find()) {
-            positions.add(new Position(matcher.start(1), matcher.end(1) - matcher.start(1)));
-        }
-        matcher = FUNCTION_PATTERN.matcher(input);
-        while (matcher.find()) {
-            int start = matcher.start(1);
-            // TODO also take comments, strings etc. in consideration
-            // use JavaPairMatcher or similar
-            int nbOpenBrackets = 1;
-            for (int i = matcher.end(); i < input.length(); i++) {
-                if (input.charAt(i) == '{') {
-                    nbOpenBrackets++;
-                } else if (input.charAt(i) == '}') {
-                    if (--nbOpenBrackets == 0) {
-                        positions.add(new Position(start, i - start + 1));
-                        break;
-                    }
-                }
-            }
-        }
+    protected void calculateFolding() {
+        // the structure of the editor is kept up to date while typing,
+        // the text is only scanned here if the editor has none yet
+        DocumentStructure structure = editor.getStructure();
+        final List<Position> positions = structure != null
+            ? structure.getFoldingPositions()
+            : DocumentStructure.getFoldingPositions(DocumentStructure.scan(document.get()));
         Display.getDefault().asyncExec(new Runnable() {
             public void run() {
                 editor.updateFoldingStructure(positions);
@@ -274,7 +274,7 @@ public class DRLRuleEditor extends AbstractRuleEditor {
     public BaseDescr getDescr(int offset) {
         try {
             DRLInfo info = DroolsEclipsePlugin.getDefault().parseResource(this, true, false);
-            return DescrUtil.getDescr(info.getPackageDescr(), offset);
+            return info.getDescr(offset);
         } catch (DroolsParserException exc) {
             return null;
         }
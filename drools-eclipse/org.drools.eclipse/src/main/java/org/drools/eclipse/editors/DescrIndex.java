@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import org.drools.compiler.lang.descr.BaseDescr;
+import org.drools.compiler.lang.descr.PackageDescr;
+import org.drools.compiler.lang.descr.RuleDescr;
+
+/**
+ * The top level descriptors of a package, sorted by their start character, to
+ * find the descriptor at an offset without visiting all of them.
+ *
+ * Gives the same result as {@link DescrUtil#getDescr(BaseDescr, int)}: when
+ * descriptors overlap, rules come first, then imports, function imports,
+ * functions, attributes and globals, each in the order of the package.
+ */
+public class DescrIndex {
+
+    private final Entry[] entries;
+    // the highest end character of the entries up to each index
+    private final int[]   maxEnds;
+
+    public DescrIndex(PackageDescr packageDescr) {
+        List<Entry> list = new ArrayList<Entry>();
+        if ( packageDescr != null ) {
+            addEntries( list,
+                        packageDescr.getRules() );
+            addEntries( list,
+                        packageDescr.getImports() );
+            addEntries( list,
+                        packageDescr.getFunctionImports() );
+            addEntries( list,
+                        packageDescr.getFunctions() );
+            addEntries( list,
+                        packageDescr.getAttributes() );
+            addEntries( list,
+                        packageDescr.getGlobals() );
+        }
+        entries = list.toArray( new Entry[list.size()] );
+        Arrays.sort( entries,
+                     new Comparator<Entry>() {
+                         public int compare(Entry e1,
+                                            Entry e2) {
+                             return e1.start < e2.start ? -1 : (e1.start == e2.start ? 0 : 1);
+                         }
+                     } );
+        maxEnds = new int[entries.length];
+        int maxEnd = Integer.MIN_VALUE;
+        for ( int i = 0; i < entries.length; i++ ) {
+            maxEnd = Math.max( maxEnd,
+                               entries[i].end );
+            maxEnds[i] = maxEnd;
+        }
+    }
+
+    private static void addEntries(List<Entry> list,
+                                   Collection< ? extends BaseDescr> descrs) {
+        for ( BaseDescr descr : descrs ) {
+            if ( descr != null ) {
+                list.add( new Entry( descr,
+                                     list.size() ) );
+            }
+        }
+    }
+
+    /**
+     * Returns the descriptor at the given offset, or null if there is none.
+     */
+    public BaseDescr getDescr(int offset) {
+        // the last entry starting at or before the offset
+        int low = 0;
+        int high = entries.length - 1;
+        while ( low <= high ) {
+            int middle = (low + high) >>> 1;
+            if ( entries[middle].start <= offset ) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        Entry result = null;
+        // entries further back can only contain the offset as long as one of them ends after it
+        for ( int i = high; i >= 0 && maxEnds[i] >= offset; i-- ) {
+            Entry entry = entries[i];
+            if ( entry.end >= offset && (result == null || entry.order < result.order) ) {
+                result = entry;
+            }
+        }
+        if ( result == null ) {
+            return null;
+        }
+        if ( result.descr instanceof RuleDescr ) {
+            // rule attributes are few, they are searched within the rule
+            return DescrUtil.getDescr( result.descr,
+                                       offset );
+        }
+        return result.descr;
+    }
+
+    private static class Entry {
+        private final BaseDescr descr;
+        private final int       start;
+        private final int       end;
+        private final int       order;
+
+        private Entry(BaseDescr descr,
+                      int order) {
+            this.descr = descr;
+            this.start = descr.getStartCharacter();
+            this.end = descr.getEndCharacter();
+            this.order = order;
+        }
+    }
+}
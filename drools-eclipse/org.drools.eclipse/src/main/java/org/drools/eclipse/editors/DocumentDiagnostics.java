@@ -0,0 +1,603 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.runtime.RecognitionException;
+import org.drools.compiler.compiler.DroolsParserException;
+import org.drools.eclipse.DRLInfo;
+import org.drools.eclipse.DroolsEclipsePlugin;
+import org.drools.eclipse.builder.DroolsBuildMarker;
+import org.drools.eclipse.builder.DroolsBuilder;
+import org.drools.eclipse.editors.DocumentStructure.Block;
+import org.drools.eclipse.editors.DocumentStructure.Kind;
+import org.drools.eclipse.preferences.IDroolsConstants;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.ITextInputListener;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.IAnnotationModel;
+import org.eclipse.jface.text.source.IAnnotationModelExtension;
+import org.eclipse.jface.text.source.ISourceViewer;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Shows the problems of the unsaved text of a rule editor while typing, as
+ * problem annotations, without waiting for the builder to run on save.
+ *
+ * The text is checked in the background once typing paused, a check still
+ * running when the text changes again is cancelled. The problems of every rule
+ * and query are kept for their text, so after an edit within one rule only that
+ * rule is parsed again, together with the rest of the file but without the other
+ * rules. When the rest of the file or several rules changed, or the edited rule
+ * is repeated, the whole text is checked at once, reusing the parse result of
+ * the editor. Rules are only compiled if enabled in the preferences.
+ */
+public class DocumentDiagnostics
+    implements
+    IDocumentListener,
+    ITextInputListener {
+
+    private static final long                 CHECK_DELAY    = 500;
+
+    private final AbstractRuleEditor          editor;
+    private final Job                         checkJob;
+    private ISourceViewer                     viewer;
+    private volatile IDocument                document;
+    private volatile boolean                  reset;
+
+    // only used by the check job, which never runs concurrently with itself
+    private String                            header;
+    private boolean                           compiled;
+    private List<Problem>                     headerProblems = Collections.emptyList();
+    private Map<RuleKey, List<Problem>>       ruleProblems   = new HashMap<RuleKey, List<Problem>>();
+
+    // only used by the display thread
+    private Annotation[]                      annotations    = new Annotation[0];
+
+    public DocumentDiagnostics(AbstractRuleEditor editor) {
+        this.editor = editor;
+        this.checkJob = new Job( "Checking rules" ) {
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    return check( monitor );
+                } catch ( Throwable t ) {
+                    DroolsEclipsePlugin.log( t );
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        checkJob.setSystem( true );
+        checkJob.setPriority( Job.DECORATE );
+    }
+
+    public void install(ISourceViewer sourceViewer) {
+        viewer = sourceViewer;
+        viewer.addTextInputListener( this );
+        setDocument( viewer.getDocument() );
+    }
+
+    public void uninstall(ISourceViewer sourceViewer) {
+        sourceViewer.removeTextInputListener( this );
+        setDocument( null );
+        checkJob.cancel();
+        clear();
+        viewer = null;
+    }
+
+    /**
+     * Removes the problem annotations, once the problems of the saved text are
+     * reported by the builder instead.
+     */
+    public void clear() {
+        setAnnotations( Collections.<Annotation, Position> emptyMap() );
+    }
+
+    public void documentAboutToBeChanged(DocumentEvent event) {
+    }
+
+    public void documentChanged(DocumentEvent event) {
+        checkJob.cancel();
+        checkJob.schedule( CHECK_DELAY );
+    }
+
+    public void inputDocumentAboutToBeChanged(IDocument oldInput,
+                                              IDocument newInput) {
+    }
+
+    public void inputDocumentChanged(IDocument oldInput,
+                                     IDocument newInput) {
+        setDocument( newInput );
+    }
+
+    private void setDocument(IDocument newDocument) {
+        IDocument oldDocument = document;
+        document = newDocument;
+        reset = true;
+        if ( oldDocument != null ) {
+            oldDocument.removeDocumentListener( this );
+        }
+        if ( newDocument != null ) {
+            newDocument.addDocumentListener( this );
+        }
+    }
+
+    private IStatus check(IProgressMonitor monitor) {
+        final IDocument doc = document;
+        if ( doc == null ) {
+            return Status.OK_STATUS;
+        }
+        final long stamp = getModificationStamp( doc );
+        String text = doc.get();
+        boolean compile = DroolsEclipsePlugin.getDefault().getPreferenceStore().getBoolean( IDroolsConstants.EDITOR_COMPILE_WHILE_TYPING );
+        if ( reset || compile != compiled ) {
+            reset = false;
+            compiled = compile;
+            header = null;
+            ruleProblems.clear();
+        }
+
+        List<Block> rules = new ArrayList<Block>();
+        for ( Block block : DocumentStructure.scan( text ) ) {
+            if ( block.getKind() == Kind.RULE || block.getKind() == Kind.QUERY ) {
+                rules.add( block );
+            }
+        }
+        int[] lineStarts = getLineStarts( text );
+        String currentHeader = getHeader( text,
+                                          rules );
+        List<Problem> currentHeaderProblems = headerProblems;
+        List<RuleKey> keys = getKeys( text,
+                                      rules );
+        Map<RuleKey, List<Problem>> currentRuleProblems = new HashMap<RuleKey, List<Problem>>();
+        List<Block> changed = new ArrayList<Block>();
+        boolean repeated = false;
+        for ( int i = 0; i < rules.size(); i++ ) {
+            RuleKey key = keys.get( i );
+            List<Problem> problems = ruleProblems.get( key );
+            if ( problems == null ) {
+                changed.add( rules.get( i ) );
+                // a copy is only reported as duplicate together with the other rules
+                repeated |= key.occurrence > 0 || keys.contains( new RuleKey( key.text,
+                                                                              1 ) );
+            } else {
+                currentRuleProblems.put( key,
+                                         problems );
+            }
+        }
+
+        if ( !currentHeader.equals( header ) || changed.size() > 1 || repeated ) {
+            // check everything at once, and assign the problems to the rules they are in
+            List<DroolsBuildMarker> markers = checkDocument( doc,
+                                                             stamp,
+                                                             compile );
+            if ( markers == null || monitor.isCanceled() ) {
+                return Status.CANCEL_STATUS;
+            }
+            currentHeaderProblems = new ArrayList<Problem>();
+            currentRuleProblems.clear();
+            for ( RuleKey key : keys ) {
+                currentRuleProblems.put( key,
+                                         new ArrayList<Problem>() );
+            }
+            for ( DroolsBuildMarker marker : markers ) {
+                int line = marker.getLine();
+                Block rule = line > 0 ? getRule( rules,
+                                                 lineStarts,
+                                                 line ) : null;
+                if ( rule != null ) {
+                    int firstLine = getLine( lineStarts,
+                                             rule.getOffset() );
+                    currentRuleProblems.get( keys.get( rules.indexOf( rule ) ) ).add( new Problem( 0,
+                                                                                                   line - firstLine,
+                                                                                                   marker.getText() ) );
+                } else {
+                    int segment = line > 0 ? getSegment( rules,
+                                                         lineStarts,
+                                                         line ) : 0;
+                    int firstLine = getLine( lineStarts,
+                                             getSegmentStart( rules,
+                                                              segment ) );
+                    currentHeaderProblems.add( new Problem( segment,
+                                                            line > 0 ? line - firstLine : -1,
+                                                            marker.getText() ) );
+                }
+            }
+        } else if ( changed.size() == 1 ) {
+            // only check the edited rule, without the other ones
+            Block rule = changed.get( 0 );
+            List<DroolsBuildMarker> markers = check( getRuleText( text,
+                                                                  rules,
+                                                                  rule ),
+                                                     compile );
+            if ( markers == null || monitor.isCanceled() ) {
+                return Status.CANCEL_STATUS;
+            }
+            int firstLine = getLine( lineStarts,
+                                     rule.getOffset() );
+            int lastLine = getLine( lineStarts,
+                                    Math.max( rule.getOffset(),
+                                              rule.getEnd() - 1 ) );
+            List<Problem> problems = new ArrayList<Problem>();
+            for ( DroolsBuildMarker marker : markers ) {
+                int line = marker.getLine();
+                if ( line < firstLine || line > lastLine ) {
+                    if ( containsHeaderProblem( rules,
+                                                lineStarts,
+                                                line,
+                                                marker.getText() ) ) {
+                        continue;
+                    }
+                    // e.g. a missing end reported at the end of the file
+                    line = line < firstLine ? firstLine : lastLine;
+                }
+                problems.add( new Problem( 0,
+                                           line - firstLine,
+                                           marker.getText() ) );
+            }
+            currentRuleProblems.put( keys.get( rules.indexOf( rule ) ),
+                                     problems );
+        }
+        if ( monitor.isCanceled() ) {
+            return Status.CANCEL_STATUS;
+        }
+        header = currentHeader;
+        headerProblems = currentHeaderProblems;
+        ruleProblems = currentRuleProblems;
+
+        final Map<Annotation, Position> found = new LinkedHashMap<Annotation, Position>();
+        for ( Problem problem : headerProblems ) {
+            int firstLine = getLine( lineStarts,
+                                     getSegmentStart( rules,
+                                                      problem.segment ) );
+            addAnnotation( found,
+                           text,
+                           lineStarts,
+                           problem.line < 0 ? 1 : firstLine + problem.line,
+                           problem.message );
+        }
+        for ( int i = 0; i < rules.size(); i++ ) {
+            int firstLine = getLine( lineStarts,
+                                     rules.get( i ).getOffset() );
+            for ( Problem problem : ruleProblems.get( keys.get( i ) ) ) {
+                addAnnotation( found,
+                               text,
+                               lineStarts,
+                               firstLine + problem.line,
+                               problem.message );
+            }
+        }
+        Display.getDefault().asyncExec( new Runnable() {
+            public void run() {
+                // an outdated result is replaced by the check of the next change
+                if ( doc != document || stamp != getModificationStamp( doc ) ) {
+                    return;
+                }
+                if ( editor.isDirty() ) {
+                    setAnnotations( found );
+                } else {
+                    clear();
+                }
+            }
+        } );
+        return Status.OK_STATUS;
+    }
+
+    /**
+     * Returns the problems found in the whole text of the given document, or
+     * null if it could not be checked or changed since the given stamp. The
+     * text is parsed once for the whole editor, by its parse snapshot.
+     */
+    private List<DroolsBuildMarker> checkDocument(IDocument doc,
+                                                  long stamp,
+                                                  boolean compile) {
+        DocumentParseSnapshot parseSnapshot = editor.getParseSnapshot();
+        if ( parseSnapshot == null ) {
+            return check( doc.get(),
+                          compile );
+        }
+        List<DroolsBuildMarker> markers;
+        try {
+            DRLInfo drlInfo = parseSnapshot.getInfo( compile );
+            markers = drlInfo == null ? null : DroolsBuilder.getMarkers( drlInfo );
+        } catch ( DroolsParserException e ) {
+            markers = getMarkers( e );
+        }
+        // the lines of the problems must match the checked text
+        return stamp == getModificationStamp( doc ) ? markers : null;
+    }
+
+    /**
+     * Returns the problems found in the given text, or null if it could not be
+     * checked.
+     */
+    private List<DroolsBuildMarker> check(String content,
+                                          boolean compile) {
+        try {
+            DRLInfo drlInfo = DroolsEclipsePlugin.getDefault().generateParsedResource( content,
+                                                                                       editor.getResource(),
+                                                                                       false,
+                                                                                       compile );
+            return drlInfo == null ? null : DroolsBuilder.getMarkers( drlInfo );
+        } catch ( DroolsParserException e ) {
+            return getMarkers( e );
+        }
+    }
+
+    private static List<DroolsBuildMarker> getMarkers(DroolsParserException e) {
+        List<DroolsBuildMarker> markers = new ArrayList<DroolsBuildMarker>();
+        Throwable cause = e.getCause();
+        if ( cause instanceof RecognitionException ) {
+            markers.add( new DroolsBuildMarker( cause.getMessage(),
+                                                ((RecognitionException) cause).line ) );
+        } else {
+            markers.add( new DroolsBuildMarker( e.getMessage(),
+                                                -1 ) );
+        }
+        return markers;
+    }
+
+    private void setAnnotations(Map<Annotation, Position> problems) {
+        IAnnotationModel model = viewer == null ? null : viewer.getAnnotationModel();
+        if ( model instanceof IAnnotationModelExtension ) {
+            ((IAnnotationModelExtension) model).replaceAnnotations( annotations,
+                                                                    problems );
+        } else if ( model != null ) {
+            for ( Annotation annotation : annotations ) {
+                model.removeAnnotation( annotation );
+            }
+            for ( Map.Entry<Annotation, Position> entry : problems.entrySet() ) {
+                model.addAnnotation( entry.getKey(),
+                                     entry.getValue() );
+            }
+        }
+        annotations = problems.keySet().toArray( new Annotation[problems.size()] );
+    }
+
+    private static void addAnnotation(Map<Annotation, Position> annotations,
+                                      String text,
+                                      int[] lineStarts,
+                                      int line,
+                                      String message) {
+        int index = Math.max( 0,
+                              Math.min( line,
+                                        lineStarts.length ) - 1 );
+        int start = lineStarts[index];
+        int end = index + 1 < lineStarts.length ? lineStarts[index + 1] : text.length();
+        while ( end > start && (text.charAt( end - 1 ) == '\n' || text.charAt( end - 1 ) == '\r') ) {
+            end--;
+        }
+        annotations.put( new DRLProblemAnnotation( message ),
+                         new Position( start,
+                                       end - start ) );
+    }
+
+    private boolean containsHeaderProblem(List<Block> rules,
+                                          int[] lineStarts,
+                                          int line,
+                                          String message) {
+        for ( Problem problem : headerProblems ) {
+            int problemLine = problem.line < 0 ? -1 : getLine( lineStarts,
+                                                               getSegmentStart( rules,
+                                                                                problem.segment ) ) + problem.line;
+            if ( (line > 0 ? problemLine == line : problemLine < 0) && problem.message.equals( message ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the text outside of the rules, which every rule is checked with.
+     */
+    private static String getHeader(String text,
+                                    List<Block> rules) {
+        StringBuilder builder = new StringBuilder( text.length() );
+        for ( int i = 0; i <= rules.size(); i++ ) {
+            builder.append( text,
+                            getSegmentStart( rules,
+                                             i ),
+                            i < rules.size() ? rules.get( i ).getOffset() : text.length() );
+            builder.append( '\0' );
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns the text with the given rule, but only the line delimiters of the
+     * other rules, so that problems are still reported at the lines of the text.
+     */
+    private static String getRuleText(String text,
+                                      List<Block> rules,
+                                      Block rule) {
+        StringBuilder builder = new StringBuilder( text.length() );
+        int offset = 0;
+        for ( Block other : rules ) {
+            if ( other == rule ) {
+                continue;
+            }
+            builder.append( text,
+                            offset,
+                            other.getOffset() );
+            for ( int i = other.getOffset(); i < other.getEnd(); i++ ) {
+                char c = text.charAt( i );
+                if ( c == '\n' || c == '\r' ) {
+                    builder.append( c );
+                }
+            }
+            offset = other.getEnd();
+        }
+        builder.append( text,
+                        offset,
+                        text.length() );
+        return builder.toString();
+    }
+
+    private static String getText(String text,
+                                  Block block) {
+        return text.substring( block.getOffset(),
+                               block.getEnd() );
+    }
+
+    /**
+     * Returns the keys of the problems of the given rules: their text, and how
+     * many rules before them have the same one.
+     */
+    private static List<RuleKey> getKeys(String text,
+                                         List<Block> rules) {
+        List<RuleKey> keys = new ArrayList<RuleKey>( rules.size() );
+        Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for ( Block rule : rules ) {
+            String ruleText = getText( text,
+                                       rule );
+            Integer occurrence = occurrences.get( ruleText );
+            int count = occurrence == null ? 0 : occurrence.intValue();
+            occurrences.put( ruleText,
+                             Integer.valueOf( count + 1 ) );
+            keys.add( new RuleKey( ruleText,
+                                   count ) );
+        }
+        return keys;
+    }
+
+    private static int getSegmentStart(List<Block> rules,
+                                       int segment) {
+        return segment == 0 ? 0 : rules.get( segment - 1 ).getEnd();
+    }
+
+    private static Block getRule(List<Block> rules,
+                                 int[] lineStarts,
+                                 int line) {
+        for ( Block rule : rules ) {
+            if ( line >= getLine( lineStarts,
+                                  rule.getOffset() )
+                 && line <= getLine( lineStarts,
+                                     Math.max( rule.getOffset(),
+                                               rule.getEnd() - 1 ) ) ) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static int getSegment(List<Block> rules,
+                                  int[] lineStarts,
+                                  int line) {
+        int segment = 0;
+        while ( segment < rules.size() && getLine( lineStarts,
+                                                   rules.get( segment ).getOffset() ) <= line ) {
+            segment++;
+        }
+        return segment;
+    }
+
+    private static int[] getLineStarts(String text) {
+        List<Integer> starts = new ArrayList<Integer>();
+        starts.add( 0 );
+        for ( int i = 0; i < text.length(); i++ ) {
+            char c = text.charAt( i );
+            if ( c == '\n' || (c == '\r' && (i + 1 == text.length() || text.charAt( i + 1 ) != '\n')) ) {
+                starts.add( i + 1 );
+            }
+        }
+        int[] result = new int[starts.size()];
+        for ( int i = 0; i < result.length; i++ ) {
+            result[i] = starts.get( i );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the line, starting at 1, of the given offset.
+     */
+    private static int getLine(int[] lineStarts,
+                               int offset) {
+        int low = 0;
+        int high = lineStarts.length - 1;
+        while ( low < high ) {
+            int middle = (low + high + 1) >>> 1;
+            if ( lineStarts[middle] <= offset ) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    private static long getModificationStamp(IDocument document) {
+        if ( document instanceof IDocumentExtension4 ) {
+            return ((IDocumentExtension4) document).getModificationStamp();
+        }
+        return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+
+    private static class RuleKey {
+        private final String text;
+        private final int    occurrence;
+
+        private RuleKey(String text,
+                        int occurrence) {
+            this.text = text;
+            this.occurrence = occurrence;
+        }
+
+        public boolean equals(Object obj) {
+            if ( !(obj instanceof RuleKey) ) {
+                return false;
+            }
+            RuleKey other = (RuleKey) obj;
+            return occurrence == other.occurrence && text.equals( other.text );
+        }
+
+        public int hashCode() {
+            return text.hashCode() * 31 + occurrence;
+        }
+    }
+
+    /**
+     * A problem at a line relative to the start of its rule, or for problems
+     * outside of rules, to the start of the text following the given number of
+     * rules.
+     */
+    private static class Problem {
+        private final int    segment;
+        private final int    line;
+        private final String message;
+
+        private Problem(int segment,
+                        int line,
+                        String message) {
+            this.segment = segment;
+            this.line = line;
+            this.message = message;
+        }
+    }
+}
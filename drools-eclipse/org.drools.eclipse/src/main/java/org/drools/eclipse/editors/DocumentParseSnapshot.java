@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.drools.compiler.compiler.DroolsParserException;
+import org.drools.eclipse.DRLInfo;
+import org.drools.eclipse.DroolsEclipsePlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.ITextInputListener;
+import org.eclipse.jface.text.ITextViewer;
+
+/**
+ * The parse result of the current, possibly unsaved, text of a rule editor,
+ * shared by its hyperlink detector, outline, folding and Rete view.
+ *
+ * Results are kept for the modification stamp of the document they were parsed
+ * from, so the text is only parsed again once it changed. After an edit the text
+ * is parsed in the background, so the result is usually ready when asked for.
+ * A caller asking while the same text is being parsed waits for that parse,
+ * while a parse of an older text doesn't block anyone.
+ */
+public class DocumentParseSnapshot
+    implements
+    IDocumentListener,
+    ITextInputListener {
+
+    private static final long        PARSE_DELAY = 300;
+
+    private final AbstractRuleEditor editor;
+    private final Job                parseJob;
+    private IDocument                document;
+    private long                     stamp       = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    private FutureTask<DRLInfo>      parsed;
+    private FutureTask<DRLInfo>      compiled;
+
+    public DocumentParseSnapshot(AbstractRuleEditor editor) {
+        this.editor = editor;
+        this.parseJob = new Job( "Parsing rules" ) {
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    getInfo( false );
+                } catch ( DroolsParserException e ) {
+                    // reported again to whoever asks for the result
+                } catch ( Throwable t ) {
+                    DroolsEclipsePlugin.log( t );
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        parseJob.setSystem( true );
+        parseJob.setPriority( Job.DECORATE );
+    }
+
+    public void install(ITextViewer viewer) {
+        viewer.addTextInputListener( this );
+        setDocument( viewer.getDocument() );
+    }
+
+    public void uninstall(ITextViewer viewer) {
+        viewer.removeTextInputListener( this );
+        setDocument( null );
+        parseJob.cancel();
+    }
+
+    /**
+     * Returns the parse result of the current text of the editor, parsing (and
+     * compiling) it only if the cached result is out of date.
+     */
+    public DRLInfo getInfo(boolean compile) throws DroolsParserException {
+        FutureTask<DRLInfo> task = null;
+        boolean run = false;
+        IDocument doc;
+        synchronized ( this ) {
+            doc = document;
+            long currentStamp = doc == null ? IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP : getModificationStamp( doc );
+            if ( currentStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP ) {
+                if ( currentStamp != stamp ) {
+                    stamp = currentStamp;
+                    parsed = null;
+                    compiled = null;
+                }
+                if ( compiled != null ) {
+                    task = compiled;
+                } else if ( !compile && parsed != null ) {
+                    task = parsed;
+                } else {
+                    task = createTask( doc.get(),
+                                       compile );
+                    run = true;
+                    if ( compile ) {
+                        compiled = task;
+                    } else {
+                        parsed = task;
+                    }
+                }
+            }
+        }
+        if ( task == null ) {
+            // without a stamp the result can't be shared
+            task = createTask( doc != null ? doc.get() : editor.getContent(),
+                               compile );
+            run = true;
+        }
+        if ( run ) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof DroolsParserException ) {
+                throw (DroolsParserException) cause;
+            } else if ( cause instanceof RuntimeException ) {
+                throw (RuntimeException) cause;
+            } else if ( cause instanceof Error ) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+    }
+
+    private FutureTask<DRLInfo> createTask(final String content,
+                                           final boolean compile) {
+        return new FutureTask<DRLInfo>( new Callable<DRLInfo>() {
+            public DRLInfo call() throws Exception {
+                return DroolsEclipsePlugin.getDefault().generateParsedResource( content,
+                                                                                editor.getResource(),
+                                                                                false,
+                                                                                compile );
+            }
+        } );
+    }
+
+    public void documentAboutToBeChanged(DocumentEvent event) {
+    }
+
+    public void documentChanged(DocumentEvent event) {
+        parseJob.cancel();
+        parseJob.schedule( PARSE_DELAY );
+    }
+
+    public void inputDocumentAboutToBeChanged(IDocument oldInput,
+                                              IDocument newInput) {
+    }
+
+    public void inputDocumentChanged(IDocument oldInput,
+                                     IDocument newInput) {
+        setDocument( newInput );
+    }
+
+    private void setDocument(IDocument newDocument) {
+        IDocument oldDocument;
+        synchronized ( this ) {
+            oldDocument = document;
+            document = newDocument;
+            stamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+            parsed = null;
+            compiled = null;
+        }
+        if ( oldDocument != null ) {
+            oldDocument.removeDocumentListener( this );
+        }
+        if ( newDocument != null ) {
+            newDocument.addDocumentListener( this );
+        }
+    }
+
+    private static long getModificationStamp(IDocument document) {
+        if ( document instanceof IDocumentExtension4 ) {
+            return ((IDocumentExtension4) document).getModificationStamp();
+        }
+        return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+    }
+}
@@ -0,0 +1,703 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.ITextInputListener;
+import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.Position;
+
+/**
+ * The top level blocks of the current text of a rule editor: the package,
+ * imports, globals, functions, rules, queries and templates, with the spans of
+ * their text and of their names. Used for the folding and the outline of the
+ * editor.
+ *
+ * Like the outline always did, blocks are recognized by the keyword starting a
+ * line, so the structure is tolerant of incorrect syntax. It is maintained from
+ * the changes of the document: only the blocks from the changed line up to the
+ * first following block that starts at the same place as before are scanned
+ * again, the blocks after it are only moved.
+ */
+public class DocumentStructure
+    implements
+    IDocumentListener,
+    ITextInputListener {
+
+    public enum Kind {
+        PACKAGE("package"),
+        IMPORT("import"),
+        GLOBAL("global"),
+        EXPANDER("expander"),
+        FUNCTION("function"),
+        RULE("rule"),
+        QUERY("query"),
+        TEMPLATE("template");
+
+        private final String keyword;
+
+        private Kind(String keyword) {
+            this.keyword = keyword;
+        }
+    }
+
+    private IDocument   document;
+    private List<Block> blocks = new ArrayList<Block>();
+
+    public void install(ITextViewer viewer) {
+        viewer.addTextInputListener( this );
+        setDocument( viewer.getDocument() );
+    }
+
+    public void uninstall(ITextViewer viewer) {
+        viewer.removeTextInputListener( this );
+        setDocument( null );
+    }
+
+    /**
+     * Returns the blocks of the current text, in the order of the text.
+     */
+    public synchronized List<Block> getBlocks() {
+        return Collections.unmodifiableList( new ArrayList<Block>( blocks ) );
+    }
+
+    /**
+     * Returns the regions that can be folded: the complete rules, queries,
+     * templates and functions, and every group of imports.
+     */
+    public List<Position> getFoldingPositions() {
+        return getFoldingPositions( getBlocks() );
+    }
+
+    public static List<Position> getFoldingPositions(List<Block> blocks) {
+        List<Position> positions = new ArrayList<Position>();
+        Block firstImport = null;
+        Block lastImport = null;
+        for ( Block block : blocks ) {
+            if ( block.getKind() == Kind.IMPORT ) {
+                if ( firstImport == null ) {
+                    firstImport = block;
+                }
+                lastImport = block;
+                continue;
+            }
+            if ( firstImport != null ) {
+                positions.add( new Position( firstImport.getOffset(),
+                                             lastImport.getEnd() - firstImport.getOffset() ) );
+                firstImport = null;
+            }
+            if ( block.isComplete() && isFoldable( block.getKind() ) ) {
+                positions.add( new Position( block.getOffset(),
+                                             block.getLength() ) );
+            }
+        }
+        if ( firstImport != null ) {
+            positions.add( new Position( firstImport.getOffset(),
+                                         lastImport.getEnd() - firstImport.getOffset() ) );
+        }
+        return positions;
+    }
+
+    private static boolean isFoldable(Kind kind) {
+        return kind == Kind.RULE || kind == Kind.QUERY || kind == Kind.TEMPLATE || kind == Kind.FUNCTION;
+    }
+
+    /**
+     * Returns the blocks of the given text.
+     */
+    public static List<Block> scan(CharSequence text) {
+        List<Block> result = new ArrayList<Block>();
+        Scanner scanner = new Scanner( text,
+                                       0 );
+        for ( Block block = scanner.next(); block != null; block = scanner.next() ) {
+            result.add( block );
+        }
+        return result;
+    }
+
+    public void documentAboutToBeChanged(DocumentEvent event) {
+    }
+
+    public void documentChanged(DocumentEvent event) {
+        String newText = event.getText();
+        update( new DocumentText( event.getDocument() ),
+                event.getOffset(),
+                event.getLength(),
+                newText == null ? 0 : newText.length() );
+    }
+
+    public void inputDocumentAboutToBeChanged(IDocument oldInput,
+                                              IDocument newInput) {
+    }
+
+    public void inputDocumentChanged(IDocument oldInput,
+                                     IDocument newInput) {
+        setDocument( newInput );
+    }
+
+    private void setDocument(IDocument newDocument) {
+        IDocument oldDocument;
+        synchronized ( this ) {
+            oldDocument = document;
+            document = newDocument;
+            blocks = newDocument == null ? new ArrayList<Block>() : scan( new DocumentText( newDocument ) );
+        }
+        if ( oldDocument != null ) {
+            oldDocument.removeDocumentListener( this );
+        }
+        if ( newDocument != null ) {
+            newDocument.addDocumentListener( this );
+        }
+    }
+
+    /**
+     * Updates the blocks after the given text replaced oldLength characters at
+     * the given offset by newLength ones.
+     */
+    synchronized void update(CharSequence text,
+                             int offset,
+                             int oldLength,
+                             int newLength) {
+        int delta = newLength - oldLength;
+        int from = lineStart( text,
+                              offset );
+        // the first block that may have changed, the ones before it end before the changed line
+        int first = firstBlockEndingAtOrAfter( from );
+        if ( first < blocks.size() && blocks.get( first ).getOffset() < from ) {
+            from = blocks.get( first ).getOffset();
+        }
+        // the blocks starting after the change, which only moved
+        int next = first;
+        while ( next < blocks.size() && blocks.get( next ).getOffset() < offset + oldLength ) {
+            next++;
+        }
+
+        List<Block> result = new ArrayList<Block>( blocks.size() + 1 );
+        result.addAll( blocks.subList( 0,
+                                       first ) );
+        Scanner scanner = new Scanner( text,
+                                       from );
+        for ( Block block = scanner.next(); block != null; block = scanner.next() ) {
+            if ( block.getOffset() >= offset + newLength ) {
+                while ( next < blocks.size() && blocks.get( next ).getOffset() + delta < block.getOffset() ) {
+                    next++;
+                }
+                if ( next < blocks.size() && blocks.get( next ).getOffset() + delta == block.getOffset() ) {
+                    // the same text follows from here on, so the same blocks do
+                    for ( int i = next; i < blocks.size(); i++ ) {
+                        result.add( blocks.get( i ).moved( delta ) );
+                    }
+                    break;
+                }
+            }
+            result.add( block );
+        }
+        blocks = result;
+    }
+
+    private int firstBlockEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while ( low <= high ) {
+            int middle = (low + high) >>> 1;
+            if ( blocks.get( middle ).getEnd() < offset ) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int lineStart(CharSequence text,
+                                 int offset) {
+        int i = Math.min( offset,
+                          text.length() );
+        while ( i > 0 && text.charAt( i - 1 ) != '\n' && text.charAt( i - 1 ) != '\r' ) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * A top level block of the text.
+     */
+    public static class Block {
+        private final Kind    kind;
+        private final int     offset;
+        private final int     length;
+        private final String  name;
+        private final int     nameOffset;
+        private final String  type;
+        private final boolean complete;
+
+        Block(Kind kind,
+              int offset,
+              int length,
+              String name,
+              int nameOffset,
+              String type,
+              boolean complete) {
+            this.kind = kind;
+            this.offset = offset;
+            this.length = length;
+            this.name = name;
+            this.nameOffset = nameOffset;
+            this.type = type;
+            this.complete = complete;
+        }
+
+        private Block moved(int delta) {
+            return delta == 0 ? this : new Block( kind,
+                                                  offset + delta,
+                                                  length,
+                                                  name,
+                                                  nameOffset + delta,
+                                                  type,
+                                                  complete );
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getEnd() {
+            return offset + length;
+        }
+
+        /**
+         * Returns the name of the block, or null if it has none yet.
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getNameOffset() {
+            return nameOffset;
+        }
+
+        public int getNameLength() {
+            return name == null ? 0 : name.length();
+        }
+
+        /**
+         * Returns the type of a global, or the return type of a function.
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Returns false for a rule, query or template without end, or a function
+         * without closing brace.
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        public String toString() {
+            return kind.keyword + " " + name + " [" + offset + ", " + length + "]";
+        }
+    }
+
+    /**
+     * Finds the blocks of a text, starting at the beginning of a line.
+     */
+    private static class Scanner {
+        private final CharSequence text;
+        private int                pos;
+
+        private Scanner(CharSequence text,
+                        int pos) {
+            this.text = text;
+            this.pos = pos;
+        }
+
+        private Block next() {
+            while ( pos < text.length() ) {
+                int start = skipWhitespace( pos );
+                Kind kind = keywordAt( start );
+                if ( kind != null ) {
+                    Block block = scanBlock( kind,
+                                             start );
+                    // the rest of the line after the end of a block is skipped
+                    pos = isLineStart( block.getEnd() ) ? block.getEnd() : nextLineStart( block.getEnd() );
+                    return block;
+                }
+                pos = nextLineStart( start );
+            }
+            return null;
+        }
+
+        private Block scanBlock(Kind kind,
+                                int start) {
+            int nameStart = skipAllWhitespace( start + kind.keyword.length() );
+            switch ( kind ) {
+                case RULE :
+                case QUERY :
+                case TEMPLATE :
+                    // the name of a block is on its first line
+                    return scanEndBlock( kind,
+                                         start,
+                                         skipWhitespace( start + kind.keyword.length() ) );
+                case FUNCTION :
+                    return scanFunction( start );
+                case GLOBAL :
+                    int typeEnd = tokenEnd( nameStart,
+                                            "" );
+                    String type = text.subSequence( nameStart,
+                                                    typeEnd ).toString();
+                    return scanStatement( kind,
+                                          start,
+                                          skipAllWhitespace( typeEnd ),
+                                          type );
+                default :
+                    return scanStatement( kind,
+                                          start,
+                                          nameStart,
+                                          null );
+            }
+        }
+
+        // package, import, global and expander end with their line
+        private Block scanStatement(Kind kind,
+                                    int start,
+                                    int nameStart,
+                                    String type) {
+            int nameEnd = tokenEnd( nameStart,
+                                    ";#" );
+            int end = nextLineStart( nameEnd );
+            return new Block( kind,
+                              start,
+                              end - start,
+                              nameEnd > nameStart ? text.subSequence( nameStart,
+                                                                      nameEnd ).toString() : null,
+                              nameStart,
+                              type,
+                              true );
+        }
+
+        // rules, queries and templates end with a line starting with end
+        private Block scanEndBlock(Kind kind,
+                                   int start,
+                                   int nameStart) {
+            String name = null;
+            if ( kind != Kind.TEMPLATE && nameStart < text.length() && text.charAt( nameStart ) == '"' ) {
+                int quote = indexOf( '"',
+                                     nameStart + 1 );
+                if ( quote != -1 && quote <= lineEnd( nameStart ) ) {
+                    name = text.subSequence( nameStart + 1,
+                                             quote ).toString();
+                    nameStart++;
+                }
+            } else {
+                int nameEnd = tokenEnd( nameStart,
+                                        ";#\"" );
+                if ( nameEnd > nameStart ) {
+                    name = text.subSequence( nameStart,
+                                             nameEnd ).toString();
+                }
+            }
+            int line = nextLineStart( start );
+            while ( line < text.length() ) {
+                int i = skipWhitespace( line );
+                if ( isWord( i,
+                             "end" ) ) {
+                    return new Block( kind,
+                                      start,
+                                      i + 3 - start,
+                                      name,
+                                      nameStart,
+                                      null,
+                                      true );
+                }
+                if ( keywordAt( i ) != null ) {
+                    return new Block( kind,
+                                      start,
+                                      line - start,
+                                      name,
+                                      nameStart,
+                                      null,
+                                      false );
+                }
+                line = nextLineStart( i );
+            }
+            return new Block( kind,
+                              start,
+                              text.length() - start,
+                              name,
+                              nameStart,
+                              null,
+                              false );
+        }
+
+        // functions end with the brace closing their body
+        private Block scanFunction(int start) {
+            int i = start + Kind.FUNCTION.keyword.length();
+            // the name is the last word before the parameters, the type the one before it
+            int lineEnd = lineEnd( i );
+            int parenthesis = indexOf( '(',
+                                       i );
+            String name = null;
+            String type = null;
+            int nameStart = i;
+            if ( parenthesis != -1 && parenthesis <= lineEnd ) {
+                int nameEnd = parenthesis;
+                while ( nameEnd > i && Character.isWhitespace( text.charAt( nameEnd - 1 ) ) ) {
+                    nameEnd--;
+                }
+                nameStart = nameEnd;
+                while ( nameStart > i && !Character.isWhitespace( text.charAt( nameStart - 1 ) ) ) {
+                    nameStart--;
+                }
+                if ( nameEnd > nameStart ) {
+                    name = text.subSequence( nameStart,
+                                             nameEnd ).toString();
+                    int typeEnd = nameStart;
+                    while ( typeEnd > i && Character.isWhitespace( text.charAt( typeEnd - 1 ) ) ) {
+                        typeEnd--;
+                    }
+                    int typeStart = typeEnd;
+                    while ( typeStart > i && !Character.isWhitespace( text.charAt( typeStart - 1 ) ) ) {
+                        typeStart--;
+                    }
+                    if ( typeEnd > typeStart ) {
+                        type = text.subSequence( typeStart,
+                                                 typeEnd ).toString();
+                    }
+                }
+            }
+            // braces in comments and literals don't count
+            int openBrackets = 0;
+            boolean body = false;
+            for ( ; i < text.length(); i++ ) {
+                char c = text.charAt( i );
+                if ( c == '{' ) {
+                    openBrackets++;
+                    body = true;
+                } else if ( c == '}' && body ) {
+                    if ( --openBrackets == 0 ) {
+                        return new Block( Kind.FUNCTION,
+                                          start,
+                                          i + 1 - start,
+                                          name,
+                                          nameStart,
+                                          type,
+                                          true );
+                    }
+                } else if ( c == '"' || c == '\'' ) {
+                    i = literalEnd( i );
+                } else if ( c == '/' && startsWith( i,
+                                                    "//" ) ) {
+                    i = lineEnd( i ) - 1;
+                } else if ( c == '/' && startsWith( i,
+                                                    "/*" ) ) {
+                    i = commentEnd( i );
+                } else if ( c == '\n' || c == '\r' ) {
+                    int line = nextLineStart( i );
+                    if ( keywordAt( skipWhitespace( line ) ) != null ) {
+                        return new Block( Kind.FUNCTION,
+                                          start,
+                                          line - start,
+                                          name,
+                                          nameStart,
+                                          type,
+                                          false );
+                    }
+                    i = line - 1;
+                }
+            }
+            return new Block( Kind.FUNCTION,
+                              start,
+                              text.length() - start,
+                              name,
+                              nameStart,
+                              type,
+                              false );
+        }
+
+        // the quote closing the literal starting at the given offset, or the end of its line if there is none
+        private int literalEnd(int i) {
+            char quote = text.charAt( i );
+            int lineEnd = lineEnd( i );
+            for ( i++; i < lineEnd; i++ ) {
+                char c = text.charAt( i );
+                if ( c == '\\' ) {
+                    i++;
+                } else if ( c == quote ) {
+                    return i;
+                }
+            }
+            return lineEnd - 1;
+        }
+
+        // the slash closing the comment starting at the given offset, or the offset itself while it is unclosed
+        private int commentEnd(int i) {
+            for ( int j = i + 2; j + 1 < text.length(); j++ ) {
+                if ( text.charAt( j ) == '*' && text.charAt( j + 1 ) == '/' ) {
+                    return j + 1;
+                }
+            }
+            return i;
+        }
+
+        private Kind keywordAt(int i) {
+            if ( i >= text.length() ) {
+                return null;
+            }
+            for ( Kind kind : Kind.values() ) {
+                String keyword = kind.keyword;
+                int end = i + keyword.length();
+                if ( end < text.length() && Character.isWhitespace( text.charAt( end ) ) && startsWith( i,
+                                                                                                     keyword ) ) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+
+        private boolean isWord(int i,
+                               String word) {
+            int end = i + word.length();
+            return startsWith( i,
+                               word ) && (end == text.length() || !Character.isJavaIdentifierPart( text.charAt( end ) ));
+        }
+
+        private boolean startsWith(int i,
+                                   String word) {
+            if ( i + word.length() > text.length() ) {
+                return false;
+            }
+            for ( int j = 0; j < word.length(); j++ ) {
+                if ( text.charAt( i + j ) != word.charAt( j ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // the end of the token at the given offset, which ends with whitespace or one of the given characters
+        private int tokenEnd(int i,
+                             String stopChars) {
+            while ( i < text.length() && !Character.isWhitespace( text.charAt( i ) ) && stopChars.indexOf( text.charAt( i ) ) == -1 ) {
+                i++;
+            }
+            return i;
+        }
+
+        private int indexOf(char c,
+                            int i) {
+            for ( ; i < text.length(); i++ ) {
+                if ( text.charAt( i ) == c ) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // skips the whitespace on the line
+        private int skipWhitespace(int i) {
+            while ( i < text.length() && text.charAt( i ) != '\n' && text.charAt( i ) != '\r' && Character.isWhitespace( text.charAt( i ) ) ) {
+                i++;
+            }
+            return i;
+        }
+
+        private int skipAllWhitespace(int i) {
+            while ( i < text.length() && Character.isWhitespace( text.charAt( i ) ) ) {
+                i++;
+            }
+            return i;
+        }
+
+        private boolean isLineStart(int i) {
+            return i == 0 || text.charAt( i - 1 ) == '\n' || text.charAt( i - 1 ) == '\r';
+        }
+
+        private int lineEnd(int i) {
+            while ( i < text.length() && text.charAt( i ) != '\n' && text.charAt( i ) != '\r' ) {
+                i++;
+            }
+            return i;
+        }
+
+        private int nextLineStart(int i) {
+            i = lineEnd( i );
+            if ( i < text.length() && text.charAt( i ) == '\r' ) {
+                i++;
+            }
+            if ( i < text.length() && text.charAt( i ) == '\n' ) {
+                i++;
+            }
+            return i;
+        }
+    }
+
+    /**
+     * The text of a document, read without copying it.
+     */
+    private static class DocumentText
+        implements
+        CharSequence {
+        private final IDocument document;
+
+        private DocumentText(IDocument document) {
+            this.document = document;
+        }
+
+        public int length() {
+            return document.getLength();
+        }
+
+        public char charAt(int index) {
+            try {
+                return document.getChar( index );
+            } catch ( BadLocationException e ) {
+                throw new IndexOutOfBoundsException( e.getMessage() );
+            }
+        }
+
+        public CharSequence subSequence(int start,
+                                        int end) {
+            try {
+                return document.get( start,
+                                     end - start );
+            } catch ( BadLocationException e ) {
+                throw new IndexOutOfBoundsException( e.getMessage() );
+            }
+        }
+
+        public String toString() {
+            return document.get();
+        }
+    }
+}
@@ -20,6 +20,8 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
+import org.drools.eclipse.DroolsEclipsePlugin;
+import org.drools.eclipse.preferences.IDroolsConstants;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.ITextViewer;
@@ -32,6 +34,8 @@ import org.eclipse.ui.IEditorPart;
 public abstract class AbstractCompletionProcessor implements IContentAssistProcessor {
 
     private IEditorPart editor;
+    private CompletionRequest request;
+    private String errorMessage;
 
     public AbstractCompletionProcessor(IEditorPart editor) {
         this.editor = editor;
@@ -42,7 +46,17 @@ public abstract class AbstractCompletionProcessor implements IContentAssistProce
     }
 
     public ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int documentOffset) {
-        List<ICompletionProposal> proposals = getCompletionProposals(viewer, documentOffset);
+        CompletionRequest current = new CompletionRequest(getContentAssistTimeout());
+        request = current;
+        List<ICompletionProposal> proposals;
+        try {
+            proposals = getCompletionProposals(viewer, documentOffset);
+        } finally {
+            // whatever is still computed is obsolete as soon as the popup shows
+            current.cancel();
+            errorMessage = current.getTimeoutMessage();
+            request = null;
+        }
         if (proposals == null) {
             return new ICompletionProposal[0];
         }
@@ -59,6 +73,27 @@ public abstract class AbstractCompletionProcessor implements IContentAssistProce
      */
     protected abstract List<ICompletionProposal> getCompletionProposals(ITextViewer viewer, int documentOffset);
 
+    /**
+     * Returns the content assist request being computed, whose latency budget
+     * all proposal sources share.
+     */
+    protected CompletionRequest getRequest() {
+        CompletionRequest current = request;
+        if (current == null) {
+            // proposals asked for outside of computeCompletionProposals
+            current = new CompletionRequest(getContentAssistTimeout());
+        }
+        return current;
+    }
+
+    private static long getContentAssistTimeout() {
+        DroolsEclipsePlugin plugin = DroolsEclipsePlugin.getDefault();
+        if (plugin == null) {
+            return DroolsEclipsePlugin.DEFAULT_CONTENT_ASSIST_TIMEOUT;
+        }
+        return plugin.getPreferenceStore().getInt(IDroolsConstants.CONTENT_ASSIST_TIMEOUT);
+    }
+
     /**
      *  Filter out the proposals whose content does not start with the given prefix.
      */
@@ -120,6 +155,6 @@ public abstract class AbstractCompletionProcessor implements IContentAssistProce
      * @see IContentAssistProcessor
      */
     public String getErrorMessage() {
-        return null;
+        return errorMessage;
     }
 }
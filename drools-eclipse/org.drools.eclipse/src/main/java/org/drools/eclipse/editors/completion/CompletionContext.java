@@ -18,9 +18,12 @@ package org.drools.eclipse.editors.completion;
 
 import static org.drools.compiler.compiler.DRLFactory.buildParser;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.drools.compiler.lang.DRLParser;
@@ -45,6 +48,19 @@ public class CompletionContext {
     static final String MVEL_DIALECT = "mvel";
     static final String JAVA_DIALECT = "java";
 
+    // identifiers that may change the location when typed at the end of the text
+    private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList(
+            "package", "import", "function", "global", "rule", "query", "template",
+            "declare", "extends", "attributes", "when", "then", "end", "salience",
+            "enabled", "dialect", "duration", "timer", "calendars", "and", "or", "not",
+            "exists", "forall", "eval", "from", "collect", "accumulate", "init",
+            "action", "reverse", "result", "over", "window", "matches", "memberOf",
+            "contains", "excludes", "soundslike", "str", "in", "is", "this", "null",
+            "true", "false", "after", "before", "coincides", "during", "finishes",
+            "finishedby", "includes", "meets", "metby", "overlaps", "overlappedby",
+            "starts", "startedby"));
+
+    private String text;
     private LinkedList<Object> parserList;
     private int location;
     private int locationIndex;
@@ -58,11 +74,86 @@ public class CompletionContext {
             parser.compilationUnit();
         } catch (Exception ex) {
         }
+        text = backText;
         parserList = parser.getEditorInterface().get(0).getContent();
         deriveLocation();
         determineDialect(backText);
     }
 
+    private CompletionContext(String backText, LinkedList<Object> parserList, int location, int locationIndex) {
+        this.text = backText;
+        this.parserList = parserList;
+        this.location = location;
+        this.locationIndex = locationIndex;
+        determineDialect(backText);
+    }
+
+    /**
+     * Returns the context of the given text, which usually is the text of this
+     * context with some characters typed or deleted at its end. When only the
+     * identifier this text ends with changed, the tokens and location of this
+     * context are reused and just that identifier is read again, instead of
+     * parsing the whole text.
+     */
+    public CompletionContext update(String backText) {
+        if (backText.equals(text)) {
+            return this;
+        }
+        LinkedList<Object> updatedList = updateLastIdentifier(backText);
+        if (updatedList == null) {
+            return new CompletionContext(backText);
+        }
+        return new CompletionContext(backText, updatedList, location, locationIndex);
+    }
+
+    private LinkedList<Object> updateLastIdentifier(String backText) {
+        // any identifier typed where an operator is expected may be a custom one
+        if (parserList.isEmpty() || location == Location.LOCATION_LHS_INSIDE_CONDITION_OPERATOR) {
+            return null;
+        }
+        Object last = parserList.getLast();
+        if (!(last instanceof DroolsToken)) {
+            return null;
+        }
+        DroolsToken token = (DroolsToken) last;
+        int start = token.getStartIndex();
+        if (start < 0 || token.getStopIndex() != text.length() - 1 || !isIdentifier(token.getText())) {
+            return null;
+        }
+        // the text before the identifier must be unchanged
+        if (backText.length() <= start || !backText.regionMatches(0, text, 0, start)) {
+            return null;
+        }
+        String identifier = backText.substring(start);
+        if (!isIdentifier(identifier)) {
+            return null;
+        }
+        DroolsToken updated = new DroolsToken(token.getType(), identifier);
+        updated.setChannel(token.getChannel());
+        updated.setLine(token.getLine());
+        updated.setCharPositionInLine(token.getCharPositionInLine());
+        updated.setTokenIndex(token.getTokenIndex());
+        updated.setStartIndex(start);
+        updated.setStopIndex(backText.length() - 1);
+        updated.setEditorType(token.getEditorType());
+        LinkedList<Object> updatedList = new LinkedList<Object>(parserList);
+        updatedList.removeLast();
+        updatedList.add(updated);
+        return updatedList;
+    }
+
+    private static boolean isIdentifier(String s) {
+        if (s.length() == 0 || !Character.isJavaIdentifierStart(s.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < s.length(); i++) {
+            if (!Character.isJavaIdentifierPart(s.charAt(i))) {
+                return false;
+            }
+        }
+        return !KEYWORDS.contains(s);
+    }
+
     public boolean isJavaDialect() {
         return JAVA_DIALECT.equalsIgnoreCase(dialect);
     }
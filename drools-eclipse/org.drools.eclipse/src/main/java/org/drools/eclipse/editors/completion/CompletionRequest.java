@@ -0,0 +1,304 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors.completion;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.drools.eclipse.DroolsEclipsePlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+
+/**
+ * A single content assist request. The expensive proposal sources of the
+ * request, like JDT code completion, are computed on worker threads while the
+ * cheap ones are added on the calling thread, and all of them only get the
+ * latency budget of the request to deliver their proposals. A source that is
+ * still running when the budget is spent, or when the request is cancelled
+ * because a new one started, is cancelled and its proposals are left out.
+ *
+ * The sources of all the requests share two worker threads. Sources that
+ * don't stop promptly when cancelled hence can't pile up threads while typing:
+ * the sources of cancelled requests that didn't start yet are discarded, and
+ * when the queue is full, the oldest waiting source gives way: it is cancelled,
+ * so the request waiting for it goes on without its proposals right away.
+ *
+ * The time taken by every source is recorded, so slow sources show up in the
+ * statistics on the Drools preference page.
+ */
+public class CompletionRequest {
+
+    private static final ThreadPoolExecutor          EXECUTOR   = createExecutor();
+    private static final Map<String, SourceStatistics> STATISTICS = new TreeMap<String, SourceStatistics>();
+
+    private final long                               deadline;
+    private final List<PendingProposals>             pending    = new ArrayList<PendingProposals>();
+    private final List<String>                       timedOut   = new ArrayList<String>();
+    private volatile boolean                         cancelled;
+
+    public CompletionRequest(long budget) {
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( budget );
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor( 2,
+                                                              2,
+                                                              30,
+                                                              TimeUnit.SECONDS,
+                                                              new ArrayBlockingQueue<Runnable>( 8 ),
+                                                              new CompletionThreadFactory(),
+                                                              new CancelOldestPolicy() );
+        executor.allowCoreThreadTimeOut( true );
+        return executor;
+    }
+
+    /**
+     * Computes the proposals of the given source.
+     */
+    public interface ProposalSource {
+        Collection<ICompletionProposal> getProposals(IProgressMonitor monitor) throws Exception;
+    }
+
+    /**
+     * Starts computing the proposals of the given source on a worker thread.
+     */
+    public synchronized PendingProposals submit(String name,
+                                                ProposalSource source) {
+        PendingProposals proposals = new PendingProposals( name,
+                                                           source );
+        if ( cancelled ) {
+            proposals.monitor.setCanceled( true );
+        } else {
+            proposals.future = EXECUTOR.submit( proposals );
+        }
+        pending.add( proposals );
+        return proposals;
+    }
+
+    /**
+     * Waits for the proposals of the given source until the budget of this request
+     * is spent, and adds them to the given results. A source that does not deliver
+     * in time is cancelled.
+     */
+    public void collect(PendingProposals proposals,
+                        Collection<ICompletionProposal> results) {
+        if ( proposals.future == null ) {
+            return;
+        }
+        try {
+            long remaining = Math.max( 0, deadline - System.nanoTime() );
+            results.addAll( proposals.future.get( remaining,
+                                                  TimeUnit.NANOSECONDS ) );
+        } catch ( TimeoutException e ) {
+            proposals.cancel();
+            record( proposals.name,
+                    System.nanoTime() - proposals.start,
+                    true );
+            synchronized ( this ) {
+                timedOut.add( proposals.name );
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            proposals.cancel();
+        } catch ( ExecutionException e ) {
+            DroolsEclipsePlugin.log( e.getCause() );
+        } catch ( CancellationException e ) {
+            // the request was cancelled meanwhile
+        }
+    }
+
+    /**
+     * Records the time taken by a source computed on the calling thread, which
+     * started at the given System.nanoTime().
+     */
+    public static void recordTime(String name,
+                                  long start) {
+        record( name,
+                System.nanoTime() - start,
+                false );
+    }
+
+    /**
+     * Cancels all the sources of this request that are still running.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        for ( PendingProposals proposals : pending ) {
+            proposals.cancel();
+        }
+        // don't let the sources that didn't start yet hold up the next request
+        EXECUTOR.purge();
+    }
+
+    /**
+     * Returns a message naming the sources that did not deliver within the budget,
+     * or null if all of them did.
+     */
+    public synchronized String getTimeoutMessage() {
+        if ( timedOut.isEmpty() ) {
+            return null;
+        }
+        StringBuffer message = new StringBuffer( "Content assist timed out computing " );
+        for ( int i = 0; i < timedOut.size(); i++ ) {
+            if ( i > 0 ) {
+                message.append( ", " );
+            }
+            message.append( timedOut.get( i ) );
+        }
+        return message.append( " proposals" ).toString();
+    }
+
+    /**
+     * Returns the number of requests, the average and maximum time and the number
+     * of timeouts of every proposal source.
+     */
+    public static String getStatistics() {
+        StringBuffer statistics = new StringBuffer();
+        synchronized ( STATISTICS ) {
+            for ( Map.Entry<String, SourceStatistics> entry : STATISTICS.entrySet() ) {
+                SourceStatistics source = entry.getValue();
+                if ( statistics.length() > 0 ) {
+                    statistics.append( "\n" );
+                }
+                statistics.append( entry.getKey() )
+                          .append( " proposals: " ).append( source.count ).append( " requests, " )
+                          .append( TimeUnit.NANOSECONDS.toMillis( source.total / source.count ) ).append( " ms average, " )
+                          .append( TimeUnit.NANOSECONDS.toMillis( source.max ) ).append( " ms maximum, " )
+                          .append( source.timeouts ).append( " timed out" );
+            }
+        }
+        return statistics.toString();
+    }
+
+    private static void record(String name,
+                               long time,
+                               boolean timeout) {
+        synchronized ( STATISTICS ) {
+            SourceStatistics source = STATISTICS.get( name );
+            if ( source == null ) {
+                source = new SourceStatistics();
+                STATISTICS.put( name,
+                                source );
+            }
+            source.count++;
+            source.total += time;
+            source.max = Math.max( source.max,
+                                   time );
+            if ( timeout ) {
+                source.timeouts++;
+            }
+        }
+    }
+
+    public static class PendingProposals
+        implements
+        Callable<Collection<ICompletionProposal>> {
+        private final String           name;
+        private final ProposalSource   source;
+        private final IProgressMonitor monitor = new NullProgressMonitor();
+        private final long             start   = System.nanoTime();
+        private Future<Collection<ICompletionProposal>> future;
+
+        private PendingProposals(String name,
+                                 ProposalSource source) {
+            this.name = name;
+            this.source = source;
+        }
+
+        public Collection<ICompletionProposal> call() throws Exception {
+            if ( monitor.isCanceled() ) {
+                return Collections.emptyList();
+            }
+            Collection<ICompletionProposal> proposals = source.getProposals( monitor );
+            if ( !monitor.isCanceled() ) {
+                record( name,
+                        System.nanoTime() - start,
+                        false );
+            }
+            return proposals;
+        }
+
+        private void cancel() {
+            monitor.setCanceled( true );
+            if ( future != null ) {
+                future.cancel( false );
+            }
+        }
+    }
+
+    /**
+     * Makes room for a new source by cancelling the oldest waiting one, rather than
+     * silently dropping it and leaving its request waiting for the whole budget.
+     */
+    private static class CancelOldestPolicy
+        implements
+        RejectedExecutionHandler {
+
+        public void rejectedExecution(Runnable r,
+                                      ThreadPoolExecutor executor) {
+            if ( executor.isShutdown() ) {
+                cancel( r );
+                return;
+            }
+            cancel( executor.getQueue().poll() );
+            executor.execute( r );
+        }
+
+        private static void cancel(Runnable r) {
+            if ( r instanceof Future ) {
+                ((Future< ? >) r).cancel( false );
+            }
+        }
+    }
+
+    private static class SourceStatistics {
+        private int  count;
+        private long total;
+        private long max;
+        private int  timeouts;
+    }
+
+    private static class CompletionThreadFactory
+        implements
+        ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger( 1 );
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread( r,
+                                        "Drools Content Assist Worker-" + threadNumber.getAndIncrement() );
+            thread.setDaemon( true );
+            thread.setContextClassLoader( CompletionRequest.class.getClassLoader() );
+            return thread;
+        }
+    }
+}
@@ -23,24 +23,30 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
 
 import org.drools.compiler.lang.dsl.DSLMapping;
 import org.drools.compiler.lang.dsl.DSLMappingEntry;
 import org.drools.compiler.lang.dsl.DSLMappingEntry.Section;
 
+/**
+ * The sentences of a DSL, as a tree of their tokens. Once built the tree is
+ * only read, so one tree is shared by all the editors using the DSL.
+ */
 public class DSLTree {
 
     public static final String separator = "=";
     public static final String tab = "  ";
     
-    private Node current = null;
-    private Node last = null;
     private Node rootCond = null;
     private Node rootConseq = null;
     private boolean empty = true;
-    private ArrayList<String> suggestions = new ArrayList<String>();
     private HashMap<String, String> objToNL = new HashMap<String, String>();
+    // the same tokens occur in many sentences, they are only kept once while building
+    private HashMap<String, String> tokenPool = new HashMap<String, String>();
     
     public DSLTree() {
         this.rootCond = new Node("root");
@@ -74,6 +80,13 @@ public class DSLTree {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        built();
+    }
+
+    private void built() {
+        this.rootCond.trimToSize();
+        this.rootConseq.trimToSize();
+        this.tokenPool.clear();
         this.empty = false;
     }
     
@@ -139,6 +152,7 @@ public class DSLTree {
             String objname = entry.getMetaData().getMetaData();
             addEntry(section, nl, objname);
         }
+        built();
     }
     
     private void addEntry(Section section, String nl, String objname) {
@@ -234,10 +248,10 @@ public class DSLTree {
      * @param tokens
      */
     public void addTokens(String metadata, StringTokenizer tokens) {
-        Node mnode = this.rootCond.addToken(metadata);
+        Node mnode = this.rootCond.addToken(pooled(metadata));
         Node thenode = mnode;
         while (tokens.hasMoreTokens()) {
-            Node newnode = thenode.addToken(tokens.nextToken());
+            Node newnode = thenode.addToken(pooled(tokens.nextToken()));
             thenode = newnode;
         }
     }
@@ -249,10 +263,22 @@ public class DSLTree {
     public void addTokens(String[] tokens, Node rootNode) {
         Node thenode = rootNode;
         for (int i = 0; i < tokens.length; i++) {
-            Node newnode = thenode.addToken(tokens[i]);
+            Node newnode = thenode.addToken(pooled(tokens[i]));
             thenode = newnode;
         }
     }
+
+    private String pooled(String token) {
+        if (token == null) {
+            return null;
+        }
+        String pooled = tokenPool.get(token);
+        if (pooled == null) {
+            tokenPool.put(token, token);
+            pooled = token;
+        }
+        return pooled;
+    }
     
     /**
      * the method will tokenize the text and try to find
@@ -263,25 +289,10 @@ public class DSLTree {
      * @return
      */
     public Node[] getConditionChildren(String text) {
-        Node thenode = this.rootCond;
+        Collection<Node> children = this.rootCond.getChildren();
         if (text.length() > 0) {
-            StringTokenizer tokenz = new StringTokenizer(text);
-            this.last = this.current;
-            while (tokenz.hasMoreTokens()) {
-                String strtk = tokenz.nextToken();
-                Node ch = thenode.getChild(strtk);
-                // if a child is found, we set thenode to the child Node
-                if (ch != null) {
-                    thenode = ch;
-                } else {
-                    break;
-                }
-            }
-            if (thenode != this.rootCond) {
-                this.current = thenode;
-            }
+            children = getMatchingChildren(this.rootCond, text);
         }
-        Collection<Node> children = thenode.getChildren();
         Node[] nchild = new Node[children.size()];
         return children.toArray(nchild);
     }
@@ -295,25 +306,7 @@ public class DSLTree {
      * @return
      */
     public Node[] getConsequenceChildren(String text) {
-        Node thenode = this.rootConseq;
-        if (text.length() >= 0) {
-            StringTokenizer tokenz = new StringTokenizer(text);
-            this.last = this.current;
-            while (tokenz.hasMoreTokens()) {
-                String strtk = tokenz.nextToken();
-                Node ch = thenode.getChild(strtk);
-                // if a child is found, we set thenode to the child Node
-                if (ch != null) {
-                    thenode = ch;
-                } else {
-                    break;
-                }
-            }
-            if (thenode != this.rootConseq) {
-                this.current = thenode;
-            }
-        }
-        Collection<Node> children = thenode.getChildren();
+        Collection<Node> children = getMatchingChildren(this.rootConseq, text);
         Node[] nchild = new Node[children.size()];
         return children.toArray(nchild);
     }
@@ -340,31 +333,66 @@ public class DSLTree {
                 }
             }
         }
-        if (thenode != null && text.length() > 0) {
-            StringTokenizer tokenz = new StringTokenizer(text);
-            this.last = this.current;
-            while (tokenz.hasMoreTokens()) {
-                String strtk = tokenz.nextToken();
-                Node ch = thenode.getChild(strtk);
-                // if a child is found, we set thenode to the child Node
-                if (ch != null) {
-                    thenode = ch;
-                } else {
-                    break;
-                }
-            }
-            if (thenode != this.rootCond) {
-                this.current = thenode;
-            }
-        }
         if (thenode == null) {
             return null;
             // thenode = this.rootCond;
         }
         Collection<Node> children = thenode.getChildren();
+        if (text.length() > 0) {
+            children = getMatchingChildren(thenode, text);
+        }
         Node[] nchild = new Node[children.size()];
         return children.toArray(nchild);
     }
+
+    /**
+     * Traverses down from the given node as far as the tokens of the text
+     * match, ignoring case, and returns the children at that level. When the
+     * last token is still being typed only the children starting with it are
+     * returned, if there are any.
+     */
+    private static Collection<Node> getMatchingChildren(Node thenode, String text) {
+        List<String> tokens = tokenize(text);
+        for (int i = 0; i < tokens.size(); i++) {
+            String strtk = tokens.get(i);
+            Node ch = thenode.getChildIgnoreCase(strtk);
+            // if a child is found, we set thenode to the child Node
+            if (ch != null) {
+                thenode = ch;
+            } else {
+                if (i == tokens.size() - 1 && !Character.isWhitespace(text.charAt(text.length() - 1))) {
+                    Collection<Node> children = thenode.getChildren(strtk);
+                    if (!children.isEmpty()) {
+                        return children;
+                    }
+                }
+                break;
+            }
+        }
+        return thenode.getChildren();
+    }
+
+    /**
+     * Splits the text in its whitespace separated tokens, like a StringTokenizer.
+     */
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                if (start != -1) {
+                    tokens.add(text.substring(start, i));
+                    start = -1;
+                }
+            } else if (start == -1) {
+                start = i;
+            }
+        }
+        if (start != -1) {
+            tokens.add(text.substring(start));
+        }
+        return tokens;
+    }
     
     /**
      * for convienance, the method will return a list of strings
@@ -376,14 +404,15 @@ public class DSLTree {
      */
     public ArrayList<String> getConditionChildrenList(String text, boolean addChildren) {
         Node[] c = getConditionChildren(text);
-        this.suggestions.clear();
+        // a set, as a large DSL generates thousands of sentences to check for duplicates
+        Set<String> suggestions = new LinkedHashSet<String>();
         for (int idx=0; idx < c.length; idx++) {
-            this.suggestions.add(c[idx].getToken());
+            suggestions.add(c[idx].getToken());
             if (addChildren) {
-                this.addChildToList(c[idx], c[idx].getToken(), this.suggestions);
+                this.addChildToList(c[idx], c[idx].getToken(), suggestions);
             }
         }
-        return this.suggestions;
+        return new ArrayList<String>(suggestions);
     }
     
     /**
@@ -396,15 +425,16 @@ public class DSLTree {
      */
     public ArrayList<String> getConsequenceChildrenList(String text, boolean addChildren) {
         Node[] c = getConsequenceChildren(text);
-        this.suggestions.clear();
+        // a set, as a large DSL generates thousands of sentences to check for duplicates
+        Set<String> suggestions = new LinkedHashSet<String>();
         for (int idx=0; idx < c.length; idx++) {
             if (addChildren) {
-                this.addChildToList(c[idx], c[idx].getToken(), this.suggestions);
+                this.addChildToList(c[idx], c[idx].getToken(), suggestions);
             } else {
-                this.suggestions.add(c[idx].getToken());
+                suggestions.add(c[idx].getToken());
             }
         }
-        return this.suggestions;
+        return new ArrayList<String>(suggestions);
     }
     
     /**
@@ -416,30 +446,31 @@ public class DSLTree {
      */
     public ArrayList<String> getChildrenList(String obj, String text, boolean addChildren, boolean firstLine) {
         Node[] c = getChildren(obj,text);
-        this.suggestions.clear();
+        // a set, as a large DSL generates thousands of sentences to check for duplicates
+        Set<String> suggestions = new LinkedHashSet<String>();
         if (c != null) {
             for (int idx=0; idx < c.length; idx++) {
                 if (addChildren) {
-                    this.addChildToList(c[idx], c[idx].getToken(), this.suggestions);
+                    this.addChildToList(c[idx], c[idx].getToken(), suggestions);
                 } else {
-                    this.suggestions.add(c[idx].getToken());
+                    suggestions.add(c[idx].getToken());
                 }
             }
         }
-        if (text.trim().length() == 0 || this.suggestions.isEmpty()) {
+        if (text.trim().length() == 0 || suggestions.isEmpty()) {
             // in the event the list is empty, we also add
             // the top level nodes
             for (Node t : rootCond.getChildren()) {
-                if ((!firstLine || t.getToken() != null) && !this.suggestions.contains(t.getToken())) {
+                if ((!firstLine || t.getToken() != null) && !suggestions.contains(t.getToken())) {
                     if (addChildren) {
-                        this.addChildToList(t, t.getToken(), this.suggestions);
+                        this.addChildToList(t, t.getToken(), suggestions);
                     } else {
-                        this.suggestions.add(t.getToken());
+                        suggestions.add(t.getToken());
                     }
                 }
             }
         }
-        return this.suggestions;
+        return new ArrayList<String>(suggestions);
     }
 
     /**
@@ -449,7 +480,7 @@ public class DSLTree {
      * @param prefix
      * @param list
      */
-    public void addChildToList(Node n, String prefix, ArrayList<String> list) {
+    public void addChildToList(Node n, String prefix, Collection<String> list) {
         if (n.getChildren().size() > 0) {
             for (Node child : n.getChildren()) {
                 if (prefix != null && "-".equals(child.getToken())) {
@@ -469,22 +500,6 @@ public class DSLTree {
         }
     }
     
-    public Node getCurrent() {
-        return current;
-    }
-
-    public void setCurrent(Node current) {
-        this.current = current;
-    }
-
-    public Node getLast() {
-        return last;
-    }
-
-    public void setLast(Node last) {
-        this.last = last;
-    }
-
     /**
      * The method will print the DSLTree to System.out in text format.
      */
@@ -37,6 +37,7 @@ import org.drools.eclipse.DroolsPluginImages;
 import org.drools.eclipse.editors.AbstractRuleEditor;
 import org.drools.eclipse.editors.DRLRuleEditor;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.CompletionContext;
 import org.eclipse.jdt.core.CompletionProposal;
 import org.eclipse.jdt.core.IField;
@@ -155,7 +156,7 @@ public class DefaultCompletionProcessor extends AbstractCompletionProcessor {
     /*
      * create and returns a java project based on the current editor input or returns null
      */
-    private IJavaProject getCurrentJavaProject() {
+    protected IJavaProject getCurrentJavaProject() {
         IEditorInput input = getEditor().getEditorInput();
         if ( !(input instanceof IFileEditorInput) ) {
             return null;
@@ -169,43 +170,50 @@ public class DefaultCompletionProcessor extends AbstractCompletionProcessor {
                                         final int documentOffset,
                                         final String prefix) {
         List<ICompletionProposal> result = new ArrayList<ICompletionProposal>();
-        IJavaProject javaProject = getCurrentJavaProject();
+        final IJavaProject javaProject = getCurrentJavaProject();
         if ( javaProject == null ) {
             return result;
         }
-        CompletionProposalCollector collector = new CompletionProposalCollector( javaProject ) {
-            public void accept(CompletionProposal proposal) {
-                if ( proposal.getKind() == org.eclipse.jdt.core.CompletionProposal.PACKAGE_REF || proposal.getKind() == org.eclipse.jdt.core.CompletionProposal.TYPE_REF ) {
-                    super.accept( proposal );
-                }
-            }
-        };
-        collector.acceptContext( new CompletionContext() );
-        try {
-            IEvaluationContext evalContext = javaProject.newEvaluationContext();
-            evalContext.codeComplete( classNameStart,
-                                      classNameStart.length(),
-                                      collector );
-            IJavaCompletionProposal[] proposals = collector.getJavaCompletionProposals();
-            for ( int i = 0; i < proposals.length; i++ ) {
-                if ( proposals[i] instanceof AbstractJavaCompletionProposal ) {
-                    AbstractJavaCompletionProposal javaProposal = (AbstractJavaCompletionProposal) proposals[i];
-                    int replacementOffset = documentOffset - (classNameStart.length() - javaProposal.getReplacementOffset());
-                    javaProposal.setReplacementOffset( replacementOffset );
-                    if ( javaProposal instanceof LazyJavaTypeCompletionProposal ) {
-                        String completionPrefix = classNameStart.substring( classNameStart.length() - javaProposal.getReplacementLength() );
-                        int dotIndex = completionPrefix.lastIndexOf( '.' );
-                        // match up to the last dot in order to make higher level matching still work (camel case...)
-                        if ( dotIndex != -1 ) {
-                            javaProposal.setReplacementString( ((LazyJavaTypeCompletionProposal) javaProposal).getQualifiedTypeName() );
+        CompletionRequest.ProposalSource source = new CompletionRequest.ProposalSource() {
+            public Collection<ICompletionProposal> getProposals(IProgressMonitor monitor) throws Exception {
+                List<ICompletionProposal> types = new ArrayList<ICompletionProposal>();
+                CompletionProposalCollector collector = new CompletionProposalCollector( javaProject ) {
+                    public void accept(CompletionProposal proposal) {
+                        if ( proposal.getKind() == org.eclipse.jdt.core.CompletionProposal.PACKAGE_REF || proposal.getKind() == org.eclipse.jdt.core.CompletionProposal.TYPE_REF ) {
+                            super.accept( proposal );
                         }
                     }
-                    result.add( proposals[i] );
+                };
+                collector.acceptContext( new CompletionContext() );
+                IEvaluationContext evalContext = javaProject.newEvaluationContext();
+                evalContext.codeComplete( classNameStart,
+                                          classNameStart.length(),
+                                          collector,
+                                          monitor );
+                IJavaCompletionProposal[] proposals = collector.getJavaCompletionProposals();
+                for ( int i = 0; i < proposals.length; i++ ) {
+                    if ( proposals[i] instanceof AbstractJavaCompletionProposal ) {
+                        AbstractJavaCompletionProposal javaProposal = (AbstractJavaCompletionProposal) proposals[i];
+                        int replacementOffset = documentOffset - (classNameStart.length() - javaProposal.getReplacementOffset());
+                        javaProposal.setReplacementOffset( replacementOffset );
+                        if ( javaProposal instanceof LazyJavaTypeCompletionProposal ) {
+                            String completionPrefix = classNameStart.substring( classNameStart.length() - javaProposal.getReplacementLength() );
+                            int dotIndex = completionPrefix.lastIndexOf( '.' );
+                            // match up to the last dot in order to make higher level matching still work (camel case...)
+                            if ( dotIndex != -1 ) {
+                                javaProposal.setReplacementString( ((LazyJavaTypeCompletionProposal) javaProposal).getQualifiedTypeName() );
+                            }
+                        }
+                        types.add( proposals[i] );
+                    }
                 }
+                return types;
             }
-        } catch ( Throwable t ) {
-            DroolsEclipsePlugin.log( t );
-        }
+        };
+        CompletionRequest request = getRequest();
+        request.collect( request.submit( "Java types",
+                                         source ),
+                         result );
         return result;
     }
 
@@ -324,70 +332,58 @@ public class DefaultCompletionProcessor extends AbstractCompletionProcessor {
                                                   Collection<ICompletionProposal> results,
                                                   boolean useDrools,
                                                   boolean useContext) {
+        CompletionRequest request = getRequest();
+        request.collect( submitJavaCompletionProposals( request,
+                                                        javaText,
+                                                        prefix,
+                                                        documentOffset,
+                                                        params,
+                                                        useDrools,
+                                                        useContext ),
+                         results );
+    }
 
-
+    /**
+     * Starts the JDT code completion of the given java text on a worker thread of
+     * the given request. The editor is only accessed on the calling thread.
+     */
+    protected CompletionRequest.PendingProposals submitJavaCompletionProposals(CompletionRequest request,
+                                                                               final String javaText,
+                                                                               final String prefix,
+                                                                               final int documentOffset,
+                                                                               Map<String, String> params,
+                                                                               boolean useDrools,
+                                                                               boolean useContext) {
         String javaTextWithoutPrefix = CompletionUtil.getTextWithoutPrefix( javaText,
                                                                             prefix );
         // boolean to filter default Object methods produced by code completion when in the beginning of a statement
-        boolean filterObjectMethods = false;
-        if ( "".equals( javaTextWithoutPrefix.trim() ) || CompletionUtil.START_OF_NEW_JAVA_STATEMENT.matcher( javaTextWithoutPrefix ).matches() ) {
-            filterObjectMethods = true;
-        }
+        boolean filterObjectMethods = "".equals( javaTextWithoutPrefix.trim() )
+                                            || CompletionUtil.START_OF_NEW_JAVA_STATEMENT.matcher( javaTextWithoutPrefix ).matches();
         IJavaProject javaProject = getCurrentJavaProject();
-        if ( javaProject == null ) {
-            return;
-        }
+        List<String> imports = javaProject == null ? null : getImports();
 
-        CompletionProposalCollector collector = new CompletionProposalCollector( javaProject );
-        collector.acceptContext( new CompletionContext() );
-
-        try {
-            IEvaluationContext evalContext = javaProject.newEvaluationContext();
-            List<String> imports = getImports();
-            if ( imports != null && imports.size() > 0 ) {
-                evalContext.setImports(imports.toArray(new String[imports.size()]));
-            }
-            StringBuffer javaTextWithParams = new StringBuffer();
-            for (Entry<String, String> entry : params.entrySet()) {
-                // this does not seem to work, so adding variables manually
-                // evalContext.newVariable((String) entry.getValue(), (String) entry.getKey(), null);
-                javaTextWithParams.append( entry.getValue() + " " + entry.getKey() + ";\n" );
-            }
-            if (useDrools) {
-                javaTextWithParams.append( "org.kie.api.runtime.rule.RuleContext kcontext;" );
-            }
-            if (useContext) {
-                javaTextWithParams.append( "org.kie.api.runtime.process.ProcessContext kcontext;" );
-            }
-            javaTextWithParams.append( javaText );
-            String jtext = javaTextWithParams.toString();
-            String fixedText = KnowledgeHelperFixer.fix(jtext);
-
-            evalContext.codeComplete( fixedText,
-                                      fixedText.length(),
-                                      collector );
-            IJavaCompletionProposal[] proposals = collector.getJavaCompletionProposals();
-            for ( int i = 0; i < proposals.length; i++ ) {
-                if ( proposals[i] instanceof AbstractJavaCompletionProposal ) {
-                    AbstractJavaCompletionProposal javaProposal = (AbstractJavaCompletionProposal) proposals[i];
-                    int replacementOffset = documentOffset - (fixedText.length() - javaProposal.getReplacementOffset());
-                    javaProposal.setReplacementOffset( replacementOffset );
-                    if ( javaProposal instanceof LazyJavaTypeCompletionProposal ) {
-                        String completionPrefix = javaText.substring( javaText.length() - javaProposal.getReplacementLength() );
-                        int dotIndex = completionPrefix.lastIndexOf( '.' );
-                        // match up to the last dot in order to make higher level matching still work (camel case...)
-                        if ( dotIndex != -1 ) {
-                            javaProposal.setReplacementString( ((LazyJavaTypeCompletionProposal) javaProposal).getQualifiedTypeName() );
-                        }
-                    }
-                    if ( !filterObjectMethods || !(proposals[i] instanceof JavaMethodCompletionProposal) ) {
-                        results.add( proposals[i] );
-                    }
-                }
-            }
-        } catch ( Throwable t ) {
-            DroolsEclipsePlugin.log( t );
+        StringBuffer javaTextWithParams = new StringBuffer();
+        for (Entry<String, String> entry : params.entrySet()) {
+            // this does not seem to work, so adding variables manually
+            // evalContext.newVariable((String) entry.getValue(), (String) entry.getKey(), null);
+            javaTextWithParams.append( entry.getValue() + " " + entry.getKey() + ";\n" );
         }
+        if (useDrools) {
+            javaTextWithParams.append( "org.kie.api.runtime.rule.RuleContext kcontext;" );
+        }
+        if (useContext) {
+            javaTextWithParams.append( "org.kie.api.runtime.process.ProcessContext kcontext;" );
+        }
+        javaTextWithParams.append( javaText );
+        String jtext = javaTextWithParams.toString();
+
+        return request.submit( "Java",
+                               new JavaProposalSource( javaProject,
+                                                       imports,
+                                                       jtext,
+                                                       javaText,
+                                                       documentOffset,
+                                                       filterObjectMethods ) );
     }
 
     protected String getPackage() {
@@ -437,4 +433,70 @@ public class DefaultCompletionProcessor extends AbstractCompletionProcessor {
         }
         return Collections.emptyList();
     }
+
+    private static class JavaProposalSource
+        implements
+        CompletionRequest.ProposalSource {
+        private final IJavaProject javaProject;
+        private final List<String> imports;
+        private final String       jtext;
+        private final String       javaText;
+        private final int          documentOffset;
+        private final boolean      filterObjectMethods;
+
+        private JavaProposalSource(IJavaProject javaProject,
+                                   List<String> imports,
+                                   String jtext,
+                                   String javaText,
+                                   int documentOffset,
+                                   boolean filterObjectMethods) {
+            this.javaProject = javaProject;
+            this.imports = imports;
+            this.jtext = jtext;
+            this.javaText = javaText;
+            this.documentOffset = documentOffset;
+            this.filterObjectMethods = filterObjectMethods;
+        }
+
+        public Collection<ICompletionProposal> getProposals(IProgressMonitor monitor) throws Exception {
+            List<ICompletionProposal> results = new ArrayList<ICompletionProposal>();
+            if ( javaProject == null ) {
+                return results;
+            }
+            CompletionProposalCollector collector = new CompletionProposalCollector( javaProject );
+            collector.acceptContext( new CompletionContext() );
+
+            IEvaluationContext evalContext = javaProject.newEvaluationContext();
+            if ( imports != null && imports.size() > 0 ) {
+                evalContext.setImports(imports.toArray(new String[imports.size()]));
+            }
+            String fixedText = KnowledgeHelperFixer.fix(jtext);
+
+            // the monitor lets a request that ran out of time stop the completion engine
+            evalContext.codeComplete( fixedText,
+                                      fixedText.length(),
+                                      collector,
+                                      monitor );
+            IJavaCompletionProposal[] proposals = collector.getJavaCompletionProposals();
+            for ( int i = 0; i < proposals.length; i++ ) {
+                if ( proposals[i] instanceof AbstractJavaCompletionProposal ) {
+                    AbstractJavaCompletionProposal javaProposal = (AbstractJavaCompletionProposal) proposals[i];
+                    int replacementOffset = documentOffset - (fixedText.length() - javaProposal.getReplacementOffset());
+                    javaProposal.setReplacementOffset( replacementOffset );
+                    if ( javaProposal instanceof LazyJavaTypeCompletionProposal ) {
+                        String completionPrefix = javaText.substring( javaText.length() - javaProposal.getReplacementLength() );
+                        int dotIndex = completionPrefix.lastIndexOf( '.' );
+                        // match up to the last dot in order to make higher level matching still work (camel case...)
+                        if ( dotIndex != -1 ) {
+                            javaProposal.setReplacementString( ((LazyJavaTypeCompletionProposal) javaProposal).getQualifiedTypeName() );
+                        }
+                    }
+                    if ( !filterObjectMethods || !(proposals[i] instanceof JavaMethodCompletionProposal) ) {
+                        results.add( proposals[i] );
+                    }
+                }
+            }
+            return results;
+        }
+    }
 }
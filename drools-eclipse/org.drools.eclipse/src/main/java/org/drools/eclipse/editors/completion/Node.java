@@ -16,11 +16,21 @@
 
 package org.drools.eclipse.editors.completion;
 
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 
+/**
+ * A token of a DSL sentence in the DSLTree. The children are kept in an array
+ * sorted by token, so a tree of thousands of sentences only takes one small
+ * array per node, a child is found by binary search and the children starting
+ * with a prefix are a range of the array.
+ */
 public class Node {
-    private HashMap<String, Node> children = new HashMap<String, Node>();
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private Node[] children = NO_CHILDREN;
+    private int size = 0;
     private Node parent = null;
     private String token;
     private int depth = 0;
@@ -70,21 +80,53 @@ public class Node {
      * @return
      */
     public Node addChild(Node n) {
-        if (!this.children.containsKey(n.getToken())) {
-            this.children.put(n.getToken(),n);
-            n.setParent(this);
-            return n;
-        } else {
-            return (Node)this.children.get(n.getToken());
+        int index = indexOf(n.getToken());
+        if (index >= 0) {
+            return children[index];
+        }
+        index = -index - 1;
+        if (size == children.length) {
+            Node[] newChildren = new Node[Math.max(2, size * 2)];
+            System.arraycopy(children, 0, newChildren, 0, size);
+            this.children = newChildren;
         }
+        System.arraycopy(children, index, children, index + 1, size - index);
+        children[index] = n;
+        size++;
+        n.setParent(this);
+        return n;
     }
     
     public void removeChild(Node n) {
-        this.children.remove(n.getToken());
+        int index = indexOf(n.getToken());
+        if (index >= 0) {
+            System.arraycopy(children, index + 1, children, index, size - index - 1);
+            children[--size] = null;
+        }
     }
     
     public Collection<Node> getChildren() {
-        return this.children.values();
+        return Collections.unmodifiableList(Arrays.asList(this.children).subList(0, size));
+    }
+
+    /**
+     * Returns the children whose token starts with the given prefix ignoring
+     * case, in the order of their tokens.
+     * @param prefix
+     * @return
+     */
+    public Collection<Node> getChildren(String prefix) {
+        // the upper case prefix is the first of the tokens equal to it ignoring case
+        int from = indexOf(prefix.toUpperCase());
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = from;
+        while (to < size && children[to].getToken() != null
+               && children[to].getToken().regionMatches(true, 0, prefix, 0, prefix.length())) {
+            to++;
+        }
+        return Collections.unmodifiableList(Arrays.asList(this.children).subList(from, to));
     }
 
     /**
@@ -93,7 +135,26 @@ public class Node {
      * @return
      */
     public Node getChild(String token) {
-        return (Node)this.children.get(token);
+        int index = indexOf(token);
+        return index >= 0 ? children[index] : null;
+    }
+
+    /**
+     * Returns the child matching the string token ignoring case, for the
+     * sentences typed with a different case than in the DSL definition.
+     * @param token
+     * @return
+     */
+    public Node getChildIgnoreCase(String token) {
+        Node child = getChild(token);
+        if (child == null && token != null) {
+            for (Node candidate : getChildren(token)) {
+                if (token.equalsIgnoreCase(candidate.getToken())) {
+                    return candidate;
+                }
+            }
+        }
+        return child;
     }
     
     public Node getParent() {
@@ -108,6 +169,11 @@ public class Node {
         return token;
     }
 
+    /**
+     * Changes the token of a node that is not the child of another one yet,
+     * the children of a node are kept sorted by their tokens.
+     * @param token
+     */
     public void setToken(String token) {
         this.token = token;
     }
@@ -121,6 +187,56 @@ public class Node {
     }
     
     public void clearChildren() {
-        this.children.clear();
+        this.children = NO_CHILDREN;
+        this.size = 0;
+    }
+
+    /**
+     * Drops the unused room of the children arrays of this node and the
+     * nodes below it, once the tree is built.
+     */
+    public void trimToSize() {
+        if (size < children.length) {
+            Node[] newChildren = size == 0 ? NO_CHILDREN : new Node[size];
+            System.arraycopy(children, 0, newChildren, 0, size);
+            this.children = newChildren;
+        }
+        for (int i = 0; i < size; i++) {
+            children[i].trimToSize();
+        }
+    }
+
+    /**
+     * Binary search of the child with the given token, returning
+     * (-(insertion point) - 1) if there is none, like Arrays.binarySearch.
+     * The children are sorted ignoring case first, so the tokens differing
+     * only in case are next to each other, and children without token come first.
+     */
+    private int indexOf(String token) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int result = compare(children[middle].getToken(), token);
+            if (result < 0) {
+                low = middle + 1;
+            } else if (result > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(String token1, String token2) {
+        if (token1 == null) {
+            return token2 == null ? 0 : -1;
+        }
+        if (token2 == null) {
+            return 1;
+        }
+        int result = String.CASE_INSENSITIVE_ORDER.compare(token1, token2);
+        return result != 0 ? result : token1.compareTo(token2);
     }
 }
@@ -17,17 +17,20 @@
 package org.drools.eclipse.editors.completion;
 
 import java.io.IOException;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.regex.Matcher;
 
+import org.drools.compiler.compiler.DroolsParserException;
 import org.drools.compiler.compiler.PackageBuilderConfiguration;
 import org.drools.compiler.compiler.PackageRegistry;
 import org.drools.compiler.lang.Location;
@@ -37,16 +40,14 @@ import org.drools.compiler.rule.builder.dialect.mvel.MVELDialect;
 import org.drools.core.base.ClassTypeResolver;
 import org.drools.core.rule.MVELDialectRuntimeData;
 import org.drools.core.spi.KnowledgeHelper;
-import org.drools.core.util.asm.ClassFieldInspector;
 import org.drools.eclipse.DRLInfo;
 import org.drools.eclipse.DRLInfo.RuleInfo;
 import org.drools.eclipse.DroolsEclipsePlugin;
 import org.drools.eclipse.DroolsPluginImages;
 import org.drools.eclipse.editors.AbstractRuleEditor;
-import org.drools.eclipse.util.ProjectClassLoader;
+import org.drools.eclipse.util.FactTypeIndex.FactType;
 import org.eclipse.jdt.core.CompletionProposal;
-import org.eclipse.jdt.core.IJavaElement;
-import org.eclipse.jdt.internal.ui.text.java.JavaCompletionProposal;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.internal.ui.text.java.JavaMethodCompletionProposal;
 import org.eclipse.jdt.internal.ui.text.java.LazyJavaCompletionProposal;
 import org.eclipse.jface.text.IDocument;
@@ -69,20 +70,68 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
 
     private static final String DIALECT     = "dialect";
 
+    private static final int    MAX_MVEL_CONTEXTS = 8;
+
     private static final Image  DROOLS_ICON = DroolsPluginImages.getImage( DroolsPluginImages.DROOLS );
 
     private static final Image  CLASS_ICON  = DroolsPluginImages.getImage( DroolsPluginImages.CLASS );
 
     /**
      * A CompletionContext contains the DRL backtext parsing results, to avoid
-     * multilpe parser invocations
+     * multilpe parser invocations. It is kept between requests, so that typing
+     * at the end of an identifier doesn't parse the whole rule again.
      */
     private CompletionContext context;
 
+    /**
+     * The shared classloader of the project, acquired for the current request
+     */
+    private URLClassLoader      projectLoader;
+
+    /**
+     * The MVEL compilation contexts of the rules last completed in, keyed by the
+     * name and the conditions of the rule
+     */
+    @SuppressWarnings("serial")
+    private final Map<String, MvelRuleContext> mvelContexts = new LinkedHashMap<String, MvelRuleContext>( 16, 0.75f, true ) {
+        protected boolean removeEldestEntry(Map.Entry<String, MvelRuleContext> eldest) {
+            return size() > MAX_MVEL_CONTEXTS;
+        }
+    };
+
     public RuleCompletionProcessor(AbstractRuleEditor editor) {
         super( editor );
     }
 
+    public ICompletionProposal[] computeCompletionProposals(ITextViewer viewer, int documentOffset) {
+        try {
+            return super.computeCompletionProposals( viewer,
+                                                     documentOffset );
+        } finally {
+            if ( projectLoader != null ) {
+                DroolsEclipsePlugin.getDefault().getProjectClassLoaderCache().release( projectLoader );
+                projectLoader = null;
+            }
+        }
+    }
+
+    private ClassLoader getProjectClassLoader() {
+        if ( projectLoader == null ) {
+            IJavaProject javaProject = getCurrentJavaProject();
+            if ( javaProject == null ) {
+                return null;
+            }
+            projectLoader = DroolsEclipsePlugin.getDefault().getProjectClassLoaderCache().acquire( javaProject );
+        }
+        return projectLoader;
+    }
+
+    private FactType getFactType(Class<?> clazz) throws IOException {
+        IJavaProject javaProject = getCurrentJavaProject();
+        return DroolsEclipsePlugin.getDefault().getFactTypeIndex().getFactType( javaProject == null ? null : javaProject.getProject(),
+                                                                                clazz );
+    }
+
     protected List<ICompletionProposal> getCompletionProposals(ITextViewer viewer, int documentOffset) {
         try {
             final List<ICompletionProposal> list = new ArrayList<ICompletionProposal>();
@@ -97,7 +146,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
                 return list;
             }
 
-            this.context = new CompletionContext( backText );
+            this.context = context == null ? new CompletionContext( backText ) : context.update( backText );
             Location location = context.getLocation();
 
             if ( location.getType() == Location.LOCATION_RULE_HEADER ) {
@@ -147,6 +196,21 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
             context = new CompletionContext( backText );
         }
 
+        //if we have 1st a dialect defined locally, or 2nd a global dialect
+        //the locally defined dialect will override the package default
+        CompletionRequest request = getRequest();
+        CompletionRequest.PendingProposals javaProposals = null;
+        if ( isJavaDialect() ) {
+            // JDT completes the consequence while the keywords and functions are added
+            javaProposals = submitJavaCompletionProposals( request,
+                                                           consequence,
+                                                           prefix,
+                                                           documentOffset,
+                                                           getRuleParameters( backText ),
+                                                           true,
+                                                           false );
+        }
+
         boolean startOfDialectExpression = CompletionUtil.isStartOfDialectExpression( consequenceWithoutPrefix );
         if ( //isJavaDialect() && 
                 startOfDialectExpression ) {
@@ -159,19 +223,15 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
         }
         
 
-        //if we have 1st a dialect defined locally, or 2nd a global dialect
-        //the locally defined dialect will override the package default
-        if ( isJavaDialect() ) {
-            addRHSJavaCompletionProposals( list,
-                                           documentOffset,
-                                           prefix,
-                                           backText,
-                                           consequence );
+        if ( javaProposals != null ) {
+            request.collect( javaProposals,
+                             list );
         } else if ( isMvelDialect() ) {
             addRHSMvelCompletionProposals( list,
                                            documentOffset,
                                            prefix,
                                            backText,
+                                           conditions,
                                            consequence,
                                            startOfDialectExpression );
         }
@@ -309,7 +369,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
                 String propertyName = (String) location.getProperty( Location.LOCATION_PROPERTY_PROPERTY_NAME );
                 if ( className != null ) {
                         ClassTypeResolver resolver = new ClassTypeResolver( getUniqueImports(),
-                                                                            ProjectClassLoader.getProjectClassLoader( getEditor() ) );
+                                                                            getProjectClassLoader() );
                         try {
                             String currentClass = className;
                             if ( propertyName != null ) {
@@ -341,19 +401,15 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
                                     p.setImage( METHOD_ICON );
                                     list.add( p );
                                 }
-                                ClassFieldInspector inspector = new ClassFieldInspector( clazz );
-                                Map<String, Class<?>> types = inspector.getFieldTypes();
-                                Iterator<String> iterator2 = inspector.getFieldNames().keySet().iterator();
-                                while ( iterator2.hasNext() ) {
-                                    String name = iterator2.next();
+                                FactType factType = getFactType( clazz );
+                                for ( String name : factType.getFields( prefix ).keySet() ) {
                                     p = new RuleCompletionProposal( documentOffset - prefix.length(),
                                                                     prefix.length(),
                                                                     name,
                                                                     name + " " );
                                     p.setImage( METHOD_ICON );
                                     list.add( p );
-                                    Class<?> type = types.get( name );
-                                    if ( type != null && Map.class.isAssignableFrom( type ) ) {
+                                    if ( factType.isMap( name ) ) {
                                         name += "['']";
                                         p = new RuleCompletionProposal( documentOffset - prefix.length(),
                                                                         prefix.length(),
@@ -611,7 +667,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
                                                           "accumulate (  , init (  ), action (  ), result (  ) )",
                                                           13,
                                                           DROOLS_ICON ) );
-                    PackageBuilderConfiguration config = new PackageBuilderConfiguration( ProjectClassLoader.getProjectClassLoader( getEditor() ),
+                    PackageBuilderConfiguration config = new PackageBuilderConfiguration( getProjectClassLoader(),
                                                                                           null );
                     Map<String, String> accumulateFunctions = config.getAccumulateFunctionsMap();
                     for (String accumulateFunction : accumulateFunctions.keySet()) {
@@ -702,13 +758,13 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
             return "java.lang.Object";
         }
         ClassTypeResolver resolver = new ClassTypeResolver( getUniqueImports(),
-                                                            ProjectClassLoader.getProjectClassLoader( getEditor() ) );
+                                                            getProjectClassLoader() );
         try {
             Class<?> clazz = resolver.resolveType( className );
             if ( clazz != null ) {
-                Class<?> clazzz = new ClassFieldInspector( clazz ).getFieldTypes().get( propertyName );
-                if ( clazzz != null ) {
-                    return clazzz.getName();
+                String type = getFactType( clazz ).getFieldType( propertyName );
+                if ( type != null ) {
+                    return type;
                 }
             }
         } catch ( IOException exc ) {
@@ -784,7 +840,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
         class2 = convertToNonPrimitiveClass( class2 );
         // TODO add code to take primitive types into account
         ClassTypeResolver resolver = new ClassTypeResolver( getUniqueImports(),
-                                                            ProjectClassLoader.getProjectClassLoader( getEditor() ) );
+                                                            getProjectClassLoader() );
         try {
             Class<?> clazz1 = resolver.resolveType( class1 );
             Class<?> clazz2 = resolver.resolveType( class2 );
@@ -871,21 +927,11 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
         list.add( prop );
     }
 
-    private void addRHSJavaCompletionProposals(List<ICompletionProposal> list,
-                                               int documentOffset,
-                                               String prefix,
-                                               String backText,
-                                               String consequence) {
-        list.addAll( getJavaCompletionProposals( documentOffset,
-                                                 consequence,
-                                                 prefix,
-                                                 getRuleParameters( backText ) ) );
-    }
-
     private void addRHSMvelCompletionProposals(List<ICompletionProposal> list,
                                                final int documentOffset,
                                                String prefix,
                                                String backText,
+                                               String conditions,
                                                String consequence,
                                                boolean expressionStart) {
 
@@ -894,6 +940,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
                                                                          prefix,
                                                                          getRuleParameters( backText ),
                                                                          backText,
+                                                                         conditions,
                                                                          expressionStart );
         list.addAll( mvelCompletionProposals );
     }
@@ -903,6 +950,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
                                                   final String prefix,
                                                   Map<String, String> params,
                                                   String ruleBackText,
+                                                  String conditions,
                                                   boolean startOfExpression) {
 
         final Set<ICompletionProposal> proposals = new HashSet<ICompletionProposal>();
@@ -911,12 +959,12 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
             return proposals;
         }
 
+        long start = System.nanoTime();
         try {
-            DRLInfo drlInfo = DroolsEclipsePlugin.getDefault().generateParsedResource(
-                "package dummy; \n" + ruleBackText,
-                ((IFileEditorInput) getEditor().getEditorInput()).getFile(),
-                false,
-                false );
+            MvelRuleContext ruleContext = getMvelRuleContext( params,
+                                                              ruleBackText,
+                                                              conditions );
+            DRLInfo drlInfo = ruleContext.drlInfo;
 
             String textWithoutPrefix = CompletionUtil.getTextWithoutPrefix( consequenceBackText,
                                                                             prefix );
@@ -929,18 +977,25 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
             // *the last expression
             // *the last inner expression
 
-            // attempt to compile and analyze the previous expression to collect inputs and vars
+            // attempt to compile and analyze the previous expression to collect inputs and vars,
+            // unless it was already analyzed while typing the current expression
             String previousExpression = CompletionUtil.getPreviousExpression( consequenceBackText );
-            MvelContext previousExprContext = analyzeMvelExpression( getResolvedMvelInputs( params ),
-                                                                     drlInfo,
-                                                                     previousExpression );
+            if ( !previousExpression.equals( ruleContext.previousExpression ) ) {
+                @SuppressWarnings("rawtypes")
+                Map<String, Class> ruleInputs = new HashMap<String, Class>( ruleContext.inputs );
+                MvelContext previousExprContext = analyzeMvelExpression( ruleInputs,
+                                                                         drlInfo,
+                                                                         previousExpression );
+                @SuppressWarnings("rawtypes")
+                Map<String, Class> previousInputs = new HashMap<String, Class>( previousExprContext.getContext().getInputs() );
+                previousInputs.putAll( previousExprContext.getContext().getVariables() );
+                ruleContext.previousExpression = previousExpression;
+                ruleContext.previousInputs = previousInputs;
+            }
 
             // attempt to compile and analyze the last and last inner expression, using as inputs the previous expression inputs and vars
             @SuppressWarnings("rawtypes")
-            Map<String, Class> variables = previousExprContext.getContext().getVariables();
-            @SuppressWarnings("rawtypes")
-            Map<String, Class> inputs = previousExprContext.getContext().getInputs();
-            inputs.putAll( variables );
+            Map<String, Class> inputs = new HashMap<String, Class>( ruleContext.previousInputs );
 
             //last inner expression
             String lastInnerExpression = CompletionUtil.getTextWithoutPrefix( CompletionUtil.getInnerExpression( consequenceBackText ),
@@ -974,8 +1029,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
                 return getMvelInstanceCompletionsFromJDT( documentOffset,
                                                           "",
                                                           params,
-                                                          lastInnerExprContext.getReturnedType(),
-                                                          false );
+                                                          lastInnerExprContext.getReturnedType() );
             }
             //if expression start inside with block, then get completion for prefix with egrss of modif var + prev expr var&inputs
             else if ( expressionStart && isModifyBlock ) {
@@ -989,11 +1043,9 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
 
                 Class<?> modVarType = modVarContext.getReturnedType();
 
-                Collection<ICompletionProposal> modVarComps = getMvelInstanceCompletionsFromJDT( documentOffset,
-                                                                            "",
-                                                                            params,
-                                                                            modVarType,
-                                                                            true );
+                Collection<ICompletionProposal> modVarComps = getWritableFieldProposals( documentOffset,
+                                                                                         prefix,
+                                                                                         modVarType );
 
                 proposals.addAll( modVarComps );
 
@@ -1036,6 +1088,10 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
 
         } catch ( Throwable e ) {
             DroolsEclipsePlugin.log( e );
+        } finally {
+            // includes the JDT completions of the MVEL expression
+            CompletionRequest.recordTime( "MVEL",
+                                          start );
         }
         Set<ICompletionProposal> uniqueProposals = new HashSet<ICompletionProposal>();
         addAllNewProposals( uniqueProposals,
@@ -1043,10 +1099,41 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
         return uniqueProposals;
     }
     
+    /**
+     * Returns the MVEL compilation context of the current rule, parsing the rule
+     * and resolving the types of its parameters only if its conditions, parameters,
+     * imports or the project classloader changed since the last completion in it.
+     */
+    private MvelRuleContext getMvelRuleContext(Map<String, String> params,
+                                               String ruleBackText,
+                                               String conditions) throws DroolsParserException {
+        String key = context.getRuleName() + "\n" + conditions;
+        ClassLoader loader = getProjectClassLoader();
+        Set<String> imports = getUniqueImports();
+        MvelRuleContext ruleContext = mvelContexts.get( key );
+        if ( ruleContext != null && ruleContext.loader == loader
+             && ruleContext.imports.equals( imports ) && ruleContext.params.equals( params ) ) {
+            return ruleContext;
+        }
+        DRLInfo drlInfo = DroolsEclipsePlugin.getDefault().generateParsedResource(
+            "package dummy; \n" + ruleBackText,
+            ((IFileEditorInput) getEditor().getEditorInput()).getFile(),
+            false,
+            false );
+        ruleContext = new MvelRuleContext( loader,
+                                           imports,
+                                           params,
+                                           drlInfo,
+                                           getResolvedMvelInputs( params ) );
+        mvelContexts.put( key,
+                          ruleContext );
+        return ruleContext;
+    }
+
     @SuppressWarnings("rawtypes")
     private Map<String, Class> getResolvedMvelInputs(Map<String, String> params) {
         ClassTypeResolver resolver = new ClassTypeResolver(getUniqueImports(),
-                ProjectClassLoader.getProjectClassLoader(getEditor()));
+                getProjectClassLoader());
 
         Map<String, Class> resolved = new HashMap<String, Class>();
         for (Entry<String, String> entry : params.entrySet()) {
@@ -1061,6 +1148,38 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
         return resolved;
     }
 
+    /**
+     * What is needed to compile the MVEL expressions of the consequence of a rule:
+     * the parse result of the rule, the resolved types of its parameters and the
+     * inputs and variables collected from the statements before the one being
+     * completed. A ParserContext is changed by compiling an expression, so a new one
+     * is created from these for every expression compiled.
+     */
+    private static class MvelRuleContext {
+        private final ClassLoader         loader;
+        private final Set<String>         imports;
+        private final Map<String, String> params;
+        private final DRLInfo             drlInfo;
+        @SuppressWarnings("rawtypes")
+        private final Map<String, Class>  inputs;
+        private String                    previousExpression;
+        @SuppressWarnings("rawtypes")
+        private Map<String, Class>        previousInputs;
+
+        @SuppressWarnings("rawtypes")
+        private MvelRuleContext(ClassLoader loader,
+                                Set<String> imports,
+                                Map<String, String> params,
+                                DRLInfo drlInfo,
+                                Map<String, Class> inputs) {
+            this.loader = loader;
+            this.imports = imports;
+            this.params = params;
+            this.drlInfo = drlInfo;
+            this.inputs = inputs;
+        }
+    }
+
     class MvelContext {
         private CompiledExpression expression;
         private ParserContext      parserContext;
@@ -1196,8 +1315,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
     private Collection<ICompletionProposal> getMvelInstanceCompletionsFromJDT(final int documentOffset,
                                                          final String prefix,
                                                          Map<String, String> params,
-                                                         Class<?> lastType,
-                                                         boolean settersOnly) {
+                                                         Class<?> lastType) {
         if ( lastType == null ) {
             lastType = Object.class;
         }
@@ -1212,10 +1330,38 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
 
         final List<ICompletionProposal> list = list1;
 
-        Collection<ICompletionProposal> mvelList = RuleCompletionProcessor.mvelifyProposals(list, settersOnly);
+        Collection<ICompletionProposal> mvelList = RuleCompletionProcessor.mvelifyProposals(list);
         return mvelList;
     }
 
+    /*
+     * Completions for the fields of a modify block
+     */
+    private Collection<ICompletionProposal> getWritableFieldProposals(int documentOffset,
+                                                                      String prefix,
+                                                                      Class<?> type) {
+        Collection<ICompletionProposal> proposals = new ArrayList<ICompletionProposal>();
+        if ( type == null ) {
+            return proposals;
+        }
+        try {
+            FactType factType = getFactType( type );
+            for ( String name : factType.getFields( prefix ).keySet() ) {
+                if ( factType.isWritable( name ) ) {
+                    RuleCompletionProposal prop = new RuleCompletionProposal( documentOffset - prefix.length(),
+                                                                              prefix.length(),
+                                                                              name );
+                    prop.setImage( DefaultCompletionProcessor.VARIABLE_ICON );
+                    prop.setPriority( 1000 );
+                    proposals.add( prop );
+                }
+            }
+        } catch ( IOException e ) {
+            DroolsEclipsePlugin.log( e );
+        }
+        return proposals;
+    }
+
     /*
      * Completions for static Class members
      */
@@ -1234,7 +1380,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
         final List<ICompletionProposal> list1 = new ArrayList<ICompletionProposal>();
         requestJavaCompletionProposals(javaText, prefix, documentOffset, params, list1);
         final List<ICompletionProposal> list = list1;
-        Collection<ICompletionProposal> mvelList = RuleCompletionProcessor.mvelifyProposals(list, false);
+        Collection<ICompletionProposal> mvelList = RuleCompletionProcessor.mvelifyProposals(list);
         return mvelList;
     }
 
@@ -1396,47 +1542,23 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
     /*
      * Filters accessor method proposals to replace them with their mvel expression equivalent
      * For instance a completion for getStatus() would be replaced by a completion for status
-     * when asking for stters only, then only setters or writable fields will be returned
      */
-    public static Collection<ICompletionProposal> mvelifyProposals(List<ICompletionProposal> list, boolean settersOnly) {
+    public static Collection<ICompletionProposal> mvelifyProposals(List<ICompletionProposal> list) {
         final Collection<ICompletionProposal> set = new HashSet<ICompletionProposal>();
 
         for (ICompletionProposal o : list) {
             if ( o instanceof JavaMethodCompletionProposal ) {
                 //methods
-                processJavaMethodCompletionProposal(list, settersOnly, set, o);
-
-            } else if ( o instanceof JavaCompletionProposal ) {
-                //fields
-                processesJavaCompletionProposal(settersOnly, set, o);
-            } else if ( !settersOnly ) {
+                processJavaMethodCompletionProposal(list, set, o);
+            } else {
+                //fields and others
                 set.add( o );
             }
         }
         return set;
     }
 
-    private static void processesJavaCompletionProposal(boolean settersOnly,
-                                                        final Collection<ICompletionProposal> set,
-                                                        ICompletionProposal o) {
-        if ( settersOnly ) {
-            JavaCompletionProposal jcp = (JavaCompletionProposal) o;
-            //TODO: FIXME: this is very fragile as it uses reflection to access the private completion field.
-            //Yet this is needed to do mvel filtering based on the method signtures, IF we use the richer JDT completion
-            //                    Object field = ReflectionUtils.getField( o,
-            //                                                             "fProposal" );
-            IJavaElement javaElement = jcp.getJavaElement();
-            if ( javaElement.getElementType() == IJavaElement.FIELD ) {
-                set.add( o );
-
-            }
-        } else {
-            set.add( o );
-        }
-    }
-
     private static void processJavaMethodCompletionProposal(List<ICompletionProposal> list,
-                                                            boolean settersOnly,
                                                             final Collection<ICompletionProposal> set,
                                                             ICompletionProposal o) {
         LazyJavaCompletionProposal javaProposal = (LazyJavaCompletionProposal) o;
@@ -1448,31 +1570,17 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
 
             String completion = new String( proposal.getCompletion() );
 
-            String propertyOrMethodName = null;
-
-            boolean isSetter = false;
-            boolean isAccessor = false;
-            if ( settersOnly ) {
-                // get the eventual writable property name for that method name and signature
-                propertyOrMethodName = CompletionUtil.getWritablePropertyName( completion,
-                                                                               proposal.getSignature() );
-                //                      if we got a property name that differs from the orginal method name
-                //then this is a bean accessor
-                isSetter = !completion.equals( propertyOrMethodName );
-
-            } else {
-                // get the eventual property name for that method name and signature
-                propertyOrMethodName = CompletionUtil.getPropertyName( completion,
-                                                                       proposal.getSignature() );
-                //if we got a property name that differs from the orginal method name
-                //then this is a bean accessor
-                isAccessor = !completion.equals( propertyOrMethodName );
-            }
+            // get the eventual property name for that method name and signature
+            String propertyOrMethodName = CompletionUtil.getPropertyName( completion,
+                                                                          proposal.getSignature() );
+            //if we got a property name that differs from the orginal method name
+            //then this is a bean accessor
+            boolean isAccessor = !completion.equals( propertyOrMethodName );
 
             // is the completion for a bean accessor? and do we have already some relevant completion?
             boolean doesNotContainFieldCompletion = DefaultCompletionProcessor.doesNotContainFieldCompletion( propertyOrMethodName,
                                                                                                               list );
-            if ( ((settersOnly && isSetter) || (!settersOnly && isAccessor)) && doesNotContainFieldCompletion ) {
+            if ( isAccessor && doesNotContainFieldCompletion ) {
 
                 //TODO: craft a better JDTish display name than just the property name
                 RuleCompletionProposal prop = new RuleCompletionProposal( javaProposal.getReplacementOffset(),
@@ -1485,7 +1593,7 @@ public class RuleCompletionProcessor extends DefaultCompletionProcessor {
 
             }
 
-            else if ( !settersOnly ) {
+            else {
                 set.add( o );
             }
         }
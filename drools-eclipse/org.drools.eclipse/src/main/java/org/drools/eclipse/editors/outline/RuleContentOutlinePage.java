@@ -17,9 +17,8 @@
 package org.drools.eclipse.editors.outline;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.drools.compiler.compiler.DroolsParserException;
 import org.drools.eclipse.DRLInfo;
@@ -34,6 +33,9 @@ import org.drools.eclipse.core.ui.DroolsLabelProvider;
 import org.drools.eclipse.core.ui.DroolsTreeSorter;
 import org.drools.eclipse.core.ui.FilterActionGroup;
 import org.drools.eclipse.editors.AbstractRuleEditor;
+import org.drools.eclipse.editors.DocumentStructure;
+import org.drools.eclipse.editors.DocumentStructure.Block;
+import org.drools.eclipse.editors.DocumentStructure.Kind;
 import org.drools.compiler.lang.descr.AttributeDescr;
 import org.drools.compiler.lang.descr.PackageDescr;
 import org.drools.compiler.lang.descr.RuleDescr;
@@ -52,7 +54,7 @@ import org.eclipse.ui.views.contentoutline.ContentOutlinePage;
 
 /**
  * Simple outline view of a DRL file. At present this is not wired in with the Parser, so it is fault
- * tolerant of incorrect syntax. 
+ * tolerant of incorrect syntax: the elements come from the DocumentStructure of the editor.
  * Should provide navigation assistance in large rule files.
  */
 public class RuleContentOutlinePage extends ContentOutlinePage {
@@ -63,40 +65,6 @@ public class RuleContentOutlinePage extends ContentOutlinePage {
     
     private boolean groupByRulegroup = false;
     private TreeViewer viewer = null;
-    ///////////////////////////////////
-    // Patterns that the parser uses
-    // TODO: this should just reuse the existing parser to avoid inconsistencies
-    //       with for example comments
-    ///////////////////////////////////
-    private static final Pattern RULE_PATTERN1 = Pattern.compile(
-            "\\n\\s*rule\\s+\"([^\"]+)\"", Pattern.DOTALL);
-
-    private static final Pattern RULE_PATTERN2 = Pattern.compile(
-            "\\n\\s*rule\\s+([^\\s;#\"]+)", Pattern.DOTALL);
-
-    private static final Pattern PACKAGE_PATTERN = Pattern.compile(
-            "\\s*package\\s+([^\\s;#]+);?", Pattern.DOTALL);
-
-    private static final Pattern FUNCTION_PATTERN = Pattern.compile(
-            "\\n\\s*function\\s+(\\S+)\\s+(\\S+)\\(.*?\\)", Pattern.DOTALL);
-
-    private static final Pattern TEMPLATE_PATTERN = Pattern.compile(
-            "\\n\\s*template\\s+([^\\s;#\"]+)", Pattern.DOTALL);
-
-    private static final Pattern IMPORT_PATTERN = Pattern.compile(
-            "\\n\\s*import\\s+([^\\s;#]+);?", Pattern.DOTALL);
-
-    private static final Pattern EXPANDER_PATTERN = Pattern.compile(
-            "\\n\\s*expander\\s+([^\\s;#]+);?", Pattern.DOTALL);
-
-    private static final Pattern GLOBAL_PATTERN = Pattern.compile(
-            "\\n\\s*global\\s+(\\S+)\\s+([^\\s;#]+);?", Pattern.DOTALL);
-
-    private static final Pattern QUERY_PATTERN1 = Pattern.compile(
-            "\\n\\s*query\\s+\"([^\"]+)\"", Pattern.DOTALL);
-
-    private static final Pattern QUERY_PATTERN2 = Pattern.compile(
-            "\\n\\s*query\\s+([^\\s;#\"]+)", Pattern.DOTALL);
 
     public RuleContentOutlinePage(AbstractRuleEditor editor) {
         this.editor = editor;
@@ -172,87 +140,79 @@ public class RuleContentOutlinePage extends ContentOutlinePage {
      * @param packageTreeNode the node to populate
      */
     public void populatePackageTreeNode() {
-        String ruleFileContents = editor.getContent();
-        populatePackageTreeNode(ruleFileContents);
+        DocumentStructure structure = editor.getStructure();
+        if (structure != null) {
+            populatePackageTreeNode(structure.getBlocks());
+        } else {
+            populatePackageTreeNode(editor.getContent());
+        }
     }
     
     void populatePackageTreeNode(String ruleFileContents) {
+        populatePackageTreeNode(DocumentStructure.scan(ruleFileContents));
+    }
+
+    private void populatePackageTreeNode(List<Block> blocks) {
         DroolsModelBuilder.clearRuleSet(ruleSet);
-        Matcher matcher = PACKAGE_PATTERN.matcher(ruleFileContents);
         String packageName = null;
         int startChar = 0;
         int endChar = 0;
-        if (matcher.find()) {
-            packageName = matcher.group(1);
-            startChar = matcher.start(1);
-            endChar = matcher.end(1);
+        for (Block block: blocks) {
+            if (block.getKind() == Kind.PACKAGE && block.getName() != null) {
+                packageName = block.getName();
+                startChar = block.getNameOffset();
+                endChar = startChar + block.getNameLength();
+                break;
+            }
         }
         Package pkg = DroolsModelBuilder.addPackage(ruleSet, packageName,
             startChar, endChar - startChar);
 
-        matcher = RULE_PATTERN1.matcher(ruleFileContents);
-        while (matcher.find()) {
-            String ruleName = matcher.group(1);
-            RuleDescr descr = (RuleDescr) rules.get(ruleName);
-            if (descr != null) {
-                DroolsModelBuilder.addRule(pkg, ruleName, null,
-                    matcher.start(1), matcher.end(1) - matcher.start(1),
-                    extractAttributes(descr));
+        boolean expanderFound = false;
+        for (Block block: blocks) {
+            String name = block.getName();
+            if (name == null) {
+                continue;
             }
-        }
-        matcher = RULE_PATTERN2.matcher(ruleFileContents);
-        while (matcher.find()) {
-            String ruleName = matcher.group(1);
-            RuleDescr descr = (RuleDescr) rules.get(ruleName);
-            if (descr != null) {
-                DroolsModelBuilder.addRule(pkg, ruleName, null,
-                    matcher.start(1), matcher.end(1) - matcher.start(1),
-                    extractAttributes(descr));
+            switch (block.getKind()) {
+                case RULE:
+                    RuleDescr descr = (RuleDescr) rules.get(name);
+                    if (descr != null) {
+                        DroolsModelBuilder.addRule(pkg, name, null,
+                            block.getNameOffset(), block.getNameLength(),
+                            extractAttributes(descr));
+                    }
+                    break;
+                case FUNCTION:
+                    DroolsModelBuilder.addFunction(pkg, name + "()", null,
+                        block.getNameOffset(), block.getNameLength());
+                    break;
+                case EXPANDER:
+                    if (!expanderFound) {
+                        DroolsModelBuilder.addExpander(pkg, name, null,
+                            block.getNameOffset(), block.getNameLength());
+                        expanderFound = true;
+                    }
+                    break;
+                case IMPORT:
+                    DroolsModelBuilder.addImport(pkg, name, null,
+                        block.getNameOffset(), block.getNameLength());
+                    break;
+                case GLOBAL:
+                    DroolsModelBuilder.addGlobal(pkg, name + " : " + block.getType(), null,
+                        block.getNameOffset(), block.getNameLength());
+                    break;
+                case QUERY:
+                    DroolsModelBuilder.addQuery(pkg, name, null,
+                        block.getNameOffset(), block.getNameLength());
+                    break;
+                case TEMPLATE:
+                    DroolsModelBuilder.addTemplate(pkg, name, null,
+                        block.getNameOffset(), block.getNameLength());
+                    break;
+                default:
+                    break;
             }
-         }
-        matcher = FUNCTION_PATTERN.matcher(ruleFileContents);
-        while (matcher.find()) {
-            String functionName = matcher.group(2);
-            DroolsModelBuilder.addFunction(pkg, functionName + "()", null,
-                matcher.start(2), matcher.end(2) - matcher.start(2));
-        }
-        matcher = EXPANDER_PATTERN.matcher(ruleFileContents);
-        if (matcher.find()) {
-            String expanderName = matcher.group(1);
-            DroolsModelBuilder.addExpander(pkg, expanderName, null,
-                matcher.start(1), matcher.end(1) - matcher.start(1));
-        }
-        matcher = IMPORT_PATTERN.matcher(ruleFileContents);
-        while (matcher.find()) {
-            String importName = matcher.group(1);
-            DroolsModelBuilder.addImport(pkg, importName, null,
-                matcher.start(1), matcher.end(1) - matcher.start(1));
-        }
-        matcher = GLOBAL_PATTERN.matcher(ruleFileContents);
-        while (matcher.find()) {
-            String globalType = matcher.group(1);
-            String globalName = matcher.group(2);
-            String name = globalName + " : " + globalType;
-            DroolsModelBuilder.addGlobal(pkg, name, null,
-                matcher.start(2), matcher.end(2) - matcher.start(2));
-        }
-        matcher = QUERY_PATTERN1.matcher(ruleFileContents);
-        while (matcher.find()) {
-            String queryName = matcher.group(1);
-            DroolsModelBuilder.addQuery(pkg, queryName, null,
-                    matcher.start(1), matcher.end(1) - matcher.start(1));
-        }
-        matcher = QUERY_PATTERN2.matcher(ruleFileContents);
-        while (matcher.find()) {
-            String queryName = matcher.group(1);
-            DroolsModelBuilder.addQuery(pkg, queryName, null,
-                matcher.start(1), matcher.end(1) - matcher.start(1));
-        }
-        matcher = TEMPLATE_PATTERN.matcher(ruleFileContents);
-        while (matcher.find()) {
-            String templateName = matcher.group(1);
-            DroolsModelBuilder.addTemplate(pkg, templateName, null,
-                    matcher.start(1), matcher.end(1) - matcher.start(1));
         }
     }
     
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors.rete;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.eclipse.editors.rete.model.Connection;
+import org.drools.eclipse.editors.rete.model.VertexPropertySource;
+import org.drools.eclipse.reteoo.BaseVertex;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.ui.views.properties.IPropertyDescriptor;
+
+/**
+ * Writes the vertices of a rete graph and their connections in GraphViz DOT
+ * or GraphML format, to analyse networks too large to be shown with other
+ * tools.
+ *
+ * Every node has its type, the properties shown in the property sheet, with
+ * all constraints joined, and the number of connections going in and out, the
+ * latter being the number of nodes sharing it. The text is written vertex by
+ * vertex, without creating any figure.
+ *
+ * @see http://www.graphviz.org/
+ * @see http://graphml.graphdrawing.org/
+ */
+public class ReteGraphExporter {
+
+    public enum Format {
+        DOT, GRAPHML
+    }
+
+    private static final String   TYPE        = "type";
+    private static final String   CONSTRAINTS = "constraints";
+    private static final String   SOURCES     = "sources";
+    private static final String   SINKS       = "sinks";
+
+    // the GraphML attributes, the other property sheet properties are left out
+    private static final String[] KEYS        = new String[]{TYPE, "id", "rule", "query", "objectType", "expirationOffset", "entryPointName", "fieldName", "evaluator", "value", CONSTRAINTS, SOURCES, SINKS};
+
+    /**
+     * Returns the format for a file name, GraphML for .graphml and .xml files,
+     * DOT otherwise.
+     */
+    public static Format getFormat(String fileName) {
+        String name = fileName.toLowerCase();
+        if ( name.endsWith( ".graphml" ) || name.endsWith( ".xml" ) ) {
+            return Format.GRAPHML;
+        }
+        return Format.DOT;
+    }
+
+    /**
+     * Writes the given vertices and the connections between them.
+     *
+     * @param vertices vertices of a rete graph
+     * @param format output format
+     * @param writer receives the output, not closed
+     * @param monitor checked for cancellation
+     * @throws OperationCanceledException if the monitor is cancelled
+     */
+    public static void export(List<BaseVertex> vertices,
+                              Format format,
+                              Writer writer,
+                              IProgressMonitor monitor) throws IOException {
+        // numbered in advance, as connections can go to vertices not written yet
+        Map<BaseVertex, Integer> ids = new IdentityHashMap<BaseVertex, Integer>( vertices.size() );
+        for ( BaseVertex vertex : vertices ) {
+            ids.put( vertex,
+                     Integer.valueOf( ids.size() ) );
+        }
+
+        monitor.beginTask( "Exporting RETE graph",
+                           vertices.size() );
+        if ( format == Format.GRAPHML ) {
+            writeGraphMLHeader( writer );
+        } else {
+            writer.write( "digraph rete {\n" );
+        }
+        for ( BaseVertex vertex : vertices ) {
+            if ( monitor.isCanceled() ) {
+                throw new OperationCanceledException();
+            }
+            int id = ids.get( vertex ).intValue();
+            Map<String, String> properties = getProperties( vertex );
+            if ( format == Format.GRAPHML ) {
+                writeGraphMLVertex( writer,
+                                    id,
+                                    properties );
+            } else {
+                writeDotVertex( writer,
+                                id,
+                                properties );
+            }
+            for ( Connection connection : vertex.getSourceConnections() ) {
+                Integer targetId = ids.get( connection.getTarget() );
+                if ( targetId == null ) {
+                    continue;
+                }
+                if ( format == Format.GRAPHML ) {
+                    writer.write( "    <edge source=\"n" + id + "\" target=\"n" + targetId + "\"/>\n" );
+                } else {
+                    writer.write( "  n" + id + " -> n" + targetId + ";\n" );
+                }
+            }
+            monitor.worked( 1 );
+        }
+        if ( format == Format.GRAPHML ) {
+            writer.write( "  </graph>\n</graphml>\n" );
+        } else {
+            writer.write( "}\n" );
+        }
+        writer.flush();
+        monitor.done();
+    }
+
+    /**
+     * Returns the exported properties of a vertex, by name.
+     */
+    static Map<String, String> getProperties(BaseVertex vertex) {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put( TYPE,
+                        getType( vertex ) );
+
+        VertexPropertySource propertySource = new VertexPropertySource( vertex );
+        StringBuilder constraints = new StringBuilder();
+        for ( IPropertyDescriptor descriptor : propertySource.getPropertyDescriptors() ) {
+            String name = descriptor.getId().toString();
+            Object value = propertySource.getPropertyValue( name );
+            if ( value == null || "name".equals( name ) ) {
+                // the name only repeats the type
+                continue;
+            }
+            if ( name.startsWith( "constraint" ) ) {
+                if ( constraints.length() > 0 ) {
+                    constraints.append( "; " );
+                }
+                constraints.append( value );
+            } else {
+                properties.put( name,
+                                value.toString() );
+            }
+        }
+        if ( constraints.length() > 0 ) {
+            properties.put( CONSTRAINTS,
+                            constraints.toString() );
+        }
+
+        properties.put( SOURCES,
+                        Integer.toString( vertex.getTargetConnections().size() ) );
+        properties.put( SINKS,
+                        Integer.toString( vertex.getSourceConnections().size() ) );
+        return properties;
+    }
+
+    /**
+     * Returns the type of node of a vertex, its class name without "Vertex".
+     */
+    private static String getType(BaseVertex vertex) {
+        Class< ? > clazz = vertex.getClass();
+        while ( clazz.isAnonymousClass() ) {
+            clazz = clazz.getSuperclass();
+        }
+        String name = clazz.getSimpleName();
+        return name.endsWith( "Vertex" ) ? name.substring( 0,
+                                                           name.length() - "Vertex".length() ) : name;
+    }
+
+    private static void writeDotVertex(Writer writer,
+                                       int id,
+                                       Map<String, String> properties) throws IOException {
+        StringBuilder label = new StringBuilder( properties.get( TYPE ) );
+        for ( String name : new String[]{"rule", "query", "objectType", "entryPointName", CONSTRAINTS} ) {
+            String value = properties.get( name );
+            if ( value != null ) {
+                label.append( '\n' ).append( value );
+            }
+        }
+        writer.write( "  n" + id + " [label=" + quoteDot( label.toString() ) );
+        for ( Map.Entry<String, String> property : properties.entrySet() ) {
+            writer.write( ", " + property.getKey() + "=" + quoteDot( property.getValue() ) );
+        }
+        writer.write( "];\n" );
+    }
+
+    private static void writeGraphMLHeader(Writer writer) throws IOException {
+        writer.write( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+        writer.write( "<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n" );
+        for ( String key : KEYS ) {
+            String type = SOURCES.equals( key ) || SINKS.equals( key ) ? "int" : "string";
+            writer.write( "  <key id=\"" + key + "\" for=\"node\" attr.name=\"" + key + "\" attr.type=\"" + type + "\"/>\n" );
+        }
+        writer.write( "  <graph id=\"rete\" edgedefault=\"directed\">\n" );
+    }
+
+    private static void writeGraphMLVertex(Writer writer,
+                                           int id,
+                                           Map<String, String> properties) throws IOException {
+        writer.write( "    <node id=\"n" + id + "\">\n" );
+        for ( String key : KEYS ) {
+            String value = properties.get( key );
+            if ( value != null ) {
+                writer.write( "      <data key=\"" + key + "\">" + escapeXml( value ) + "</data>\n" );
+            }
+        }
+        writer.write( "    </node>\n" );
+    }
+
+    /**
+     * Returns the given text as a quoted DOT string.
+     */
+    static String quoteDot(String text) {
+        StringBuilder quoted = new StringBuilder( text.length() + 2 );
+        quoted.append( '"' );
+        for ( int i = 0; i < text.length(); i++ ) {
+            char c = text.charAt( i );
+            if ( c == '"' || c == '\\' ) {
+                quoted.append( '\\' ).append( c );
+            } else if ( c == '\n' ) {
+                quoted.append( "\\n" );
+            } else if ( c != '\r' ) {
+                quoted.append( c );
+            }
+        }
+        return quoted.append( '"' ).toString();
+    }
+
+    /**
+     * Returns the given text escaped for XML content, without the characters
+     * XML doesn't allow.
+     */
+    static String escapeXml(String text) {
+        StringBuilder escaped = new StringBuilder( text.length() );
+        for ( int i = 0; i < text.length(); i++ ) {
+            char c = text.charAt( i );
+            if ( c == '<' ) {
+                escaped.append( "&lt;" );
+            } else if ( c == '>' ) {
+                escaped.append( "&gt;" );
+            } else if ( c == '&' ) {
+                escaped.append( "&amp;" );
+            } else if ( c == '"' ) {
+                escaped.append( "&quot;" );
+            } else if ( c >= 0x20 || c == '\t' || c == '\n' || c == '\r' ) {
+                escaped.append( c );
+            }
+        }
+        return escaped.toString();
+    }
+
+}
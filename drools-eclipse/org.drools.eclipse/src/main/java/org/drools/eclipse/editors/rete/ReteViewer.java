@@ -29,13 +29,14 @@ import org.drools.eclipse.builder.DroolsBuilder;
 import org.drools.eclipse.editors.DRLRuleEditor;
 import org.drools.eclipse.editors.rete.model.ReteGraph;
 import org.drools.eclipse.editors.rete.part.VertexEditPartFactory;
-import org.drools.eclipse.util.ProjectClassLoader;
+import org.drools.eclipse.util.ProjectClassLoaderCache;
 import org.drools.eclipse.reteoo.BaseVertex;
 import org.drools.core.reteoo.ReteooRuleBase;
 import org.drools.eclipse.reteoo.ReteooVisitor;
 import org.drools.core.rule.Package;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.draw2d.ColorConstants;
 import org.eclipse.draw2d.ConnectionLayer;
 import org.eclipse.draw2d.ConnectionRouter;
@@ -132,12 +133,15 @@ public class ReteViewer extends GraphicalEditor {
 
             monitor.subTask( "Loading Rule Base" );
             ReteooRuleBase ruleBase = null;
+            ProjectClassLoaderCache classLoaderCache = DroolsEclipsePlugin.getDefault().getProjectClassLoaderCache();
+            ClassLoader projectLoader = null;
             try {
                 IResource resource = drlEditor.getResource();
                 ClassLoader newLoader = DroolsBuilder.class.getClassLoader();
                 if ( resource.getProject().getNature( "org.eclipse.jdt.core.javanature" ) != null ) {
                     IJavaProject project = JavaCore.create( resource.getProject() );
-                    newLoader = ProjectClassLoader.getProjectClassLoader( project );
+                    projectLoader = classLoaderCache.acquire( project );
+                    newLoader = projectLoader;
                 }
                 DRLInfo drlInfo = DroolsEclipsePlugin.getDefault().parseResource(drlEditor, true, true);
                 if (drlInfo == null) {
@@ -160,6 +164,8 @@ public class ReteViewer extends GraphicalEditor {
             } catch ( Throwable t ) {
                 DroolsEclipsePlugin.log( t );
                 throw new Exception( MSG_PARSE_ERROR + " " + t.getMessage());
+            } finally {
+                classLoaderCache.release( projectLoader );
             }
 
             monitor.worked( 50 );
@@ -177,9 +183,15 @@ public class ReteViewer extends GraphicalEditor {
 
             monitor.subTask( "Calculating RETE Tree Layout" );
             BaseVertex rootVertex = visitor.getRootVertex();
-            RowList rowList = ReteooLayoutFactory.calculateReteRows( rootVertex );
-            ReteooLayoutFactory.layoutRowList( newDiagram,
-                                               rowList );
+            try {
+                RowList rowList = ReteooLayoutFactory.calculateReteRows( rootVertex,
+                                                                         monitor );
+                ReteooLayoutFactory.layoutRowList( newDiagram,
+                                                   rowList,
+                                                   monitor );
+            } catch ( OperationCanceledException e ) {
+                throw new InterruptedException();
+            }
             zeroBaseDiagram( newDiagram );
             monitor.worked( 20 );
             if ( monitor.isCanceled() ) {
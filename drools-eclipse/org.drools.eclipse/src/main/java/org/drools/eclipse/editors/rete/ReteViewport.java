@@ -0,0 +1,338 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.editors.rete;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.drools.eclipse.editors.rete.model.Connection;
+import org.drools.eclipse.editors.rete.model.ReteGraph;
+import org.drools.eclipse.reteoo.AlphaNodeVertex;
+import org.drools.eclipse.reteoo.BaseVertex;
+import org.eclipse.draw2d.geometry.Point;
+import org.eclipse.draw2d.geometry.Rectangle;
+
+/**
+ * Decides which vertices of a rete graph get an edit part, so large graphs
+ * only pay for the part of the network that is on screen.
+ *
+ * Graphs with at least {@link #MIN_VERTICES} vertices are virtual: only the
+ * vertices in or near the visible area are shown, found through a grid of
+ * cells over the graph. Below {@link #COLLAPSE_ZOOM}, chains of alpha nodes
+ * are also collapsed into their first vertex, which then takes the
+ * connections of the last one.
+ *
+ * Smaller graphs are always shown entirely.
+ */
+public class ReteViewport {
+
+    /** Graphs with fewer vertices are always shown entirely */
+    public static final int                   MIN_VERTICES  = 500;
+
+    /** Zoom level below which alpha node chains are collapsed */
+    public static final double                COLLAPSE_ZOOM = 0.5;
+
+    private static final int                  CELL_SIZE     = 256;
+
+    private final ReteGraph                   graph;
+
+    private boolean                           valid;
+
+    private boolean                           virtual;
+
+    // vertices by the cell their location is in
+    private final Map<Long, List<BaseVertex>> cells         = new HashMap<Long, List<BaseVertex>>();
+
+    private int                               minCellX;
+    private int                               minCellY;
+    private int                               maxCellX;
+    private int                               maxCellY;
+
+    // the first vertex of its chain, for the other vertices of alpha node chains
+    private final Map<BaseVertex, BaseVertex> heads         = new HashMap<BaseVertex, BaseVertex>();
+
+    // the last vertex of its chain, for the first vertex of alpha node chains
+    private final Map<BaseVertex, BaseVertex> tails         = new HashMap<BaseVertex, BaseVertex>();
+
+    private final Map<BaseVertex, Integer>    lengths       = new HashMap<BaseVertex, Integer>();
+
+    private Set<BaseVertex>                   shown         = Collections.emptySet();
+
+    private boolean                           collapsed;
+
+    public ReteViewport(ReteGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Tells that vertices were added, removed or moved, so the graph has to be
+     * indexed again on the next update.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Updates the shown vertices to the given area and zoom level.
+     *
+     * @param area visible area in graph coordinates, null if unknown
+     * @param zoom zoom level
+     *
+     * @return true if the shown vertices or their connections changed
+     */
+    public boolean update(Rectangle area,
+                          double zoom) {
+        validate();
+        if ( !virtual ) {
+            return false;
+        }
+        boolean newCollapsed = zoom < COLLAPSE_ZOOM;
+        Set<BaseVertex> newShown;
+        if ( area == null ) {
+            newShown = new HashSet<BaseVertex>( graph.getChildren() );
+        } else {
+            // vertices just outside are shown too, so scrolling a bit
+            // doesn't uncover missing vertices and connections
+            Rectangle nearArea = area.getCopy().expand( area.width / 2,
+                                                        area.height / 2 );
+            newShown = findVertices( nearArea );
+        }
+        if ( newCollapsed ) {
+            Set<BaseVertex> representatives = new HashSet<BaseVertex>( newShown.size() );
+            for ( BaseVertex vertex : newShown ) {
+                BaseVertex head = heads.get( vertex );
+                representatives.add( head != null ? head : vertex );
+            }
+            newShown = representatives;
+        }
+        boolean changed = newCollapsed != collapsed || !newShown.equals( shown );
+        collapsed = newCollapsed;
+        shown = newShown;
+        return changed;
+    }
+
+    /**
+     * Returns true if vertices are shown only in or near the visible area.
+     */
+    public boolean isVirtual() {
+        validate();
+        return virtual;
+    }
+
+    /**
+     * Returns the vertices to show, in the order of the graph.
+     */
+    public List<BaseVertex> getVertices() {
+        if ( !isVirtual() ) {
+            return graph.getChildren();
+        }
+        List<BaseVertex> vertices = new ArrayList<BaseVertex>( shown.size() );
+        for ( BaseVertex vertex : graph.getChildren() ) {
+            if ( shown.contains( vertex ) ) {
+                vertices.add( vertex );
+            }
+        }
+        return vertices;
+    }
+
+    /**
+     * Returns true if the given vertex is shown.
+     */
+    public boolean isShown(BaseVertex vertex) {
+        return !isVirtual() || shown.contains( vertex );
+    }
+
+    /**
+     * Returns the number of alpha nodes the given shown vertex stands for:
+     * the length of its chain when it is collapsed, 1 otherwise.
+     */
+    public int getChainLength(BaseVertex vertex) {
+        Integer length = collapsed && isVirtual() ? lengths.get( vertex ) : null;
+        return length != null ? length.intValue() : 1;
+    }
+
+    /**
+     * Returns the connections going out of the given shown vertex, to other
+     * shown vertices. A collapsed chain has the connections of its last vertex.
+     */
+    public List<Connection> getSourceConnections(BaseVertex vertex) {
+        if ( !isVirtual() ) {
+            return vertex.getSourceConnections();
+        }
+        BaseVertex tail = collapsed ? tails.get( vertex ) : null;
+        List<Connection> connections = (tail != null ? tail : vertex).getSourceConnections();
+        List<Connection> result = new ArrayList<Connection>( connections.size() );
+        for ( Connection connection : connections ) {
+            if ( shown.contains( connection.getTarget() ) ) {
+                result.add( connection );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the connections coming into the given shown vertex, from other
+     * shown vertices or collapsed chains.
+     */
+    public List<Connection> getTargetConnections(BaseVertex vertex) {
+        if ( !isVirtual() ) {
+            return vertex.getTargetConnections();
+        }
+        List<Connection> connections = vertex.getTargetConnections();
+        List<Connection> result = new ArrayList<Connection>( connections.size() );
+        for ( Connection connection : connections ) {
+            BaseVertex source = connection.getSource();
+            BaseVertex head = collapsed ? heads.get( source ) : null;
+            if ( shown.contains( head != null ? head : source ) ) {
+                result.add( connection );
+            }
+        }
+        return result;
+    }
+
+    private void validate() {
+        if ( valid ) {
+            return;
+        }
+        valid = true;
+        cells.clear();
+        heads.clear();
+        tails.clear();
+        lengths.clear();
+
+        List<BaseVertex> vertices = graph.getChildren();
+        virtual = vertices.size() >= MIN_VERTICES;
+        if ( !virtual ) {
+            shown = Collections.emptySet();
+            return;
+        }
+
+        minCellX = minCellY = Integer.MAX_VALUE;
+        maxCellX = maxCellY = Integer.MIN_VALUE;
+        for ( BaseVertex vertex : vertices ) {
+            Point location = vertex.getLocation();
+            int cellX = getCell( location.x );
+            int cellY = getCell( location.y );
+            minCellX = Math.min( minCellX,
+                                 cellX );
+            minCellY = Math.min( minCellY,
+                                 cellY );
+            maxCellX = Math.max( maxCellX,
+                                 cellX );
+            maxCellY = Math.max( maxCellY,
+                                 cellY );
+            Long key = getKey( cellX,
+                               cellY );
+            List<BaseVertex> cell = cells.get( key );
+            if ( cell == null ) {
+                cell = new ArrayList<BaseVertex>();
+                cells.put( key,
+                           cell );
+            }
+            cell.add( vertex );
+        }
+
+        for ( BaseVertex vertex : vertices ) {
+            if ( isChainHead( vertex ) ) {
+                BaseVertex tail = vertex;
+                int length = 1;
+                for ( BaseVertex next = getChainSuccessor( tail ); next != null; next = getChainSuccessor( tail ) ) {
+                    heads.put( next,
+                               vertex );
+                    tail = next;
+                    length++;
+                }
+                if ( length > 1 ) {
+                    tails.put( vertex,
+                               tail );
+                    lengths.put( vertex,
+                                 Integer.valueOf( length ) );
+                }
+            }
+        }
+    }
+
+    private Set<BaseVertex> findVertices(Rectangle area) {
+        Set<BaseVertex> result = new HashSet<BaseVertex>();
+        // vertices are located by their top left corner
+        int fromX = Math.max( minCellX,
+                              getCell( area.x - CELL_SIZE ) );
+        int fromY = Math.max( minCellY,
+                              getCell( area.y - CELL_SIZE ) );
+        int toX = Math.min( maxCellX,
+                            getCell( area.right() ) );
+        int toY = Math.min( maxCellY,
+                            getCell( area.bottom() ) );
+        for ( int cellX = fromX; cellX <= toX; cellX++ ) {
+            for ( int cellY = fromY; cellY <= toY; cellY++ ) {
+                List<BaseVertex> cell = cells.get( getKey( cellX,
+                                                           cellY ) );
+                if ( cell != null ) {
+                    for ( BaseVertex vertex : cell ) {
+                        if ( area.intersects( new Rectangle( vertex.getLocation(),
+                                                             vertex.getSize() ) ) ) {
+                            result.add( vertex );
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the alpha node following the given vertex in a chain: its only
+     * sink, if that has no other source. Returns null if there is none.
+     */
+    private static BaseVertex getChainSuccessor(BaseVertex vertex) {
+        if ( !(vertex instanceof AlphaNodeVertex) ) {
+            return null;
+        }
+        List<Connection> connections = vertex.getSourceConnections();
+        if ( connections.size() != 1 ) {
+            return null;
+        }
+        BaseVertex next = connections.get( 0 ).getTarget();
+        if ( next instanceof AlphaNodeVertex && next.getTargetConnections().size() == 1 ) {
+            return next;
+        }
+        return null;
+    }
+
+    private static boolean isChainHead(BaseVertex vertex) {
+        if ( !(vertex instanceof AlphaNodeVertex) ) {
+            return false;
+        }
+        List<Connection> connections = vertex.getTargetConnections();
+        return connections.size() != 1 || getChainSuccessor( connections.get( 0 ).getSource() ) != vertex;
+    }
+
+    private static int getCell(int coordinate) {
+        return (int) Math.floor( coordinate / (double) CELL_SIZE );
+    }
+
+    private static Long getKey(int cellX,
+                               int cellY) {
+        return Long.valueOf( ((long) cellX << 32) | (cellY & 0xffffffffL) );
+    }
+
+}
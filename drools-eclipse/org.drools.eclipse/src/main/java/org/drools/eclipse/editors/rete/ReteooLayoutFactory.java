@@ -16,21 +16,44 @@
 
 package org.drools.eclipse.editors.rete;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.drools.eclipse.editors.rete.model.Connection;
 import org.drools.eclipse.editors.rete.model.ReteGraph;
 import org.drools.eclipse.reteoo.BaseVertex;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.draw2d.geometry.Point;
 
 /**
  * Factory methods for calculating and layouting reteoo graph
+ * 
+ * Vertices are placed in rows by their distance from the root. The order of
+ * the vertices within the rows is improved by moving each vertex towards the
+ * average column of its neighbours in the previous or the next row, keeping
+ * the order with the fewest crossing connections. Rows are then packed
+ * horizontally, each vertex as close as possible above or below its parents.
+ * 
+ * Everything runs in linear or n log n time in the number of vertices and
+ * connections, and needs no display, so it can run in the background.
  */
 public class ReteooLayoutFactory {
 
+    private static final int CROSSING_REDUCTION_SWEEPS = 8;
+
+    private static final int COLUMN_SPACE              = 40;
+    private static final int ROW_HEIGHT_MULTIPLIER     = 6;
+
     /**
      * Calculates layouting for provided graph.
      * 
@@ -39,6 +62,65 @@ public class ReteooLayoutFactory {
      * @return Optimally layouted rows from provided graph
      */
     public static RowList calculateReteRows(BaseVertex root) {
+        return calculateReteRows( root,
+                                  new NullProgressMonitor() );
+    }
+
+    /**
+     * Calculates layouting for provided graph.
+     * 
+     * @param root graph root vertex
+     * @param monitor checked for cancellation
+     * 
+     * @return Optimally layouted rows from provided graph
+     * @throws OperationCanceledException if the monitor is cancelled
+     */
+    public static RowList calculateReteRows(BaseVertex root,
+                                            IProgressMonitor monitor) {
+        RowList rowList = createRows( root,
+                                      monitor );
+        reduceCrossings( rowList,
+                         monitor );
+
+        return rowList;
+    }
+
+    /**
+     * Calculates layouting for a graph that changed since it was last layouted.
+     * 
+     * The vertices that were there before keep their order in their rows, and
+     * new vertices are put next to their parents, instead of reordering all the
+     * rows from scratch. Without any previous location the graph is layouted as
+     * a new one.
+     * 
+     * @param root graph root vertex
+     * @param previousLocations the previous locations of vertices, by vertex
+     * @param monitor checked for cancellation
+     * 
+     * @return rows from provided graph, in their previous order
+     * @throws OperationCanceledException if the monitor is cancelled
+     */
+    public static RowList calculateReteRows(BaseVertex root,
+                                            Map<BaseVertex, Point> previousLocations,
+                                            IProgressMonitor monitor) {
+        if ( previousLocations.isEmpty() ) {
+            return calculateReteRows( root,
+                                      monitor );
+        }
+        RowList rowList = createRows( root,
+                                      monitor );
+        keepOrder( rowList,
+                   previousLocations,
+                   monitor );
+
+        return rowList;
+    }
+
+    /**
+     * Puts the vertices in rows by their distance from the root.
+     */
+    private static RowList createRows(BaseVertex root,
+                                      IProgressMonitor monitor) {
         RowList rowList;
         rowList = new RowList();
 
@@ -51,6 +133,7 @@ public class ReteooLayoutFactory {
         seenVertices.add( root );
 
         while ( curRow < rowList.getDepth() ) {
+            checkCanceled( monitor );
             final List<BaseVertex> rowVertices = rowList.get( curRow ).getVertices();
 
             for ( final Iterator<BaseVertex> rowNodeIter = rowVertices.iterator(); rowNodeIter.hasNext(); ) {
@@ -82,85 +165,316 @@ public class ReteooLayoutFactory {
     }
 
     /**
-     * Adds all vertices from rowList to the graph.
-     * 
-     * @param graph
-     * @param rowList
+     * Sorts every row by the previous horizontal position of its vertices. New
+     * vertices take the average position of their parents, or go last if they
+     * have none.
      */
-    public static void layoutRowList(ReteGraph graph,
-                                     RowList rowList) {
-        new LayoutCalculator( graph,
-                              rowList );
-    }
-
-    private static class LayoutCalculator {
-
-        public final static String COORDS                = "drools.LayoutCalculator.coords";
-
-        private static final int   COLUMN_SPACE          = 40;
-        private static final int   ROW_HEIGHT_MULTIPLIER = 6;
-
-        private RowList            rowList;
-
-        private int                columnWidth;
-        private int                rowHeight;
-
-        private ReteGraph          graph;
+    private static void keepOrder(final RowList rowList,
+                                  final Map<BaseVertex, Point> previousLocations,
+                                  final IProgressMonitor monitor) {
+        final Map<BaseVertex, Double> positions = new HashMap<BaseVertex, Double>();
+        for ( int row = 0; row < rowList.getDepth(); row++ ) {
+            checkCanceled( monitor );
+            final List<BaseVertex> vertices = rowList.get( row ).getVertices();
+            final int width = vertices.size();
+            final double[] rowPositions = new double[width];
+            final Integer[] order = new Integer[width];
+
+            for ( int i = 0; i < width; i++ ) {
+                final BaseVertex vertex = vertices.get( i );
+                order[i] = i;
+                final Point previous = previousLocations.get( vertex );
+                if ( previous != null ) {
+                    rowPositions[i] = previous.x;
+                } else {
+                    double sum = 0;
+                    int count = 0;
+                    for ( Connection connection : vertex.getTargetConnections() ) {
+                        final Double parentPosition = positions.get( connection.getSource() );
+                        if ( parentPosition != null ) {
+                            sum += parentPosition.doubleValue();
+                            count++;
+                        }
+                    }
+                    rowPositions[i] = count == 0 ? Double.MAX_VALUE : sum / count;
+                }
+                positions.put( vertex,
+                               Double.valueOf( rowPositions[i] ) );
+            }
 
-        private LayoutCalculator(final ReteGraph graph,
-                                 final RowList rowList) {
-            this.graph = graph;
-            this.rowList = rowList;
-            computeSize();
+            // stable, so vertices at the same position keep their order
+            Arrays.sort( order,
+                         new Comparator<Integer>() {
+                             public int compare(Integer i1,
+                                                Integer i2) {
+                                 return Double.compare( rowPositions[i1],
+                                                        rowPositions[i2] );
+                             }
+                         } );
+
+            final List<BaseVertex> ordered = new ArrayList<BaseVertex>( width );
+            for ( Integer i : order ) {
+                ordered.add( vertices.get( i ) );
+            }
+            rowList.setOrder( row,
+                              ordered );
+        }
+    }
 
-            List<BaseVertex> vertices = getGraph().getChildren();
-            for (BaseVertex v : vertices) {
-                initialize_local_vertex( v );
+    /**
+     * Reorders the rows by the barycenters of their neighbours, alternately
+     * sweeping down and up, and keeps the best order found.
+     */
+    private static void reduceCrossings(RowList rowList,
+                                        IProgressMonitor monitor) {
+        final int depth = rowList.getDepth();
+        List<List<BaseVertex>> best = getOrder( rowList );
+        long bestCrossings = countCrossings( rowList );
+
+        for ( int sweep = 0; sweep < CROSSING_REDUCTION_SWEEPS && bestCrossings > 0; sweep++ ) {
+            if ( sweep % 2 == 0 ) {
+                for ( int row = 1; row < depth; row++ ) {
+                    checkCanceled( monitor );
+                    orderByBarycenter( rowList,
+                                       row,
+                                       row - 1 );
+                }
+            } else {
+                for ( int row = depth - 2; row >= 0; row-- ) {
+                    checkCanceled( monitor );
+                    orderByBarycenter( rowList,
+                                       row,
+                                       row + 1 );
+                }
+            }
+            final long crossings = countCrossings( rowList );
+            if ( crossings < bestCrossings ) {
+                best = getOrder( rowList );
+                bestCrossings = crossings;
             }
+        }
 
+        for ( int row = 0; row < depth; row++ ) {
+            rowList.setOrder( row,
+                              best.get( row ) );
         }
+    }
 
-        private void computeSize() {
-            final List<BaseVertex> vertices = getGraph().getChildren();
+    private static List<List<BaseVertex>> getOrder(RowList rowList) {
+        final List<List<BaseVertex>> order = new ArrayList<List<BaseVertex>>( rowList.getDepth() );
+        for ( int row = 0; row < rowList.getDepth(); row++ ) {
+            order.add( new ArrayList<BaseVertex>( rowList.get( row ).getVertices() ) );
+        }
+        return order;
+    }
 
-            for (final BaseVertex vertex : vertices) {
+    /**
+     * Sorts a row by the average column of the neighbours of its vertices in the
+     * fixed row. Vertices without such neighbours keep their column.
+     */
+    private static void orderByBarycenter(final RowList rowList,
+                                          final int row,
+                                          final int fixedRow) {
+        final List<BaseVertex> vertices = rowList.get( row ).getVertices();
+        final int width = vertices.size();
+        final double[] barycenters = new double[width];
+        final Integer[] order = new Integer[width];
+
+        for ( int i = 0; i < width; i++ ) {
+            order[i] = i;
+            double sum = 0;
+            int count = 0;
+            for ( BaseVertex neighbour : getNeighbours( vertices.get( i ) ) ) {
+                if ( rowList.getRow( neighbour ) == fixedRow ) {
+                    sum += rowList.getColumn( neighbour );
+                    count++;
+                }
+            }
+            barycenters[i] = count == 0 ? i : sum / count;
+        }
 
-                final int width = vertex.getSize().width;
-                final int height = vertex.getSize().height;
+        // stable, so vertices with the same barycenter keep their order
+        Arrays.sort( order,
+                     new Comparator<Integer>() {
+                         public int compare(Integer i1,
+                                            Integer i2) {
+                             return Double.compare( barycenters[i1],
+                                                    barycenters[i2] );
+                         }
+                     } );
+
+        final List<BaseVertex> ordered = new ArrayList<BaseVertex>( width );
+        for ( Integer i : order ) {
+            ordered.add( vertices.get( i ) );
+        }
+        rowList.setOrder( row,
+                          ordered );
+    }
 
-                if ( width > this.columnWidth ) {
-                    this.columnWidth = width;
+    /**
+     * Counts the crossing connections between all adjacent rows.
+     */
+    static long countCrossings(RowList rowList) {
+        long crossings = 0;
+        for ( int row = 0; row + 1 < rowList.getDepth(); row++ ) {
+            final List<BaseVertex> vertices = rowList.get( row ).getVertices();
+            // the columns in the next row of the connections, ordered by the column in this row
+            final List<Integer> ends = new ArrayList<Integer>();
+            for ( BaseVertex vertex : vertices ) {
+                final List<Integer> vertexEnds = new ArrayList<Integer>();
+                for ( BaseVertex neighbour : getNeighbours( vertex ) ) {
+                    if ( rowList.getRow( neighbour ) == row + 1 ) {
+                        vertexEnds.add( rowList.getColumn( neighbour ) );
+                    }
                 }
+                Collections.sort( vertexEnds );
+                ends.addAll( vertexEnds );
+            }
+            crossings += countInversions( ends,
+                                          rowList.getWidth( row + 1 ) );
+        }
+        return crossings;
+    }
 
-                if ( height > this.rowHeight ) {
-                    this.rowHeight = height;
-                }
+    /**
+     * Counts the pairs in the wrong order, with a binary indexed tree over the
+     * values, which are between 0 and size - 1.
+     */
+    private static long countInversions(List<Integer> values,
+                                        int size) {
+        final int[] tree = new int[size + 1];
+        long inversions = 0;
+        int seen = 0;
+        for ( Integer value : values ) {
+            // the values seen so far that are greater than this one
+            int lessOrEqual = 0;
+            for ( int i = value + 1; i > 0; i -= i & -i ) {
+                lessOrEqual += tree[i];
             }
+            inversions += seen - lessOrEqual;
+            for ( int i = value + 1; i <= size; i += i & -i ) {
+                tree[i]++;
+            }
+            seen++;
+        }
+        return inversions;
+    }
 
-            this.columnWidth = this.columnWidth + LayoutCalculator.COLUMN_SPACE;
+    private static List<BaseVertex> getNeighbours(BaseVertex vertex) {
+        final List<BaseVertex> neighbours = new ArrayList<BaseVertex>();
+        for ( Connection connection : vertex.getSourceConnections() ) {
+            neighbours.add( connection.getTarget() );
         }
+        for ( Connection connection : vertex.getTargetConnections() ) {
+            neighbours.add( connection.getSource() );
+        }
+        return neighbours;
+    }
 
-        private void initialize_local_vertex(final BaseVertex vertex) {
-            final int row = this.rowList.getRow( vertex );
-            final int col = this.rowList.getColumn( vertex );
+    /**
+     * Adds all vertices from rowList to the graph.
+     * 
+     * @param graph
+     * @param rowList
+     */
+    public static void layoutRowList(ReteGraph graph,
+                                     RowList rowList) {
+        layoutRowList( graph,
+                       rowList,
+                       new NullProgressMonitor() );
+    }
 
-            final int rowWidth = this.rowList.getWidth( row );
+    /**
+     * Sets the location of all vertices of the graph found in rowList. Every
+     * row is packed from left to right, each vertex placed below the average
+     * of its parents if there is room left, and the row is then shifted so
+     * that it is balanced around its parents.
+     * 
+     * @param graph
+     * @param rowList
+     * @param monitor checked for cancellation
+     * @throws OperationCanceledException if the monitor is cancelled
+     */
+    public static void layoutRowList(ReteGraph graph,
+                                     RowList rowList,
+                                     IProgressMonitor monitor) {
+        int rowHeight = 0;
+        for ( final BaseVertex vertex : graph.getChildren() ) {
+            rowHeight = Math.max( rowHeight,
+                                  vertex.getSize().height );
+        }
 
-            final int columnWidthPx = columnWidth;
-            final int rowHeightPx = rowHeight;
+        final int depth = rowList.getDepth();
+        // the horizontal centers of the vertices, by row and column
+        final double[][] centers = new double[depth][];
+
+        for ( int row = 0; row < depth; row++ ) {
+            checkCanceled( monitor );
+            final List<BaseVertex> vertices = rowList.get( row ).getVertices();
+            final int width = vertices.size();
+            final double[] desired = new double[width];
+            final double[] rowCenters = new double[width];
+            boolean anyDesired = false;
+
+            for ( int i = 0; i < width; i++ ) {
+                double sum = 0;
+                int count = 0;
+                if ( row > 0 ) {
+                    for ( BaseVertex neighbour : getNeighbours( vertices.get( i ) ) ) {
+                        if ( rowList.getRow( neighbour ) == row - 1 ) {
+                            sum += centers[row - 1][rowList.getColumn( neighbour )];
+                            count++;
+                        }
+                    }
+                }
+                desired[i] = count == 0 ? Double.NaN : sum / count;
+                anyDesired |= count > 0;
+            }
 
-            double x = (col * columnWidthPx);
-            double y = (row * (rowHeightPx * LayoutCalculator.ROW_HEIGHT_MULTIPLIER));
+            // pack from left to right, never closer than the column space
+            double right = Double.NEGATIVE_INFINITY;
+            double shift = 0;
+            int shifted = 0;
+            for ( int i = 0; i < width; i++ ) {
+                final double halfWidth = vertices.get( i ).getSize().width / 2.0;
+                double center = right + COLUMN_SPACE + halfWidth;
+                if ( !Double.isNaN( desired[i] ) && desired[i] > center ) {
+                    center = desired[i];
+                }
+                if ( i == 0 && Double.isNaN( desired[i] ) ) {
+                    center = halfWidth;
+                }
+                rowCenters[i] = center;
+                right = center + halfWidth;
+                if ( !Double.isNaN( desired[i] ) ) {
+                    shift += center - desired[i];
+                    shifted++;
+                }
+            }
 
-            x = x + (columnWidthPx / 2) - ((rowWidth - 1) * (columnWidthPx / 2));
-            y = y + (rowHeightPx / 2) + 3;
+            // balance the row around its parents, or around 0 if it has none
+            if ( anyDesired ) {
+                shift = shift / shifted;
+            } else if ( width > 0 ) {
+                shift = (rowCenters[0] + rowCenters[width - 1]) / 2;
+            }
+            for ( int i = 0; i < width; i++ ) {
+                rowCenters[i] -= shift;
+            }
+            centers[row] = rowCenters;
 
-            vertex.setLocation( new Point( x,
-                                           y ) );
+            final int y = row * rowHeight * ROW_HEIGHT_MULTIPLIER + rowHeight / 2 + 3;
+            for ( int i = 0; i < width; i++ ) {
+                final BaseVertex vertex = vertices.get( i );
+                vertex.setLocation( new Point( (int) Math.round( rowCenters[i] - vertex.getSize().width / 2.0 ),
+                                               y ) );
+            }
         }
+    }
 
-        private ReteGraph getGraph() {
-            return graph;
+    private static void checkCanceled(IProgressMonitor monitor) {
+        if ( monitor.isCanceled() ) {
+            throw new OperationCanceledException();
         }
     }
 
@@ -17,10 +17,10 @@
 package org.drools.eclipse.editors.rete;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.drools.eclipse.reteoo.BaseVertex;
@@ -111,7 +111,10 @@ public class Row {
             }
         });
 
-        final LinkedList<BaseVertex> optimized = new LinkedList<BaseVertex>();
+        // the vertices with most outgoing connections in the middle, alternating to the front and the back
+        final BaseVertex[] optimized = new BaseVertex[sorted.size()];
+        int first = sorted.size() / 2;
+        int last = first - 1;
 
         boolean front = false;
 
@@ -119,14 +122,23 @@ public class Row {
             final BaseVertex vertex = vertexIter.next();
 
             if ( front ) {
-                optimized.addFirst( vertex );
+                optimized[--first] = vertex;
             } else {
-                optimized.addLast( vertex );
+                optimized[++last] = vertex;
             }
 
             front = !front;
         }
 
-        this.vertices = optimized;
+        this.vertices = new ArrayList<BaseVertex>( Arrays.asList( optimized ) );
+    }
+
+    /**
+     * Replaces the order of the vertices of this row.
+     * 
+     * @param ordered the same vertices in their new order
+     */
+    void setVertices(final List<BaseVertex> ordered) {
+        this.vertices = new ArrayList<BaseVertex>( ordered );
     }
 }
@@ -17,8 +17,10 @@
 package org.drools.eclipse.editors.rete;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.drools.eclipse.reteoo.BaseVertex;
 
@@ -30,6 +32,10 @@ public class RowList {
     // List<Row>
     private List<Row> rows;
 
+    // the row and the column of every vertex, kept up to date when adding or reordering vertices
+    private Map<BaseVertex, Integer> rowIndex = new HashMap<BaseVertex, Integer>();
+    private Map<BaseVertex, Integer> columnIndex = new HashMap<BaseVertex, Integer>();
+
     /**
      * Default constructor.
      */
@@ -54,7 +60,12 @@ public class RowList {
             }
         }
 
-        ((Row) this.rows.get( depth )).add( vertex );
+        final Row row = (Row) this.rows.get( depth );
+        this.rowIndex.put( vertex,
+                           depth );
+        this.columnIndex.put( vertex,
+                              row.getWidth() );
+        row.add( vertex );
     }
 
     /**
@@ -80,15 +91,9 @@ public class RowList {
      * @return row number where vertex was found (0..n-1). <code>-1</code> if not found. 
      */
     public int getRow(final BaseVertex vertex) {
-        final int numRows = this.rows.size();
-
-        for ( int i = 0; i < numRows; ++i ) {
-            if ( ((Row) this.rows.get( i )).contains( vertex ) ) {
-                return i;
-            }
-        }
+        final Integer row = this.rowIndex.get( vertex );
 
-        return -1;
+        return row == null ? -1 : row.intValue();
     }
 
     /**
@@ -126,23 +131,32 @@ public class RowList {
      * @return column where vertex was found
      */
     public int getColumn(final BaseVertex vertex) {
-        final int row = getRow( vertex );
+        final Integer column = this.columnIndex.get( vertex );
 
-        if ( row < 0 ) {
-            return -1;
-        }
+        return column == null ? -1 : column.intValue();
+    }
 
+    /**
+     * Changes the order of the vertices of the row at specified index.
+     * 
+     * @param row index of the row
+     * @param ordered the vertices of the row in their new order
+     */
+    public void setOrder(final int row,
+                         final List<BaseVertex> ordered) {
+        get( row ).setVertices( ordered );
+        indexColumns( row );
+    }
+
+    private void indexColumns(final int row) {
         final List<BaseVertex> rowVertices = get( row ).getVertices();
 
         final int numCols = rowVertices.size();
 
         for ( int i = 0; i < numCols; ++i ) {
-            if ( rowVertices.get( i ).equals( vertex ) ) {
-                return i;
-            }
+            this.columnIndex.put( rowVertices.get( i ),
+                                  i );
         }
-
-        return -1;
     }
 
     /**
@@ -164,6 +178,7 @@ public class RowList {
 
         for ( int i = 0; i < numRows; ++i ) {
             get( i ).optimize();
+            indexColumns( i );
         }
     }
 }
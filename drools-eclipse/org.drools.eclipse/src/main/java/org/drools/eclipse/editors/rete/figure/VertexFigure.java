@@ -18,6 +18,7 @@ package org.drools.eclipse.editors.rete.figure;
 
 import org.eclipse.draw2d.Figure;
 import org.eclipse.draw2d.Graphics;
+import org.eclipse.draw2d.Label;
 import org.eclipse.draw2d.geometry.Rectangle;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.graphics.Color;
@@ -27,9 +28,14 @@ import org.eclipse.swt.graphics.Color;
  */
 public class VertexFigure extends Figure {
 
+    /** Horizontal distance between the circles of a collapsed chain */
+    public static final int CHAIN_OFFSET = 4;
+
     final private Color backgroundColor;
     final private Color borderColor;
 
+    private int         chainLength = 1;
+
     /**
      * Initializing Figure
      * 
@@ -42,6 +48,20 @@ public class VertexFigure extends Figure {
         this.borderColor = borderColor;
     }
 
+    /**
+     * Sets the number of vertices this figure stands for. A collapsed chain
+     * of more than one vertex is painted as a stack of three circles.
+     * 
+     * @param chainLength number of vertices
+     */
+    public void setChainLength(int chainLength) {
+        if ( this.chainLength != chainLength ) {
+            this.chainLength = chainLength;
+            setToolTip( chainLength > 1 ? new Label( chainLength + " alpha nodes" ) : null );
+            repaint();
+        }
+    }
+
     /**
      * Painting antialiased vertex
      */
@@ -51,18 +71,20 @@ public class VertexFigure extends Figure {
         g.translate( r.getLocation() );
         g.setBackgroundColor( backgroundColor );
         g.setForegroundColor( borderColor );
-        g.fillArc( 0,
-                   0,
-                   15,
-                   15,
-                   0,
-                   360 );
-        g.drawArc( 0,
-                   0,
-                   14,
-                   14,
-                   0,
-                   360 );
+        for ( int i = chainLength > 1 ? 2 : 0; i >= 0; i-- ) {
+            g.fillArc( i * CHAIN_OFFSET,
+                       0,
+                       15,
+                       15,
+                       0,
+                       360 );
+            g.drawArc( i * CHAIN_OFFSET,
+                       0,
+                       14,
+                       14,
+                       0,
+                       360 );
+        }
         super.paint( g );
     }
 
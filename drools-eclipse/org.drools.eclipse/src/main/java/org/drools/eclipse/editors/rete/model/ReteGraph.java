@@ -76,16 +76,37 @@ public class ReteGraph extends ModelElement {
 
     /**
      * Removes all vertices from graph.
+     * 
+     * Listeners are notified once, with the list of removed vertices.
      */
     public void removeAll() {
-        while ( vertices.size() > 0 ) {
-            removeChild( ((BaseVertex) vertices.get( 0 )) );
+        if ( vertices.size() > 0 ) {
+            List<BaseVertex> removed = new ArrayList<BaseVertex>( vertices );
+            vertices.clear();
+            firePropertyChange( PROP_CHILD_REMOVED,
+                                null,
+                                removed );
         }
     }
 
+    /**
+     * Adds vertices to graph.
+     * 
+     * Listeners are notified once, with the list of added vertices.
+     * 
+     * @param children vertices to be added
+     */
     public void addAll(List<BaseVertex> children) {
-        for (BaseVertex vertex : children) {
-            addChild( vertex );
+        List<BaseVertex> added = new ArrayList<BaseVertex>( children.size() );
+        for ( BaseVertex vertex : children ) {
+            if ( vertex != null && vertices.add( vertex ) ) {
+                added.add( vertex );
+            }
+        }
+        if ( added.size() > 0 ) {
+            firePropertyChange( PROP_CHILD_ADDED,
+                                null,
+                                added );
         }
     }
 
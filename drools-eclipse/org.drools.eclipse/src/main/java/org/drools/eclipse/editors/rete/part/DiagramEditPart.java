@@ -20,6 +20,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.List;
 
+import org.drools.eclipse.editors.rete.ReteViewport;
 import org.drools.eclipse.editors.rete.commands.NodeSetConstraintCommand;
 import org.drools.eclipse.editors.rete.model.ModelElement;
 import org.drools.eclipse.editors.rete.model.ReteGraph;
@@ -29,12 +30,17 @@ import org.eclipse.draw2d.FreeformLayer;
 import org.eclipse.draw2d.FreeformLayout;
 import org.eclipse.draw2d.IFigure;
 import org.eclipse.draw2d.MarginBorder;
+import org.eclipse.draw2d.Viewport;
 import org.eclipse.draw2d.geometry.Rectangle;
 import org.eclipse.gef.EditPart;
 import org.eclipse.gef.EditPolicy;
+import org.eclipse.gef.GraphicalEditPart;
 import org.eclipse.gef.NodeEditPart;
 import org.eclipse.gef.commands.Command;
 import org.eclipse.gef.editparts.AbstractGraphicalEditPart;
+import org.eclipse.gef.editparts.ScalableFreeformRootEditPart;
+import org.eclipse.gef.editparts.ZoomListener;
+import org.eclipse.gef.editparts.ZoomManager;
 import org.eclipse.gef.editpolicies.RootComponentEditPolicy;
 import org.eclipse.gef.editpolicies.XYLayoutEditPolicy;
 import org.eclipse.gef.requests.ChangeBoundsRequest;
@@ -47,6 +53,37 @@ public class DiagramEditPart extends AbstractGraphicalEditPart
     implements
     PropertyChangeListener {
 
+    private ReteViewport                 reteViewport;
+
+    private boolean                      updateScheduled;
+
+    private final PropertyChangeListener scrollListener = new PropertyChangeListener() {
+        public void propertyChange(PropertyChangeEvent evt) {
+            scheduleUpdate();
+        }
+    };
+
+    private final ZoomListener           zoomListener   = new ZoomListener() {
+        public void zoomChanged(double zoom) {
+            scheduleUpdate();
+        }
+    };
+
+    /* (non-Javadoc)
+     * @see org.eclipse.gef.editparts.AbstractEditPart#setModel(java.lang.Object)
+     */
+    public void setModel(Object model) {
+        super.setModel( model );
+        reteViewport = new ReteViewport( (ReteGraph) model );
+    }
+
+    /**
+     * Returns the viewport deciding which vertices of the graph are shown.
+     */
+    public ReteViewport getReteViewport() {
+        return reteViewport;
+    }
+
     /* (non-Javadoc)
      * @see org.eclipse.gef.editparts.AbstractGraphicalEditPart#activate()
      */
@@ -54,6 +91,16 @@ public class DiagramEditPart extends AbstractGraphicalEditPart
         if ( !isActive() ) {
             super.activate();
             ((ModelElement) getModel()).addPropertyChangeListener( this );
+            Viewport viewport = getViewport();
+            if ( viewport != null ) {
+                viewport.getHorizontalRangeModel().addPropertyChangeListener( scrollListener );
+                viewport.getVerticalRangeModel().addPropertyChangeListener( scrollListener );
+            }
+            ZoomManager zoomManager = getZoomManager();
+            if ( zoomManager != null ) {
+                zoomManager.addZoomListener( zoomListener );
+            }
+            scheduleUpdate();
         }
     }
 
@@ -84,18 +131,79 @@ public class DiagramEditPart extends AbstractGraphicalEditPart
         if ( isActive() ) {
             super.deactivate();
             ((ModelElement) getModel()).removePropertyChangeListener( this );
+            Viewport viewport = getViewport();
+            if ( viewport != null ) {
+                viewport.getHorizontalRangeModel().removePropertyChangeListener( scrollListener );
+                viewport.getVerticalRangeModel().removePropertyChangeListener( scrollListener );
+            }
+            ZoomManager zoomManager = getZoomManager();
+            if ( zoomManager != null ) {
+                zoomManager.removeZoomListener( zoomListener );
+            }
+        }
+    }
+
+    private Viewport getViewport() {
+        IFigure figure = ((GraphicalEditPart) getRoot()).getFigure();
+        return figure instanceof Viewport ? (Viewport) figure : null;
+    }
+
+    private ZoomManager getZoomManager() {
+        if ( getRoot() instanceof ScalableFreeformRootEditPart ) {
+            return ((ScalableFreeformRootEditPart) getRoot()).getZoomManager();
+        }
+        return null;
+    }
+
+    /**
+     * Updates the shown vertices once pending scroll and zoom events are
+     * handled, as there can be many of them in a row.
+     */
+    private void scheduleUpdate() {
+        if ( updateScheduled || getViewer() == null || getViewer().getControl() == null ) {
+            return;
+        }
+        updateScheduled = true;
+        getViewer().getControl().getDisplay().asyncExec( new Runnable() {
+            public void run() {
+                updateScheduled = false;
+                if ( isActive() && getViewer() != null && !getViewer().getControl().isDisposed() && updateReteViewport() ) {
+                    refreshVertices();
+                }
+            }
+        } );
+    }
+
+    /**
+     * Shows the vertices in the visible area at the current zoom level.
+     *
+     * @return true if the shown vertices changed
+     */
+    private boolean updateReteViewport() {
+        Viewport viewport = getViewport();
+        Rectangle area = null;
+        if ( viewport != null ) {
+            area = viewport.getClientArea().getCopy();
+            viewport.translateToAbsolute( area );
+            getFigure().translateToRelative( area );
         }
+        ZoomManager zoomManager = getZoomManager();
+        return reteViewport.update( area,
+                                    zoomManager != null ? zoomManager.getZoom() : 1.0 );
     }
 
-    private ReteGraph getCastedModel() {
-        return (ReteGraph) getModel();
+    private void refreshVertices() {
+        refreshChildren();
+        for ( Object child : getChildren() ) {
+            ((VertexEditPart) child).refreshViewport();
+        }
     }
 
     /* (non-Javadoc)
      * @see org.eclipse.gef.editparts.AbstractEditPart#getModelChildren()
      */
     protected List<BaseVertex> getModelChildren() {
-        return getCastedModel().getChildren(); // return a list of nodes
+        return reteViewport.getVertices(); // return a list of shown nodes
     }
 
     /* (non-Javadoc)
@@ -104,7 +212,9 @@ public class DiagramEditPart extends AbstractGraphicalEditPart
     public void propertyChange(PropertyChangeEvent evt) {
         String prop = evt.getPropertyName();
         if ( ReteGraph.PROP_CHILD_ADDED.equals( prop ) || ReteGraph.PROP_CHILD_REMOVED.equals( prop ) ) {
-            refreshChildren();
+            reteViewport.invalidate();
+            updateReteViewport();
+            refreshVertices();
         }
     }
 
@@ -20,6 +20,7 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.util.List;
 
+import org.drools.eclipse.editors.rete.ReteViewport;
 import org.drools.eclipse.editors.rete.figure.VertexFigure;
 import org.drools.eclipse.editors.rete.model.Connection;
 import org.drools.eclipse.editors.rete.model.GraphicalVertex;
@@ -88,6 +89,20 @@ class VertexEditPart extends AbstractGraphicalEditPart
         return (BaseVertex) getModel();
     }
 
+    private ReteViewport getReteViewport() {
+        return ((DiagramEditPart) getParent()).getReteViewport();
+    }
+
+    /**
+     * Refreshes the figure and the connections of this vertex, after the
+     * vertices shown by the viewport changed.
+     */
+    void refreshViewport() {
+        refreshVisuals();
+        refreshSourceConnections();
+        refreshTargetConnections();
+    }
+
     private ConnectionAnchor getConnectionAnchor() {
         if ( anchor == null ) {
             if ( getModel() instanceof BaseVertex ) anchor = new EllipseAnchor( getFigure() );
@@ -103,7 +118,7 @@ class VertexEditPart extends AbstractGraphicalEditPart
      * @see org.eclipse.gef.editparts.AbstractGraphicalEditPart#getModelSourceConnections()
      */
     protected List<Connection> getModelSourceConnections() {
-        return getCastedModel().getSourceConnections();
+        return getReteViewport().getSourceConnections( getCastedModel() );
     }
 
     /*
@@ -111,7 +126,7 @@ class VertexEditPart extends AbstractGraphicalEditPart
      * @see org.eclipse.gef.editparts.AbstractGraphicalEditPart#getModelTargetConnections()
      */
     protected List<Connection> getModelTargetConnections() {
-        return getCastedModel().getTargetConnections();
+        return getReteViewport().getTargetConnections( getCastedModel() );
     }
 
     /*
@@ -152,6 +167,7 @@ class VertexEditPart extends AbstractGraphicalEditPart
     public void propertyChange(PropertyChangeEvent evt) {
         String prop = evt.getPropertyName();
         if ( GraphicalVertex.SIZE_PROP.equals( prop ) || GraphicalVertex.LOCATION_PROP.equals( prop ) ) {
+            getReteViewport().invalidate();
             refreshVisuals();
         } else if ( GraphicalVertex.SOURCE_CONNECTIONS_PROP.equals( prop ) ) {
             refreshSourceConnections();
@@ -166,6 +182,11 @@ class VertexEditPart extends AbstractGraphicalEditPart
     protected void refreshVisuals() {
         Rectangle bounds = new Rectangle( getCastedModel().getLocation(),
                                           getCastedModel().getSize() );
+        int chainLength = getReteViewport().getChainLength( getCastedModel() );
+        if ( chainLength > 1 ) {
+            bounds.width += 2 * VertexFigure.CHAIN_OFFSET;
+        }
+        ((VertexFigure) getFigure()).setChainLength( chainLength );
         ((GraphicalEditPart) getParent()).setLayoutConstraint( this,
                                                                getFigure(),
                                                                bounds );
@@ -141,7 +141,7 @@ public class ImportCompletionProcessor extends DefaultCompletionProcessor {
                                                                                         params,
                                                                                         list );
                                                     
-                                                        Collection<ICompletionProposal> mvelList = RuleCompletionProcessor.mvelifyProposals( list, false );
+                                                        Collection<ICompletionProposal> mvelList = RuleCompletionProcessor.mvelifyProposals( list );
                                                         return mvelList;
                                                     }
 }
@@ -17,10 +17,13 @@
 package org.drools.eclipse.preferences;
 
 import org.drools.eclipse.DroolsEclipsePlugin;
+import org.drools.eclipse.editors.completion.CompletionRequest;
 import org.drools.eclipse.preferences.IDroolsConstants.InternalApiChoice;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.preference.PreferencePage;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.VerifyEvent;
+import org.eclipse.swt.events.VerifyListener;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
@@ -28,6 +31,7 @@ import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
 
@@ -35,8 +39,13 @@ public class DroolsPreferencePage extends PreferencePage implements IWorkbenchPr
 
     private Button buildAllCheckBox;
     private Button crossBuildCheckBox;
+    private Button parallelBuildCheckBox;
     private Button collapseEditorCheckBox;
+    private Button compileWhileTypingCheckBox;
     private Button cacheParsedRulesCheckBox;
+    private Text cacheMaxEntriesText;
+    private Text cacheMaxSizeText;
+    private Text contentAssistTimeoutText;
     private Combo processSkinCombo;
     private Button allowNodeCustomizationCheckBox;
     private Combo internalAPICombo;
@@ -48,13 +57,36 @@ public class DroolsPreferencePage extends PreferencePage implements IWorkbenchPr
         composite.setLayout(gridLayout);
         
         buildAllCheckBox = createCheckBox(composite,
-            "Automatically reparse all rules if a Java resource is changed.");
+            "Automatically reparse the rules using a Java resource if it is changed.");
         crossBuildCheckBox = createCheckBox(composite,
             "Allow cross references in DRL files.");
+        parallelBuildCheckBox = createCheckBox(composite,
+            "Use all available processors when fully building rules.");
         collapseEditorCheckBox = createCheckBox(composite,
             "Use code folding in DRL editor.");
+        compileWhileTypingCheckBox = createCheckBox(composite,
+            "Compile the edited rule while typing in DRL editor, not only when saving.");
         cacheParsedRulesCheckBox = createCheckBox(composite,
             "When parsing rules, always cache the result for future use. Warning: when disabled, debugging of rules will not work.");
+        cacheMaxEntriesText = createNumberText(composite,
+            "Maximum number of cached rule files:");
+        cacheMaxSizeText = createNumberText(composite,
+            "Maximum size of cached rule files (KB):");
+        Label cacheStatisticsLabel = new Label(composite, SWT.NONE);
+        cacheStatisticsLabel.setText(DroolsEclipsePlugin.getDefault().getCacheStatistics());
+        GridData data = new GridData();
+        data.horizontalSpan = 2;
+        cacheStatisticsLabel.setLayoutData(data);
+        contentAssistTimeoutText = createNumberText(composite,
+            "Maximum time to wait for content assist proposals (ms):");
+        String contentAssistStatistics = CompletionRequest.getStatistics();
+        if (contentAssistStatistics.length() > 0) {
+            Label contentAssistStatisticsLabel = new Label(composite, SWT.NONE);
+            contentAssistStatisticsLabel.setText(contentAssistStatistics);
+            data = new GridData();
+            data.horizontalSpan = 2;
+            contentAssistStatisticsLabel.setLayoutData(data);
+        }
         Label label = new Label(composite, SWT.NONE);
         label.setText("Preferred process skin:");
         processSkinCombo = new Combo(composite, SWT.LEFT | SWT.READ_ONLY );
@@ -84,6 +116,34 @@ public class DroolsPreferencePage extends PreferencePage implements IWorkbenchPr
         return button;
     }
 
+    private Text createNumberText(Composite group, String label) {
+        Label textLabel = new Label(group, SWT.NONE);
+        textLabel.setText(label);
+        Text text = new Text(group, SWT.BORDER | SWT.RIGHT);
+        GridData data = new GridData();
+        data.widthHint = 60;
+        text.setLayoutData(data);
+        text.addVerifyListener(new VerifyListener() {
+            public void verifyText(VerifyEvent e) {
+                for (char c: e.text.toCharArray()) {
+                    if (!Character.isDigit(c)) {
+                        e.doit = false;
+                        return;
+                    }
+                }
+            }
+        });
+        return text;
+    }
+
+    private int getNumber(Text text, int defaultValue) {
+        try {
+            return Math.max(1, Integer.parseInt(text.getText()));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     protected IPreferenceStore doGetPreferenceStore() {
         return DroolsEclipsePlugin.getDefault().getPreferenceStore();
     }
@@ -92,8 +152,13 @@ public class DroolsPreferencePage extends PreferencePage implements IWorkbenchPr
         IPreferenceStore store = getPreferenceStore();
         buildAllCheckBox.setSelection(store.getDefaultBoolean(IDroolsConstants.BUILD_ALL));
         crossBuildCheckBox.setSelection(store.getDefaultBoolean(IDroolsConstants.CROSS_BUILD));
+        parallelBuildCheckBox.setSelection(store.getDefaultBoolean(IDroolsConstants.PARALLEL_BUILD));
         collapseEditorCheckBox.setSelection(store.getDefaultBoolean(IDroolsConstants.EDITOR_FOLDING));
+        compileWhileTypingCheckBox.setSelection(store.getDefaultBoolean(IDroolsConstants.EDITOR_COMPILE_WHILE_TYPING));
         cacheParsedRulesCheckBox.setSelection(store.getDefaultBoolean(IDroolsConstants.CACHE_PARSED_RULES));
+        cacheMaxEntriesText.setText(String.valueOf(store.getDefaultInt(IDroolsConstants.CACHE_MAX_ENTRIES)));
+        cacheMaxSizeText.setText(String.valueOf(store.getDefaultInt(IDroolsConstants.CACHE_MAX_SIZE)));
+        contentAssistTimeoutText.setText(String.valueOf(store.getDefaultInt(IDroolsConstants.CONTENT_ASSIST_TIMEOUT)));
         String skin = store.getDefaultString(IDroolsConstants.SKIN);
         int index = 0;
         if ("BPMN".equals(skin)) {
@@ -108,8 +173,13 @@ public class DroolsPreferencePage extends PreferencePage implements IWorkbenchPr
         IPreferenceStore store = getPreferenceStore();
         buildAllCheckBox.setSelection(store.getBoolean(IDroolsConstants.BUILD_ALL));
         crossBuildCheckBox.setSelection(store.getBoolean(IDroolsConstants.CROSS_BUILD));
+        parallelBuildCheckBox.setSelection(store.getBoolean(IDroolsConstants.PARALLEL_BUILD));
         collapseEditorCheckBox.setSelection(store.getBoolean(IDroolsConstants.EDITOR_FOLDING));
+        compileWhileTypingCheckBox.setSelection(store.getBoolean(IDroolsConstants.EDITOR_COMPILE_WHILE_TYPING));
         cacheParsedRulesCheckBox.setSelection(store.getBoolean(IDroolsConstants.CACHE_PARSED_RULES));
+        cacheMaxEntriesText.setText(String.valueOf(store.getInt(IDroolsConstants.CACHE_MAX_ENTRIES)));
+        cacheMaxSizeText.setText(String.valueOf(store.getInt(IDroolsConstants.CACHE_MAX_SIZE)));
+        contentAssistTimeoutText.setText(String.valueOf(store.getInt(IDroolsConstants.CONTENT_ASSIST_TIMEOUT)));
         String skin = store.getString(IDroolsConstants.SKIN);
         int index = 0;
         if ("BPMN".equals(skin)) {
@@ -138,8 +208,16 @@ public class DroolsPreferencePage extends PreferencePage implements IWorkbenchPr
         IPreferenceStore store = getPreferenceStore();
         store.setValue(IDroolsConstants.BUILD_ALL, buildAllCheckBox.getSelection());
         store.setValue(IDroolsConstants.CROSS_BUILD, crossBuildCheckBox.getSelection());
+        store.setValue(IDroolsConstants.PARALLEL_BUILD, parallelBuildCheckBox.getSelection());
         store.setValue(IDroolsConstants.EDITOR_FOLDING, collapseEditorCheckBox.getSelection());
+        store.setValue(IDroolsConstants.EDITOR_COMPILE_WHILE_TYPING, compileWhileTypingCheckBox.getSelection());
         store.setValue(IDroolsConstants.CACHE_PARSED_RULES, cacheParsedRulesCheckBox.getSelection());
+        store.setValue(IDroolsConstants.CACHE_MAX_ENTRIES,
+            getNumber(cacheMaxEntriesText, DroolsEclipsePlugin.DEFAULT_CACHE_MAX_ENTRIES));
+        store.setValue(IDroolsConstants.CACHE_MAX_SIZE,
+            getNumber(cacheMaxSizeText, DroolsEclipsePlugin.DEFAULT_CACHE_MAX_SIZE));
+        store.setValue(IDroolsConstants.CONTENT_ASSIST_TIMEOUT,
+            getNumber(contentAssistTimeoutText, DroolsEclipsePlugin.DEFAULT_CONTENT_ASSIST_TIMEOUT));
         store.setValue(IDroolsConstants.SKIN,
             (String) processSkinCombo.getItem(processSkinCombo.getSelectionIndex()));
         store.setValue(IDroolsConstants.ALLOW_NODE_CUSTOMIZATION, allowNodeCustomizationCheckBox.getSelection());
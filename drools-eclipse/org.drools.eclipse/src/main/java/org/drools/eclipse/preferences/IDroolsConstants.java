@@ -23,11 +23,16 @@ public interface IDroolsConstants {
 
     String BUILD_ALL = "Drools.BuildAll";
     String CROSS_BUILD = "Drools.CrossBuild";
+    String PARALLEL_BUILD = "Drools.ParallelBuild";
     String EDITOR_FOLDING = "Drools.EditorFolding";
+    String EDITOR_COMPILE_WHILE_TYPING = "Drools.EditorCompileWhileTyping";
     String CACHE_PARSED_RULES = "Drools.CacheParsedRules";
+    String CACHE_MAX_ENTRIES = "Drools.CacheMaxEntries";
+    String CACHE_MAX_SIZE = "Drools.CacheMaxSize";
     String DRL_EDITOR_MATCHING_BRACKETS = "Drools.DRLMatchingBrackets";
     String DRL_EDITOR_MATCHING_BRACKETS_COLOR = "Drools.DRLMatchingBracketsColor";
     String DSL_RULE_EDITOR_COMPLETION_FULL_SENTENCES = "Drools.DSLRuleEditorCompletionFullSentences";
+    String CONTENT_ASSIST_TIMEOUT = "Drools.ContentAssistTimeout";
     String SKIN = "Drools.Flow.Skin";
     String ALLOW_NODE_CUSTOMIZATION = "Drools.Flow.AllowNodeCustomization";
     String DROOLS_RUNTIMES = "Drools.Runtimes";
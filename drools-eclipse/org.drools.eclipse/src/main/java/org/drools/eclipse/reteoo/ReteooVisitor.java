@@ -18,46 +18,147 @@ package org.drools.eclipse.reteoo;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.drools.core.common.BaseNode;
+import org.drools.core.reteoo.AccumulateNode;
+import org.drools.core.reteoo.AlphaNode;
 import org.drools.core.reteoo.EntryPointNode;
+import org.drools.core.reteoo.EvalConditionNode;
+import org.drools.core.reteoo.ExistsNode;
+import org.drools.core.reteoo.FromNode;
+import org.drools.core.reteoo.JoinNode;
+import org.drools.core.reteoo.LeftInputAdapterNode;
 import org.drools.core.reteoo.LeftTupleSource;
+import org.drools.core.reteoo.NotNode;
 import org.drools.core.reteoo.ObjectSource;
 import org.drools.core.reteoo.ObjectTypeNode;
+import org.drools.core.reteoo.PropagationQueuingNode;
+import org.drools.core.reteoo.QueryTerminalNode;
 import org.drools.core.reteoo.Rete;
 import org.drools.core.reteoo.ReteooRuleBase;
+import org.drools.core.reteoo.RightInputAdapterNode;
+import org.drools.core.reteoo.RuleTerminalNode;
 import org.drools.core.util.ObjectHashMap;
 import org.drools.core.util.ReflectiveVisitor;
 import org.drools.eclipse.editors.rete.model.Connection;
 import org.drools.eclipse.editors.rete.model.ReteGraph;
 
 /**
- * Produces a graph in GraphViz DOT format.
+ * Builds the graph model of a rete network, with a vertex for every node
+ * connected to the vertices of its sinks.
  *
- * @see http://www.research.att.com/sw/tools/graphviz/ 
- * @see http://www.pixelglow.com/graphviz/
+ * The vertex of a node is created by the factory registered for its class, and
+ * nodes are visited iteratively with an explicit stack, so deep networks don't
+ * overflow the call stack.
  */
 public class ReteooVisitor extends ReflectiveVisitor {
 
-    private static final String PACKAGE_NAME = "org.drools.eclipse.reteoo.";
+    private static final Map<Class< ? >, VertexFactory> FACTORIES = new HashMap<Class< ? >, VertexFactory>();
+
+    static {
+        register( AccumulateNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new AccumulateNodeVertex( (AccumulateNode) node );
+                      }
+                  } );
+        register( AlphaNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new AlphaNodeVertex( (AlphaNode) node );
+                      }
+                  } );
+        register( EntryPointNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new EntryPointNodeVertex( (EntryPointNode) node );
+                      }
+                  } );
+        register( EvalConditionNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new EvalConditionNodeVertex( (EvalConditionNode) node );
+                      }
+                  } );
+        register( ExistsNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new ExistsNodeVertex( (ExistsNode) node );
+                      }
+                  } );
+        register( FromNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new FromNodeVertex( (FromNode) node );
+                      }
+                  } );
+        register( JoinNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new JoinNodeVertex( (JoinNode) node );
+                      }
+                  } );
+        register( LeftInputAdapterNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new LeftInputAdapterNodeVertex( (LeftInputAdapterNode) node );
+                      }
+                  } );
+        register( NotNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new NotNodeVertex( (NotNode) node );
+                      }
+                  } );
+        register( ObjectTypeNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new ObjectTypeNodeVertex( (ObjectTypeNode) node );
+                      }
+                  } );
+        register( PropagationQueuingNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new PropagationQueuingNodeVertex( (PropagationQueuingNode) node );
+                      }
+                  } );
+        register( QueryTerminalNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new QueryTerminalNodeVertex( (QueryTerminalNode) node );
+                      }
+                  } );
+        register( RightInputAdapterNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new RightInputAdapterNodeVertex( (RightInputAdapterNode) node );
+                      }
+                  } );
+        register( RuleTerminalNode.class,
+                  new VertexFactory() {
+                      public BaseVertex createVertex(BaseNode node) {
+                          return new RuleTerminalNodeVertex( (RuleTerminalNode) node );
+                      }
+                  } );
+    }
 
     /**
-     * Keeps track of visited JoinNode DOT IDs. This mapping allows the visitor
-     * to recognize JoinNodes it has already visited and as a consequence link
+     * Keeps track of visited nodes, by identity. This mapping allows the visitor
+     * to recognize nodes it has already visited and as a consequence link
      * existing nodes back together. This is vital to the Visitor being able to
      * link two JoinNodeInputs together through their common JoinNode.
      */
-    private final Map<String, BaseVertex> visitedNodes = new HashMap<String, BaseVertex>();
+    private final Map<Object, BaseVertex> visitedNodes = new IdentityHashMap<Object, BaseVertex>();
 
     private ReteGraph           graph;
 
     private BaseVertex          rootVertex;
 
-    private BaseVertex          parentVertex;
-
     /**
      * Constructor.
      */
@@ -73,94 +174,136 @@ public class ReteooVisitor extends ReflectiveVisitor {
         return this.rootVertex;
     }
 
+    /**
+     * Returns the vertices created for the visited nodes, by node identity.
+     */
+    public Map<Object, BaseVertex> getVertices() {
+        return Collections.unmodifiableMap( this.visitedNodes );
+    }
+
     /**
      * RuleBaseImpl visits its Rete.
      */
     public void visitReteooRuleBase(final ReteooRuleBase ruleBase) {
-        visit( (ruleBase).getRete() );
+        visitRete( (ruleBase).getRete() );
     }
 
     /**
-     * Rete visits each of its ObjectTypeNodes.
+     * Rete visits each of its EntryPointNodes, and all the nodes below them.
      */
     public void visitRete(final Rete rete) {
-        this.rootVertex = (ReteVertex) this.visitedNodes.get( dotId( rete ) );
+        this.rootVertex = this.visitedNodes.get( rete );
         if ( this.rootVertex == null ) {
             this.rootVertex = new ReteVertex( rete );
-            this.visitedNodes.put( dotId( rete ),
+            this.visitedNodes.put( rete,
                                    this.rootVertex );
         }
 
         this.graph.addChild( this.rootVertex );
-        this.parentVertex = this.rootVertex;
 
-        for( EntryPointNode node : rete.getEntryPointNodes().values() ) {
-            visit( node );
+        final List<Visit> stack = new ArrayList<Visit>();
+        push( stack,
+              new ArrayList<Object>( rete.getEntryPointNodes().values() ),
+              this.rootVertex );
+        while ( !stack.isEmpty() ) {
+            final Visit visit = stack.remove( stack.size() - 1 );
+            visitBaseNode( visit.node,
+                           visit.parentVertex,
+                           stack );
         }
     }
 
-    public void visitBaseNode(final BaseNode node) {
-        BaseVertex vertex = this.visitedNodes.get( dotId( node ) );
+    /**
+     * Creates the vertex of a node connected to the vertex of its parent, and
+     * pushes its sinks, or only connects the existing vertex of a visited node.
+     */
+    private void visitBaseNode(final BaseNode node,
+                               final BaseVertex parentVertex,
+                               final List<Visit> stack) {
+        BaseVertex vertex = this.visitedNodes.get( node );
         if ( vertex == null ) {
-            try {
-                String name = node.getClass().getName();
-                name = name.substring( name.lastIndexOf( '.' ) + 1 ) + "Vertex";
-                final Class<?> clazz = Class.forName( PACKAGE_NAME + name );
-                vertex = (BaseVertex) clazz.getConstructor( new Class[]{node.getClass()} ).newInstance( new Object[]{node} );
-            } catch ( final Exception e ) {
-                throw new RuntimeException( "problem visiting vertex " + node.getClass().getName(),
-                                            e );
-            }
+            vertex = getFactory( node.getClass() ).createVertex( node );
             this.graph.addChild( vertex );
-            this.visitedNodes.put( dotId( node ),
+            this.visitedNodes.put( node,
                                    vertex );
 
-            new Connection( this.parentVertex,
+            new Connection( parentVertex,
                             vertex );
 
-            final BaseVertex oldParentVertex = this.parentVertex;
-            this.parentVertex = vertex;
-
-            List<?> list = null;
+            List< ? > list = null;
             if ( node instanceof EntryPointNode ) {
                 list = new ArrayList<ObjectTypeNode>( ((EntryPointNode) node).getObjectTypeNodes().values() );
-            } else if ( node instanceof ObjectSource) {
+            } else if ( node instanceof ObjectSource ) {
                 list = Arrays.asList( ((ObjectSource) node).getSinkPropagator().getSinks() );
-            } else if ( node instanceof LeftTupleSource) {
+            } else if ( node instanceof LeftTupleSource ) {
                 list = Arrays.asList( ((LeftTupleSource) node).getSinkPropagator().getSinks() );
             }
 
             if ( list != null ) {
-                for ( final java.util.Iterator<?> it = list.iterator(); it.hasNext(); ) {
-                    final Object nextNode = it.next();
-                    visitNode( nextNode );
-                }
+                push( stack,
+                      list,
+                      vertex );
             }
-            this.parentVertex = oldParentVertex;
         } else {
-            new Connection( this.parentVertex,
+            new Connection( parentVertex,
                             vertex );
         }
     }
 
     /**
-     * Helper method to ensure nodes are not visited more than once.
+     * Pushes the given nodes in reverse order, so they are visited in their
+     * order, each one with all the nodes below it before the next one.
      */
-    private void visitNode(final Object node) {
-        Object realNode = node;
-        if ( node instanceof ObjectHashMap.ObjectEntry ) {
-            ObjectHashMap.ObjectEntry entry = (ObjectHashMap.ObjectEntry) node;
-            realNode = entry.getValue();
+    private static void push(final List<Visit> stack,
+                             final List< ? > nodes,
+                             final BaseVertex parentVertex) {
+        for ( int i = nodes.size() - 1; i >= 0; i-- ) {
+            Object node = nodes.get( i );
+            if ( node instanceof ObjectHashMap.ObjectEntry ) {
+                node = ((ObjectHashMap.ObjectEntry) node).getValue();
+            }
+            if ( node instanceof BaseNode ) {
+                stack.add( new Visit( (BaseNode) node,
+                                      parentVertex ) );
+            }
         }
-        visit( realNode );
+    }
+
+    private static VertexFactory getFactory(final Class< ? > nodeClass) {
+        for ( Class< ? > clazz = nodeClass; clazz != null; clazz = clazz.getSuperclass() ) {
+            final VertexFactory factory = FACTORIES.get( clazz );
+            if ( factory != null ) {
+                return factory;
+            }
+        }
+        throw new RuntimeException( "problem visiting vertex " + nodeClass.getName() );
+    }
+
+    private static void register(final Class< ? extends BaseNode> nodeClass,
+                                 final VertexFactory factory) {
+        FACTORIES.put( nodeClass,
+                       factory );
     }
 
     /**
-     * The identity hashCode for the given object is used as its unique DOT
-     * identifier.
+     * Creates the vertex of a node of the class it is registered for.
      */
-    private static String dotId(final Object object) {
-        return Integer.toHexString( System.identityHashCode( object ) ).toUpperCase();
+    private interface VertexFactory {
+        BaseVertex createVertex(BaseNode node);
+    }
+
+    /**
+     * A node still to visit, with the vertex of the parent it was reached from.
+     */
+    private static class Visit {
+        private final BaseNode   node;
+        private final BaseVertex parentVertex;
+
+        private Visit(final BaseNode node,
+                      final BaseVertex parentVertex) {
+            this.node = node;
+            this.parentVertex = parentVertex;
+        }
     }
 
 }
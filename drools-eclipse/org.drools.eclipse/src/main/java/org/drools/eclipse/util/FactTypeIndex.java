@@ -0,0 +1,223 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.util;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.drools.core.util.asm.ClassFieldInspector;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IPackageFragment;
+
+/**
+ * Indexes the fields, getters and setters of the fact types used in the rules
+ * of a project, so that completing a field constraint or a modify block is a
+ * lookup instead of inspecting the class again for every proposal.
+ *
+ * Types are indexed by name the first time they are asked for. When a Java type
+ * changes, the types extending it, in any project, are dropped from the index,
+ * and a type is indexed again when the class it was indexed from was replaced
+ * by a new classloader.
+ */
+public class FactTypeIndex {
+
+    // case insensitive like the filtering of the proposals, but keeping fields differing in case apart
+    private static final Comparator<String>            FIELD_ORDER = new Comparator<String>() {
+                                                                       public int compare(String name1,
+                                                                                          String name2) {
+                                                                           int result = String.CASE_INSENSITIVE_ORDER.compare( name1,
+                                                                                                                               name2 );
+                                                                           return result != 0 ? result : name1.compareTo( name2 );
+                                                                       }
+                                                                   };
+
+    private final Map<IProject, Map<String, FactType>> projects    = new HashMap<IProject, Map<String, FactType>>();
+
+    /**
+     * Returns the members of the given class, as loaded by the classloader of the
+     * given project.
+     */
+    public FactType getFactType(IProject project,
+                                Class<?> clazz) throws IOException {
+        synchronized ( this ) {
+            Map<String, FactType> types = projects.get( project );
+            if ( types != null ) {
+                FactType type = types.get( clazz.getName() );
+                if ( type != null && type.clazz.get() == clazz ) {
+                    return type;
+                }
+            }
+        }
+        // inspect the class outside of the lock, the result is the same for everyone
+        FactType type = new FactType( clazz );
+        synchronized ( this ) {
+            Map<String, FactType> types = projects.get( project );
+            if ( types == null ) {
+                types = new HashMap<String, FactType>();
+                projects.put( project, types );
+            }
+            types.put( clazz.getName(), type );
+        }
+        return type;
+    }
+
+    /**
+     * Drops all the types of the given project, after its classpath changed.
+     */
+    public synchronized void invalidate(IProject project) {
+        projects.remove( project );
+    }
+
+    /**
+     * Drops the types extending one of the Java types changed by the given delta.
+     */
+    public void javaElementChanged(IJavaElementDelta delta) {
+        Set<String> changedTypes = new HashSet<String>();
+        collectChangedTypes( delta,
+                             changedTypes );
+        if ( changedTypes.isEmpty() ) {
+            return;
+        }
+        synchronized ( this ) {
+            for ( Map<String, FactType> types : projects.values() ) {
+                for ( Iterator<FactType> iterator = types.values().iterator(); iterator.hasNext(); ) {
+                    if ( iterator.next().extendsAny( changedTypes ) ) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        projects.clear();
+    }
+
+    private static void collectChangedTypes(IJavaElementDelta delta,
+                                            Set<String> changedTypes) {
+        IJavaElement element = delta.getElement();
+        switch ( element.getElementType() ) {
+            case IJavaElement.COMPILATION_UNIT :
+            case IJavaElement.CLASS_FILE :
+                String packageName = ((IPackageFragment) element.getParent()).getElementName();
+                String name = element.getElementName();
+                name = name.substring( 0, name.lastIndexOf( '.' ) );
+                if ( element.getElementType() == IJavaElement.CLASS_FILE && name.indexOf( '$' ) != -1 ) {
+                    name = name.substring( 0, name.indexOf( '$' ) );
+                }
+                changedTypes.add( packageName.length() == 0 ? name : packageName + "." + name );
+                return;
+            case IJavaElement.JAVA_MODEL :
+            case IJavaElement.JAVA_PROJECT :
+            case IJavaElement.PACKAGE_FRAGMENT_ROOT :
+            case IJavaElement.PACKAGE_FRAGMENT :
+                for ( IJavaElementDelta child : delta.getAffectedChildren() ) {
+                    collectChangedTypes( child,
+                                         changedTypes );
+                }
+                return;
+            default :
+                return;
+        }
+    }
+
+    /**
+     * The fields of a fact type with the names of their types, and the ones that
+     * can be set. Only names are kept, so an indexed type never holds on to the
+     * classloader it was loaded by.
+     */
+    public static class FactType {
+        private final WeakReference<Class<?>>  clazz;
+        private final SortedMap<String, String> fieldTypes = new TreeMap<String, String>( FIELD_ORDER );
+        private final Set<String>              mapFields  = new HashSet<String>();
+        private final Set<String>              writableFields;
+        private final Set<String>              hierarchy  = new HashSet<String>();
+
+        private FactType(Class<?> clazz) throws IOException {
+            this.clazz = new WeakReference<Class<?>>( clazz );
+            ClassFieldInspector inspector = new ClassFieldInspector( clazz );
+            Map<String, Class<?>> types = inspector.getFieldTypes();
+            for ( String name : inspector.getFieldNames().keySet() ) {
+                Class<?> type = types.get( name );
+                fieldTypes.put( name,
+                                type == null ? null : type.getName() );
+                if ( type != null && Map.class.isAssignableFrom( type ) ) {
+                    mapFields.add( name );
+                }
+            }
+            writableFields = new HashSet<String>( inspector.getSetterMethods().keySet() );
+            for ( Class<?> type = clazz; type != null; type = type.getSuperclass() ) {
+                addHierarchy( type );
+            }
+        }
+
+        private void addHierarchy(Class<?> type) {
+            // nested types change with their top level type
+            String name = type.getName();
+            int index = name.indexOf( '$' );
+            hierarchy.add( index == -1 ? name : name.substring( 0, index ) );
+            for ( Class<?> interfaceType : type.getInterfaces() ) {
+                addHierarchy( interfaceType );
+            }
+        }
+
+        private boolean extendsAny(Set<String> typeNames) {
+            for ( String name : hierarchy ) {
+                if ( typeNames.contains( name ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the names of the fields starting with the given prefix, ignoring
+         * case, in alphabetical order and mapped to the names of their types.
+         */
+        public SortedMap<String, String> getFields(String prefix) {
+            if ( prefix == null || prefix.length() == 0 ) {
+                return Collections.unmodifiableSortedMap( fieldTypes );
+            }
+            // the upper case prefix is the first of the names equal to it ignoring case
+            return Collections.unmodifiableSortedMap( fieldTypes.subMap( prefix.toUpperCase(),
+                                                                         prefix + Character.MAX_VALUE ) );
+        }
+
+        public String getFieldType(String name) {
+            return fieldTypes.get( name );
+        }
+
+        public boolean isMap(String name) {
+            return mapFields.contains( name );
+        }
+
+        public boolean isWritable(String name) {
+            return writableFields.contains( name );
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.drools.eclipse.DroolsEclipsePlugin;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+/**
+ * Shares one classloader per Java project, instead of creating a new one (and
+ * loading all the fact classes again) for every resource that is parsed.
+ *
+ * A loader is acquired for the duration of a parse and released afterwards.
+ * When the classpath of the project, or of one of the projects it requires,
+ * changes the loader is replaced by a new one for the next caller, and closed as
+ * soon as the last caller still using it releases it. The projects whose loader
+ * was discarded are returned, so the packages compiled with it, which still load
+ * their classes through it, can be dropped as well.
+ *
+ * When only the compiled classes in an output folder change, as they do on every
+ * build, the loader is replaced for the next caller but not closed: the packages
+ * compiled with it stay valid, and keep it alive as long as they are cached.
+ */
+public class ProjectClassLoaderCache {
+
+    private final Map<IProject, CachedLoader>    loaders     = new HashMap<IProject, CachedLoader>();
+    private final Map<ClassLoader, CachedLoader> loadersInUse = new IdentityHashMap<ClassLoader, CachedLoader>();
+
+    public synchronized URLClassLoader acquire(IJavaProject javaProject) {
+        IProject project = javaProject.getProject();
+        CachedLoader cached = loaders.get( project );
+        if ( cached == null || cached.outdated ) {
+            cached = createLoader( javaProject );
+            loaders.put( project, cached );
+        }
+        if ( cached.references++ == 0 ) {
+            loadersInUse.put( cached.loader, cached );
+        }
+        return cached.loader;
+    }
+
+    /**
+     * Returns whether the given loader is still the one handed out for the
+     * given project, that is whether the classpath and the classes of the
+     * project didn't change since it was acquired.
+     */
+    public synchronized boolean isCurrent(IJavaProject javaProject,
+                                          ClassLoader loader) {
+        CachedLoader cached = loaders.get( javaProject.getProject() );
+        return cached != null && !cached.outdated && cached.loader == loader;
+    }
+
+    public synchronized void release(ClassLoader loader) {
+        if ( loader == null ) {
+            return;
+        }
+        CachedLoader cached = loadersInUse.get( loader );
+        if ( cached != null && --cached.references == 0 ) {
+            loadersInUse.remove( loader );
+            if ( cached.stale ) {
+                close( cached );
+            }
+        }
+    }
+
+    /**
+     * Discards the loader of the given project and of all the projects requiring it.
+     *
+     * @return the projects whose loader was discarded
+     */
+    public synchronized Set<IProject> invalidate(IProject project) {
+        Set<IProject> discarded = new HashSet<IProject>();
+        String name = project.getName();
+        for ( Iterator<Map.Entry<IProject, CachedLoader>> iterator = loaders.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<IProject, CachedLoader> entry = iterator.next();
+            if ( entry.getValue().projectNames.contains( name ) ) {
+                iterator.remove();
+                discard( entry.getValue() );
+                discarded.add( entry.getKey() );
+            }
+        }
+        return discarded;
+    }
+
+    /**
+     * Replaces the loaders using classes from an output folder changed by the
+     * given delta, so the next caller sees the new classes. Other files copied
+     * to the output folder, such as the rule files, don't replace a loader.
+     */
+    public synchronized void outputChanged(IResourceDelta delta) {
+        for ( CachedLoader cached : loaders.values() ) {
+            for ( IPath outputPath : cached.outputPaths ) {
+                IResourceDelta outputDelta = delta.findMember( outputPath );
+                if ( outputDelta != null && changesClasses( outputDelta ) ) {
+                    // not closed, the classes it loaded are still used by the cached packages,
+                    // and kept until replaced so a classpath change still finds the project
+                    cached.outdated = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for ( CachedLoader cached : loaders.values() ) {
+            discard( cached );
+        }
+        loaders.clear();
+    }
+
+    private CachedLoader createLoader(IJavaProject javaProject) {
+        List<String> requiredProjects = new ArrayList<String>();
+        List<URL> pathElements = ProjectClassLoader.getProjectClassPathURLs( javaProject,
+                                                                            requiredProjects );
+        // the context classloader of the first caller must not leak into a shared loader
+        URLClassLoader loader = new URLClassLoader( pathElements.toArray( new URL[pathElements.size()] ),
+                                                    ProjectClassLoader.class.getClassLoader() );
+        CachedLoader cached = new CachedLoader( loader );
+        cached.projectNames.add( javaProject.getElementName() );
+        cached.projectNames.addAll( requiredProjects );
+        for ( String projectName : cached.projectNames ) {
+            IProject project = javaProject.getProject().getWorkspace().getRoot().getProject( projectName );
+            addOutputPaths( cached.outputPaths,
+                            JavaCore.create( project ) );
+        }
+        return cached;
+    }
+
+    private static void addOutputPaths(Set<IPath> outputPaths,
+                                       IJavaProject javaProject) {
+        if ( !javaProject.exists() ) {
+            return;
+        }
+        try {
+            outputPaths.add( javaProject.getOutputLocation() );
+            for ( IClasspathEntry entry : javaProject.getRawClasspath() ) {
+                if ( entry.getEntryKind() == IClasspathEntry.CPE_SOURCE && entry.getOutputLocation() != null ) {
+                    outputPaths.add( entry.getOutputLocation() );
+                }
+            }
+        } catch ( JavaModelException e ) {
+            DroolsEclipsePlugin.log( e );
+        }
+    }
+
+    private static boolean changesClasses(IResourceDelta delta) {
+        if ( delta.getResource().getType() == IResource.FILE ) {
+            return "class".equals( delta.getResource().getFileExtension() );
+        }
+        for ( IResourceDelta child : delta.getAffectedChildren() ) {
+            if ( changesClasses( child ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void discard(CachedLoader cached) {
+        cached.stale = true;
+        if ( cached.references == 0 ) {
+            close( cached );
+        }
+    }
+
+    private static void close(CachedLoader cached) {
+        // URLClassLoader can only be closed since Java 7
+        if ( cached.loader instanceof Closeable ) {
+            try {
+                ((Closeable) cached.loader).close();
+            } catch ( IOException e ) {
+                DroolsEclipsePlugin.log( e );
+            }
+        }
+    }
+
+    private static class CachedLoader {
+        private final URLClassLoader loader;
+        private final Set<String>    projectNames = new HashSet<String>();
+        private final Set<IPath>     outputPaths  = new HashSet<IPath>();
+        private int                  references;
+        private boolean              stale;
+        private boolean              outdated;
+
+        private CachedLoader(URLClassLoader loader) {
+            this.loader = loader;
+        }
+    }
+}
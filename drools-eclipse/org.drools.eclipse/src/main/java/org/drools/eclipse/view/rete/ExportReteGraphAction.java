@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.view.rete;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.drools.eclipse.DroolsEclipsePlugin;
+import org.drools.eclipse.editors.rete.ReteGraphExporter;
+import org.drools.eclipse.reteoo.BaseVertex;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.action.IAction;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.ui.ISharedImages;
+import org.eclipse.ui.PlatformUI;
+
+/**
+ * Exports the graph shown in the rete view to a DOT or GraphML file, chosen
+ * by the file extension. The file is written by a background job.
+ */
+public class ExportReteGraphAction extends Action {
+
+    private ReteView view;
+
+    public ExportReteGraphAction(ReteView view) {
+        super( null,
+               IAction.AS_PUSH_BUTTON );
+        this.view = view;
+        setToolTipText( "Export as DOT or GraphML" );
+        setImageDescriptor( PlatformUI.getWorkbench().getSharedImages().getImageDescriptor( ISharedImages.IMG_ETOOL_SAVEAS_EDIT ) );
+        setId( DroolsEclipsePlugin.getUniqueIdentifier() + ".ExportReteGraphAction" );
+    }
+
+    public void run() {
+        // the graph is replaced, not changed, when the network is built again
+        final List<BaseVertex> vertices = new ArrayList<BaseVertex>( view.getGraph().getChildren() );
+        if ( vertices.isEmpty() ) {
+            return;
+        }
+        FileDialog dialog = new FileDialog( view.getSite().getShell(),
+                                            SWT.SAVE );
+        dialog.setFilterExtensions( new String[]{"*.dot", "*.graphml"} );
+        dialog.setOverwrite( true );
+        final String fileName = dialog.open();
+        if ( fileName == null ) {
+            return;
+        }
+
+        Job job = new Job( "Exporting RETE graph to " + fileName ) {
+            protected IStatus run(IProgressMonitor monitor) {
+                File file = new File( fileName );
+                try {
+                    Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ),
+                                                                                "UTF-8" ) );
+                    try {
+                        ReteGraphExporter.export( vertices,
+                                                  ReteGraphExporter.getFormat( fileName ),
+                                                  writer,
+                                                  monitor );
+                    } finally {
+                        writer.close();
+                    }
+                } catch ( OperationCanceledException e ) {
+                    file.delete();
+                    return Status.CANCEL_STATUS;
+                } catch ( IOException e ) {
+                    return new Status( IStatus.ERROR,
+                                       DroolsEclipsePlugin.getUniqueIdentifier(),
+                                       "Could not export RETE graph to " + fileName,
+                                       e );
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        job.setUser( true );
+        job.schedule();
+    }
+}
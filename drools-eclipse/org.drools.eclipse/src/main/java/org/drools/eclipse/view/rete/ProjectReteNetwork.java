@@ -0,0 +1,252 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.view.rete;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.drools.compiler.compiler.DroolsParserException;
+import org.drools.compiler.lang.descr.QueryDescr;
+import org.drools.compiler.lang.descr.RuleDescr;
+import org.drools.core.RuleBase;
+import org.drools.core.RuleBaseConfiguration;
+import org.drools.core.RuleBaseFactory;
+import org.drools.core.reteoo.ReteooRuleBase;
+import org.drools.eclipse.DRLInfo;
+import org.drools.eclipse.DroolsEclipsePlugin;
+import org.drools.eclipse.builder.Util;
+import org.drools.eclipse.editors.rete.ReteooLayoutFactory;
+import org.drools.eclipse.editors.rete.RowList;
+import org.drools.eclipse.editors.rete.model.ReteGraph;
+import org.drools.eclipse.reteoo.BaseVertex;
+import org.drools.eclipse.reteoo.ReteooVisitor;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.draw2d.geometry.Point;
+import org.eclipse.jdt.core.IJavaProject;
+
+/**
+ * The rete network of all the rules of a Java project, in a single rule base
+ * built from the compiled packages cached by {@link DroolsEclipsePlugin}.
+ *
+ * When a file changes, only its rules are removed from the rule base and its
+ * package added again, and the new graph is layouted keeping the order of the
+ * nodes that were there before. The rule base is bound to the project
+ * classloader it was created with, so once that loader is replaced the network
+ * must be built again from scratch.
+ *
+ * Not thread safe, meant to be used by a single background job.
+ */
+public class ProjectReteNetwork {
+
+    private final IJavaProject                   project;
+
+    private final ClassLoader                    projectLoader;
+
+    private final ReteooRuleBase                 ruleBase;
+
+    // the rules and queries added for every file
+    private final Map<IResource, List<RuleName>> rules    = new HashMap<IResource, List<RuleName>>();
+
+    // the file each rule and query was last added from, as a rule can move to another file
+    private final Map<RuleName, IResource>       owners   = new HashMap<RuleName, IResource>();
+
+    // the vertices of the last graph, by node
+    private Map<Object, BaseVertex>              vertices = Collections.emptyMap();
+
+    public ProjectReteNetwork(IJavaProject project) {
+        this.project = project;
+        this.projectLoader = DroolsEclipsePlugin.getDefault().getProjectClassLoaderCache().acquire( project );
+        RuleBaseConfiguration config = new RuleBaseConfiguration();
+        config.setClassLoader( projectLoader );
+        this.ruleBase = (ReteooRuleBase) RuleBaseFactory.newRuleBase( RuleBase.RETEOO,
+                                                                      config );
+    }
+
+    public IJavaProject getProject() {
+        return project;
+    }
+
+    /**
+     * Returns false once the project classloader of the rule base was replaced,
+     * after which packages compiled for the project no longer fit the rule base.
+     */
+    public boolean isCurrent() {
+        return DroolsEclipsePlugin.getDefault().getProjectClassLoaderCache().isCurrent( project,
+                                                                                        projectLoader );
+    }
+
+    /**
+     * Replaces the rules of the given file by its current ones. A file that
+     * doesn't compile keeps its previous rules.
+     *
+     * @return true if the rule base changed
+     */
+    public boolean update(IResource resource) throws DroolsParserException,
+                                                     CoreException {
+        DroolsEclipsePlugin plugin = DroolsEclipsePlugin.getDefault();
+        DRLInfo drlInfo = plugin.parseResource( resource,
+                                                true );
+        if ( drlInfo != null && drlInfo.getClassLoader() != projectLoader && resource instanceof IFile ) {
+            // compiled with an earlier loader of the project
+            drlInfo = plugin.generateParsedResource( Util.getResourceContentsAsString( (IFile) resource ),
+                                                     resource,
+                                                     true,
+                                                     true );
+        }
+        if ( drlInfo == null || drlInfo.getClassLoader() != projectLoader
+             || drlInfo.getPackage() == null || drlInfo.getPackageDescr() == null
+             || drlInfo.getBuilderErrors().length > 0 || drlInfo.getParserErrors().size() > 0 ) {
+            return false;
+        }
+        List<RuleName> fileRules = new ArrayList<RuleName>();
+        for ( RuleDescr ruleDescr : drlInfo.getPackageDescr().getRules() ) {
+            fileRules.add( new RuleName( drlInfo.getPackageName(),
+                                         ruleDescr.getName(),
+                                         ruleDescr instanceof QueryDescr ) );
+        }
+
+        Set<RuleName> removed = disown( resource,
+                                        rules.put( resource,
+                                                   fileRules ) );
+        for ( RuleName ruleName : fileRules ) {
+            // rules still there are replaced when the package is added again
+            owners.put( ruleName,
+                        resource );
+            removed.remove( ruleName );
+        }
+        removeRules( removed );
+        ruleBase.addPackage( drlInfo.getPackage() );
+        return true;
+    }
+
+    /**
+     * Removes the rules of the given file.
+     *
+     * @return true if the rule base changed
+     */
+    public boolean remove(IResource resource) {
+        List<RuleName> previous = rules.remove( resource );
+        if ( previous == null ) {
+            return false;
+        }
+        removeRules( disown( resource,
+                             previous ) );
+        return true;
+    }
+
+    /**
+     * Returns the given rules of a file that were not added again by another
+     * file since, which are no longer owned by any file.
+     */
+    private Set<RuleName> disown(IResource resource,
+                                 List<RuleName> ruleNames) {
+        Set<RuleName> disowned = new HashSet<RuleName>();
+        if ( ruleNames != null ) {
+            for ( RuleName ruleName : ruleNames ) {
+                if ( resource.equals( owners.get( ruleName ) ) ) {
+                    owners.remove( ruleName );
+                    disowned.add( ruleName );
+                }
+            }
+        }
+        return disowned;
+    }
+
+    private void removeRules(Set<RuleName> ruleNames) {
+        for ( RuleName ruleName : ruleNames ) {
+            if ( ruleName.query ) {
+                ruleBase.removeQuery( ruleName.packageName,
+                                      ruleName.name );
+            } else {
+                ruleBase.removeRule( ruleName.packageName,
+                                     ruleName.name );
+            }
+        }
+    }
+
+    /**
+     * Builds and layouts the graph of the current rete network. Nodes that
+     * were in the previous graph keep their order within their rows.
+     *
+     * @throws org.eclipse.core.runtime.OperationCanceledException if the monitor is cancelled
+     */
+    public ReteGraph createGraph(IProgressMonitor monitor) {
+        ReteGraph graph = new ReteGraph();
+        ReteooVisitor visitor = new ReteooVisitor( graph );
+        visitor.visitReteooRuleBase( ruleBase );
+
+        Map<BaseVertex, Point> previousLocations = new HashMap<BaseVertex, Point>();
+        for ( Map.Entry<Object, BaseVertex> entry : visitor.getVertices().entrySet() ) {
+            BaseVertex previous = vertices.get( entry.getKey() );
+            if ( previous != null ) {
+                previousLocations.put( entry.getValue(),
+                                       previous.getLocation() );
+            }
+        }
+        RowList rowList = ReteooLayoutFactory.calculateReteRows( visitor.getRootVertex(),
+                                                                 previousLocations,
+                                                                 monitor );
+        ReteooLayoutFactory.layoutRowList( graph,
+                                           rowList,
+                                           monitor );
+
+        vertices = visitor.getVertices();
+        return graph;
+    }
+
+    /**
+     * Releases the project class loader used by the rule base.
+     */
+    public void dispose() {
+        DroolsEclipsePlugin.getDefault().getProjectClassLoaderCache().release( projectLoader );
+    }
+
+    private static class RuleName {
+        private final String  packageName;
+        private final String  name;
+        private final boolean query;
+
+        private RuleName(String packageName,
+                         String name,
+                         boolean query) {
+            this.packageName = packageName;
+            this.name = name;
+            this.query = query;
+        }
+
+        public boolean equals(Object obj) {
+            if ( !(obj instanceof RuleName) ) {
+                return false;
+            }
+            RuleName other = (RuleName) obj;
+            return packageName.equals( other.packageName ) && name.equals( other.name ) && query == other.query;
+        }
+
+        public int hashCode() {
+            return packageName.hashCode() * 31 + name.hashCode();
+        }
+    }
+
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright 2010 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.drools.eclipse.view.rete;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.drools.eclipse.DroolsEclipsePlugin;
+import org.drools.eclipse.editors.rete.model.ReteGraph;
+import org.drools.eclipse.editors.rete.part.VertexEditPartFactory;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.draw2d.ColorConstants;
+import org.eclipse.gef.EditDomain;
+import org.eclipse.gef.GraphicalViewer;
+import org.eclipse.gef.MouseWheelHandler;
+import org.eclipse.gef.MouseWheelZoomHandler;
+import org.eclipse.gef.editparts.ScalableFreeformRootEditPart;
+import org.eclipse.gef.editparts.ZoomManager;
+import org.eclipse.gef.ui.actions.ZoomInAction;
+import org.eclipse.gef.ui.actions.ZoomOutAction;
+import org.eclipse.gef.ui.parts.ScrollingGraphicalViewer;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jface.action.IToolBarManager;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.ui.IEditorInput;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IFileEditorInput;
+import org.eclipse.ui.IPartListener;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.part.ViewPart;
+
+/**
+ * Shows the rete network of all the rules of the Java project of the active
+ * editor, to see how nodes are shared across files.
+ *
+ * The network is built in the background from the compiled packages. When
+ * rule files are saved, only their rules are replaced in the network, and the
+ * graph is layouted again keeping the order of the existing nodes.
+ */
+public class ReteView extends ViewPart
+    implements
+    IResourceChangeListener {
+
+    private static final long             BUILD_DELAY    = 500;
+
+    private GraphicalViewer               viewer;
+
+    private Display                       display;
+
+    private ScalableFreeformRootEditPart  rootEditPart   = new ScalableFreeformRootEditPart();
+
+    private final ReteGraph               diagram        = new ReteGraph();
+
+    private final Job                     buildJob;
+
+    private volatile IJavaProject         project;
+
+    private volatile boolean              disposed;
+
+    // changed rule files, true if they were removed
+    private final Map<IResource, Boolean> pendingChanges = new LinkedHashMap<IResource, Boolean>();
+
+    // only used by the build job, which never runs concurrently with itself
+    private ProjectReteNetwork            network;
+    private boolean                       graphOutdated;
+
+    private final IPartListener           partListener   = new IPartListener() {
+        public void partActivated(IWorkbenchPart part) {
+            if ( part instanceof IEditorPart ) {
+                editorActivated( (IEditorPart) part );
+            }
+        }
+
+        public void partBroughtToTop(IWorkbenchPart part) {
+        }
+
+        public void partClosed(IWorkbenchPart part) {
+        }
+
+        public void partDeactivated(IWorkbenchPart part) {
+        }
+
+        public void partOpened(IWorkbenchPart part) {
+        }
+    };
+
+    public ReteView() {
+        buildJob = new Job( "Building project RETE network" ) {
+            protected IStatus run(IProgressMonitor monitor) {
+                try {
+                    return build( monitor );
+                } catch ( OperationCanceledException e ) {
+                    graphOutdated = true;
+                    return Status.CANCEL_STATUS;
+                } catch ( Throwable t ) {
+                    DroolsEclipsePlugin.log( t );
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        buildJob.setPriority( Job.BUILD );
+    }
+
+    public void createPartControl(Composite parent) {
+        viewer = new ScrollingGraphicalViewer();
+        viewer.createControl( parent );
+        display = parent.getDisplay();
+        viewer.getControl().setBackground( ColorConstants.white );
+        viewer.setRootEditPart( rootEditPart );
+        viewer.setEditPartFactory( new VertexEditPartFactory() );
+        new EditDomain().addViewer( viewer );
+        viewer.setContents( diagram );
+        // Zoom mousewheel - Ctrl+Mousewheel for zoom in/out
+        viewer.setProperty( MouseWheelHandler.KeyGenerator.getKey( SWT.MOD1 ),
+                            MouseWheelZoomHandler.SINGLETON );
+        getSite().setSelectionProvider( viewer );
+
+        ZoomManager zoomManager = rootEditPart.getZoomManager();
+        IToolBarManager toolBar = getViewSite().getActionBars().getToolBarManager();
+        toolBar.add( new ZoomInAction( zoomManager ) );
+        toolBar.add( new ZoomOutAction( zoomManager ) );
+        toolBar.add( new ExportReteGraphAction( this ) );
+
+        getSite().getPage().addPartListener( partListener );
+        ResourcesPlugin.getWorkspace().addResourceChangeListener( this,
+                                                                  IResourceChangeEvent.POST_CHANGE );
+        IEditorPart editor = getSite().getPage().getActiveEditor();
+        if ( editor != null ) {
+            editorActivated( editor );
+        } else {
+            setContentDescription( "Open a rule file to show the RETE network of its project" );
+        }
+    }
+
+    /**
+     * Returns the graph currently shown.
+     */
+    ReteGraph getGraph() {
+        return diagram;
+    }
+
+    public void setFocus() {
+        viewer.getControl().setFocus();
+    }
+
+    public void dispose() {
+        getSite().getPage().removePartListener( partListener );
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener( this );
+        // the job releases the network, once it's not using it anymore
+        disposed = true;
+        buildJob.cancel();
+        buildJob.schedule();
+        super.dispose();
+    }
+
+    private void editorActivated(IEditorPart editor) {
+        IEditorInput input = editor.getEditorInput();
+        if ( !(input instanceof IFileEditorInput) ) {
+            return;
+        }
+        IJavaProject javaProject = JavaCore.create( ((IFileEditorInput) input).getFile().getProject() );
+        if ( javaProject.exists() && !javaProject.equals( project ) ) {
+            project = javaProject;
+            setContentDescription( "Building the RETE network of " + javaProject.getElementName() );
+            buildJob.cancel();
+            buildJob.schedule();
+        }
+    }
+
+    public void resourceChanged(IResourceChangeEvent event) {
+        final IJavaProject currentProject = project;
+        IResourceDelta delta = event.getDelta();
+        if ( currentProject == null || delta == null ) {
+            return;
+        }
+        try {
+            final IPath outputLocation = currentProject.getOutputLocation();
+            delta.accept( new IResourceDeltaVisitor() {
+                public boolean visit(IResourceDelta delta) throws CoreException {
+                    IResource resource = delta.getResource();
+                    if ( resource.getType() == IResource.PROJECT ) {
+                        return resource.equals( currentProject.getProject() );
+                    }
+                    if ( resource.getFullPath().equals( outputLocation ) ) {
+                        // the network is built again if the classes of the project changed
+                        buildJob.schedule( BUILD_DELAY );
+                        return false;
+                    }
+                    if ( isRuleFile( resource ) ) {
+                        if ( delta.getKind() == IResourceDelta.REMOVED ) {
+                            addChange( resource,
+                                       true );
+                        } else if ( (delta.getKind() == IResourceDelta.ADDED || (delta.getFlags() & IResourceDelta.CONTENT) != 0)
+                                    && currentProject.isOnClasspath( resource ) ) {
+                            addChange( resource,
+                                       false );
+                        }
+                    }
+                    return true;
+                }
+            } );
+        } catch ( CoreException e ) {
+            DroolsEclipsePlugin.log( e );
+        }
+    }
+
+    private void addChange(IResource resource,
+                           boolean removed) {
+        synchronized ( pendingChanges ) {
+            pendingChanges.put( resource,
+                                Boolean.valueOf( removed ) );
+        }
+        buildJob.schedule( BUILD_DELAY );
+    }
+
+    private static boolean isRuleFile(IResource resource) {
+        return resource instanceof IFile
+               && ("drl".equals( resource.getFileExtension() ) || "dslr".equals( resource.getFileExtension() ));
+    }
+
+    private IStatus build(IProgressMonitor monitor) throws CoreException {
+        if ( disposed ) {
+            if ( network != null ) {
+                network.dispose();
+                network = null;
+            }
+            return Status.OK_STATUS;
+        }
+        IJavaProject currentProject = project;
+        if ( currentProject == null ) {
+            return Status.OK_STATUS;
+        }
+
+        Map<IResource, Boolean> changes;
+        synchronized ( pendingChanges ) {
+            changes = new LinkedHashMap<IResource, Boolean>( pendingChanges );
+            pendingChanges.clear();
+        }
+        if ( network == null || !network.getProject().equals( currentProject ) || !network.isCurrent() ) {
+            if ( network != null ) {
+                network.dispose();
+            }
+            network = new ProjectReteNetwork( currentProject );
+            changes.clear();
+            for ( IResource resource : findRuleFiles( currentProject ) ) {
+                changes.put( resource,
+                             Boolean.FALSE );
+            }
+            graphOutdated = true;
+        }
+
+        monitor.beginTask( "Building RETE network of " + currentProject.getElementName(),
+                           changes.size() + 1 );
+        for ( Iterator<Map.Entry<IResource, Boolean>> iterator = changes.entrySet().iterator(); iterator.hasNext(); ) {
+            if ( monitor.isCanceled() ) {
+                // the remaining changes are applied on the next run, unless there are newer ones
+                synchronized ( pendingChanges ) {
+                    while ( iterator.hasNext() ) {
+                        Map.Entry<IResource, Boolean> change = iterator.next();
+                        if ( !pendingChanges.containsKey( change.getKey() ) ) {
+                            pendingChanges.put( change.getKey(),
+                                                change.getValue() );
+                        }
+                    }
+                }
+                throw new OperationCanceledException();
+            }
+            Map.Entry<IResource, Boolean> change = iterator.next();
+            monitor.subTask( change.getKey().getName() );
+            try {
+                if ( change.getValue().booleanValue() ) {
+                    graphOutdated |= network.remove( change.getKey() );
+                } else {
+                    graphOutdated |= network.update( change.getKey() );
+                }
+            } catch ( Throwable t ) {
+                DroolsEclipsePlugin.log( t );
+            }
+            monitor.worked( 1 );
+        }
+
+        if ( graphOutdated && !disposed ) {
+            monitor.subTask( "Calculating RETE Tree Layout" );
+            final ReteGraph graph = network.createGraph( monitor );
+            graphOutdated = false;
+            final String description = "RETE network of " + currentProject.getElementName();
+            display.asyncExec( new Runnable() {
+                public void run() {
+                    if ( !viewer.getControl().isDisposed() ) {
+                        diagram.removeAll();
+                        diagram.addAll( graph.getChildren() );
+                        setContentDescription( description );
+                    }
+                }
+            } );
+        }
+        monitor.done();
+        return Status.OK_STATUS;
+    }
+
+    /**
+     * Returns the rule files on the classpath of the given project.
+     */
+    private static List<IResource> findRuleFiles(final IJavaProject javaProject) throws CoreException {
+        final List<IResource> resources = new ArrayList<IResource>();
+        javaProject.getProject().accept( new IResourceVisitor() {
+            public boolean visit(IResource resource) throws CoreException {
+                if ( isRuleFile( resource ) && javaProject.isOnClasspath( resource ) ) {
+                    resources.add( resource );
+                }
+                return true;
+            }
+        } );
+        return resources;
+    }
+
+}
@@ -16,10 +16,6 @@
 
 package org.drools.eclipse.view.rules;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -32,6 +28,7 @@ import org.drools.compiler.lang.descr.RuleDescr;
 import org.drools.eclipse.DRLInfo;
 import org.drools.eclipse.DroolsEclipsePlugin;
 import org.drools.eclipse.ProcessInfo;
+import org.drools.eclipse.builder.Util;
 import org.drools.eclipse.core.DroolsElement;
 import org.drools.eclipse.core.DroolsModelBuilder;
 import org.drools.eclipse.core.Function;
@@ -202,7 +199,7 @@ public class RulesView extends ViewPart implements IDoubleClickListener, IResour
                     return false;
                 } else if ("rf".equals(resource.getFileExtension())) {
                     try {
-                        String processString = convertToString(file.getContents());
+                        String processString = Util.getResourceContentsAsString(file);
                         ProcessInfo processInfo = DroolsEclipsePlugin.getDefault().parseProcess(processString, resource);
                         if (processInfo != null && processInfo.getProcess() != null) {
                             String packageName = processInfo.getProcess().getPackageName();
@@ -314,15 +311,4 @@ public class RulesView extends ViewPart implements IDoubleClickListener, IResour
             }
         }
     }
-
-    private static String convertToString(final InputStream inputStream) throws IOException {
-        Reader reader = new InputStreamReader(inputStream);
-        final StringBuffer text = new StringBuffer();
-        final char[] buf = new char[1024];
-        int len = 0;
-        while ((len = reader.read(buf)) >= 0) {
-            text.append(buf, 0, len);
-        }
-        return text.toString();
-    }
 }